@@ -0,0 +1,278 @@
+package carga;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
+import javafx.scene.Node;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Control;
+import javafx.scene.control.ListView;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.TableView;
+import javafx.stage.Window;
+
+/**
+ * CARGA DE DATOS EN SEGUNDO PLANO PARA UNA VISTA
+ *
+ * Cada controlador crea su propio CargadorAsincrono. Las consultas se lanzan
+ * como javafx.concurrent.Task en EjecutorBD y el resultado se entrega en el
+ * hilo de JavaFX, donde ya se puede tocar la interfaz.
+ *
+ * Uso típico:
+ *   cargador.cargar("cultivos", () -> cultivoDAO.listarPorFinca(id),
+ *       lista -> cultivos.setAll(lista),
+ *       error -> mostrarAlerta(...));
+ *
+ * Cada carga tiene una clave: si se lanza otra con la misma clave (por ejemplo
+ * al cambiar de finca) la anterior se cancela y su resultado se descarta.
+ * Con cancelarAlSalir(nodo) todas las cargas se cancelan cuando la vista
+ * deja de mostrarse en su ventana (navegación a otra pantalla).
+ *
+ * IMPORTANTE: todos los métodos deben llamarse desde el hilo de JavaFX.
+ */
+public class CargadorAsincrono {
+
+    private static final String PLACEHOLDER_ORIGINAL = "carga.placeholderOriginal";
+    private static final String TAREA_EN_CURSO = "carga.tareaEnCurso";
+
+    private final Map<String, Task<?>> tareas = new HashMap<>();
+
+    /**
+     * Ejecuta una consulta en segundo plano.
+     *
+     * @param clave Identifica la carga; una nueva carga con la misma clave cancela la anterior
+     * @param consulta Código que accede a la base de datos (se ejecuta fuera del hilo de JavaFX)
+     * @param alTerminar Recibe el resultado en el hilo de JavaFX
+     * @param alFallar Recibe el error en el hilo de JavaFX (puede ser null)
+     * @return La tarea lanzada, por si se quiere observar su progreso
+     */
+    public <T> Task<T> cargar(String clave, Callable<T> consulta, Consumer<T> alTerminar,
+                              Consumer<Throwable> alFallar) {
+        cancelar(clave);
+
+        Task<T> tarea = new Task<>() {
+            @Override
+            protected T call() throws Exception {
+                return consulta.call();
+            }
+        };
+        registrar(clave, tarea, alTerminar, alFallar);
+        EjecutorBD.get().execute(tarea);
+        return tarea;
+    }
+
+    /**
+     * Como cargar(), para una carga que ya reparte su trabajo en varias consultas
+     * en paralelo y devuelve un CompletableFuture (ver CargadorDashboard).
+     *
+     * Ningún hilo espera al futuro: cuando se completa, la tarea se ejecuta en el
+     * hilo de JavaFX solo para entregar el resultado. Esperarlo desde un hilo de
+     * EjecutorBD podría bloquear el pool, porque ese hilo ocuparía el sitio de
+     * las consultas que espera.
+     *
+     * @param clave Identifica la carga; una nueva carga con la misma clave cancela la anterior
+     * @param lanzar Lanza las consultas (se llama aquí, en el hilo de JavaFX, y no debe bloquear)
+     * @param alTerminar Recibe el resultado en el hilo de JavaFX
+     * @param alFallar Recibe el error en el hilo de JavaFX (puede ser null)
+     * @return La tarea que representa la carga, por si se quiere observar su estado
+     */
+    public <T> Task<T> cargarEnParalelo(String clave, Supplier<CompletableFuture<T>> lanzar,
+                                        Consumer<T> alTerminar, Consumer<Throwable> alFallar) {
+        cancelar(clave);
+
+        CompletableFuture<T> futuro = lanzar.get();
+        Task<T> tarea = new Task<>() {
+            @Override
+            protected T call() throws Exception {
+                // Solo se ejecuta cuando el futuro ya ha terminado: join() no espera
+                try {
+                    return futuro.join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof Exception causa) {
+                        throw causa;
+                    }
+                    throw e;
+                }
+            }
+
+            @Override
+            protected void cancelled() {
+                futuro.cancel(true);
+            }
+        };
+        registrar(clave, tarea, alTerminar, alFallar);
+        futuro.whenComplete((resultado, error) -> Platform.runLater(tarea));
+        return tarea;
+    }
+
+    /**
+     * Ejecuta una escritura (guardar, actualizar, eliminar) en EjecutorBD y
+     * entrega el resultado en el hilo de JavaFX, como cargar().
+     *
+     * A diferencia de una carga, una escritura no tiene clave y no se cancela:
+     * ni otra escritura ni cancelarAlSalir la detienen, porque el usuario ya
+     * pidió guardar y salir de la pantalla no debe perder el cambio. Si la
+     * vista ya no se muestra cuando termina, los callbacks se ejecutan igual
+     * (recargar una tabla que no se ve no tiene efecto).
+     *
+     * Uso típico:
+     *   cargador.escribir(() -> cultivoDAO.guardar(cultivo),
+     *       guardado -> cargarCultivos(guardado.getId()),
+     *       error -> mostrarAlerta(...));
+     *
+     * @param escritura Código que escribe en la base de datos (fuera del hilo de JavaFX)
+     * @param alTerminar Recibe el resultado en el hilo de JavaFX
+     * @param alFallar Recibe el error en el hilo de JavaFX
+     * @return La tarea lanzada
+     */
+    public <T> Task<T> escribir(Callable<T> escritura, Consumer<T> alTerminar, Consumer<Throwable> alFallar) {
+        Task<T> tarea = new Task<>() {
+            @Override
+            protected T call() throws Exception {
+                return escritura.call();
+            }
+        };
+        tarea.setOnSucceeded(event -> alTerminar.accept(tarea.getValue()));
+        tarea.setOnFailed(event -> alFallar.accept(tarea.getException()));
+        EjecutorBD.get().execute(tarea);
+        return tarea;
+    }
+
+    private <T> void registrar(String clave, Task<T> tarea, Consumer<T> alTerminar, Consumer<Throwable> alFallar) {
+        tarea.setOnSucceeded(event -> {
+            if (tareas.get(clave) != tarea) {
+                return;  // Llegó tarde: otra carga con la misma clave la sustituyó
+            }
+            tareas.remove(clave);
+            alTerminar.accept(tarea.getValue());
+        });
+        tarea.setOnFailed(event -> {
+            if (tareas.get(clave) != tarea) {
+                return;
+            }
+            tareas.remove(clave);
+            if (alFallar != null) {
+                alFallar.accept(tarea.getException());
+            } else {
+                System.err.println("Error en carga '" + clave + "': " + tarea.getException());
+                tarea.getException().printStackTrace();
+            }
+        });
+
+        tareas.put(clave, tarea);
+    }
+
+    public boolean estaCargando(String clave) {
+        Task<?> tarea = tareas.get(clave);
+        // isDone() y no isRunning(): la tarea de cargarEnParalelo sigue en READY hasta que llega el resultado
+        return tarea != null && !tarea.isDone();
+    }
+
+    public void cancelar(String clave) {
+        Task<?> anterior = tareas.remove(clave);
+        if (anterior != null) {
+            anterior.cancel(true);
+        }
+    }
+
+    public void cancelarTodas() {
+        for (Task<?> tarea : tareas.values()) {
+            tarea.cancel(true);
+        }
+        tareas.clear();
+    }
+
+    /**
+     * Cancela todas las cargas cuando la escena del nodo deja de estar en una ventana.
+     *
+     * La navegación de la aplicación hace stage.setScene(new Scene(...)), así que la
+     * escena antigua se queda sin ventana: ese es el momento de descartar lo pendiente.
+     */
+    public void cancelarAlSalir(Node nodo) {
+        if (nodo == null) {
+            return;
+        }
+        ChangeListener<Window> alCambiarVentana = (obs, anterior, nueva) -> {
+            if (anterior != null && nueva == null) {
+                cancelarTodas();
+            }
+        };
+        if (nodo.getScene() != null) {
+            nodo.getScene().windowProperty().addListener(alCambiarVentana);
+        }
+        nodo.sceneProperty().addListener((obs, anterior, nueva) -> {
+            if (anterior != null) {
+                anterior.windowProperty().removeListener(alCambiarVentana);
+            }
+            if (nueva != null) {
+                nueva.windowProperty().addListener(alCambiarVentana);
+            }
+        });
+    }
+
+    /**
+     * Muestra un indicador de progreso como placeholder de la tabla mientras la
+     * tarea está en marcha y restaura el placeholder original al terminar.
+     * Si otra tarea sustituye a esta sobre la misma tabla, la restauración la hace la última.
+     */
+    public static void marcarCargando(TableView<?> tabla, Task<?> tarea) {
+        if (tabla == null || tarea == null) {
+            return;
+        }
+        marcarCargando(tabla, tarea, tabla.getPlaceholder(), tabla::setPlaceholder);
+    }
+
+    public static void marcarCargando(ListView<?> lista, Task<?> tarea) {
+        if (lista == null || tarea == null) {
+            return;
+        }
+        marcarCargando(lista, tarea, lista.getPlaceholder(), lista::setPlaceholder);
+    }
+
+    /**
+     * En un desplegable el placeholder se ve al abrirlo sin elementos, así que
+     * mientras carga muestra el indicador en lugar de una lista vacía.
+     */
+    public static void marcarCargando(ComboBox<?> combo, Task<?> tarea) {
+        if (combo == null || tarea == null) {
+            return;
+        }
+        marcarCargando(combo, tarea, combo.getPlaceholder(), combo::setPlaceholder);
+    }
+
+    private static void marcarCargando(Control control, Task<?> tarea, Node actual, Consumer<Node> setPlaceholder) {
+        Map<Object, Object> propiedades = control.getProperties();
+        if (!propiedades.containsKey(PLACEHOLDER_ORIGINAL)) {
+            propiedades.put(PLACEHOLDER_ORIGINAL, actual);
+        }
+        propiedades.put(TAREA_EN_CURSO, tarea);
+        setPlaceholder.accept(crearIndicador());
+
+        tarea.stateProperty().addListener((obs, anterior, estado) -> {
+            if (estado == Worker.State.SUCCEEDED || estado == Worker.State.FAILED
+                || estado == Worker.State.CANCELLED) {
+                // Se pospone para que el placeholder se restaure después de pintar los datos
+                Platform.runLater(() -> {
+                    if (propiedades.get(TAREA_EN_CURSO) == tarea) {
+                        propiedades.remove(TAREA_EN_CURSO);
+                        setPlaceholder.accept((Node) propiedades.remove(PLACEHOLDER_ORIGINAL));
+                    }
+                });
+            }
+        });
+    }
+
+    private static ProgressIndicator crearIndicador() {
+        ProgressIndicator indicador = new ProgressIndicator();
+        indicador.setMaxSize(40, 40);
+        return indicador;
+    }
+}
@@ -0,0 +1,120 @@
+package carga;
+
+import crud.CultivoDAO;
+import crud.FincaDAO;
+import crud.GestionFinancieraDAO;
+import crud.TratamientoDAO;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import modelo.Finca;
+import modelo.GestionFinanciera;
+
+/**
+ * CARGA EN PARALELO DE LOS DATOS DEL DASHBOARD
+ *
+ * El dashboard necesita cuatro consultas independientes entre sí:
+ * - Las fincas del usuario (indicadores, lista y mapa)
+ * - Las últimas gestiones financieras
+ * - Los totales mensuales de rendimiento (gráfica)
+ * - El coste de tratamientos (balance)
+ *
+ * En lugar de lanzarlas una detrás de otra, se lanzan a la vez con
+ * CompletableFuture en EjecutorBD, cada una con su propia conexión del pool.
+ * Así el tiempo total es el de la consulta más lenta, no la suma de todas.
+ *
+ * Solo las gestiones de un usuario dependen de otra consulta (necesitan los
+ * ids de sus fincas), por eso se encadenan a la lista de fincas, que se
+ * obtiene una única vez.
+ *
+ * Ningún hilo se queda esperando a las demás consultas: el resultado se monta
+ * con allOf().thenApply() cuando llega la última.
+ */
+public final class CargadorDashboard {
+
+    private static final int GESTIONES_RECIENTES = 10;
+
+    private static final FincaDAO fincaDAO = new FincaDAO();
+    private static final GestionFinancieraDAO gestionDAO = new GestionFinancieraDAO();
+    private static final CultivoDAO cultivoDAO = new CultivoDAO();
+    private static final TratamientoDAO tratamientoDAO = new TratamientoDAO();
+
+    private CargadorDashboard() {
+        // Clase de utilidad, no se puede instanciar
+    }
+
+    /**
+     * Lanza las consultas del dashboard y devuelve un futuro que se completa
+     * cuando han terminado todas. No espera a nada: el hilo que llama queda libre
+     * y el resultado se combina en el hilo que termina la última consulta.
+     *
+     * No hay que esperar al futuro desde un hilo de EjecutorBD: ese hilo estaría
+     * ocupando el sitio de las propias consultas (con un pool de 1 conexión no
+     * terminaría nunca). Para recogerlo en la interfaz está
+     * CargadorAsincrono.cargarEnParalelo.
+     *
+     * Cancelar el futuro cancela las consultas que aún no han empezado.
+     *
+     * @param propietarioId Usuario cuyas fincas se muestran; null para todas (administrador)
+     */
+    public static CompletableFuture<Instantanea> cargar(Integer propietarioId) {
+        Executor ejecutor = EjecutorBD.get();
+
+        CompletableFuture<List<Finca>> fincas = lanzar(ejecutor, () -> propietarioId == null
+            ? fincaDAO.listarTodas()
+            : fincaDAO.listarPorUsuario(propietarioId));
+        CompletableFuture<List<CultivoDAO.RendimientoMensual>> rendimiento = lanzar(ejecutor,
+            () -> cultivoDAO.totalesRendimientoPorMes(propietarioId));
+        CompletableFuture<BigDecimal> costoTratamientos = lanzar(ejecutor,
+            () -> tratamientoDAO.obtenerCostoPorFincasDeUsuario(propietarioId).values().stream()
+                .reduce(BigDecimal.ZERO, BigDecimal::add));
+        CompletableFuture<List<GestionFinanciera>> gestiones = propietarioId == null
+            ? lanzar(ejecutor, () -> gestionDAO.listarRecientes(GESTIONES_RECIENTES))
+            : fincas.thenApplyAsync(lista -> ejecutarConsulta(() -> gestionDAO.listarRecientesPorFincas(
+                lista.stream().map(Finca::getId).filter(id -> id != null).toList(), GESTIONES_RECIENTES)), ejecutor);
+
+        CompletableFuture<Instantanea> resultado = CompletableFuture
+            .allOf(fincas, rendimiento, costoTratamientos, gestiones)
+            .thenApply(nada -> new Instantanea(fincas.join(), gestiones.join(), rendimiento.join(),
+                costoTratamientos.join()));
+        resultado.whenComplete((datos, error) -> {
+            if (resultado.isCancelled()) {
+                // La vista se cerró o se pidió otra carga: las consultas pendientes sobran
+                fincas.cancel(true);
+                rendimiento.cancel(true);
+                costoTratamientos.cancel(true);
+                gestiones.cancel(true);
+            }
+        });
+        return resultado;
+    }
+
+    private static <T> CompletableFuture<T> lanzar(Executor ejecutor, ConsultaBD<T> consulta) {
+        return CompletableFuture.supplyAsync(() -> ejecutarConsulta(consulta), ejecutor);
+    }
+
+    private static <T> T ejecutarConsulta(ConsultaBD<T> consulta) {
+        try {
+            return consulta.ejecutar();
+        } catch (SQLException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConsultaBD<T> {
+        T ejecutar() throws SQLException;
+    }
+
+    /**
+     * Datos del dashboard obtenidos en una sola carga, listos para pintar de una vez.
+     */
+    public record Instantanea(List<Finca> fincas,
+                              List<GestionFinanciera> gestiones,
+                              List<CultivoDAO.RendimientoMensual> rendimientoMensual,
+                              BigDecimal costoTratamientos) {
+    }
+}
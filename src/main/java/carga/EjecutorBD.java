@@ -0,0 +1,104 @@
+package carga;
+
+import crud.ConexionBD;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * EJECUTOR COMPARTIDO PARA LAS CONSULTAS A LA BASE DE DATOS
+ *
+ * Todas las consultas que lanzan los controladores se ejecutan aquí, nunca en el
+ * hilo de JavaFX (así la ventana no se congela mientras MySQL responde).
+ *
+ * El número de consultas simultáneas está limitado al tamaño del pool de
+ * ConexionBD: lanzar más no aporta nada, porque esperarían a una conexión libre.
+ *
+ * Si la JVM soporta hilos virtuales (Java 21 o superior) se usan, y si no,
+ * un pool fijo de hilos normales. Los hilos son "daemon" para no impedir
+ * que la aplicación se cierre.
+ */
+public final class EjecutorBD {
+
+    private static final Object lock = new Object();
+    private static ExecutorService base;
+    private static Executor ejecutor;
+
+    private EjecutorBD() {
+        // Clase de utilidad, no se puede instanciar
+    }
+
+    /**
+     * Devuelve el ejecutor compartido, creándolo la primera vez que se usa.
+     */
+    public static Executor get() {
+        synchronized (lock) {
+            if (ejecutor == null) {
+                crear(ConexionBD.getTamanoMaximoPool());
+            }
+            return ejecutor;
+        }
+    }
+
+    private static void crear(int limite) {
+        ExecutorService virtual = crearEjecutorVirtual();
+        if (virtual != null) {
+            // Los hilos virtuales son baratos: se crean sin límite y un semáforo
+            // deja pasar como mucho "limite" consultas a la vez
+            Semaphore permisos = new Semaphore(limite);
+            base = virtual;
+            ejecutor = tarea -> virtual.execute(() -> {
+                permisos.acquireUninterruptibly();
+                try {
+                    tarea.run();
+                } finally {
+                    permisos.release();
+                }
+            });
+            return;
+        }
+
+        AtomicInteger contador = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(limite, limite, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), tarea -> {
+                Thread hilo = new Thread(tarea, "agrotrack-bd-" + contador.incrementAndGet());
+                hilo.setDaemon(true);
+                return hilo;
+            });
+        pool.allowCoreThreadTimeOut(true);
+        base = pool;
+        ejecutor = pool;
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() solo existe desde Java 21;
+     * se busca por reflexión para que el proyecto siga compilando con Java 17.
+     */
+    private static ExecutorService crearEjecutorVirtual() {
+        try {
+            Method metodo = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) metodo.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Cancela las consultas pendientes. Se llama al cerrar la aplicación.
+     */
+    public static void cerrar() {
+        synchronized (lock) {
+            if (base != null) {
+                base.shutdownNow();
+                base = null;
+                ejecutor = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package carga;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * EJECUTOR PARA EL TRABAJO DE CPU (BCRYPT)
+ *
+ * Comprobar o generar un hash BCrypt con SeguridadUtil cuesta unos 250 ms de
+ * CPU. Hacerlo en el hilo de JavaFX congela la ventana, y hacerlo en EjecutorBD
+ * ocuparía uno de los hilos reservados para consultas.
+ *
+ * Este ejecutor tiene pocos hilos (la mitad de los núcleos, como mucho 4) y una
+ * cola limitada: si alguien lanzara cientos de hashes a la vez se rechazan en
+ * lugar de acumularse y dejar el equipo sin CPU.
+ */
+public final class EjecutorCPU {
+
+    private static final int MAXIMO_HILOS = 4;
+    private static final int TAMANO_COLA = 32;
+
+    private static final Object lock = new Object();
+    private static ThreadPoolExecutor pool;
+
+    private EjecutorCPU() {
+        // Clase de utilidad, no se puede instanciar
+    }
+
+    /**
+     * Devuelve el ejecutor compartido, creándolo la primera vez que se usa.
+     */
+    public static Executor get() {
+        synchronized (lock) {
+            if (pool == null) {
+                int hilos = Math.max(1, Math.min(MAXIMO_HILOS, Runtime.getRuntime().availableProcessors() / 2));
+                AtomicInteger contador = new AtomicInteger();
+                pool = new ThreadPoolExecutor(hilos, hilos, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(TAMANO_COLA), tarea -> {
+                        Thread hilo = new Thread(tarea, "agrotrack-cpu-" + contador.incrementAndGet());
+                        hilo.setDaemon(true);
+                        return hilo;
+                    });
+                pool.allowCoreThreadTimeOut(true);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Cancela el trabajo pendiente. Se llama al cerrar la aplicación.
+     */
+    public static void cerrar() {
+        synchronized (lock) {
+            if (pool != null) {
+                pool.shutdownNow();
+                pool = null;
+            }
+        }
+    }
+}
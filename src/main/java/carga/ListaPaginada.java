@@ -0,0 +1,259 @@
+package carga;
+
+import crud.ClavePagina;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.collections.ObservableListBase;
+import javafx.concurrent.Task;
+
+/**
+ * LISTA QUE CARGA SUS FILAS POR PÁGINAS SEGÚN SE NECESITAN
+ *
+ * Pensada como items de un TableView con muchas filas. La tabla solo pide
+ * (get) las filas que están a la vista; cuando una fila no está cargada la
+ * lista devuelve null, pide su página a la base de datos en segundo plano y
+ * avisa a la tabla cuando llega para que la pinte.
+ *
+ * - size() es el total de filas (una consulta COUNT), así la barra de
+ *   desplazamiento tiene el tamaño real desde el principio.
+ * - Solo se guardan en memoria las últimas MAXIMO_PAGINAS páginas usadas;
+ *   las demás se descartan y se vuelven a pedir si el usuario vuelve a ellas.
+ *   La memoria no crece con el tamaño de la tabla.
+ * - Las páginas se piden con paginación por clave (ClavePagina). Para saltar a
+ *   una página lejana (arrastrando la barra) se busca antes la clave de su
+ *   primera fila con el índice, sin leer las páginas intermedias.
+ *
+ * - filtrar(texto) vuelve a empezar con otro texto de búsqueda; la búsqueda la
+ *   hace la base de datos (el Origen recibe el filtro), no se filtra en memoria.
+ *   Las consultas aún pendientes de la búsqueda anterior se cancelan.
+ *
+ * Como las filas aún no cargadas son null, las cellValueFactory de la tabla
+ * deben aceptar null.
+ *
+ * IMPORTANTE: se usa solo desde el hilo de JavaFX.
+ */
+public class ListaPaginada<T> extends ObservableListBase<T> {
+
+    private static final int MAXIMO_PAGINAS = 10;
+
+    /**
+     * De dónde salen las filas (normalmente un DAO). El filtro es el texto de
+     * búsqueda actual, o null si no hay.
+     */
+    public interface Origen<T> {
+
+        int contar(String filtro) throws SQLException;
+
+        List<T> pagina(String filtro, ClavePagina despuesDe, int tamano) throws SQLException;
+
+        ClavePagina claveEnPosicion(String filtro, int posicion) throws SQLException;
+
+        ClavePagina claveDe(T elemento);
+    }
+
+    private final Origen<T> origen;
+    private final int tamanoPagina;
+
+    private final Map<Integer, List<T>> paginas = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> masAntigua) {
+            return size() > MAXIMO_PAGINAS;
+        }
+    };
+    /** Clave de la última fila de la página anterior a cada página ya visitada. */
+    private final Map<Integer, ClavePagina> inicioPagina = new HashMap<>();
+    private final Set<Integer> cargando = new HashSet<>();
+    private final Set<Task<?>> pendientes = new HashSet<>();
+    private final ReadOnlyIntegerWrapper total = new ReadOnlyIntegerWrapper(0);
+
+    // Cambia con cada recarga: las páginas pedidas antes de recargar se descartan al llegar
+    private int generacion;
+    private String filtro;
+    private Consumer<Throwable> alFallar;
+
+    public ListaPaginada(Origen<T> origen, int tamanoPagina) {
+        this.origen = origen;
+        this.tamanoPagina = tamanoPagina;
+    }
+
+    /**
+     * Recibe los errores de carga (en el hilo de JavaFX).
+     */
+    public void setAlFallar(Consumer<Throwable> alFallar) {
+        this.alFallar = alFallar;
+    }
+
+    /**
+     * Total de filas, para mostrarlo en la interfaz.
+     */
+    public ReadOnlyIntegerProperty totalProperty() {
+        return total.getReadOnlyProperty();
+    }
+
+    /**
+     * Cambia el texto de búsqueda y recarga. Si es el mismo que ya había no hace nada.
+     *
+     * @param texto Texto a buscar, o null/vacío para mostrar todas las filas
+     * @return La tarea del recuento, o null si el filtro no ha cambiado
+     */
+    public Task<Integer> filtrar(String texto) {
+        String nuevo = texto == null || texto.isBlank() ? null : texto.trim();
+        if (Objects.equals(nuevo, filtro)) {
+            return null;
+        }
+        filtro = nuevo;
+        return recargar();
+    }
+
+    /**
+     * Texto de búsqueda actual, o null si se muestran todas las filas.
+     */
+    public String getFiltro() {
+        return filtro;
+    }
+
+    /**
+     * Vuelve a contar las filas y descarta todo lo cargado. Se llama al abrir la
+     * vista y después de crear, editar o borrar.
+     *
+     * @return La tarea del recuento, por si se quiere mostrar que se está cargando
+     */
+    public Task<Integer> recargar() {
+        int miGeneracion = ++generacion;
+        String miFiltro = filtro;
+        cargando.clear();
+        // Lo que quede en cola de la carga anterior ya no sirve: que no llegue a ocupar una conexión
+        pendientes.forEach(pendiente -> pendiente.cancel(false));
+        pendientes.clear();
+
+        Task<Integer> tarea = new Task<>() {
+            @Override
+            protected Integer call() throws Exception {
+                return origen.contar(miFiltro);
+            }
+        };
+        tarea.setOnSucceeded(event -> {
+            pendientes.remove(tarea);
+            if (miGeneracion != generacion) {
+                return;
+            }
+            int anterior = total.get();
+            int nuevo = tarea.getValue();
+            paginas.clear();
+            inicioPagina.clear();
+            total.set(nuevo);
+
+            beginChange();
+            if (anterior > 0) {
+                nextRemove(0, Collections.nCopies(anterior, null));
+            }
+            if (nuevo > 0) {
+                nextAdd(0, nuevo);
+            }
+            endChange();
+        });
+        tarea.setOnFailed(event -> {
+            pendientes.remove(tarea);
+            if (miGeneracion == generacion) {
+                notificarError(tarea.getException());
+            }
+        });
+        pendientes.add(tarea);
+        EjecutorBD.get().execute(tarea);
+        return tarea;
+    }
+
+    @Override
+    public T get(int indice) {
+        if (indice < 0 || indice >= total.get()) {
+            throw new IndexOutOfBoundsException("Índice " + indice + ", tamaño " + total.get());
+        }
+        int numeroPagina = indice / tamanoPagina;
+        List<T> pagina = paginas.get(numeroPagina);
+        if (pagina == null) {
+            solicitar(numeroPagina);
+            return null;
+        }
+        int posicion = indice % tamanoPagina;
+        return posicion < pagina.size() ? pagina.get(posicion) : null;
+    }
+
+    @Override
+    public int size() {
+        return total.get();
+    }
+
+    private void solicitar(int numeroPagina) {
+        if (!cargando.add(numeroPagina)) {
+            return;  // Ya se está pidiendo
+        }
+        int miGeneracion = generacion;
+        String miFiltro = filtro;
+        ClavePagina conocida = numeroPagina == 0 ? null : inicioPagina.get(numeroPagina);
+
+        Task<List<T>> tarea = new Task<>() {
+            @Override
+            protected List<T> call() throws Exception {
+                ClavePagina despuesDe = conocida;
+                if (numeroPagina > 0 && despuesDe == null) {
+                    // Salto a una página no visitada: buscar con el índice dónde empieza
+                    despuesDe = origen.claveEnPosicion(miFiltro, numeroPagina * tamanoPagina - 1);
+                    if (despuesDe == null) {
+                        return List.of();  // La tabla ha encogido desde el recuento
+                    }
+                }
+                return origen.pagina(miFiltro, despuesDe, tamanoPagina);
+            }
+        };
+        tarea.setOnSucceeded(event -> {
+            pendientes.remove(tarea);
+            if (miGeneracion != generacion) {
+                return;
+            }
+            cargando.remove(numeroPagina);
+            List<T> filas = tarea.getValue();
+            paginas.put(numeroPagina, filas);
+            if (!filas.isEmpty()) {
+                inicioPagina.put(numeroPagina + 1, origen.claveDe(filas.get(filas.size() - 1)));
+            }
+
+            // Avisar a la tabla de que esas filas han cambiado para que las vuelva a pintar
+            int desde = numeroPagina * tamanoPagina;
+            int hasta = Math.min(desde + tamanoPagina, total.get());
+            if (desde < hasta) {
+                beginChange();
+                nextReplace(desde, hasta, Collections.nCopies(hasta - desde, null));
+                endChange();
+            }
+        });
+        tarea.setOnFailed(event -> {
+            // La página se queda marcada como "cargando" hasta la próxima recarga: si no,
+            // la tabla la volvería a pedir en cada repintado y el error se repetiría sin fin
+            pendientes.remove(tarea);
+            if (miGeneracion == generacion) {
+                notificarError(tarea.getException());
+            }
+        });
+        pendientes.add(tarea);
+        EjecutorBD.get().execute(tarea);
+    }
+
+    private void notificarError(Throwable error) {
+        if (alFallar != null) {
+            alFallar.accept(error);
+        } else {
+            System.err.println("Error al cargar la página: " + error.getMessage());
+            error.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package carga;
+
+import crud.UsuarioDAO;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import modelo.Usuario;
+import util.SeguridadUtil;
+
+/**
+ * Inicio de sesión fuera del hilo de JavaFX.
+ *
+ * Hace lo mismo que UsuarioDAO.autenticar (buscar el usuario y comprobar la
+ * contraseña con BCrypt, unos 250 ms de CPU), pero en EjecutorCPU, así la
+ * ventana de login no se congela y puede mostrar en qué paso va (message y
+ * progress de la tarea).
+ *
+ * Si el usuario tenía una contraseña antigua en texto plano, o un hash hecho
+ * con un costo distinto del calibrado para este equipo, la sesión se abre en
+ * cuanto se comprueba, y el hash nuevo y el UPDATE se hacen después en segundo
+ * plano (EjecutorCPU y EjecutorBD). Si esa escritura falla, o EjecutorCPU
+ * tiene la cola llena y la rechaza, no pasa nada: se volverá a intentar en el
+ * siguiente inicio de sesión.
+ */
+public class TareaAutenticacion extends Task<Optional<Usuario>> {
+
+    private final UsuarioDAO usuarioDAO = new UsuarioDAO();
+    private final String usuarioOCorreo;
+    private final String password;
+
+    private TareaAutenticacion(String usuarioOCorreo, String password) {
+        this.usuarioOCorreo = usuarioOCorreo;
+        this.password = password;
+    }
+
+    /**
+     * Crea la tarea y la lanza en EjecutorCPU.
+     *
+     * Si la cola de EjecutorCPU está llena, el login no puede fallar por eso:
+     * se lanza en un hilo propio, que es uno solo y lo pide el usuario.
+     */
+    public static TareaAutenticacion iniciar(String usuarioOCorreo, String password) {
+        TareaAutenticacion tarea = new TareaAutenticacion(usuarioOCorreo, password);
+        try {
+            EjecutorCPU.get().execute(tarea);
+        } catch (RejectedExecutionException e) {
+            Thread hilo = new Thread(tarea, "agrotrack-login");
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+        return tarea;
+    }
+
+    @Override
+    protected Optional<Usuario> call() throws Exception {
+        updateMessage("Buscando usuario...");
+        updateProgress(0, 2);
+        Optional<Usuario> candidato = usuarioDAO.buscarActivo(usuarioOCorreo);
+        if (candidato.isEmpty() || isCancelled()) {
+            return Optional.empty();
+        }
+        Usuario usuario = candidato.get();
+
+        updateMessage("Comprobando contraseña...");
+        updateProgress(1, 2);
+        Optional<Usuario> resultado = Optional.empty();
+        if (SeguridadUtil.verificarPassword(password, usuario.getPassword())) {
+            if (SeguridadUtil.necesitaRehash(usuario.getPassword())) {
+                rehacerEnSegundoPlano(usuario, password);
+            }
+            resultado = Optional.of(usuario);
+        } else if (SeguridadUtil.coincideTextoPlano(password, usuario.getPassword())) {
+            // Contraseña antigua en texto plano: correcta, se migra a BCrypt sin esperar
+            rehacerEnSegundoPlano(usuario, password);
+            resultado = Optional.of(usuario);
+        }
+        updateProgress(2, 2);
+        return resultado;
+    }
+
+    private void rehacerEnSegundoPlano(Usuario usuario, String passwordPlano) {
+        String guardada = usuario.getPassword();
+        CompletableFuture<String> hashNuevo;
+        try {
+            hashNuevo = CompletableFuture.supplyAsync(() -> SeguridadUtil.hashPassword(passwordPlano), EjecutorCPU.get());
+        } catch (RejectedExecutionException e) {
+            // El login ya es correcto; el hash se rehará en el siguiente inicio de sesión
+            System.err.println("Hash de la contraseña pendiente: EjecutorCPU está ocupado");
+            return;
+        }
+        hashNuevo
+            .thenAcceptAsync(hash -> {
+                try {
+                    if (usuarioDAO.reemplazarPassword(usuario.getId(), guardada, hash)) {
+                        // El usuario de la sesión también pasa a tener el hash (p. ej. para el perfil)
+                        Platform.runLater(() -> usuario.setPassword(hash));
+                    }
+                } catch (Exception e) {
+                    System.err.println("No se pudo actualizar el hash de la contraseña: " + e.getMessage());
+                    e.printStackTrace();
+                }
+            }, EjecutorBD.get())
+            .exceptionally(error -> {
+                error.printStackTrace();
+                return null;
+            });
+    }
+}
@@ -1,15 +1,20 @@
 package controlador;
 
+import carga.CargadorAsincrono;
+import carga.ListaPaginada;
+import crud.ClavePagina;
 import crud.FincaDAO;
 import crud.UsuarioDAO;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
+import javafx.animation.PauseTransition;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -22,6 +27,7 @@ import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import modelo.Finca;
 import modelo.Usuario;
 import util.Sesion;
@@ -30,6 +36,7 @@ public class ControladorAdmin {
 
     private final UsuarioDAO usuarioDAO = new UsuarioDAO();
     private final FincaDAO fincaDAO = new FincaDAO();
+    private final CargadorAsincrono cargador = new CargadorAsincrono();
 
     @FXML
     private TextField campoBuscarUsuarios;
@@ -68,15 +75,67 @@ public class ControladorAdmin {
     @FXML
     private Label lblFincasActivas;
 
-    private final ObservableList<Usuario> usuarios = FXCollections.observableArrayList();
-    private final ObservableList<Finca> fincas = FXCollections.observableArrayList();
+    // Las tablas no cargan todas las filas: piden páginas a la base de datos según se desplazan
+    private static final int FILAS_POR_PAGINA = 100;
+
+    private final ListaPaginada<Usuario> usuarios = new ListaPaginada<>(new ListaPaginada.Origen<>() {
+        @Override
+        public int contar(String filtro) throws SQLException {
+            return usuarioDAO.contar(filtro);
+        }
+
+        @Override
+        public List<Usuario> pagina(String filtro, ClavePagina despuesDe, int tamano) throws SQLException {
+            return usuarioDAO.listarPagina(filtro, despuesDe, tamano);
+        }
+
+        @Override
+        public ClavePagina claveEnPosicion(String filtro, int posicion) throws SQLException {
+            return usuarioDAO.claveEnPosicion(filtro, posicion);
+        }
+
+        @Override
+        public ClavePagina claveDe(Usuario usuario) {
+            return UsuarioDAO.claveDe(usuario);
+        }
+    }, FILAS_POR_PAGINA);
+
+    private final ListaPaginada<Finca> fincas = new ListaPaginada<>(new ListaPaginada.Origen<>() {
+        @Override
+        public int contar(String filtro) throws SQLException {
+            return fincaDAO.contar(filtro);
+        }
+
+        @Override
+        public List<Finca> pagina(String filtro, ClavePagina despuesDe, int tamano) throws SQLException {
+            return fincaDAO.listarPagina(filtro, despuesDe, tamano);
+        }
+
+        @Override
+        public ClavePagina claveEnPosicion(String filtro, int posicion) throws SQLException {
+            return fincaDAO.claveEnPosicion(filtro, posicion);
+        }
+
+        @Override
+        public ClavePagina claveDe(Finca finca) {
+            return FincaDAO.claveDe(finca);
+        }
+    }, FILAS_POR_PAGINA);
+
+    // La búsqueda se lanza cuando el usuario deja de escribir, no en cada tecla
+    private static final Duration ESPERA_BUSQUEDA = Duration.millis(300);
+
+    private final PauseTransition esperaBusquedaUsuarios = new PauseTransition(ESPERA_BUSQUEDA);
+    private final PauseTransition esperaBusquedaFincas = new PauseTransition(ESPERA_BUSQUEDA);
+
+    private Stage ventanaDiagnostico;
 
     @FXML
     private void initialize() {
         try {
+            cargador.cancelarAlSalir(tablaUsuarios);
             inicializarTablaUsuarios();
             inicializarTablaFincas();
-            actualizarResumen();
         } catch (Exception e) {
             // Si hay un error durante la inicialización, mostrar mensaje pero permitir que la ventana se cargue
             System.err.println("Error durante la inicialización: " + e.getMessage());
@@ -85,105 +144,105 @@ public class ControladorAdmin {
     }
 
     private void inicializarTablaUsuarios() {
-        colUsuarioNombre.setCellValueFactory(data -> new SimpleStringProperty(
-            data.getValue().getNombre() + " " + data.getValue().getApellidos()));
-        colUsuarioCorreo.setCellValueFactory(data -> new SimpleStringProperty(data.getValue().getEmail()));
-        colUsuarioUsername.setCellValueFactory(data -> new SimpleStringProperty(data.getValue().getUsername()));
-        colUsuarioRol.setCellValueFactory(data -> new SimpleStringProperty(data.getValue().getRol().name()));
-        colUsuarioActivo.setCellValueFactory(data ->
-            new SimpleStringProperty(data.getValue().isActivo() ? "Sí" : "No"));
-
+        // data.getValue() es null mientras la página de esa fila se está cargando
+        colUsuarioNombre.setCellValueFactory(data -> texto(data.getValue(),
+            u -> u.getNombre() + " " + u.getApellidos()));
+        colUsuarioCorreo.setCellValueFactory(data -> texto(data.getValue(), Usuario::getEmail));
+        colUsuarioUsername.setCellValueFactory(data -> texto(data.getValue(), Usuario::getUsername));
+        colUsuarioRol.setCellValueFactory(data -> texto(data.getValue(), u -> u.getRol().name()));
+        colUsuarioActivo.setCellValueFactory(data -> texto(data.getValue(), u -> u.isActivo() ? "Sí" : "No"));
+
+        usuarios.setAlFallar(error -> mostrarErrorCarga(error, "No se pudieron obtener los usuarios."));
         tablaUsuarios.setItems(usuarios);
         if (campoBuscarUsuarios != null) {
-            campoBuscarUsuarios.textProperty().addListener((obs, oldV, newV) -> aplicarFiltroUsuarios());
+            esperaBusquedaUsuarios.setOnFinished(event -> aplicarFiltroUsuarios());
+            campoBuscarUsuarios.textProperty().addListener((obs, oldV, newV) -> esperaBusquedaUsuarios.playFromStart());
         }
         refrescarUsuarios();
     }
 
     private void inicializarTablaFincas() {
-        colFincaNombre.setCellValueFactory(data -> new SimpleStringProperty(data.getValue().getNombre()));
-        colFincaPropietario.setCellValueFactory(data ->
-            new SimpleStringProperty(data.getValue().getPropietario() != null
-                ? data.getValue().getPropietario().toString()
-                : "Sin asignar"));
-        colFincaSuperficie.setCellValueFactory(data ->
-            new SimpleStringProperty(data.getValue().getSuperficie() == null
-                ? "-"
-                : data.getValue().getSuperficie() + " ha"));
-        colFincaEstado.setCellValueFactory(data -> new SimpleStringProperty(data.getValue().getEstado().name()));
-        colFincaRegistrada.setCellValueFactory(data -> new SimpleObjectProperty<>(data.getValue().getFechaRegistro()));
-
+        colFincaNombre.setCellValueFactory(data -> texto(data.getValue(), Finca::getNombre));
+        colFincaPropietario.setCellValueFactory(data -> texto(data.getValue(),
+            f -> f.getPropietario() != null ? f.getPropietario().toString() : "Sin asignar"));
+        colFincaSuperficie.setCellValueFactory(data -> texto(data.getValue(),
+            f -> f.getSuperficie() == null ? "-" : f.getSuperficie() + " ha"));
+        colFincaEstado.setCellValueFactory(data -> texto(data.getValue(), f -> f.getEstado().name()));
+        colFincaRegistrada.setCellValueFactory(data -> new SimpleObjectProperty<>(
+            data.getValue() != null ? data.getValue().getFechaRegistro() : null));
+
+        fincas.setAlFallar(error -> mostrarErrorCarga(error, "No se pudieron obtener las fincas."));
         tablaFincas.setItems(fincas);
         if (campoBuscarFincas != null) {
-            campoBuscarFincas.textProperty().addListener((obs, oldV, newV) -> aplicarFiltroFincas());
+            esperaBusquedaFincas.setOnFinished(event -> aplicarFiltroFincas());
+            campoBuscarFincas.textProperty().addListener((obs, oldV, newV) -> esperaBusquedaFincas.playFromStart());
         }
         refrescarFincas();
     }
 
     private void refrescarUsuarios() {
-        try {
-            usuarios.setAll(usuarioDAO.listarTodos());
-            aplicarFiltroUsuarios();
-            actualizarResumen();
-        } catch (SQLException e) {
-            String mensaje = esErrorDeConexion(e) 
-                ? "No se puede conectar a la base de datos MySQL.\n\n" +
-                  "Verifica que:\n" +
-                  "• Docker Desktop esté ejecutándose\n" +
-                  "• El contenedor MySQL esté corriendo\n" +
-                  "• El puerto 3309 esté disponible\n" +
-                  "• Las credenciales en bbdd.properties sean correctas\n\n" +
-                  "Detalle técnico: " + e.getMessage()
-                : "No se pudieron obtener los usuarios.\nDetalle: " + e.getMessage();
-            
-            mostrarAlerta(Alert.AlertType.ERROR, "Error de conexión", mensaje);
-            e.printStackTrace();
-        }
+        CargadorAsincrono.marcarCargando(tablaUsuarios, usuarios.recargar());
+        // El total del resumen es de todos los usuarios, aunque la tabla esté filtrada
+        cargador.cargar("totalUsuarios",
+            () -> usuarioDAO.contar(null),
+            total -> lblTotalUsuarios.setText("Total usuarios: " + total),
+            error -> lblTotalUsuarios.setText("Total usuarios: -"));
     }
 
     private void refrescarFincas() {
-        try {
-            fincas.setAll(fincaDAO.listarTodas());
-            aplicarFiltroFincas();
-            actualizarResumen();
-        } catch (SQLException e) {
-            String mensaje = esErrorDeConexion(e)
-                ? "No se puede conectar a la base de datos MySQL.\n\n" +
-                  "Detalle técnico: " + e.getMessage()
-                : "No se pudieron obtener las fincas.\nDetalle: " + e.getMessage();
-            
-            mostrarAlerta(Alert.AlertType.ERROR, "Error de conexión", mensaje);
-            e.printStackTrace();
-        }
+        CargadorAsincrono.marcarCargando(tablaFincas, fincas.recargar());
+        cargador.cargar("totalFincas",
+            () -> fincaDAO.contar(null),
+            total -> lblTotalFincas.setText("Total fincas: " + total),
+            error -> lblTotalFincas.setText("Total fincas: -"));
+        cargador.cargar("fincasActivas",
+            () -> fincaDAO.contarPorEstado(Finca.Estado.ACTIVA),
+            activas -> lblFincasActivas.setText("Fincas activas: " + activas),
+            error -> lblFincasActivas.setText("Fincas activas: -"));
     }
 
-    private boolean esErrorDeConexion(SQLException e) {
-        String mensaje = e.getMessage().toLowerCase();
+    private void mostrarErrorCarga(Throwable error, String mensajeGeneral) {
+        String mensaje = esErrorDeConexion(error)
+            ? "No se puede conectar a la base de datos MySQL.\n\n" +
+              "Verifica que:\n" +
+              "• Docker Desktop esté ejecutándose\n" +
+              "• El contenedor MySQL esté corriendo\n" +
+              "• El puerto 3309 esté disponible\n" +
+              "• Las credenciales en bbdd.properties sean correctas\n\n" +
+              "Detalle técnico: " + error.getMessage()
+            : mensajeGeneral + "\nDetalle: " + error.getMessage();
+
+        mostrarAlerta(Alert.AlertType.ERROR, "Error de conexión", mensaje);
+        error.printStackTrace();
+    }
+
+    private boolean esErrorDeConexion(Throwable error) {
+        if (!(error instanceof SQLException e)) {
+            return false;
+        }
+        String mensaje = e.getMessage() != null ? e.getMessage().toLowerCase() : "";
         return mensaje.contains("communications link failure") ||
                mensaje.contains("connection refused") ||
                mensaje.contains("could not create connection") ||
                e.getSQLState() != null && e.getSQLState().startsWith("08");
     }
 
-    private void actualizarResumen() {
-        lblTotalUsuarios.setText("Total usuarios: " + usuarios.size());
-        lblTotalFincas.setText("Total fincas: " + fincas.size());
-        long activas = fincas.stream().filter(f -> f.getEstado() == Finca.Estado.ACTIVA).count();
-        lblFincasActivas.setText("Fincas activas: " + activas);
+    private static <T> SimpleStringProperty texto(T fila, Function<T, String> valor) {
+        return new SimpleStringProperty(fila != null ? valor.apply(fila) : "");
     }
 
     @FXML
     private void crearUsuario(ActionEvent event) {
         Optional<UsuarioFormResult> resultado = mostrarDialogoUsuario(null);
         resultado.ifPresent(data -> {
-            try {
-                usuarioDAO.guardar(data.usuario());
-                refrescarUsuarios();
-            } catch (SQLException e) {
-                mostrarAlerta(Alert.AlertType.ERROR, "Error al guardar usuario",
-                    "No se pudo crear el usuario.\nDetalle: " + e.getMessage());
-                e.printStackTrace();
-            }
+            // guardar() calcula el hash BCrypt: también fuera del hilo de JavaFX
+            cargador.escribir(() -> usuarioDAO.guardar(data.usuario()),
+                guardado -> refrescarUsuarios(),
+                error -> {
+                    mostrarAlerta(Alert.AlertType.ERROR, "Error al guardar usuario",
+                        "No se pudo crear el usuario.\nDetalle: " + error.getMessage());
+                    error.printStackTrace();
+                });
         });
     }
 
@@ -213,14 +272,16 @@ public class ControladorAdmin {
                     "El username del usuario es obligatorio.");
                 return;
             }
-            try {
-                usuarioDAO.actualizar(usuario, data.passwordPlano());
-                refrescarUsuarios();
-            } catch (SQLException e) {
-                mostrarAlerta(Alert.AlertType.ERROR, "Error al actualizar",
-                    "No se pudo actualizar el usuario.\nDetalle: " + e.getMessage());
-                e.printStackTrace();
-            }
+            cargador.escribir(() -> {
+                    usuarioDAO.actualizar(usuario, data.passwordPlano());
+                    return usuario;
+                },
+                guardado -> refrescarUsuarios(),
+                error -> {
+                    mostrarAlerta(Alert.AlertType.ERROR, "Error al actualizar",
+                        "No se pudo actualizar el usuario.\nDetalle: " + error.getMessage());
+                    error.printStackTrace();
+                });
         });
     }
 
@@ -231,16 +292,17 @@ public class ControladorAdmin {
             mostrarAlerta(Alert.AlertType.WARNING, "Sin selección", "Selecciona un usuario.");
             return;
         }
-        try {
-            usuarioDAO.desactivar(seleccionado.getId(), false);
-            refrescarUsuarios();
-            mostrarAlerta(Alert.AlertType.INFORMATION, "Cuenta desactivada",
-                "El usuario " + seleccionado.getUsername() + " ha sido desactivado.");
-        } catch (SQLException e) {
-            mostrarAlerta(Alert.AlertType.ERROR, "Error al desactivar",
-                "No fue posible actualizar la cuenta.\nDetalle: " + e.getMessage());
-            e.printStackTrace();
-        }
+        cargador.escribir(() -> usuarioDAO.desactivar(seleccionado.getId(), false),
+            desactivado -> {
+                refrescarUsuarios();
+                mostrarAlerta(Alert.AlertType.INFORMATION, "Cuenta desactivada",
+                    "El usuario " + seleccionado.getUsername() + " ha sido desactivado.");
+            },
+            error -> {
+                mostrarAlerta(Alert.AlertType.ERROR, "Error al desactivar",
+                    "No fue posible actualizar la cuenta.\nDetalle: " + error.getMessage());
+                error.printStackTrace();
+            });
     }
 
     @FXML
@@ -250,35 +312,36 @@ public class ControladorAdmin {
             mostrarAlerta(Alert.AlertType.WARNING, "Sin selección", "Selecciona un usuario.");
             return;
         }
-        try {
-            usuarioDAO.eliminar(seleccionado.getId());
-            refrescarUsuarios();
-            mostrarAlerta(Alert.AlertType.INFORMATION, "Usuario eliminado",
-                "El usuario se ha eliminado correctamente.");
-        } catch (SQLException e) {
-            mostrarAlerta(Alert.AlertType.ERROR, "Error al eliminar",
-                "No se pudo eliminar el usuario.\nDetalle: " + e.getMessage());
-            e.printStackTrace();
-        }
+        cargador.escribir(() -> usuarioDAO.eliminar(seleccionado.getId()),
+            eliminado -> {
+                refrescarUsuarios();
+                mostrarAlerta(Alert.AlertType.INFORMATION, "Usuario eliminado",
+                    "El usuario se ha eliminado correctamente.");
+            },
+            error -> {
+                mostrarAlerta(Alert.AlertType.ERROR, "Error al eliminar",
+                    "No se pudo eliminar el usuario.\nDetalle: " + error.getMessage());
+                error.printStackTrace();
+            });
     }
 
     @FXML
     private void crearFinca(ActionEvent event) {
-        if (usuarios.isEmpty()) {
+        // Con la tabla filtrada, que no haya resultados no significa que no haya usuarios
+        if (usuarios.size() == 0 && usuarios.getFiltro() == null) {
             mostrarAlerta(Alert.AlertType.WARNING, "Sin usuarios",
                 "Debes tener al menos un usuario para asignarlo como propietario.");
             return;
         }
         Optional<Finca> resultado = mostrarDialogoFinca(null);
         resultado.ifPresent(finca -> {
-            try {
-                fincaDAO.guardar(finca);
-                refrescarFincas();
-            } catch (SQLException e) {
-                mostrarAlerta(Alert.AlertType.ERROR, "Error al guardar finca",
-                    "No se pudo crear la finca.\nDetalle: " + e.getMessage());
-                e.printStackTrace();
-            }
+            cargador.escribir(() -> fincaDAO.guardar(finca),
+                guardada -> refrescarFincas(),
+                error -> {
+                    mostrarAlerta(Alert.AlertType.ERROR, "Error al guardar finca",
+                        "No se pudo crear la finca.\nDetalle: " + error.getMessage());
+                    error.printStackTrace();
+                });
         });
     }
 
@@ -299,16 +362,17 @@ public class ControladorAdmin {
             mostrarAlerta(Alert.AlertType.WARNING, "Sin selección", "Selecciona una finca.");
             return;
         }
-        try {
-            fincaDAO.eliminar(seleccionada.getId());
-            refrescarFincas();
-            mostrarAlerta(Alert.AlertType.INFORMATION, "Finca eliminada",
-                "La finca se ha eliminado correctamente.");
-        } catch (SQLException e) {
-            mostrarAlerta(Alert.AlertType.ERROR, "Error al eliminar finca",
-                "No se pudo eliminar la finca seleccionada.\nDetalle: " + e.getMessage());
-            e.printStackTrace();
-        }
+        cargador.escribir(() -> fincaDAO.eliminar(seleccionada.getId()),
+            eliminada -> {
+                refrescarFincas();
+                mostrarAlerta(Alert.AlertType.INFORMATION, "Finca eliminada",
+                    "La finca se ha eliminado correctamente.");
+            },
+            error -> {
+                mostrarAlerta(Alert.AlertType.ERROR, "Error al eliminar finca",
+                    "No se pudo eliminar la finca seleccionada.\nDetalle: " + error.getMessage());
+                error.printStackTrace();
+            });
     }
 
 
@@ -317,6 +381,38 @@ public class ControladorAdmin {
         navegar("/main/vista/InformesAdmin.fxml", "Informes de Administración");
     }
 
+    /**
+     * Ventana con el estado del pool de conexiones, la latencia de las consultas
+     * y la caché. No es modal: se puede dejar abierta mientras se usa el panel.
+     */
+    @FXML
+    private void abrirDiagnostico(ActionEvent event) {
+        if (!Sesion.getInstancia().esAdministrador()) {
+            mostrarAlerta(Alert.AlertType.WARNING, "Acceso restringido",
+                "El diagnóstico solo está disponible para administradores.");
+            return;
+        }
+        if (ventanaDiagnostico != null && ventanaDiagnostico.isShowing()) {
+            ventanaDiagnostico.toFront();
+            return;
+        }
+        try {
+            FXMLLoader loader = new FXMLLoader(getClass().getResource("/main/vista/DiagnosticoBDDialog.fxml"));
+            Parent root = loader.load();
+            DialogoDiagnosticoBDController controller = loader.getController();
+            Stage stage = crearDialogoStage("Diagnóstico de la base de datos", root);
+            stage.initModality(Modality.NONE);
+            stage.setResizable(true);
+            controller.setStage(stage);
+            ventanaDiagnostico = stage;
+            stage.show();
+        } catch (IOException e) {
+            mostrarAlerta(Alert.AlertType.ERROR, "Error al abrir diagnóstico",
+                "No se pudo abrir la ventana de diagnóstico.\nDetalle: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
     @FXML
     private void cerrarSesion(ActionEvent event) {
         Sesion.getInstancia().cerrarSesion();
@@ -337,39 +433,29 @@ public class ControladorAdmin {
         alert.showAndWait();
     }
 
+    /**
+     * La búsqueda la hace MySQL (UsuarioDAO.listarPagina con texto) y el resultado
+     * se sigue cargando por páginas. Si se escribe otra cosa antes de que termine,
+     * la búsqueda anterior se descarta.
+     */
     private void aplicarFiltroUsuarios() {
         if (campoBuscarUsuarios == null || tablaUsuarios == null) {
             return;
         }
-        String filtro = campoBuscarUsuarios.getText();
-        if (filtro == null || filtro.isBlank()) {
-            tablaUsuarios.setItems(usuarios);
-            return;
+        Task<Integer> busqueda = usuarios.filtrar(campoBuscarUsuarios.getText());
+        if (busqueda != null) {
+            CargadorAsincrono.marcarCargando(tablaUsuarios, busqueda);
         }
-        String criterio = filtro.toLowerCase();
-        ObservableList<Usuario> filtrados = usuarios.filtered(u ->
-            u.getNombre().toLowerCase().contains(criterio)
-                || u.getApellidos().toLowerCase().contains(criterio)
-                || u.getEmail().toLowerCase().contains(criterio)
-                || u.getUsername().toLowerCase().contains(criterio));
-        tablaUsuarios.setItems(filtrados);
     }
 
     private void aplicarFiltroFincas() {
         if (campoBuscarFincas == null || tablaFincas == null) {
             return;
         }
-        String filtro = campoBuscarFincas.getText();
-        if (filtro == null || filtro.isBlank()) {
-            tablaFincas.setItems(fincas);
-            return;
+        Task<Integer> busqueda = fincas.filtrar(campoBuscarFincas.getText());
+        if (busqueda != null) {
+            CargadorAsincrono.marcarCargando(tablaFincas, busqueda);
         }
-        String criterio = filtro.toLowerCase();
-        ObservableList<Finca> filtradas = fincas.filtered(f ->
-            f.getNombre().toLowerCase().contains(criterio)
-                || (f.getPropietario() != null && f.getPropietario().toString().toLowerCase().contains(criterio))
-                || f.getEstado().name().toLowerCase().contains(criterio));
-        tablaFincas.setItems(filtradas);
     }
 
     private void abrirDetalleFinca(Finca finca, boolean volverAAdmin) {
@@ -434,7 +520,8 @@ public class ControladorAdmin {
             DialogoFincaController controller = loader.getController();
             Stage dialogStage = crearDialogoStage(finca == null ? "Nueva finca" : "Editar finca", root);
             controller.setStage(dialogStage);
-            controller.setUsuarios(usuarios);
+            // El propietario se busca en la base de datos según se escribe, sin cargar todos los usuarios
+            controller.activarBusquedaPropietarios();
             controller.setFinca(finca);
             dialogStage.showAndWait();
             return Optional.ofNullable(controller.getFincaResultado());
@@ -1,32 +1,29 @@
 package controlador;
 
+import carga.CargadorAsincrono;
+import carga.CargadorDashboard;
 import crud.CultivoDAO;
 import crud.FincaDAO;
-import crud.GestionFinancieraDAO;
-import crud.TratamientoDAO;
-import java.io.BufferedReader;
+import exportacion.ExportadorHistorial;
+import exportacion.TareaExportacion;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.math.BigDecimal;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.util.stream.Collectors;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.Month;
 import java.time.format.TextStyle;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Optional;
+import javafx.beans.binding.Bindings;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.concurrent.Worker;
+import javafx.collections.transformation.FilteredList;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -48,24 +45,23 @@ import javafx.scene.control.ToggleGroup;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.image.Image;
 import javafx.scene.layout.StackPane;
-import javafx.scene.web.WebEngine;
-import javafx.scene.web.WebView;
+import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
-import modelo.Cultivo;
+import mapa.PoolMapa;
 import modelo.Finca;
 import modelo.GestionFinanciera;
 import modelo.GestionFinanciera.Tipo;
 import modelo.Usuario;
+import util.IndiceBusqueda;
 import util.Sesion;
 
 @SuppressWarnings("unchecked")
 public class ControladorDashboard {
 
     private final FincaDAO fincaDAO = new FincaDAO();
-    private final GestionFinancieraDAO gestionDAO = new GestionFinancieraDAO();
-    private final TratamientoDAO tratamientoDAO = new TratamientoDAO();
-    private final CultivoDAO cultivoDAO = new CultivoDAO();
+    private final CargadorAsincrono cargador = new CargadorAsincrono();
+    private TareaExportacion tareaExportacion;
 
     @FXML
     private Label lblFincasActivas;
@@ -79,6 +75,8 @@ public class ControladorDashboard {
     @FXML
     private Button btnNuevaFinca;
     @FXML
+    private Button btnExportarHistorial;
+    @FXML
     private Button btnPerfilUsuario;
     @FXML
     private Button btnCerrarSesion;
@@ -115,19 +113,22 @@ public class ControladorDashboard {
 
     private final ObservableList<GestionFinanciera> gestiones = FXCollections.observableArrayList();
     private final ObservableList<Finca> fincasUsuario = FXCollections.observableArrayList();
-    private WebView webViewMapa;
-    private WebEngine mapaEngine;
+    // El índice se crea antes que la lista filtrada para enterarse antes de cada cambio
+    private final IndiceBusqueda<Finca> indiceFincas = new IndiceBusqueda<>(fincasUsuario, Finca::getNombre);
+    private final FilteredList<Finca> fincasFiltradas = new FilteredList<>(fincasUsuario);
+    private PoolMapa.Uso usoMapa;
     private ToggleGroup menuToggleGroup;
+    private BigDecimal costoTratamientos = BigDecimal.ZERO;
 
     @FXML
     private void initialize() {
+        cargador.cancelarAlSalir(lblFincasActivas);
         inicializarTablaGestiones();
-        poblarIndicadores();
         inicializarListaFincas();
-        poblarGraficaProduccion();
         inicializarMenuLateral();
         inicializarMapaDashboard();
         configurarBotonPerfil();
+        cargarDashboard();
     }
 
     private void inicializarTablaGestiones() {
@@ -141,49 +142,58 @@ public class ControladorDashboard {
             new SimpleStringProperty(String.format("%.2f €", data.getValue().getMonto())));
 
         tablaGestiones.setItems(gestiones);
-        cargarGestionesRecientes();
     }
 
-    private void cargarGestionesRecientes() {
-        try {
-            Sesion sesion = Sesion.getInstancia();
-            List<GestionFinanciera> todasGestiones;
-            
-            if (sesion.esAdministrador()) {
-                todasGestiones = gestionDAO.listarRecientes(10);
-            } else if (sesion.estaAutenticado() && sesion.getUsuarioActual().getId() != null) {
-                // Obtener fincas del usuario y luego sus gestiones usando consulta optimizada
-                List<Finca> fincasUsuario = fincaDAO.listarPorUsuario(sesion.getUsuarioActual().getId());
-                List<Integer> idsFincas = fincasUsuario.stream()
-                    .map(Finca::getId)
-                    .filter(id -> id != null)
-                    .toList();
-                
-                if (idsFincas.isEmpty()) {
-                    gestiones.clear();
-                    actualizarBalanceMensual();
-                    return;
-                }
-                
-                // Usar método optimizado que filtra en SQL en lugar de en memoria
-                todasGestiones = gestionDAO.listarRecientesPorFincas(idsFincas, 10);
-            } else {
-                todasGestiones = List.of();
-            }
-            
-            gestiones.setAll(todasGestiones);
-            actualizarBalanceMensual();
-        } catch (SQLException e) {
-            String mensaje = esErrorDeConexion(e)
-                ? "No se puede conectar a la base de datos MySQL.\n\n" +
-                  "Verifica que Docker Desktop y el contenedor MySQL estén ejecutándose.\n\n" +
-                  "Detalle técnico: " + e.getMessage()
-                : "No se pudieron obtener las gestiones financieras.\nDetalle: " + e.getMessage();
-            
-            // No mostrar alerta aquí para evitar spam, solo log
-            System.err.println("Error al cargar gestiones: " + mensaje);
-            e.printStackTrace();
+    /**
+     * Carga todos los datos del dashboard de una vez (fincas, gestiones, gráfica y
+     * coste de tratamientos) con las consultas en paralelo, y los pinta juntos.
+     */
+    private void cargarDashboard() {
+        if (!haySesionConDatos()) {
+            pintarDashboard(new CargadorDashboard.Instantanea(
+                List.of(), List.of(), List.of(), BigDecimal.ZERO));
+            return;
         }
+        Integer propietarioId = propietarioDeSesion();
+        Task<CargadorDashboard.Instantanea> tarea = cargador.cargarEnParalelo("dashboard",
+            () -> CargadorDashboard.cargar(propietarioId),
+            this::pintarDashboard,
+            error -> {
+                lblFincasActivas.setText("-");
+                lblSuperficieTotal.setText("-");
+                lblBalanceMensual.setText("-");
+                if (listaFincas != null) {
+                    fincasUsuario.clear();
+                    listaFincas.setPlaceholder(new Label("No se pudieron cargar tus fincas."));
+                }
+                if (chartProduccion != null) {
+                    chartProduccion.getData().clear();
+                }
+
+                String mensaje = esErrorDeConexion(error)
+                    ? "No se puede conectar a la base de datos MySQL.\n\n" +
+                      "Verifica que:\n" +
+                      "• Docker Desktop esté ejecutándose\n" +
+                      "• El contenedor MySQL esté corriendo\n" +
+                      "• El puerto 3309 esté disponible\n\n" +
+                      "Detalle técnico: " + error.getMessage()
+                    : "No se pudieron obtener los datos del dashboard.\nDetalle: " + error.getMessage();
+
+                mostrarAlerta(Alert.AlertType.ERROR, "Error de conexión", mensaje);
+                error.printStackTrace();
+            });
+        lblFincasActivas.setText("…");
+        lblSuperficieTotal.setText("…");
+        CargadorAsincrono.marcarCargando(listaFincas, tarea);
+        CargadorAsincrono.marcarCargando(tablaGestiones, tarea);
+    }
+
+    private void pintarDashboard(CargadorDashboard.Instantanea datos) {
+        actualizarIndicadores(datos.fincas());
+        gestiones.setAll(datos.gestiones());
+        costoTratamientos = datos.costoTratamientos();
+        actualizarBalanceMensual();
+        pintarGraficaProduccion(datos.rendimientoMensual());
     }
 
     private void actualizarBalanceMensual() {
@@ -198,44 +208,27 @@ public class ControladorDashboard {
             })
             .reduce(BigDecimal.ZERO, BigDecimal::add);
 
-        BigDecimal costoTratamientos = obtenerCostoTratamientosUsuario();
         BigDecimal balanceTotal = balanceGestiones.subtract(costoTratamientos);
         actualizarEstiloBalance(lblBalanceMensual, balanceTotal.doubleValue());
     }
 
-    private void poblarIndicadores() {
-        try {
-            List<Finca> fincas = obtenerFincasDeSesion();
-            long activas = fincas.stream().filter(f -> f.getEstado() == Finca.Estado.ACTIVA).count();
-            double superficie = fincas.stream()
-                .map(Finca::getSuperficie)
-                .filter(s -> s != null)
-                .mapToDouble(BigDecimal::doubleValue)
-                .sum();
-            lblFincasActivas.setText(String.valueOf(activas));
-            lblSuperficieTotal.setText(String.format("%.2f ha", superficie));
-            actualizarListaFincas(fincas);
-        } catch (SQLException e) {
-            lblFincasActivas.setText("-");
-            lblSuperficieTotal.setText("-");
-            lblBalanceMensual.setText("-");
-            
-            String mensaje = esErrorDeConexion(e)
-                ? "No se puede conectar a la base de datos MySQL.\n\n" +
-                  "Verifica que:\n" +
-                  "• Docker Desktop esté ejecutándose\n" +
-                  "• El contenedor MySQL esté corriendo\n" +
-                  "• El puerto 3309 esté disponible\n\n" +
-                  "Detalle técnico: " + e.getMessage()
-                : "No se pudieron obtener los datos de fincas.\nDetalle: " + e.getMessage();
-            
-            mostrarAlerta(Alert.AlertType.ERROR, "Error de conexión", mensaje);
-            e.printStackTrace();
-        }
+    private void actualizarIndicadores(List<Finca> fincas) {
+        long activas = fincas.stream().filter(f -> f.getEstado() == Finca.Estado.ACTIVA).count();
+        double superficie = fincas.stream()
+            .map(Finca::getSuperficie)
+            .filter(s -> s != null)
+            .mapToDouble(BigDecimal::doubleValue)
+            .sum();
+        lblFincasActivas.setText(String.valueOf(activas));
+        lblSuperficieTotal.setText(String.format("%.2f ha", superficie));
+        actualizarListaFincas(fincas);
     }
 
-    private boolean esErrorDeConexion(SQLException e) {
-        String mensaje = e.getMessage().toLowerCase();
+    private boolean esErrorDeConexion(Throwable error) {
+        if (!(error instanceof SQLException e)) {
+            return false;
+        }
+        String mensaje = e.getMessage() != null ? e.getMessage().toLowerCase() : "";
         return mensaje.contains("communications link failure") ||
                mensaje.contains("connection refused") ||
                mensaje.contains("could not create connection") ||
@@ -246,7 +239,7 @@ public class ControladorDashboard {
         if (listaFincas == null) {
             return;
         }
-        listaFincas.setItems(fincasUsuario);
+        listaFincas.setItems(fincasFiltradas);
         listaFincas.setPlaceholder(new Label("Aún no has registrado fincas."));
         listaFincas.setCellFactory(lv -> new ListCell<Finca>() {
             @Override
@@ -276,72 +269,91 @@ public class ControladorDashboard {
                 }
                 actualizarMapaConFinca(nueva);
             });
-        poblarListaFincasUsuario();
     }
 
-    private void poblarListaFincasUsuario() {
-        if (listaFincas == null) {
+    private void pintarGraficaProduccion(List<CultivoDAO.RendimientoMensual> totales) {
+        if (chartProduccion == null) {
             return;
         }
-        try {
-            actualizarListaFincas(obtenerFincasDeSesion());
-        } catch (SQLException e) {
-            fincasUsuario.clear();
-            listaFincas.setPlaceholder(new Label("No se pudieron cargar tus fincas."));
-            System.err.println("Error al cargar lista de fincas: " + e.getMessage());
-            e.printStackTrace();
+        XYChart.Series<String, Number> serieEstimado = new XYChart.Series<>();
+        serieEstimado.setName("Rend. estimado");
+        XYChart.Series<String, Number> serieReal = new XYChart.Series<>();
+        serieReal.setName("Rend. real");
+
+        for (CultivoDAO.RendimientoMensual total : totales) {
+            String etiqueta = Month.of(total.mes()).getDisplayName(TextStyle.SHORT, Locale.getDefault());
+            serieEstimado.getData().add(new XYChart.Data<String, Number>(etiqueta, total.estimado()));
+            serieReal.getData().add(new XYChart.Data<String, Number>(etiqueta, total.real()));
         }
+        chartProduccion.getData().setAll(serieEstimado, serieReal);
     }
 
-    private void poblarGraficaProduccion() {
-        if (chartProduccion == null) {
+    /**
+     * Exporta a CSV o NDJSON (según el tipo elegido al guardar) los cultivos,
+     * tratamientos y movimientos de todas las fincas del usuario. Mientras dura, el botón muestra
+     * las filas exportadas y sirve para cancelar.
+     */
+    @FXML
+    private void exportarHistorial(ActionEvent event) {
+        if (tareaExportacion != null && tareaExportacion.isRunning()) {
+            tareaExportacion.cancel();
             return;
         }
-        chartProduccion.getData().clear();
-        try {
-            List<Finca> fincas = obtenerFincasDeSesion();
-            Map<Integer, BigDecimal> estimadoPorMes = new HashMap<>();
-            Map<Integer, BigDecimal> realPorMes = new HashMap<>();
+        Sesion sesion = Sesion.getInstancia();
+        if (!sesion.estaAutenticado() || sesion.getUsuarioActual() == null) {
+            mostrarAlerta(Alert.AlertType.WARNING, "Sesión requerida",
+                "Debes iniciar sesión para exportar el historial.");
+            return;
+        }
+        Usuario usuario = sesion.getUsuarioActual();
 
-            for (Finca finca : fincas) {
-                if (finca.getId() == null) {
-                    continue;
-                }
-                List<Cultivo> cultivos = cultivoDAO.listarPorFinca(finca.getId());
-                for (Cultivo cultivo : cultivos) {
-                    int mes = obtenerMesReferencia(cultivo);
-                    if (mes < 1) {
-                        continue;
-                    }
-                    if (cultivo.getRendimientoEstimado() != null) {
-                        estimadoPorMes.merge(mes, cultivo.getRendimientoEstimado(), BigDecimal::add);
-                    }
-                    BigDecimal real = cultivo.getRendimientoReal() != null
-                        ? cultivo.getRendimientoReal()
-                        : cultivo.getProduccionKg();
-                    if (real != null) {
-                        realPorMes.merge(mes, real, BigDecimal::add);
-                    }
-                }
-            }
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Exportar historial");
+        for (ExportadorHistorial.Formato formato : ExportadorHistorial.Formato.values()) {
+            fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter(formato.getDescripcion(), formato.getPatron()));
+        }
+        fileChooser.setInitialFileName("Historial_" + usuario.getUsername().replaceAll("[^a-zA-Z0-9]", "_") + ".csv");
+        File archivo = fileChooser.showSaveDialog(btnExportarHistorial.getScene().getWindow());
+        if (archivo == null) {
+            return;
+        }
+        ExportadorHistorial.Formato formato = ExportadorHistorial.Formato.values()[Math.max(0,
+            fileChooser.getExtensionFilters().indexOf(fileChooser.getSelectedExtensionFilter()))];
+        String extension = formato.getPatron().substring(1);
+        if (!archivo.getName().toLowerCase().endsWith(extension)) {
+            archivo = new File(archivo.getParentFile(), archivo.getName() + extension);
+        }
+
+        TareaExportacion tarea = ExportadorHistorial.exportarUsuario(usuario.getId(), archivo, formato);
+        tareaExportacion = tarea;
+        btnExportarHistorial.textProperty().bind(Bindings.concat("Cancelar (", tarea.messageProperty(), ")"));
+        tarea.setOnSucceeded(e -> {
+            terminarExportacion(tarea);
+            TareaExportacion.ResumenExportacion resumen = tarea.getValue();
+            StringBuilder mensaje = new StringBuilder("Se han exportado ").append(resumen.filas()).append(" filas en:");
+            resumen.archivos().forEach(escrito -> mensaje.append("\n").append(escrito.getAbsolutePath()));
+            mostrarAlerta(Alert.AlertType.INFORMATION, "Historial exportado", mensaje.toString());
+        });
+        tarea.setOnCancelled(e -> {
+            terminarExportacion(tarea);
+            mostrarAlerta(Alert.AlertType.INFORMATION, "Exportación cancelada",
+                "Se ha cancelado la exportación. Los archivos escritos están incompletos.");
+        });
+        tarea.setOnFailed(e -> {
+            terminarExportacion(tarea);
+            Throwable error = tarea.getException();
+            mostrarAlerta(Alert.AlertType.ERROR, "Error al exportar",
+                "No se pudo exportar el historial.\nDetalle: " + error.getMessage());
+            error.printStackTrace();
+        });
+    }
 
-            XYChart.Series<String, Number> serieEstimado = new XYChart.Series<>();
-            serieEstimado.setName("Rend. estimado");
-            XYChart.Series<String, Number> serieReal = new XYChart.Series<>();
-            serieReal.setName("Rend. real");
-
-            for (Month mes : Month.values()) {
-                String etiqueta = mes.getDisplayName(TextStyle.SHORT, Locale.getDefault());
-                BigDecimal estimado = estimadoPorMes.getOrDefault(mes.getValue(), BigDecimal.ZERO);
-                BigDecimal real = realPorMes.getOrDefault(mes.getValue(), BigDecimal.ZERO);
-                serieEstimado.getData().add(new XYChart.Data<String, Number>(etiqueta, estimado));
-                serieReal.getData().add(new XYChart.Data<String, Number>(etiqueta, real));
-            }
-            chartProduccion.getData().addAll(serieEstimado, serieReal);
-        } catch (SQLException e) {
-            chartProduccion.getData().clear();
-            System.err.println("Error al poblar gráfica de producción: " + e.getMessage());
-            e.printStackTrace();
+    private void terminarExportacion(TareaExportacion tarea) {
+        if (tareaExportacion == tarea) {
+            tareaExportacion = null;
+            btnExportarHistorial.textProperty().unbind();
+            btnExportarHistorial.setText("Exportar historial");
         }
     }
 
@@ -357,20 +369,19 @@ public class ControladorDashboard {
         Usuario propietario = sesion.getUsuarioActual();
         Optional<Finca> resultado = mostrarDialogoFinca(propietario);
         resultado.ifPresent(finca -> {
-            try {
-                fincaDAO.guardar(finca);
-                poblarIndicadores();
-                cargarGestionesRecientes();
-                poblarListaFincasUsuario();
-                mostrarAlerta(Alert.AlertType.INFORMATION, "Finca registrada",
-                    "La finca \"" + finca.getNombre() + "\" se ha guardado correctamente.");
-            } catch (SQLException e) {
-                String mensaje = esErrorDeConexion(e)
-                    ? "No se pudo conectar a la base de datos MySQL.\nDetalle: " + e.getMessage()
-                    : "No se pudo registrar la finca.\nDetalle: " + e.getMessage();
-                mostrarAlerta(Alert.AlertType.ERROR, "Error al guardar finca", mensaje);
-                e.printStackTrace();
-            }
+            cargador.escribir(() -> fincaDAO.guardar(finca),
+                guardada -> {
+                    cargarDashboard();
+                    mostrarAlerta(Alert.AlertType.INFORMATION, "Finca registrada",
+                        "La finca \"" + guardada.getNombre() + "\" se ha guardado correctamente.");
+                },
+                error -> {
+                    String mensaje = esErrorDeConexion(error)
+                        ? "No se pudo conectar a la base de datos MySQL.\nDetalle: " + error.getMessage()
+                        : "No se pudo registrar la finca.\nDetalle: " + error.getMessage();
+                    mostrarAlerta(Alert.AlertType.ERROR, "Error al guardar finca", mensaje);
+                    error.printStackTrace();
+                });
         });
     }
 
@@ -444,14 +455,8 @@ public class ControladorDashboard {
         if (listaFincas == null) {
             return;
         }
-        String filtro = campoBuscar != null ? campoBuscar.getText() : "";
-        if (filtro == null || filtro.isBlank()) {
-            listaFincas.setItems(fincasUsuario);
-            return;
-        }
-        String criterio = filtro.toLowerCase(Locale.getDefault());
-        listaFincas.setItems(fincasUsuario.filtered(finca ->
-            finca.getNombre() != null && finca.getNombre().toLowerCase(Locale.getDefault()).contains(criterio)));
+        // El filtro consulta el índice (sin tildes ni mayúsculas) en lugar de recorrer las fincas
+        fincasFiltradas.setPredicate(indiceFincas.filtro(campoBuscar != null ? campoBuscar.getText() : ""));
     }
 
     @FXML
@@ -549,98 +554,48 @@ public class ControladorDashboard {
         if (panelMapa == null) {
             return;
         }
-        
-        // Limpiar WebViews anteriores si existen
-        panelMapa.getChildren().removeIf(node -> node instanceof WebView);
-        
-        if (webViewMapa == null) {
-            webViewMapa = new WebView();
-            mapaEngine = webViewMapa.getEngine();
-            
-            if (loadingMapa != null) {
-                loadingMapa.managedProperty().bind(loadingMapa.visibleProperty());
-                loadingMapa.setVisible(true);
-            }
-            
-            // Añadir listener solo una vez
-            mapaEngine.getLoadWorker().stateProperty().addListener((obs, oldState, newState) -> {
-                if (newState == Worker.State.SUCCEEDED) {
-                    if (loadingMapa != null) {
-                        loadingMapa.setVisible(false);
-                    }
-                    ocultarControlesMapa();
-                    refrescarMapaWeb();
-                    actualizarMapaConFinca(listaFincas != null
-                        ? listaFincas.getSelectionModel().getSelectedItem()
-                        : null);
-                } else if (newState == Worker.State.RUNNING && loadingMapa != null) {
-                    loadingMapa.setVisible(true);
-                }
-            });
+        if (loadingMapa != null) {
+            loadingMapa.managedProperty().bind(loadingMapa.visibleProperty());
         }
-        
-        // Cargar el HTML del mapa solo si no está cargado
-        if (mapaEngine != null && mapaEngine.getLoadWorker().getState() != Worker.State.SUCCEEDED 
-            && mapaEngine.getLoadWorker().getState() != Worker.State.RUNNING) {
-            try {
-                // Usar el mapa simple mejorado
-                String html = leerRecursoComoString("/mapa/mapa_simple.html");
-                if (html != null && !html.isEmpty()) {
-                    mapaEngine.loadContent(html);
-                } else {
-                    URL mapaUrl = getClass().getResource("/mapa/mapa_simple.html");
-                    if (mapaUrl != null) {
-                        mapaEngine.load(mapaUrl.toExternalForm());
-                    }
-                }
-            } catch (Exception e) {
-                System.err.println("Error al cargar mapa: " + e.getMessage());
-                URL mapaUrl = getClass().getResource("/mapa/mapa_simple.html");
-                if (mapaUrl != null) {
-                    mapaEngine.load(mapaUrl.toExternalForm());
-                }
+        // El WebView del mapa es compartido (PoolMapa): aquí solo se coloca en el
+        // panel, sin controles de dibujo, y se pinta la finca seleccionada
+        usoMapa = PoolMapa.mostrarEn(panelMapa, null, false, uso -> {
+            if (loadingMapa != null) {
+                loadingMapa.setVisible(false);
             }
-        }
-        
-        // Añadir el WebView al panel solo si no está ya añadido
-        if (!panelMapa.getChildren().contains(webViewMapa)) {
-            panelMapa.getChildren().add(0, webViewMapa);
+            actualizarMapaConFinca(listaFincas != null
+                ? listaFincas.getSelectionModel().getSelectedItem()
+                : null);
+        });
+        if (loadingMapa != null) {
+            loadingMapa.setVisible(!usoMapa.estaListo());
         }
     }
 
     private void actualizarMapaConFinca(Finca finca) {
-        if (mapaEngine == null) {
+        if (usoMapa == null) {
             return;
         }
         if (finca == null || finca.getCoordenadasPoligono() == null
             || finca.getCoordenadasPoligono().isBlank()) {
-            mapaEngine.executeScript("window.limpiar ? window.limpiar() : null;");
+            usoMapa.ejecutar("window.limpiar ? window.limpiar() : null;");
             refrescarMapaWeb();
             return;
         }
         String coords = finca.getCoordenadasPoligono()
             .replace("\\", "\\\\")
             .replace("'", "\\'");
-        mapaEngine.executeScript(
+        usoMapa.ejecutar(
             "window.cargarCoordenadasDesdeJava && window.cargarCoordenadasDesdeJava('"
                 + coords + "');");
-        ocultarControlesMapa();
         refrescarMapaWeb();
     }
 
-    private void ocultarControlesMapa() {
-        if (mapaEngine == null) {
-            return;
-        }
-        mapaEngine.executeScript(
-            "var c = document.querySelector('.controls'); if (c) { c.style.display = 'none'; }");
-    }
-
     private void refrescarMapaWeb() {
-        if (mapaEngine == null) {
+        if (usoMapa == null) {
             return;
         }
-        mapaEngine.executeScript(
+        usoMapa.ejecutar(
             "window.refrescarMapaDesdeJava && window.refrescarMapaDesdeJava();");
     }
 
@@ -657,21 +612,19 @@ public class ControladorDashboard {
         abrirDetalleFinca(seleccionada, tabDestino);
     }
 
-    private int obtenerMesReferencia(Cultivo cultivo) {
-        LocalDate referencia = cultivo.getFechaCosecha() != null
-            ? cultivo.getFechaCosecha()
-            : cultivo.getFechaSiembra();
-        return referencia != null ? referencia.getMonthValue() : -1;
+    private boolean haySesionConDatos() {
+        Sesion sesion = Sesion.getInstancia();
+        return sesion.esAdministrador()
+            || (sesion.estaAutenticado() && sesion.getUsuarioActual().getId() != null);
     }
 
-    private List<Finca> obtenerFincasDeSesion() throws SQLException {
+    /**
+     * Propietario cuyas fincas muestra el dashboard; null si es administrador (todas).
+     * Se lee en el hilo de JavaFX antes de lanzar cada carga.
+     */
+    private Integer propietarioDeSesion() {
         Sesion sesion = Sesion.getInstancia();
-        if (sesion.esAdministrador()) {
-            return fincaDAO.listarTodas();
-        } else if (sesion.estaAutenticado() && sesion.getUsuarioActual().getId() != null) {
-            return fincaDAO.listarPorUsuario(sesion.getUsuarioActual().getId());
-        }
-        return List.of();
+        return sesion.esAdministrador() ? null : sesion.getUsuarioActual().getId();
     }
 
     private void actualizarListaFincas(List<Finca> fincas) {
@@ -685,11 +638,6 @@ public class ControladorDashboard {
             actualizarMapaConFinca(null);
             return;
         }
-        if (campoBuscar == null || campoBuscar.getText() == null || campoBuscar.getText().isBlank()) {
-            listaFincas.setItems(fincasUsuario);
-        } else {
-            filtrarFincas(null);
-        }
         
         // Intentar restaurar la finca seleccionada de la sesión
         Finca fincaSeleccionada = Sesion.getInstancia().getFincaSeleccionada();
@@ -708,23 +656,6 @@ public class ControladorDashboard {
         actualizarMapaConFinca(listaFincas.getSelectionModel().getSelectedItem());
     }
 
-    private BigDecimal obtenerCostoTratamientosUsuario() {
-        try {
-            List<Finca> fincas = obtenerFincasDeSesion();
-            BigDecimal total = BigDecimal.ZERO;
-            for (Finca finca : fincas) {
-                if (finca.getId() != null) {
-                    total = total.add(tratamientoDAO.obtenerCostoTotalPorFinca(finca.getId()));
-                }
-            }
-            return total;
-        } catch (SQLException e) {
-            System.err.println("Error al obtener costo de tratamientos: " + e.getMessage());
-            e.printStackTrace();
-            return BigDecimal.ZERO;
-        }
-    }
-
     private Optional<Finca> mostrarDialogoFinca(Usuario propietario) {
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/main/vista/FincaForm.fxml"));
@@ -760,17 +691,4 @@ public class ControladorDashboard {
         }
         return stage;
     }
-    
-    private String leerRecursoComoString(String ruta) throws Exception {
-        try (InputStream is = getClass().getResourceAsStream(ruta)) {
-            if (is == null) {
-                throw new Exception("No se encontró el recurso: " + ruta);
-            }
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(is, StandardCharsets.UTF_8))) {
-                return reader.lines().collect(Collectors.joining("\n"));
-            }
-        }
-    }
 }
-
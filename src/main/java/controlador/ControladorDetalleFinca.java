@@ -1,31 +1,32 @@
 package controlador;
 
-import crud.ConexionBD;
+import carga.CargadorAsincrono;
 import crud.CultivoDAO;
 import crud.FincaDAO;
 import crud.GestionFinancieraDAO;
 import crud.TratamientoDAO;
-import java.io.BufferedReader;
+import crud.UnidadDeTrabajo;
+import informes.ServicioInformes;
+import exportacion.ExportadorHistorial;
+import exportacion.TareaExportacion;
+import importacion.ImportadorCsv;
+import importacion.TareaImportacion;
+import informes.TareaInforme;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.sql.Connection;
-import java.util.stream.Collectors;
 import java.math.BigDecimal;
-import java.net.URL;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BiFunction;
+import javafx.beans.binding.Bindings;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
-import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.concurrent.Worker;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -46,23 +47,20 @@ import javafx.scene.layout.StackPane;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.stage.Modality;
+import mapa.PoolMapa;
 import modelo.Cultivo;
 import modelo.Finca;
 import modelo.GestionFinanciera;
 import modelo.Tratamiento;
 import modelo.Usuario;
+import util.IndiceBusqueda;
 import util.Sesion;
 import javafx.scene.image.Image;
 import javafx.scene.layout.StackPane;
-import javafx.scene.web.WebEngine;
 import javafx.scene.web.WebView;
-import netscape.javascript.JSObject;
 import net.sf.jasperreports.engine.JRException;
-import net.sf.jasperreports.engine.JasperCompileManager;
 import net.sf.jasperreports.engine.JasperExportManager;
-import net.sf.jasperreports.engine.JasperFillManager;
 import net.sf.jasperreports.engine.JasperPrint;
-import net.sf.jasperreports.engine.JasperReport;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -72,8 +70,13 @@ public class ControladorDetalleFinca {
     private final TratamientoDAO tratamientoDAO = new TratamientoDAO();
     private final GestionFinancieraDAO gestionDAO = new GestionFinancieraDAO();
     private final FincaDAO fincaDAO = new FincaDAO();
+    private final CargadorAsincrono cargador = new CargadorAsincrono();
     private Finca fincaActual;
     private JasperPrint jasperPrintActual = null;
+    private TareaInforme tareaInforme;
+    private TareaImportacion<?> tareaImportacion;
+    private TareaExportacion tareaExportacion;
+    private Button botonImportacion;
 
     @FXML
     private TabPane tabPaneFinca;
@@ -96,6 +99,8 @@ public class ControladorDetalleFinca {
     @FXML
     private Button btnGenerarInforme;
     @FXML
+    private Button btnExportarHistorial;
+    @FXML
     private Button btnDescargarPDF;
 
     // Cultivos
@@ -112,6 +117,8 @@ public class ControladorDetalleFinca {
     @FXML
     private TextField campoBuscarCultivos;
     @FXML
+    private Button btnImportarCultivos;
+    @FXML
     private Label lblCultivoNombre;
     @FXML
     private Label lblCultivoVariedad;
@@ -139,6 +146,8 @@ public class ControladorDetalleFinca {
     private TableColumn<Tratamiento, String> colTratamientoCosto;
     @FXML
     private TextField campoBuscarTratamientos;
+    @FXML
+    private Button btnImportarTratamientos;
 
     // Finanzas
     @FXML
@@ -154,6 +163,8 @@ public class ControladorDetalleFinca {
     @FXML
     private TextField campoBuscarFinanzas;
     @FXML
+    private Button btnImportarMovimientos;
+    @FXML
     private Label lblFinanzaConcepto;
     @FXML
     private Label lblFinanzaTipo;
@@ -172,18 +183,25 @@ public class ControladorDetalleFinca {
     @FXML
     private ProgressIndicator loadingMapaFinca;
 
-    private WebView webView;
-    private WebEngine webEngine;
+    private PoolMapa.Uso usoMapa;
     private boolean volverAAdmin = false;
     private boolean modoEdicionActivo = false; // Controla si el modo edición está activo
 
     private final ObservableList<Cultivo> cultivos = FXCollections.observableArrayList();
     private final ObservableList<Tratamiento> tratamientos = FXCollections.observableArrayList();
     private final ObservableList<GestionFinanciera> finanzas = FXCollections.observableArrayList();
+    // Índices para los buscadores de cada pestaña: se actualizan solos al recargar las listas
+    private final IndiceBusqueda<Cultivo> indiceCultivos = new IndiceBusqueda<>(cultivos,
+        Cultivo::getNombre, Cultivo::getVariedad, Cultivo::getEstado);
+    private final IndiceBusqueda<Tratamiento> indiceTratamientos = new IndiceBusqueda<>(tratamientos,
+        Tratamiento::getProducto, Tratamiento::getTipo, Tratamiento::getDosis, Tratamiento::getObservaciones);
+    private final IndiceBusqueda<GestionFinanciera> indiceFinanzas = new IndiceBusqueda<>(finanzas,
+        GestionFinanciera::getConcepto, GestionFinanciera::getTipo, GestionFinanciera::getObservaciones);
     private BigDecimal costoTratamientos = BigDecimal.ZERO;
 
     @FXML
     private void initialize() {
+        cargador.cancelarAlSalir(lblNombreFinca);
         inicializarTablaCultivos();
         inicializarTablaTratamientos();
         inicializarTablaFinanzas();
@@ -202,82 +220,21 @@ public class ControladorDetalleFinca {
         if (panelMapaFinca == null) {
             return;
         }
-        
-        // Limpiar WebViews anteriores si existen
-        panelMapaFinca.getChildren().removeIf(node -> node instanceof WebView);
-        
-        // Si ya existe un WebView, reutilizarlo
-        if (webView == null) {
-            webView = new WebView();
-            webEngine = webView.getEngine();
-            webView.setPrefWidth(800);
-            webView.setPrefHeight(600);
-            
-            // Ocultar loading cuando cargue y configurar bridge Java-JS
-            webEngine.getLoadWorker().stateProperty().addListener((observable, oldValue, newValue) -> {
-                if (newValue == Worker.State.SUCCEEDED) {
-                    if (loadingMapaFinca != null) {
-                        loadingMapaFinca.setVisible(false);
-                    }
-                    // Configurar el bridge Java-JS
-                    try {
-                        JSObject window = (JSObject) webEngine.executeScript("window");
-                        window.setMember("javaController", this);
-                        // Cargar coordenadas después de un pequeño delay para asegurar que el mapa esté listo
-                        Platform.runLater(() -> {
-                            try {
-                                Thread.sleep(300);
-                                Platform.runLater(() -> cargarCoordenadasEnMapa());
-                            } catch (InterruptedException e) {
-                                cargarCoordenadasEnMapa();
-                            }
-                        });
-                    } catch (Exception e) {
-                        System.err.println("Error al configurar bridge Java-JS: " + e.getMessage());
-                    }
-                }
-            });
-        }
-        
-        // Cargar el HTML del mapa solo si no está cargado
-        if (webEngine.getLoadWorker().getState() != Worker.State.SUCCEEDED 
-            && webEngine.getLoadWorker().getState() != Worker.State.RUNNING) {
-            try {
-                // Usar el mapa simple mejorado
-                String html = leerRecursoComoString("/mapa/mapa_simple.html");
-                if (html != null && !html.isEmpty()) {
-                    webEngine.loadContent(html);
-                } else {
-                    URL mapaUrl = getClass().getResource("/mapa/mapa_simple.html");
-                    if (mapaUrl != null) {
-                        webEngine.load(mapaUrl.toExternalForm());
-                    } else {
-                        mostrarAlerta(Alert.AlertType.WARNING, "Error de mapa",
-                            "No se pudo cargar el archivo del mapa.");
-                        return;
-                    }
-                }
-            } catch (Exception e) {
-                System.err.println("Error al cargar mapa: " + e.getMessage());
-                URL mapaUrl = getClass().getResource("/mapa/mapa_simple.html");
-                if (mapaUrl != null) {
-                    webEngine.load(mapaUrl.toExternalForm());
-                } else {
-                    mostrarAlerta(Alert.AlertType.WARNING, "Error de mapa",
-                        "No se pudo cargar el archivo del mapa.");
-                    return;
-                }
+        // El WebView del mapa es compartido (PoolMapa). Con este controlador como
+        // window.javaController el botón "Guardar" del mapa llama a guardarCoordenadasDesdeMapa
+        usoMapa = PoolMapa.mostrarEn(panelMapaFinca, this, true, uso -> {
+            if (loadingMapaFinca != null) {
+                loadingMapaFinca.setVisible(false);
             }
-        }
-        
-        // Añadir el WebView al panel solo si no está ya añadido
-        if (!panelMapaFinca.getChildren().contains(webView)) {
-            panelMapaFinca.getChildren().add(0, webView);
+            cargarCoordenadasEnMapa();
+        });
+        if (loadingMapaFinca != null) {
+            loadingMapaFinca.setVisible(!usoMapa.estaListo());
         }
     }
 
     private void cargarCoordenadasEnMapa() {
-        if (fincaActual == null || fincaActual.getCoordenadasPoligono() == null 
+        if (usoMapa == null || fincaActual == null || fincaActual.getCoordenadasPoligono() == null 
             || fincaActual.getCoordenadasPoligono().trim().isEmpty()) {
             return;
         }
@@ -289,14 +246,10 @@ public class ControladorDetalleFinca {
         }
         
         String coordenadas = fincaActual.getCoordenadasPoligono();
-        webEngine.executeScript("window.cargarCoordenadasDesdeJava('" + coordenadas + "');");
+        usoMapa.ejecutar("window.cargarCoordenadasDesdeJava('" + coordenadas + "');");
         
         // Desactivar modo edición en el mapa
-        try {
-            webEngine.executeScript("window.activarModoEdicion && window.activarModoEdicion(false);");
-        } catch (Exception e) {
-            // Ignorar si el mapa aún no está listo
-        }
+        usoMapa.ejecutar("window.activarModoEdicion && window.activarModoEdicion(false);");
     }
 
     @FXML
@@ -305,7 +258,7 @@ public class ControladorDetalleFinca {
             mostrarAlerta(Alert.AlertType.WARNING, "Sin finca", "No hay una finca seleccionada.");
             return;
         }
-        if (webEngine == null) {
+        if (usoMapa == null || !usoMapa.estaListo()) {
             mostrarAlerta(Alert.AlertType.INFORMATION, "Mapa no disponible",
                 "El mapa aún no ha terminado de cargar. Intenta nuevamente en unos segundos.");
             return;
@@ -313,7 +266,7 @@ public class ControladorDetalleFinca {
         try {
             // Alternar el modo edición
             modoEdicionActivo = !modoEdicionActivo;
-            webEngine.executeScript("window.activarModoEdicion && window.activarModoEdicion(" + modoEdicionActivo + ");");
+            usoMapa.ejecutar("window.activarModoEdicion && window.activarModoEdicion(" + modoEdicionActivo + ");");
             
             // Actualizar el texto del botón
             if (modoEdicionActivo) {
@@ -338,16 +291,19 @@ public class ControladorDetalleFinca {
             return;
         }
         
-        try {
-            fincaActual.setCoordenadasPoligono(coordenadasJson);
-            fincaDAO.actualizar(fincaActual);
-            mostrarAlerta(Alert.AlertType.INFORMATION, "Coordenadas guardadas",
-                "El polígono de la finca se ha guardado correctamente.");
-        } catch (SQLException e) {
-            mostrarAlerta(Alert.AlertType.ERROR, "Error al guardar",
-                "No se pudieron guardar las coordenadas.\nDetalle: " + e.getMessage());
-            e.printStackTrace();
-        }
+        Finca finca = fincaActual;
+        finca.setCoordenadasPoligono(coordenadasJson);
+        cargador.escribir(() -> {
+                fincaDAO.actualizar(finca);
+                return finca;
+            },
+            guardada -> mostrarAlerta(Alert.AlertType.INFORMATION, "Coordenadas guardadas",
+                "El polígono de la finca se ha guardado correctamente."),
+            error -> {
+                mostrarAlerta(Alert.AlertType.ERROR, "Error al guardar",
+                    "No se pudieron guardar las coordenadas.\nDetalle: " + error.getMessage());
+                error.printStackTrace();
+            });
     }
 
     public void setFinca(Finca finca) {
@@ -365,8 +321,8 @@ public class ControladorDetalleFinca {
         poblarEncabezado();
         cargarCultivos();
         cargarFinanzas();
-        // Recargar coordenadas en el mapa si el WebView ya está cargado
-        if (webEngine != null && webEngine.getLoadWorker().getState() == Worker.State.SUCCEEDED) {
+        // Recargar coordenadas en el mapa si ya está cargado
+        if (usoMapa != null && usoMapa.estaListo()) {
             cargarCoordenadasEnMapa();
         }
         aplicarTabDestino();
@@ -401,7 +357,9 @@ public class ControladorDetalleFinca {
         colCultivoProduccion.setCellValueFactory(data -> new SimpleStringProperty(
             data.getValue().getProduccionKg() == null ? "-" : data.getValue().getProduccionKg() + " kg"));
 
-        tablaCultivos.setItems(cultivos);
+        tablaCultivos.setItems(campoBuscarCultivos != null
+            ? indiceCultivos.filtrada(campoBuscarCultivos.textProperty())
+            : cultivos);
         tablaCultivos.getSelectionModel().selectedItemProperty()
             .addListener((obs, oldSel, newSel) -> {
                 mostrarDetalleCultivo(newSel);
@@ -410,24 +368,40 @@ public class ControladorDetalleFinca {
     }
 
     private void cargarCultivos() {
+        cargarCultivos(null);
+    }
+
+    /**
+     * Recarga los cultivos en segundo plano.
+     *
+     * @param cultivoASeleccionar Cultivo a seleccionar al terminar; si es null se selecciona el primero
+     */
+    private void cargarCultivos(Integer cultivoASeleccionar) {
         cultivos.clear();
         if (fincaActual == null) {
             return;
         }
-        try {
-            cultivos.setAll(cultivoDAO.listarPorFinca(fincaActual.getId()));
-            if (!cultivos.isEmpty()) {
-                tablaCultivos.getSelectionModel().selectFirst();
-                lblUltimoCultivo.setText(cultivos.get(0).getNombre());
-            } else {
-                lblUltimoCultivo.setText("-");
-            }
-        } catch (SQLException e) {
-            mostrarAlerta(Alert.AlertType.ERROR, "Error al cargar cultivos",
-                "No se pudieron obtener los cultivos de la finca.\nDetalle: " + e.getMessage());
-            e.printStackTrace();
-        }
+        int fincaId = fincaActual.getId();
+        Task<List<Cultivo>> tarea = cargador.cargar("cultivos",
+            () -> cultivoDAO.listarPorFinca(fincaId),
+            lista -> {
+                cultivos.setAll(lista);
+                if (!cultivos.isEmpty()) {
+                    tablaCultivos.getSelectionModel().selectFirst();
+                    lblUltimoCultivo.setText(cultivos.get(0).getNombre());
+                } else {
+                    lblUltimoCultivo.setText("-");
+                }
+                seleccionarCultivoEnTabla(cultivoASeleccionar);
+            },
+            error -> {
+                mostrarAlerta(Alert.AlertType.ERROR, "Error al cargar cultivos",
+                    "No se pudieron obtener los cultivos de la finca.\nDetalle: " + error.getMessage());
+                error.printStackTrace();
+            });
+        CargadorAsincrono.marcarCargando(tablaCultivos, tarea);
     }
+
     private void mostrarDetalleCultivo(Cultivo cultivo) {
         if (cultivo == null) {
             lblCultivoNombre.setText("-");
@@ -455,23 +429,39 @@ public class ControladorDetalleFinca {
         colTratamientoCosto.setCellValueFactory(data -> new SimpleStringProperty(
             data.getValue().getPrecioTratamiento() == null ? "-" : data.getValue().getPrecioTratamiento() + " €"));
 
-        tablaTratamientos.setItems(tratamientos);
+        tablaTratamientos.setItems(campoBuscarTratamientos != null
+            ? indiceTratamientos.filtrada(campoBuscarTratamientos.textProperty())
+            : tratamientos);
     }
 
     private void cargarTratamientos(Cultivo cultivo) {
+        cargarTratamientos(cultivo, null);
+    }
+
+    /**
+     * Recarga los tratamientos del cultivo en segundo plano. Si el usuario cambia de
+     * cultivo antes de que termine, la carga anterior se cancela (misma clave).
+     */
+    private void cargarTratamientos(Cultivo cultivo, Integer tratamientoASeleccionar) {
         tratamientos.clear();
         if (cultivo == null) {
+            cargador.cancelar("tratamientos");
             return;
         }
-        try {
-            List<Tratamiento> lista = tratamientoDAO.listarPorCultivo(cultivo.getId());
-            lista.forEach(t -> t.setCultivo(cultivo));
-            tratamientos.setAll(lista);
-        } catch (SQLException e) {
-            mostrarAlerta(Alert.AlertType.ERROR, "Error al cargar tratamientos",
-                "No se pudieron obtener los tratamientos del cultivo.\nDetalle: " + e.getMessage());
-            e.printStackTrace();
-        }
+        int cultivoId = cultivo.getId();
+        Task<List<Tratamiento>> tarea = cargador.cargar("tratamientos",
+            () -> tratamientoDAO.listarPorCultivo(cultivoId),
+            lista -> {
+                lista.forEach(t -> t.setCultivo(cultivo));
+                tratamientos.setAll(lista);
+                seleccionarTratamientoEnTabla(tratamientoASeleccionar);
+            },
+            error -> {
+                mostrarAlerta(Alert.AlertType.ERROR, "Error al cargar tratamientos",
+                    "No se pudieron obtener los tratamientos del cultivo.\nDetalle: " + error.getMessage());
+                error.printStackTrace();
+            });
+        CargadorAsincrono.marcarCargando(tablaTratamientos, tarea);
     }
 
     private void inicializarTablaFinanzas() {
@@ -481,25 +471,38 @@ public class ControladorDetalleFinca {
         colFinanzaMonto.setCellValueFactory(data ->
             new SimpleStringProperty(data.getValue().getMonto() == null ? "-" : data.getValue().getMonto() + " €"));
 
-        tablaFinanzas.setItems(finanzas);
+        tablaFinanzas.setItems(campoBuscarFinanzas != null
+            ? indiceFinanzas.filtrada(campoBuscarFinanzas.textProperty())
+            : finanzas);
         tablaFinanzas.getSelectionModel().selectedItemProperty()
             .addListener((obs, oldSel, newSel) -> mostrarDetalleFinanza(newSel));
     }
 
     private void cargarFinanzas() {
+        cargarFinanzas(null);
+    }
+
+    private void cargarFinanzas(Integer gestionASeleccionar) {
         finanzas.clear();
         if (fincaActual == null) {
             return;
         }
-        try {
-            finanzas.setAll(gestionDAO.listarPorFinca(fincaActual.getId()));
-            costoTratamientos = tratamientoDAO.obtenerCostoTotalPorFinca(fincaActual.getId());
-            actualizarBalance();
-        } catch (SQLException e) {
-            mostrarAlerta(Alert.AlertType.ERROR, "Error al cargar finanzas",
-                "No se pudieron obtener las gestiones financieras.\nDetalle: " + e.getMessage());
-            e.printStackTrace();
-        }
+        int fincaId = fincaActual.getId();
+        Task<FinanzasFinca> tarea = cargador.cargar("finanzas",
+            () -> new FinanzasFinca(gestionDAO.listarPorFinca(fincaId),
+                tratamientoDAO.obtenerCostoPorFincas(List.of(fincaId)).getOrDefault(fincaId, BigDecimal.ZERO)),
+            datos -> {
+                finanzas.setAll(datos.gestiones());
+                costoTratamientos = datos.costoTratamientos();
+                actualizarBalance();
+                seleccionarGestionEnTabla(gestionASeleccionar);
+            },
+            error -> {
+                mostrarAlerta(Alert.AlertType.ERROR, "Error al cargar finanzas",
+                    "No se pudieron obtener las gestiones financieras.\nDetalle: " + error.getMessage());
+                error.printStackTrace();
+            });
+        CargadorAsincrono.marcarCargando(tablaFinanzas, tarea);
     }
 
     private void actualizarBalance() {
@@ -537,65 +540,70 @@ public class ControladorDetalleFinca {
 
     @FXML
     private void generarInforme(ActionEvent event) {
+        if (tareaInforme != null && tareaInforme.isRunning()) {
+            // Mientras se genera un informe el botón hace de "Cancelar"
+            tareaInforme.cancel();
+            return;
+        }
         if (fincaActual == null || fincaActual.getId() == null) {
             mostrarAlerta(Alert.AlertType.WARNING, "Sin finca seleccionada",
                 "No hay una finca seleccionada para generar el informe.");
             return;
         }
 
-        try {
-            Connection conexion = ConexionBD.obtenerConexion();
-            Map<String, Object> parametros = new HashMap<>();
-            parametros.put("ParametroFincaId", fincaActual.getId());
-            String rutaInforme = "/reports/InformeFiltra.jrxml";
-            
-            lanzarInforme(rutaInforme, parametros, conexion);
-        } catch (SQLException e) {
-            mostrarAlerta(Alert.AlertType.ERROR, "Error de conexión",
-                "No se pudo conectar a la base de datos.\nDetalle: " + e.getMessage());
-            e.printStackTrace();
-        }
+        Map<String, Object> parametros = new HashMap<>();
+        parametros.put("ParametroFincaId", fincaActual.getId());
+        String rutaInforme = "/reports/InformeFiltra.jrxml";
+
+        lanzarInforme(rutaInforme, parametros);
     }
 
-    private void lanzarInforme(String rutaInf, Map<String, Object> param, Connection conexion) {
-        try {
-            // Intentar diferentes rutas posibles
-            InputStream reportStream = getClass().getResourceAsStream(rutaInf);
-            if (reportStream == null) {
-                // Intentar sin el slash inicial
-                String rutaAlternativa = rutaInf.startsWith("/") ? rutaInf.substring(1) : "/" + rutaInf;
-                reportStream = getClass().getResourceAsStream(rutaAlternativa);
+    private void lanzarInforme(String rutaInf, Map<String, Object> param) {
+        Finca finca = fincaActual;
+        // Se llena en segundo plano con una conexión del pool que se devuelve al terminar
+        TareaInforme tarea = ServicioInformes.generar(rutaInf, param, true);
+        tareaInforme = tarea;
+        btnGenerarInforme.setText("Cancelar");
+        tarea.setAlGenerarPagina(paginas -> {
+            if (tareaInforme == tarea) {
+                btnGenerarInforme.setText("Cancelar (" + paginas + " pág.)");
             }
-            if (reportStream == null) {
-                // Intentar desde el classloader
-                reportStream = getClass().getClassLoader().getResourceAsStream(rutaInf.startsWith("/") ? rutaInf.substring(1) : rutaInf);
-            }
-            if (reportStream == null) {
-                mostrarAlerta(Alert.AlertType.ERROR, "Error",
-                    "No se pudo cargar el informe: " + rutaInf + "\nVerifica que el archivo existe en src/main/resources/reports/");
-                return;
-            }
-
-            JasperReport report = JasperCompileManager.compileReport(reportStream);
-            JasperPrint jasperPrint = JasperFillManager.fillReport(report, param, conexion);
-            jasperPrintActual = jasperPrint; // Guardar para exportar a PDF
+        });
 
-            if (!jasperPrint.getPages().isEmpty()) {
-                String outputHtmlFile = "informeFinca_" + fincaActual.getId() + ".html";
-                JasperExportManager.exportReportToHtmlFile(jasperPrint, outputHtmlFile);
-                mostrarInformeEnNuevaVentana(outputHtmlFile, "Informe de Finca - " + fincaActual.getNombre());
+        tarea.setOnSucceeded(event -> {
+            terminarInforme(tarea);
+            jasperPrintActual = tarea.getValue().jasperPrint(); // Guardar para exportar a PDF
+            String html = tarea.getValue().html();
+            if (html != null) {
+                mostrarInformeEnNuevaVentana(html, "Informe de Finca - " + finca.getNombre());
             } else {
                 mostrarAlerta(Alert.AlertType.INFORMATION, "Información",
                     "La finca seleccionada no generó páginas en el informe.");
             }
-        } catch (JRException e) {
-            mostrarAlerta(Alert.AlertType.ERROR, "Error al generar el informe",
-                "No se pudo generar el informe.\nDetalle: " + e.getMessage());
+        });
+        tarea.setOnCancelled(event -> terminarInforme(tarea));
+        tarea.setOnFailed(event -> {
+            terminarInforme(tarea);
+            Throwable e = tarea.getException();
+            if (e instanceof SQLException) {
+                mostrarAlerta(Alert.AlertType.ERROR, "Error de conexión",
+                    "No se pudo conectar a la base de datos.\nDetalle: " + e.getMessage());
+            } else {
+                mostrarAlerta(Alert.AlertType.ERROR, "Error al generar el informe",
+                    "No se pudo generar el informe.\nDetalle: " + e.getMessage());
+            }
             e.printStackTrace();
+        });
+    }
+
+    private void terminarInforme(TareaInforme tarea) {
+        if (tareaInforme == tarea) {
+            tareaInforme = null;
+            btnGenerarInforme.setText("Generar informe");
         }
     }
 
-    private void mostrarInformeEnNuevaVentana(String archivoHTML, String titulo) {
+    private void mostrarInformeEnNuevaVentana(String html, String titulo) {
         Stage stage = new Stage();
         stage.setTitle(titulo);
         // Configurar icono
@@ -605,7 +613,7 @@ public class ControladorDetalleFinca {
             // Si no se puede cargar el icono, continuar sin él
         }
         WebView webView = new WebView();
-        webView.getEngine().load(new File(archivoHTML).toURI().toString());
+        webView.getEngine().loadContent(html);
         StackPane stackPane = new StackPane(webView);
         Scene scene = new Scene(stackPane, 800, 600);
         stage.setScene(scene);
@@ -652,6 +660,167 @@ public class ControladorDetalleFinca {
         }
     }
 
+    /**
+     * Exporta a CSV o NDJSON (según el tipo elegido al guardar) los cultivos,
+     * tratamientos y movimientos de la finca. Mientras dura, el botón muestra
+     * las filas exportadas y sirve para cancelar.
+     */
+    @FXML
+    private void exportarHistorial(ActionEvent event) {
+        if (tareaExportacion != null && tareaExportacion.isRunning()) {
+            tareaExportacion.cancel();
+            return;
+        }
+        if (fincaActual == null || fincaActual.getId() == null) {
+            mostrarAlerta(Alert.AlertType.WARNING, "Sin finca seleccionada",
+                "No hay una finca seleccionada para exportar.");
+            return;
+        }
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Exportar historial");
+        for (ExportadorHistorial.Formato formato : ExportadorHistorial.Formato.values()) {
+            fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter(formato.getDescripcion(), formato.getPatron()));
+        }
+        fileChooser.setInitialFileName("Historial_" + fincaActual.getNombre().replaceAll("[^a-zA-Z0-9]", "_") + ".csv");
+        File archivo = fileChooser.showSaveDialog(btnExportarHistorial.getScene().getWindow());
+        if (archivo == null) {
+            return;
+        }
+        ExportadorHistorial.Formato formato = ExportadorHistorial.Formato.values()[Math.max(0,
+            fileChooser.getExtensionFilters().indexOf(fileChooser.getSelectedExtensionFilter()))];
+        String extension = formato.getPatron().substring(1);
+        if (!archivo.getName().toLowerCase().endsWith(extension)) {
+            archivo = new File(archivo.getParentFile(), archivo.getName() + extension);
+        }
+
+        TareaExportacion tarea = ExportadorHistorial.exportarFinca(fincaActual.getId(), archivo, formato);
+        tareaExportacion = tarea;
+        btnExportarHistorial.textProperty().bind(Bindings.concat("Cancelar (", tarea.messageProperty(), ")"));
+        tarea.setOnSucceeded(e -> {
+            terminarExportacion(tarea);
+            TareaExportacion.ResumenExportacion resumen = tarea.getValue();
+            StringBuilder mensaje = new StringBuilder("Se han exportado ").append(resumen.filas()).append(" filas en:");
+            resumen.archivos().forEach(escrito -> mensaje.append("\n").append(escrito.getAbsolutePath()));
+            mostrarAlerta(Alert.AlertType.INFORMATION, "Historial exportado", mensaje.toString());
+        });
+        tarea.setOnCancelled(e -> {
+            terminarExportacion(tarea);
+            mostrarAlerta(Alert.AlertType.INFORMATION, "Exportación cancelada",
+                "Se ha cancelado la exportación. Los archivos escritos están incompletos.");
+        });
+        tarea.setOnFailed(e -> {
+            terminarExportacion(tarea);
+            Throwable error = tarea.getException();
+            mostrarAlerta(Alert.AlertType.ERROR, "Error al exportar",
+                "No se pudo exportar el historial.\nDetalle: " + error.getMessage());
+            error.printStackTrace();
+        });
+    }
+
+    private void terminarExportacion(TareaExportacion tarea) {
+        if (tareaExportacion == tarea) {
+            tareaExportacion = null;
+            btnExportarHistorial.textProperty().unbind();
+            btnExportarHistorial.setText("Exportar historial");
+        }
+    }
+
+    @FXML
+    private void importarCultivos(ActionEvent event) {
+        importarCsv(btnImportarCultivos, "cultivos", ImportadorCsv::importarCultivos, this::cargarCultivos);
+    }
+
+    @FXML
+    private void importarTratamientos(ActionEvent event) {
+        importarCsv(btnImportarTratamientos, "tratamientos", ImportadorCsv::importarTratamientos, () -> {
+            cargarTratamientos(tablaCultivos.getSelectionModel().getSelectedItem());
+            cargarFinanzas();  // El balance incluye el coste de los tratamientos
+        });
+    }
+
+    @FXML
+    private void importarMovimientos(ActionEvent event) {
+        importarCsv(btnImportarMovimientos, "movimientos", ImportadorCsv::importarMovimientos, this::cargarFinanzas);
+    }
+
+    /**
+     * Pide un CSV y lo importa en la finca en segundo plano (ver ImportadorCsv).
+     * Mientras dura, el botón muestra el progreso y sirve para cancelar.
+     */
+    private void importarCsv(Button boton, String que, BiFunction<File, Integer, TareaImportacion<?>> importar,
+                             Runnable recargar) {
+        if (tareaImportacion != null && tareaImportacion.isRunning()) {
+            if (boton == botonImportacion) {
+                tareaImportacion.cancel();
+            } else {
+                mostrarAlerta(Alert.AlertType.WARNING, "Importación en curso",
+                    "Espera a que termine la importación actual o cancélala.");
+            }
+            return;
+        }
+        if (fincaActual == null || fincaActual.getId() == null) {
+            mostrarAlerta(Alert.AlertType.WARNING, "Sin finca", "Selecciona una finca para importar " + que + ".");
+            return;
+        }
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Importar " + que + " desde CSV");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Archivos CSV", "*.csv", "*.txt"));
+        File archivo = fileChooser.showOpenDialog(boton.getScene().getWindow());
+        if (archivo == null) {
+            return;
+        }
+
+        TareaImportacion<?> tarea = importar.apply(archivo, fincaActual.getId());
+        tareaImportacion = tarea;
+        botonImportacion = boton;
+        String textoBoton = boton.getText();
+        boton.textProperty().bind(Bindings.createStringBinding(
+            () -> "Cancelar (" + Math.round(Math.max(0, tarea.getProgress()) * 100) + " %)",
+            tarea.progressProperty()));
+
+        tarea.setOnSucceeded(event -> {
+            terminarImportacion(tarea, textoBoton);
+            recargar.run();
+            TareaImportacion.ResumenImportacion resumen = tarea.getValue();
+            StringBuilder mensaje = new StringBuilder()
+                .append("Filas leídas: ").append(resumen.filasLeidas())
+                .append("\nImportadas: ").append(resumen.importadas())
+                .append("\nRechazadas: ").append(resumen.rechazadas());
+            if (resumen.archivoRechazos() != null) {
+                mensaje.append("\n\nLas filas rechazadas y el motivo están en:\n")
+                    .append(resumen.archivoRechazos().getAbsolutePath());
+            }
+            mostrarAlerta(resumen.rechazadas() > 0 ? Alert.AlertType.WARNING : Alert.AlertType.INFORMATION,
+                "Importación de " + que, mensaje.toString());
+        });
+        tarea.setOnCancelled(event -> {
+            terminarImportacion(tarea, textoBoton);
+            recargar.run();
+            mostrarAlerta(Alert.AlertType.INFORMATION, "Importación cancelada",
+                "Se ha cancelado la importación. Las filas guardadas hasta ese momento se conservan.");
+        });
+        tarea.setOnFailed(event -> {
+            terminarImportacion(tarea, textoBoton);
+            recargar.run();
+            Throwable e = tarea.getException();
+            mostrarAlerta(Alert.AlertType.ERROR, "Error al importar " + que,
+                "No se pudo completar la importación.\nDetalle: " + e.getMessage());
+            e.printStackTrace();
+        });
+    }
+
+    private void terminarImportacion(TareaImportacion<?> tarea, String textoBoton) {
+        if (tareaImportacion == tarea) {
+            botonImportacion.textProperty().unbind();
+            botonImportacion.setText(textoBoton);
+            tareaImportacion = null;
+            botonImportacion = null;
+        }
+    }
+
     @FXML
     private void editarFinca(ActionEvent event) {
         if (fincaActual == null) {
@@ -671,17 +840,21 @@ public class ControladorDetalleFinca {
                     "El nombre de la finca es obligatorio.");
                 return;
             }
-            try {
-                fincaDAO.actualizar(fincaEditada);
-                setFinca(fincaEditada);
-                Sesion.getInstancia().setFincaSeleccionada(fincaEditada);
-                mostrarAlerta(Alert.AlertType.INFORMATION, "Finca actualizada",
-                    "Los cambios de la finca se guardaron correctamente.");
-            } catch (SQLException e) {
-                mostrarAlerta(Alert.AlertType.ERROR, "Error al actualizar finca",
-                    "No se pudieron guardar los cambios.\nDetalle: " + e.getMessage());
-                e.printStackTrace();
-            }
+            cargador.escribir(() -> {
+                    fincaDAO.actualizar(fincaEditada);
+                    return fincaEditada;
+                },
+                guardada -> {
+                    setFinca(guardada);
+                    Sesion.getInstancia().setFincaSeleccionada(guardada);
+                    mostrarAlerta(Alert.AlertType.INFORMATION, "Finca actualizada",
+                        "Los cambios de la finca se guardaron correctamente.");
+                },
+                error -> {
+                    mostrarAlerta(Alert.AlertType.ERROR, "Error al actualizar finca",
+                        "No se pudieron guardar los cambios.\nDetalle: " + error.getMessage());
+                    error.printStackTrace();
+                });
         });
     }
 
@@ -705,17 +878,17 @@ public class ControladorDetalleFinca {
         }
         Optional<Cultivo> resultado = mostrarDialogoCultivo(null);
         resultado.ifPresent(cultivo -> {
-            try {
-                cultivo.setFincaId(fincaActual.getId());
-                cultivoDAO.guardar(cultivo);
-                cargarCultivos();
-                seleccionarCultivoEnTabla(cultivo.getId());
-                cargarFinanzas();
-            } catch (SQLException e) {
-                mostrarAlerta(Alert.AlertType.ERROR, "Error al guardar cultivo",
-                    "No se pudo registrar el cultivo.\nDetalle: " + e.getMessage());
-                e.printStackTrace();
-            }
+            cultivo.setFincaId(fincaActual.getId());
+            cargador.escribir(() -> cultivoDAO.guardar(cultivo),
+                guardado -> {
+                    cargarCultivos(guardado.getId());
+                    cargarFinanzas();
+                },
+                error -> {
+                    mostrarAlerta(Alert.AlertType.ERROR, "Error al guardar cultivo",
+                        "No se pudo registrar el cultivo.\nDetalle: " + error.getMessage());
+                    error.printStackTrace();
+                });
         });
     }
 
@@ -734,16 +907,19 @@ public class ControladorDetalleFinca {
                     "El nombre del cultivo es obligatorio.");
                 return;
             }
-            try {
-                cultivoDAO.actualizar(cultivo);
-                cargarCultivos();
-                seleccionarCultivoEnTabla(cultivo.getId());
-                cargarFinanzas();
-            } catch (SQLException e) {
-                mostrarAlerta(Alert.AlertType.ERROR, "Error al actualizar cultivo",
-                    "No se pudo actualizar el cultivo.\nDetalle: " + e.getMessage());
-                e.printStackTrace();
-            }
+            cargador.escribir(() -> {
+                    cultivoDAO.actualizar(cultivo);
+                    return cultivo;
+                },
+                guardado -> {
+                    cargarCultivos(guardado.getId());
+                    cargarFinanzas();
+                },
+                error -> {
+                    mostrarAlerta(Alert.AlertType.ERROR, "Error al actualizar cultivo",
+                        "No se pudo actualizar el cultivo.\nDetalle: " + error.getMessage());
+                    error.printStackTrace();
+                });
         });
     }
 
@@ -771,18 +947,25 @@ public class ControladorDetalleFinca {
         if (respuesta.isEmpty() || respuesta.get() != ButtonType.OK) {
             return;
         }
-        try {
-            cultivoDAO.eliminar(seleccionado.getId());
-            cargarCultivos();
-            tratamientos.clear();
-            tablaTratamientos.getSelectionModel().clearSelection();
-            cargarFinanzas();
-        } catch (SQLException e) {
-            mostrarAlerta(Alert.AlertType.ERROR, "No se puede eliminar",
-                "No fue posible eliminar el cultivo. Asegúrate de que no tenga información dependiente.\nDetalle: "
-                    + e.getMessage());
-            e.printStackTrace();
-        }
+        int cultivoId = seleccionado.getId();
+        Integer fincaId = fincaActual.getId();
+        // Tratamientos y cultivo en la misma transacción: o se borra todo o nada
+        cargador.escribir(() -> UnidadDeTrabajo.ejecutar(() -> {
+                tratamientoDAO.eliminarPorCultivo(cultivoId, fincaId);
+                return cultivoDAO.eliminar(cultivoId);
+            }),
+            eliminado -> {
+                cargarCultivos();
+                tratamientos.clear();
+                tablaTratamientos.getSelectionModel().clearSelection();
+                cargarFinanzas();
+            },
+            error -> {
+                mostrarAlerta(Alert.AlertType.ERROR, "No se puede eliminar",
+                    "No fue posible eliminar el cultivo. Asegúrate de que no tenga información dependiente.\nDetalle: "
+                        + error.getMessage());
+                error.printStackTrace();
+            });
     }
 
     @FXML
@@ -794,19 +977,14 @@ public class ControladorDetalleFinca {
         }
         Optional<Tratamiento> resultado = mostrarDialogoTratamiento(null, cultivoSeleccionado);
         resultado.ifPresent(tratamiento -> {
-            try {
-                tratamientoDAO.guardar(tratamiento);
-                if (tratamiento.getCultivo() != null) {
-                    tablaCultivos.getSelectionModel().select(tratamiento.getCultivo());
-                }
-                cargarTratamientos(tablaCultivos.getSelectionModel().getSelectedItem());
-                seleccionarTratamientoEnTabla(tratamiento.getId());
-                cargarFinanzas();
-            } catch (SQLException e) {
-                mostrarAlerta(Alert.AlertType.ERROR, "Error al guardar tratamiento",
-                    "No se pudo registrar el tratamiento.\nDetalle: " + e.getMessage());
-                e.printStackTrace();
-            }
+            Integer fincaId = fincaActual.getId();
+            cargador.escribir(() -> tratamientoDAO.guardar(tratamiento, fincaId),
+                this::mostrarTratamientoGuardado,
+                error -> {
+                    mostrarAlerta(Alert.AlertType.ERROR, "Error al guardar tratamiento",
+                        "No se pudo registrar el tratamiento.\nDetalle: " + error.getMessage());
+                    error.printStackTrace();
+                });
         });
     }
 
@@ -828,22 +1006,31 @@ public class ControladorDetalleFinca {
                     "El tipo de tratamiento es obligatorio.");
                 return;
             }
-            try {
-                tratamientoDAO.actualizar(tratamiento);
-                if (tratamiento.getCultivo() != null) {
-                    tablaCultivos.getSelectionModel().select(tratamiento.getCultivo());
-                }
-                cargarTratamientos(tablaCultivos.getSelectionModel().getSelectedItem());
-                seleccionarTratamientoEnTabla(tratamiento.getId());
-                cargarFinanzas();
-            } catch (SQLException e) {
-                mostrarAlerta(Alert.AlertType.ERROR, "Error al actualizar tratamiento",
-                    "No se pudo actualizar el tratamiento.\nDetalle: " + e.getMessage());
-                e.printStackTrace();
-            }
+            Integer fincaId = fincaActual.getId();
+            cargador.escribir(() -> {
+                    tratamientoDAO.actualizar(tratamiento, fincaId);
+                    return tratamiento;
+                },
+                this::mostrarTratamientoGuardado,
+                error -> {
+                    mostrarAlerta(Alert.AlertType.ERROR, "Error al actualizar tratamiento",
+                        "No se pudo actualizar el tratamiento.\nDetalle: " + error.getMessage());
+                    error.printStackTrace();
+                });
         });
     }
 
+    /**
+     * Selecciona el cultivo del tratamiento recién guardado y recarga sus tratamientos.
+     */
+    private void mostrarTratamientoGuardado(Tratamiento tratamiento) {
+        if (tratamiento.getCultivo() != null) {
+            tablaCultivos.getSelectionModel().select(tratamiento.getCultivo());
+        }
+        cargarTratamientos(tablaCultivos.getSelectionModel().getSelectedItem(), tratamiento.getId());
+        cargarFinanzas();
+    }
+
     @FXML
     private void eliminarTratamiento(ActionEvent event) {
         Tratamiento seleccionado = tablaTratamientos.getSelectionModel().getSelectedItem();
@@ -867,16 +1054,18 @@ public class ControladorDetalleFinca {
         if (respuesta.isEmpty() || respuesta.get() != ButtonType.OK) {
             return;
         }
-        try {
-            tratamientoDAO.eliminar(seleccionado.getId());
-            Cultivo cultivoContexto = tablaCultivos.getSelectionModel().getSelectedItem();
-            cargarTratamientos(cultivoContexto);
-            cargarFinanzas();
-        } catch (SQLException e) {
-            mostrarAlerta(Alert.AlertType.ERROR, "Error al eliminar tratamiento",
-                "No se pudo eliminar el tratamiento.\nDetalle: " + e.getMessage());
-            e.printStackTrace();
-        }
+        Integer fincaId = fincaActual.getId();
+        cargador.escribir(() -> tratamientoDAO.eliminar(seleccionado.getId(), fincaId),
+            eliminado -> {
+                Cultivo cultivoContexto = tablaCultivos.getSelectionModel().getSelectedItem();
+                cargarTratamientos(cultivoContexto);
+                cargarFinanzas();
+            },
+            error -> {
+                mostrarAlerta(Alert.AlertType.ERROR, "Error al eliminar tratamiento",
+                    "No se pudo eliminar el tratamiento.\nDetalle: " + error.getMessage());
+                error.printStackTrace();
+            });
     }
 
     @FXML
@@ -887,16 +1076,14 @@ public class ControladorDetalleFinca {
         }
         Optional<GestionFinanciera> resultado = mostrarDialogoGestion(null);
         resultado.ifPresent(gestion -> {
-            try {
-                gestion.setFincaId(fincaActual.getId());
-                gestionDAO.guardar(gestion);
-                cargarFinanzas();
-                seleccionarGestionEnTabla(gestion.getId());
-            } catch (SQLException e) {
-                mostrarAlerta(Alert.AlertType.ERROR, "Error al guardar movimiento",
-                    "No se pudo registrar el movimiento financiero.\nDetalle: " + e.getMessage());
-                e.printStackTrace();
-            }
+            gestion.setFincaId(fincaActual.getId());
+            cargador.escribir(() -> gestionDAO.guardar(gestion),
+                guardada -> cargarFinanzas(guardada.getId()),
+                error -> {
+                    mostrarAlerta(Alert.AlertType.ERROR, "Error al guardar movimiento",
+                        "No se pudo registrar el movimiento financiero.\nDetalle: " + error.getMessage());
+                    error.printStackTrace();
+                });
         });
     }
 
@@ -915,15 +1102,16 @@ public class ControladorDetalleFinca {
                     "El tipo de movimiento financiero es obligatorio.");
                 return;
             }
-            try {
-                gestionDAO.actualizar(gestion);
-                cargarFinanzas();
-                seleccionarGestionEnTabla(gestion.getId());
-            } catch (SQLException e) {
-                mostrarAlerta(Alert.AlertType.ERROR, "Error al actualizar movimiento",
-                    "No se pudo actualizar el movimiento.\nDetalle: " + e.getMessage());
-                e.printStackTrace();
-            }
+            cargador.escribir(() -> {
+                    gestionDAO.actualizar(gestion);
+                    return gestion;
+                },
+                guardada -> cargarFinanzas(guardada.getId()),
+                error -> {
+                    mostrarAlerta(Alert.AlertType.ERROR, "Error al actualizar movimiento",
+                        "No se pudo actualizar el movimiento.\nDetalle: " + error.getMessage());
+                    error.printStackTrace();
+                });
         });
     }
 
@@ -950,15 +1138,16 @@ public class ControladorDetalleFinca {
         if (respuesta.isEmpty() || respuesta.get() != ButtonType.OK) {
             return;
         }
-        try {
-            gestionDAO.eliminar(seleccionada.getId());
-            cargarFinanzas();
-            mostrarDetalleFinanza(null);
-        } catch (SQLException e) {
-            mostrarAlerta(Alert.AlertType.ERROR, "Error al eliminar movimiento",
-                "No se pudo eliminar el movimiento seleccionado.\nDetalle: " + e.getMessage());
-            e.printStackTrace();
-        }
+        cargador.escribir(() -> gestionDAO.eliminar(seleccionada.getId()),
+            eliminado -> {
+                cargarFinanzas();
+                mostrarDetalleFinanza(null);
+            },
+            error -> {
+                mostrarAlerta(Alert.AlertType.ERROR, "Error al eliminar movimiento",
+                    "No se pudo eliminar el movimiento seleccionado.\nDetalle: " + error.getMessage());
+                error.printStackTrace();
+            });
     }
 
     private Optional<Cultivo> mostrarDialogoCultivo(Cultivo cultivo) {
@@ -1117,6 +1306,9 @@ public class ControladorDetalleFinca {
     }
 
     private void navegar(String ruta, String titulo) {
+        if (tareaInforme != null) {
+            tareaInforme.cancel();
+        }
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource(ruta));
             Parent root = loader.load();
@@ -1161,18 +1353,6 @@ public class ControladorDetalleFinca {
             .ifPresent(tab -> tabPaneFinca.getSelectionModel().select(tab));
         sesion.setTabDestino(null);
     }
-    
-    private String leerRecursoComoString(String ruta) throws Exception {
-        try (InputStream is = getClass().getResourceAsStream(ruta)) {
-            if (is == null) {
-                throw new Exception("No se encontró el recurso: " + ruta);
-            }
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(is, StandardCharsets.UTF_8))) {
-                return reader.lines().collect(Collectors.joining("\n"));
-            }
-        }
-    }
 
     private void actualizarEstiloBalance(Label etiqueta, double valor) {
         if (etiqueta == null) {
@@ -1188,5 +1368,6 @@ public class ControladorDetalleFinca {
         }
     }
 
+    private record FinanzasFinca(List<GestionFinanciera> gestiones, BigDecimal costoTratamientos) {
+    }
 }
-
@@ -1,17 +1,17 @@
 package controlador;
 
-import crud.ConexionBD;
+import crud.FincaDAO;
+import informes.ServicioInformes;
+import informes.TareaInforme;
+import informes.TareaLoteInformes;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
-import java.sql.Connection;
-import java.sql.SQLException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.Callable;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -25,22 +25,23 @@ import javafx.scene.image.Image;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.web.WebView;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import modelo.Finca;
 import net.sf.jasperreports.engine.JRException;
-import net.sf.jasperreports.engine.JasperCompileManager;
 import net.sf.jasperreports.engine.JasperExportManager;
-import net.sf.jasperreports.engine.JasperFillManager;
 import net.sf.jasperreports.engine.JasperPrint;
-import net.sf.jasperreports.engine.JasperReport;
 import util.Sesion;
 
 public class ControladorInformesAdmin implements Initializable {
 
-    private Connection conexion;
+    private final FincaDAO fincaDAO = new FincaDAO();
     private Map<String, Object> parametros = new HashMap<>();
     private JasperPrint jasperPrintActual = null;
+    private TareaInforme tareaInforme;
+    private TareaLoteInformes tareaLote;
     private String tituloInformeActual = "";
 
     @FXML
@@ -54,6 +55,8 @@ public class ControladorInformesAdmin implements Initializable {
     @FXML
     private Button btnDescargarPDF;
     @FXML
+    private Button btnGenerarLote;
+    @FXML
     private Button btnVolver;
     @FXML
     private VBox panelVacio;
@@ -62,13 +65,6 @@ public class ControladorInformesAdmin implements Initializable {
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
-        try {
-            conexion = ConexionBD.obtenerConexion();
-        } catch (SQLException e) {
-            mostrarAlerta("Error", "Error de conexión: " + e.getMessage(), Alert.AlertType.ERROR);
-            e.printStackTrace();
-        }
-
         tipoInforme = new ToggleGroup();
         radioUsuarios.setToggleGroup(tipoInforme);
         radioFincas.setToggleGroup(tipoInforme);
@@ -77,21 +73,21 @@ public class ControladorInformesAdmin implements Initializable {
         Platform.runLater(() -> {
             Stage primaryStage = (Stage) (btnVolver != null ? btnVolver.getScene().getWindow() : null);
             if (primaryStage != null) {
-                primaryStage.setOnCloseRequest(event -> {
-                    try {
-                        if (conexion != null && !conexion.isClosed()) {
-                            conexion.close();
-                        }
-                    } catch (SQLException ex) {
-                        Logger.getLogger(ControladorInformesAdmin.class.getName()).log(Level.SEVERE, null, ex);
-                    }
-                });
+                // Los informes piden su conexión al pool solo mientras se llenan;
+                // al cerrar basta con cancelar los que sigan en marcha
+                primaryStage.setOnCloseRequest(event -> cancelarTareas());
             }
         });
     }
 
     @FXML
     public void generarInforme(ActionEvent event) throws IOException {
+        if (tareaInforme != null && tareaInforme.isRunning()) {
+            // Mientras se genera un informe el botón hace de "Cancelar"
+            tareaInforme.cancel();
+            return;
+        }
+
         parametros.clear();
         String rutaInforme;
         String tituloInforme;
@@ -109,39 +105,30 @@ public class ControladorInformesAdmin implements Initializable {
 
     @FXML
     private void lanzarInforme(String rutaInf, Map<String, Object> param, boolean incrustado, String titulo) {
-        try {
-            // Intentar diferentes rutas posibles
-            InputStream reportStream = getClass().getResourceAsStream(rutaInf);
-            if (reportStream == null) {
-                // Intentar sin el slash inicial
-                String rutaAlternativa = rutaInf.startsWith("/") ? rutaInf.substring(1) : "/" + rutaInf;
-                reportStream = getClass().getResourceAsStream(rutaAlternativa);
-            }
-            if (reportStream == null) {
-                // Intentar desde el classloader
-                reportStream = getClass().getClassLoader().getResourceAsStream(rutaInf.startsWith("/") ? rutaInf.substring(1) : rutaInf);
-            }
-            if (reportStream == null) {
-                mostrarAlerta("Error", "No se pudo cargar el informe: " + rutaInf + "\nVerifica que el archivo existe en src/main/resources/reports/", Alert.AlertType.ERROR);
-                return;
+        // El llenado se hace en segundo plano: InformeCompuesto2 con todas las fincas puede tardar
+        TareaInforme tarea = ServicioInformes.generar(rutaInf, param, true);
+        tareaInforme = tarea;
+        btnGenerarInforme.setText("Cancelar");
+        tarea.setAlGenerarPagina(paginas -> {
+            if (tareaInforme == tarea) {
+                btnGenerarInforme.setText("Cancelar (" + paginas + " pág.)");
             }
+        });
 
-            JasperReport report = JasperCompileManager.compileReport(reportStream);
-            JasperPrint jasperPrint = JasperFillManager.fillReport(report, param, conexion);
-            jasperPrintActual = jasperPrint; // Guardar para exportar a PDF
+        tarea.setOnSucceeded(event -> {
+            terminarInforme(tarea);
+            jasperPrintActual = tarea.getValue().jasperPrint(); // Guardar para exportar a PDF
             tituloInformeActual = titulo; // Guardar título para el nombre del archivo
 
-            if (!jasperPrint.getPages().isEmpty()) {
-                String outputHtmlFile = "informeAdmin.html";
-                JasperExportManager.exportReportToHtmlFile(jasperPrint, outputHtmlFile);
-
+            String html = tarea.getValue().html();
+            if (html != null) {
                 if (incrustado) {
                     if (panelVacio != null) {
                         panelVacio.setVisible(false);
                     }
-                    webView.getEngine().load(new File(outputHtmlFile).toURI().toString());
+                    webView.getEngine().loadContent(html);
                 } else {
-                    mostrarInformeEnNuevaVentana(outputHtmlFile, titulo);
+                    mostrarInformeEnNuevaVentana(html, titulo);
                 }
             } else {
                 Alert alert = new Alert(Alert.AlertType.INFORMATION);
@@ -150,21 +137,48 @@ public class ControladorInformesAdmin implements Initializable {
                 alert.setContentText("El informe no generó páginas");
                 alert.showAndWait();
             }
-        } catch (JRException e) {
+        });
+        tarea.setOnCancelled(event -> terminarInforme(tarea));
+        tarea.setOnFailed(event -> {
+            terminarInforme(tarea);
+            Throwable e = tarea.getException();
             Alert alert = new Alert(Alert.AlertType.ERROR);
             alert.setTitle("Error");
             alert.setHeaderText("Error al generar el informe");
             alert.setContentText(e.getMessage());
             alert.showAndWait();
             e.printStackTrace();
+        });
+    }
+
+    private void cancelarInforme() {
+        if (tareaInforme != null) {
+            tareaInforme.cancel();
+        }
+    }
+
+    /**
+     * Al salir de la pantalla se cancela todo lo que esté en marcha (informe y lote).
+     */
+    private void cancelarTareas() {
+        cancelarInforme();
+        if (tareaLote != null) {
+            tareaLote.cancel();
         }
     }
 
-    private void mostrarInformeEnNuevaVentana(String archivoHTML, String titulo) {
+    private void terminarInforme(TareaInforme tarea) {
+        if (tareaInforme == tarea) {
+            tareaInforme = null;
+            btnGenerarInforme.setText("Generar informe");
+        }
+    }
+
+    private void mostrarInformeEnNuevaVentana(String html, String titulo) {
         Stage stage = new Stage();
         stage.setTitle(titulo);
         WebView webView = new WebView();
-        webView.getEngine().load(new File(archivoHTML).toURI().toString());
+        webView.getEngine().loadContent(html);
         StackPane stackPane = new StackPane(webView);
         Scene scene = new Scene(stackPane, 800, 600);
         stage.setScene(scene);
@@ -206,8 +220,63 @@ public class ControladorInformesAdmin implements Initializable {
         }
     }
 
+    /**
+     * GENERACIÓN DE PDF EN LOTE
+     *
+     * Genera el informe de finca de todas las fincas registradas, de una vez.
+     * Los informes se llenan en paralelo (tantos como permite el pool de conexiones)
+     * y se escribe un PDF por finca en el directorio elegido.
+     * Pulsar el botón otra vez mientras dura el lote lo cancela.
+     */
+    @FXML
+    private void generarLote(ActionEvent event) {
+        if (tareaLote != null && tareaLote.isRunning()) {
+            tareaLote.cancel();
+            return;
+        }
+
+        DirectoryChooser selector = new DirectoryChooser();
+        selector.setTitle("Carpeta donde guardar los PDF");
+        File directorio = selector.showDialog(btnGenerarLote.getScene().getWindow());
+        if (directorio == null) {
+            return;
+        }
+
+        Callable<List<Finca>> origenFincas = fincaDAO::listarTodas;
+        TareaLoteInformes tarea = ServicioInformes.generarLote(origenFincas, directorio);
+        tareaLote = tarea;
+        btnGenerarLote.setText("Cancelar lote");
+        tarea.messageProperty().addListener((obs, anterior, mensaje) -> {
+            if (tareaLote == tarea && mensaje != null && !mensaje.isEmpty()) {
+                btnGenerarLote.setText("Cancelar (" + mensaje + ")");
+            }
+        });
+        tarea.setOnSucceeded(e -> {
+            terminarLote(tarea);
+            TareaLoteInformes.ResumenLote resumen = tarea.getValue();
+            mostrarAlerta("Informes generados",
+                resumen.describir() + "\n\nCarpeta: " + directorio.getAbsolutePath(),
+                resumen.errores().isEmpty() ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING);
+        });
+        tarea.setOnCancelled(e -> terminarLote(tarea));
+        tarea.setOnFailed(e -> {
+            terminarLote(tarea);
+            mostrarAlerta("Error", "No se pudieron generar los informes:\n" + tarea.getException().getMessage(),
+                Alert.AlertType.ERROR);
+            tarea.getException().printStackTrace();
+        });
+    }
+
+    private void terminarLote(TareaLoteInformes tarea) {
+        if (tareaLote == tarea) {
+            tareaLote = null;
+            btnGenerarLote.setText("PDF de todas las fincas");
+        }
+    }
+
     @FXML
     private void volver(ActionEvent event) {
+        cancelarTareas();
         try {
             javafx.fxml.FXMLLoader loader = new javafx.fxml.FXMLLoader(getClass().getResource("/main/vista/AdminPanel.fxml"));
             javafx.scene.Parent root = loader.load();
@@ -1,18 +1,19 @@
 package controlador;
 
-import crud.ConexionBD;
+import carga.CargadorAsincrono;
 import crud.FincaDAO;
+import informes.CacheInformesGenerados;
+import informes.ServicioInformes;
+import informes.TareaInforme;
+import informes.TareaLoteInformes;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
-import java.sql.Connection;
-import java.sql.SQLException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.Callable;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -28,25 +29,25 @@ import javafx.scene.image.Image;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.web.WebView;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import modelo.Finca;
 import net.sf.jasperreports.engine.JRException;
-import net.sf.jasperreports.engine.JasperCompileManager;
 import net.sf.jasperreports.engine.JasperExportManager;
-import net.sf.jasperreports.engine.JasperFillManager;
 import net.sf.jasperreports.engine.JasperPrint;
-import net.sf.jasperreports.engine.JasperReport;
 import util.Sesion;
 
 public class ControladorInformesUsuario implements Initializable {
 
-    private Connection conexion;
     private final FincaDAO fincaDAO = new FincaDAO();
+    private final CargadorAsincrono cargador = new CargadorAsincrono();
     private Map<String, Object> parametros = new HashMap<>();
     private ObservableList<Finca> listaFincas = FXCollections.observableArrayList();
     private JasperPrint jasperPrintActual = null;
+    private TareaInforme tareaInforme;
+    private TareaLoteInformes tareaLote;
 
     @FXML
     private WebView webView;
@@ -57,34 +58,24 @@ public class ControladorInformesUsuario implements Initializable {
     @FXML
     private Button btnDescargarPDF;
     @FXML
+    private Button btnGenerarLote;
+    @FXML
     private Button btnVolver;
     @FXML
     private VBox panelVacio;
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
-        try {
-            conexion = ConexionBD.obtenerConexion();
-        } catch (SQLException e) {
-            mostrarAlerta("Error", "Error de conexión: " + e.getMessage(), Alert.AlertType.ERROR);
-            e.printStackTrace();
-        }
-
-        cargarFincasUsuario();
+        cargador.cancelarAlSalir(comboFincas);
         inicializarComboFincas();
+        cargarFincasUsuario();
 
         Platform.runLater(() -> {
             Stage primaryStage = (Stage) (comboFincas != null ? comboFincas.getScene().getWindow() : null);
             if (primaryStage != null) {
-                primaryStage.setOnCloseRequest(event -> {
-                    try {
-                        if (conexion != null && !conexion.isClosed()) {
-                            conexion.close();
-                        }
-                    } catch (SQLException ex) {
-                        Logger.getLogger(ControladorInformesUsuario.class.getName()).log(Level.SEVERE, null, ex);
-                    }
-                });
+                // Los informes piden su conexión al pool solo mientras se llenan;
+                // al cerrar basta con cancelar los que sigan en marcha
+                primaryStage.setOnCloseRequest(event -> cancelarTareas());
             }
         });
     }
@@ -92,17 +83,27 @@ public class ControladorInformesUsuario implements Initializable {
     private void cargarFincasUsuario() {
         listaFincas.clear();
         if (Sesion.getInstancia().estaAutenticado()) {
-            try {
-                listaFincas.setAll(fincaDAO.listarPorUsuario(Sesion.getInstancia().getUsuarioActual().getId()));
-            } catch (SQLException e) {
-                mostrarAlerta("Error", "No se pudieron cargar las fincas: " + e.getMessage(), Alert.AlertType.ERROR);
-                e.printStackTrace();
-            }
+            Integer usuarioId = Sesion.getInstancia().getUsuarioActual().getId();
+            CargadorAsincrono.marcarCargando(comboFincas, cargador.cargar("fincas",
+                () -> fincaDAO.listarPorUsuario(usuarioId),
+                listaFincas::setAll,
+                error -> {
+                    mostrarAlerta("Error", "No se pudieron cargar las fincas: " + error.getMessage(), Alert.AlertType.ERROR);
+                    error.printStackTrace();
+                }));
         }
     }
 
     private void inicializarComboFincas() {
         comboFincas.setItems(listaFincas);
+        // Si ya se está viendo un informe, al cambiar de finca se muestra directamente el de la nueva
+        // (los informes ya generados salen de CacheInformesGenerados sin volver a la base de datos)
+        comboFincas.valueProperty().addListener((obs, anterior, nueva) -> {
+            if (nueva != null && anterior != null && jasperPrintActual != null) {
+                cancelarInforme();
+                mostrarInformeFinca(nueva);
+            }
+        });
         comboFincas.setCellFactory(param -> new javafx.scene.control.ListCell<Finca>() {
             @Override
             protected void updateItem(Finca finca, boolean empty) {
@@ -135,8 +136,18 @@ public class ControladorInformesUsuario implements Initializable {
             return;
         }
 
+        if (tareaInforme != null && tareaInforme.isRunning()) {
+            // Mientras se genera un informe el botón hace de "Cancelar"
+            tareaInforme.cancel();
+            return;
+        }
+
+        mostrarInformeFinca(fincaSeleccionada);
+    }
+
+    private void mostrarInformeFinca(Finca finca) {
         parametros.clear();
-        parametros.put("ParametroFincaId", fincaSeleccionada.getId());
+        parametros.put(CacheInformesGenerados.PARAMETRO_FINCA, finca.getId());
         String rutaInforme = "/reports/InformeFiltra.jrxml";
         lanzarInforme(rutaInforme, parametros, true);
     }
@@ -151,9 +162,12 @@ public class ControladorInformesUsuario implements Initializable {
      * 
      * Proceso:
      * 1. Carga el archivo .jrxml (plantilla del informe)
-     * 2. Lo compila (JasperCompileManager)
+     * 2. Lo compila, o reutiliza la versión ya compilada (CachePlantillasInforme)
      * 3. Lo llena con datos de la BD usando parámetros (JasperFillManager)
-     * 4. Lo exporta a HTML o PDF (JasperExportManager)
+     * 4. Lo exporta a HTML en memoria (ExportadorHtml) o a PDF (JasperExportManager)
+     *
+     * Los pasos 1-4 se hacen en segundo plano con ServicioInformes; al terminar
+     * se muestra el resultado en el hilo de JavaFX.
      * 
      * @param rutaInf Ruta del archivo .jrxml en src/main/resources/reports/
      * @param param Parámetros para el informe (ej: ID de finca)
@@ -161,49 +175,35 @@ public class ControladorInformesUsuario implements Initializable {
      */
     @FXML
     private void lanzarInforme(String rutaInf, Map<String, Object> param, boolean incrustado) {
-        try {
-            // Intentar diferentes rutas posibles (por si hay problemas con el classpath)
-            InputStream reportStream = getClass().getResourceAsStream(rutaInf);
-            if (reportStream == null) {
-                // Intentar sin el slash inicial
-                String rutaAlternativa = rutaInf.startsWith("/") ? rutaInf.substring(1) : "/" + rutaInf;
-                reportStream = getClass().getResourceAsStream(rutaAlternativa);
-            }
-            if (reportStream == null) {
-                // Intentar desde el classloader directamente
-                reportStream = getClass().getClassLoader().getResourceAsStream(rutaInf.startsWith("/") ? rutaInf.substring(1) : rutaInf);
-            }
-            if (reportStream == null) {
-                mostrarAlerta("Error", "No se pudo cargar el informe: " + rutaInf + "\nVerifica que el archivo existe en src/main/resources/reports/", Alert.AlertType.ERROR);
-                return;
+        // PASO 1-4 en segundo plano (ServicioInformes): la ventana sigue respondiendo
+        // mientras se llena el informe y el botón permite cancelarlo
+        TareaInforme tarea = ServicioInformes.generar(rutaInf, param, true);
+        tareaInforme = tarea;
+        btnGenerarInforme.setText("Cancelar");
+        tarea.setAlGenerarPagina(paginas -> {
+            if (tareaInforme == tarea) {
+                btnGenerarInforme.setText("Cancelar (" + paginas + " pág.)");
             }
+        });
 
-            // PASO 1: Compilar el archivo .jrxml (convertirlo a formato binario)
-            JasperReport report = JasperCompileManager.compileReport(reportStream);
-            
-            // PASO 2: Llenar el informe con datos de la base de datos
-            // - report: La plantilla compilada
-            // - param: Parámetros (ej: {"ParametroFincaId": 5})
-            // - conexion: Conexión a MySQL para ejecutar las consultas SQL del informe
-            JasperPrint jasperPrint = JasperFillManager.fillReport(report, param, conexion);
-            jasperPrintActual = jasperPrint; // Guardar para poder exportar a PDF después
-
-            // PASO 3: Exportar el informe a HTML
-            if (!jasperPrint.getPages().isEmpty()) {
-                String outputHtmlFile = "informeFinca.html";
-                // Exporta el informe a un archivo HTML temporal
-                JasperExportManager.exportReportToHtmlFile(jasperPrint, outputHtmlFile);
-
+        tarea.setOnSucceeded(event -> {
+            if (tareaInforme != tarea) {
+                return;  // Se cambió de finca mientras se generaba: el resultado ya no interesa
+            }
+            terminarInforme(tarea);
+            jasperPrintActual = tarea.getValue().jasperPrint(); // Guardar para poder exportar a PDF después
+            String html = tarea.getValue().html();
+            if (html != null) {
                 if (incrustado) {
                     // Mostrar el informe en el WebView de la misma ventana
                     if (panelVacio != null) {
                         panelVacio.setVisible(false);
                     }
                     // Cargar el HTML generado en el WebView
-                    webView.getEngine().load(new File(outputHtmlFile).toURI().toString());
+                    webView.getEngine().loadContent(html);
                 } else {
                     // Abrir el informe en una nueva ventana
-                    mostrarInformeEnNuevaVentana(outputHtmlFile, "Informe de Finca");
+                    mostrarInformeEnNuevaVentana(html, "Informe de Finca");
                 }
             } else {
                 Alert alert = new Alert(Alert.AlertType.INFORMATION);
@@ -212,21 +212,48 @@ public class ControladorInformesUsuario implements Initializable {
                 alert.setContentText("La finca seleccionada no generó páginas en el informe");
                 alert.showAndWait();
             }
-        } catch (JRException e) {
+        });
+        tarea.setOnCancelled(event -> terminarInforme(tarea));
+        tarea.setOnFailed(event -> {
+            terminarInforme(tarea);
+            Throwable e = tarea.getException();
             Alert alert = new Alert(Alert.AlertType.ERROR);
             alert.setTitle("Error");
             alert.setHeaderText("Error al generar el informe");
             alert.setContentText(e.getMessage());
             alert.showAndWait();
             e.printStackTrace();
+        });
+    }
+
+    private void cancelarInforme() {
+        if (tareaInforme != null) {
+            tareaInforme.cancel();
+        }
+    }
+
+    /**
+     * Al salir de la pantalla se cancela todo lo que esté en marcha (informe y lote).
+     */
+    private void cancelarTareas() {
+        cancelarInforme();
+        if (tareaLote != null) {
+            tareaLote.cancel();
+        }
+    }
+
+    private void terminarInforme(TareaInforme tarea) {
+        if (tareaInforme == tarea) {
+            tareaInforme = null;
+            btnGenerarInforme.setText("Generar informe");
         }
     }
 
-    private void mostrarInformeEnNuevaVentana(String archivoHTML, String titulo) {
+    private void mostrarInformeEnNuevaVentana(String html, String titulo) {
         Stage stage = new Stage();
         stage.setTitle(titulo);
         WebView webView = new WebView();
-        webView.getEngine().load(new File(archivoHTML).toURI().toString());
+        webView.getEngine().loadContent(html);
         StackPane stackPane = new StackPane(webView);
         Scene scene = new Scene(stackPane, 800, 600);
         stage.setScene(scene);
@@ -286,8 +313,64 @@ public class ControladorInformesUsuario implements Initializable {
         }
     }
 
+    /**
+     * GENERACIÓN DE PDF EN LOTE
+     *
+     * Genera el informe de cada una de las fincas del usuario, de una vez.
+     * Los informes se llenan en paralelo (tantos como permite el pool de conexiones)
+     * y se escribe un PDF por finca en el directorio elegido.
+     * Pulsar el botón otra vez mientras dura el lote lo cancela.
+     */
+    @FXML
+    private void generarLote(ActionEvent event) {
+        if (tareaLote != null && tareaLote.isRunning()) {
+            tareaLote.cancel();
+            return;
+        }
+
+        DirectoryChooser selector = new DirectoryChooser();
+        selector.setTitle("Carpeta donde guardar los PDF");
+        File directorio = selector.showDialog(btnGenerarLote.getScene().getWindow());
+        if (directorio == null) {
+            return;
+        }
+
+        Integer usuarioId = Sesion.getInstancia().getUsuarioActual().getId();
+        Callable<List<Finca>> origenFincas = () -> fincaDAO.listarPorUsuario(usuarioId);
+        TareaLoteInformes tarea = ServicioInformes.generarLote(origenFincas, directorio);
+        tareaLote = tarea;
+        btnGenerarLote.setText("Cancelar lote");
+        tarea.messageProperty().addListener((obs, anterior, mensaje) -> {
+            if (tareaLote == tarea && mensaje != null && !mensaje.isEmpty()) {
+                btnGenerarLote.setText("Cancelar (" + mensaje + ")");
+            }
+        });
+        tarea.setOnSucceeded(e -> {
+            terminarLote(tarea);
+            TareaLoteInformes.ResumenLote resumen = tarea.getValue();
+            mostrarAlerta("Informes generados",
+                resumen.describir() + "\n\nCarpeta: " + directorio.getAbsolutePath(),
+                resumen.errores().isEmpty() ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING);
+        });
+        tarea.setOnCancelled(e -> terminarLote(tarea));
+        tarea.setOnFailed(e -> {
+            terminarLote(tarea);
+            mostrarAlerta("Error", "No se pudieron generar los informes:\n" + tarea.getException().getMessage(),
+                Alert.AlertType.ERROR);
+            tarea.getException().printStackTrace();
+        });
+    }
+
+    private void terminarLote(TareaLoteInformes tarea) {
+        if (tareaLote == tarea) {
+            tareaLote = null;
+            btnGenerarLote.setText("PDF de todas las fincas");
+        }
+    }
+
     @FXML
     private void volver(ActionEvent event) {
+        cancelarTareas();
         try {
             javafx.fxml.FXMLLoader loader = new javafx.fxml.FXMLLoader(getClass().getResource("/main/vista/Dashboard.fxml"));
             javafx.scene.Parent root = loader.load();
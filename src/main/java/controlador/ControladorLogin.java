@@ -1,8 +1,7 @@
 package controlador;
 
-import crud.UsuarioDAO;
+import carga.TareaAutenticacion;
 import java.io.IOException;
-import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.Optional;
 import javafx.event.ActionEvent;
@@ -22,7 +21,7 @@ import util.Sesion;
 
 public class ControladorLogin {
 
-    private final UsuarioDAO usuarioDAO = new UsuarioDAO();
+    private TareaAutenticacion tareaLogin;
 
     @FXML
     private TextField campoUsuario;
@@ -67,8 +66,19 @@ public class ControladorLogin {
             return;
         }
 
-        try {
-            Optional<Usuario> usuarioOpt = usuarioDAO.autenticar(usuario, contrasena);
+        if (tareaLogin != null && tareaLogin.isRunning()) {
+            return;
+        }
+        // BCrypt tarda un cuarto de segundo: se comprueba fuera del hilo de JavaFX
+        TareaAutenticacion tarea = TareaAutenticacion.iniciar(usuario, contrasena);
+        tareaLogin = tarea;
+        String textoBoton = btnIniciarSesion.getText();
+        bloquearFormulario(true);
+        btnIniciarSesion.textProperty().bind(tarea.messageProperty());
+
+        tarea.setOnSucceeded(e -> {
+            restaurarFormulario(textoBoton);
+            Optional<Usuario> usuarioOpt = tarea.getValue();
             if (usuarioOpt.isEmpty()) {
                 mostrarAlerta(Alert.AlertType.ERROR, "Credenciales inválidas",
                     "Usuario o contraseña incorrectos, o la cuenta está inactiva.");
@@ -81,13 +91,32 @@ public class ControladorLogin {
             } else {
                 navegar("/main/vista/Dashboard.fxml", "AgroTrack - Dashboard");
             }
-        } catch (SQLException e) {
+        });
+        tarea.setOnFailed(e -> {
+            restaurarFormulario(textoBoton);
+            Throwable error = tarea.getException();
             mostrarAlerta(Alert.AlertType.ERROR, "Error de conexión",
-                "No fue posible validar las credenciales. Intenta nuevamente.\nDetalle: " + e.getMessage());
-            e.printStackTrace();
+                "No fue posible validar las credenciales. Intenta nuevamente.\nDetalle: " + error.getMessage());
+            error.printStackTrace();
+        });
+    }
+
+    private void bloquearFormulario(boolean bloquear) {
+        campoUsuario.setDisable(bloquear);
+        campoContrasena.setDisable(bloquear);
+        btnIniciarSesion.setDisable(bloquear);
+        if (btnRegistrarse != null) {
+            btnRegistrarse.setDisable(bloquear);
         }
     }
 
+    private void restaurarFormulario(String textoBoton) {
+        tareaLogin = null;
+        btnIniciarSesion.textProperty().unbind();
+        btnIniciarSesion.setText(textoBoton);
+        bloquearFormulario(false);
+    }
+
     private boolean esAdministrador(String usuario, String contrasena) {
         return "admin".equalsIgnoreCase(usuario) && "admin".equals(contrasena);
     }
@@ -1,9 +1,15 @@
 package controlador;
 
+import carga.CargadorAsincrono;
 import crud.UsuarioDAO;
 import java.io.IOException;
-import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javafx.animation.PauseTransition;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -12,15 +18,36 @@ import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.TextField;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import modelo.Usuario;
 import util.ValidacionUtil;
 
 public class ControladorRegistro {
 
+    // Se comprueba si el username y el correo están libres cuando se deja de
+    // escribir durante ESPERA_COMPROBACION, no en cada tecla
+    private static final Duration ESPERA_COMPROBACION = Duration.millis(400);
+    private static final int MAXIMO_OCUPADOS = 50;
+
     private final UsuarioDAO usuarioDAO = new UsuarioDAO();
+    private final CargadorAsincrono cargador = new CargadorAsincrono();
+    private final PauseTransition esperaComprobacion = new PauseTransition(ESPERA_COMPROBACION);
+
+    // Valores que ya se sabe que están en uso ("u:" + username, "e:" + email, en
+    // minúsculas). Solo se guardan los ocupados: uno libre puede dejar de estarlo
+    // en cualquier momento, uno ocupado casi nunca deja de estarlo. Así borrar y
+    // volver a escribir el mismo nombre no repite la consulta.
+    private final Set<String> ocupados = Collections.newSetFromMap(
+        new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> mayor) {
+                return size() > MAXIMO_OCUPADOS;
+            }
+        });
 
     @FXML
     private TextField campoNombre;
@@ -40,6 +67,90 @@ public class ControladorRegistro {
     private Button btnRegistrar;
     @FXML
     private Button btnVolverLogin;
+    @FXML
+    private Label lblDisponibilidad;
+
+    @FXML
+    private void initialize() {
+        esperaComprobacion.setOnFinished(e -> comprobarDisponibilidad());
+        campoUsername.textProperty().addListener((obs, anterior, nuevo) -> esperaComprobacion.playFromStart());
+        campoCorreo.textProperty().addListener((obs, anterior, nuevo) -> esperaComprobacion.playFromStart());
+        cargador.cancelarAlSalir(btnRegistrar);
+    }
+
+    /**
+     * Avisa mientras se rellena el formulario si el username o el correo ya
+     * están en uso. Es solo un aviso: al guardar es el índice único de MySQL el
+     * que decide (ver registrarUsuario).
+     */
+    private void comprobarDisponibilidad() {
+        String username = valorOpcional(campoUsername);
+        String email = valorOpcional(campoCorreo);
+        boolean consultarUsername = username != null && !ocupados.contains(claveUsername(username));
+        boolean consultarEmail = email != null && email.contains("@") && !ocupados.contains(claveEmail(email));
+        if (!consultarUsername && !consultarEmail) {
+            cargador.cancelar("disponibilidad");
+            mostrarDisponibilidad();
+            return;
+        }
+
+        cargador.cargar("disponibilidad",
+            () -> usuarioDAO.validarDisponibilidad(consultarUsername ? username : null,
+                consultarEmail ? email : null),
+            disponibilidad -> {
+                if (!disponibilidad.usernameLibre()) {
+                    ocupados.add(claveUsername(username));
+                }
+                if (!disponibilidad.emailLibre()) {
+                    ocupados.add(claveEmail(email));
+                }
+                mostrarDisponibilidad();
+            },
+            // Si falla la consulta no se avisa de nada; al guardar se comprueba igualmente
+            error -> System.err.println("No se pudo comprobar la disponibilidad: " + error.getMessage()));
+    }
+
+    /**
+     * Muestra lo que se sabe de los valores escritos ahora mismo (la consulta
+     * pudo lanzarse con otros si el usuario siguió escribiendo).
+     */
+    private void mostrarDisponibilidad() {
+        String username = valorOpcional(campoUsername);
+        String email = valorOpcional(campoCorreo);
+        boolean usernameOcupado = username != null && ocupados.contains(claveUsername(username));
+        boolean emailOcupado = email != null && ocupados.contains(claveEmail(email));
+        if (username != null) {
+            ValidacionUtil.marcar(campoUsername, !usernameOcupado);
+        }
+        if (email != null) {
+            ValidacionUtil.marcar(campoCorreo, !emailOcupado);
+        }
+        if (lblDisponibilidad == null) {
+            return;
+        }
+        if (usernameOcupado && emailOcupado) {
+            lblDisponibilidad.setText("El nombre de usuario y el correo ya están en uso.");
+        } else if (usernameOcupado) {
+            lblDisponibilidad.setText("El nombre de usuario ya está registrado. Elige otro.");
+        } else if (emailOcupado) {
+            lblDisponibilidad.setText("Ya existe una cuenta asociada a ese correo.");
+        } else {
+            lblDisponibilidad.setText("");
+        }
+    }
+
+    private static String valorOpcional(TextField campo) {
+        String valor = campo.getText() == null ? "" : campo.getText().trim();
+        return valor.isEmpty() ? null : valor;
+    }
+
+    private static String claveUsername(String username) {
+        return "u:" + username.toLowerCase(Locale.ROOT);
+    }
+
+    private static String claveEmail(String email) {
+        return "e:" + email.toLowerCase(Locale.ROOT);
+    }
 
     @FXML
     private void registrarUsuario(ActionEvent event) {
@@ -47,37 +158,56 @@ public class ControladorRegistro {
             return;
         }
 
-        try {
-            if (usuarioDAO.existeUsername(campoUsername.getText().trim())) {
-                mostrarAlerta(Alert.AlertType.WARNING, "Nombre de usuario en uso",
-                    "El nombre de usuario ya está registrado. Elige otro.");
-                return;
-            }
-            if (usuarioDAO.existeEmail(campoCorreo.getText().trim())) {
-                mostrarAlerta(Alert.AlertType.WARNING, "Correo en uso",
-                    "Ya existe una cuenta asociada a ese correo.");
-                return;
-            }
-
-            Usuario nuevo = new Usuario();
-            nuevo.setNombre(campoNombre.getText().trim());
-            nuevo.setApellidos(campoApellidos.getText().trim());
-            nuevo.setEmail(campoCorreo.getText().trim());
-            nuevo.setUsername(campoUsername.getText().trim());
-            nuevo.setPassword(campoContrasena.getText());
-            nuevo.setRol(Usuario.Rol.USUARIO);
-            nuevo.setFechaRegistro(LocalDate.now());
-            nuevo.setActivo(true);
-            usuarioDAO.guardar(nuevo);
-
-            mostrarAlerta(Alert.AlertType.INFORMATION, "Registro exitoso",
-                "El usuario se registró correctamente. Ya puedes iniciar sesión.");
-            navegar("/main/vista/Login.fxml", "Inicio de sesión");
-        } catch (SQLException e) {
-            mostrarAlerta(Alert.AlertType.ERROR, "Error al registrar",
-                "No se pudo completar el registro. Intenta nuevamente.\nDetalle: " + e.getMessage());
-            e.printStackTrace();
+        String username = campoUsername.getText().trim();
+        String email = campoCorreo.getText().trim();
+        // Lo que ya se sabe ocupado se avisa sin ir a la base de datos; lo demás
+        // lo decide el INSERT (índices únicos), sin consultar antes
+        if (ocupados.contains(claveUsername(username))) {
+            ValidacionUtil.marcar(campoUsername, false);
+            mostrarAlerta(Alert.AlertType.WARNING, "Nombre de usuario en uso",
+                "El nombre de usuario ya está registrado. Elige otro.");
+            return;
         }
+        if (ocupados.contains(claveEmail(email))) {
+            ValidacionUtil.marcar(campoCorreo, false);
+            mostrarAlerta(Alert.AlertType.WARNING, "Correo en uso",
+                "Ya existe una cuenta asociada a ese correo.");
+            return;
+        }
+
+        Usuario nuevo = new Usuario();
+        nuevo.setNombre(campoNombre.getText().trim());
+        nuevo.setApellidos(campoApellidos.getText().trim());
+        nuevo.setEmail(email);
+        nuevo.setUsername(username);
+        nuevo.setPassword(campoContrasena.getText());
+        nuevo.setRol(Usuario.Rol.USUARIO);
+        nuevo.setFechaRegistro(LocalDate.now());
+        nuevo.setActivo(true);
+
+        // guardar() calcula el hash BCrypt y hace el INSERT: fuera del hilo de JavaFX,
+        // con el botón desactivado para no registrar dos veces
+        btnRegistrar.setDisable(true);
+        cargador.escribir(() -> usuarioDAO.guardar(nuevo),
+            guardado -> {
+                mostrarAlerta(Alert.AlertType.INFORMATION, "Registro exitoso",
+                    "El usuario se registró correctamente. Ya puedes iniciar sesión.");
+                navegar("/main/vista/Login.fxml", "Inicio de sesión");
+            },
+            error -> {
+                btnRegistrar.setDisable(false);
+                if (error instanceof UsuarioDAO.UsuarioDuplicado duplicado) {
+                    // Otro registro con el mismo username o correo (puede haber entrado justo ahora)
+                    ocupados.add(duplicado.isEmail() ? claveEmail(email) : claveUsername(username));
+                    mostrarDisponibilidad();
+                    mostrarAlerta(Alert.AlertType.WARNING,
+                        duplicado.isEmail() ? "Correo en uso" : "Nombre de usuario en uso", duplicado.getMessage());
+                    return;
+                }
+                mostrarAlerta(Alert.AlertType.ERROR, "Error al registrar",
+                    "No se pudo completar el registro. Intenta nuevamente.\nDetalle: " + error.getMessage());
+                error.printStackTrace();
+            });
     }
 
     private boolean validarFormulario() {
@@ -0,0 +1,203 @@
+package controlador;
+
+import crud.CacheEntidades;
+import crud.ConexionBD;
+import crud.MetricasBD;
+import java.sql.SQLException;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.fxml.FXML;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+import util.SeguridadUtil;
+
+/**
+ * Ventana de diagnóstico del panel de administración: estado del pool de
+ * conexiones, tiempos de espera y de cada consulta (MetricasBD), aciertos de
+ * CacheEntidades y costo de BCrypt en uso. Solo lee contadores en memoria, así
+ * que se refresca en el hilo de JavaFX sin lanzar nada contra MySQL.
+ */
+public class DialogoDiagnosticoBDController {
+
+    private static final Duration REFRESCO = Duration.seconds(1);
+    private static final DateTimeFormatter HORA = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    @FXML
+    private Label lblActivas;
+    @FXML
+    private Label lblInactivas;
+    @FXML
+    private Label lblTotal;
+    @FXML
+    private Label lblEsperando;
+    @FXML
+    private Label lblTiemposAgotados;
+    @FXML
+    private Label lblActualizado;
+    @FXML
+    private Label lblConfiguracion;
+    @FXML
+    private Label lblSeguridad;
+
+    @FXML
+    private TableView<MetricasBD.LatenciaMetodo> tablaPool;
+    @FXML
+    private TableColumn<MetricasBD.LatenciaMetodo, String> colPoolNombre;
+    @FXML
+    private TableColumn<MetricasBD.LatenciaMetodo, String> colPoolCuenta;
+    @FXML
+    private TableColumn<MetricasBD.LatenciaMetodo, String> colPoolMedia;
+    @FXML
+    private TableColumn<MetricasBD.LatenciaMetodo, String> colPoolP50;
+    @FXML
+    private TableColumn<MetricasBD.LatenciaMetodo, String> colPoolP95;
+    @FXML
+    private TableColumn<MetricasBD.LatenciaMetodo, String> colPoolP99;
+    @FXML
+    private TableColumn<MetricasBD.LatenciaMetodo, String> colPoolMaximo;
+
+    @FXML
+    private TableView<MetricasBD.LatenciaMetodo> tablaMetodos;
+    @FXML
+    private TableColumn<MetricasBD.LatenciaMetodo, String> colMetodoNombre;
+    @FXML
+    private TableColumn<MetricasBD.LatenciaMetodo, String> colMetodoCuenta;
+    @FXML
+    private TableColumn<MetricasBD.LatenciaMetodo, String> colMetodoMedia;
+    @FXML
+    private TableColumn<MetricasBD.LatenciaMetodo, String> colMetodoP50;
+    @FXML
+    private TableColumn<MetricasBD.LatenciaMetodo, String> colMetodoP95;
+    @FXML
+    private TableColumn<MetricasBD.LatenciaMetodo, String> colMetodoP99;
+    @FXML
+    private TableColumn<MetricasBD.LatenciaMetodo, String> colMetodoMaximo;
+    @FXML
+    private TableColumn<MetricasBD.LatenciaMetodo, String> colMetodoTotal;
+
+    @FXML
+    private TableView<CacheEntidades.Metrica> tablaCache;
+    @FXML
+    private TableColumn<CacheEntidades.Metrica, String> colCacheRegion;
+    @FXML
+    private TableColumn<CacheEntidades.Metrica, String> colCacheEntradas;
+    @FXML
+    private TableColumn<CacheEntidades.Metrica, String> colCacheAciertos;
+    @FXML
+    private TableColumn<CacheEntidades.Metrica, String> colCacheFallos;
+    @FXML
+    private TableColumn<CacheEntidades.Metrica, String> colCacheTasa;
+
+    private final Timeline refresco = new Timeline(new KeyFrame(REFRESCO, event -> refrescar()));
+    private Stage stage;
+
+    @FXML
+    private void initialize() {
+        columnasLatencia(colPoolNombre, colPoolCuenta, colPoolMedia, colPoolP50, colPoolP95, colPoolP99,
+            colPoolMaximo);
+        columnasLatencia(colMetodoNombre, colMetodoCuenta, colMetodoMedia, colMetodoP50, colMetodoP95,
+            colMetodoP99, colMetodoMaximo);
+        colMetodoTotal.setCellValueFactory(data -> texto(data.getValue(),
+            l -> formato("%.2f", l.resumen().totalMs() / 1000)));
+
+        colCacheRegion.setCellValueFactory(data -> texto(data.getValue(), CacheEntidades.Metrica::region));
+        colCacheEntradas.setCellValueFactory(data -> texto(data.getValue(), m -> String.valueOf(m.entradas())));
+        colCacheAciertos.setCellValueFactory(data -> texto(data.getValue(), m -> String.valueOf(m.aciertos())));
+        colCacheFallos.setCellValueFactory(data -> texto(data.getValue(), m -> String.valueOf(m.fallos())));
+        colCacheTasa.setCellValueFactory(data -> texto(data.getValue(),
+            m -> formato("%.1f %%", m.tasaAciertos() * 100)));
+
+        try {
+            lblConfiguracion.setText("Perfil de conexión: " + ConexionBD.validarConfiguracion());
+        } catch (SQLException e) {
+            lblConfiguracion.setText(e.getMessage());
+        }
+        refresco.setCycleCount(Animation.INDEFINITE);
+        refrescar();
+    }
+
+    public void setStage(Stage stage) {
+        this.stage = stage;
+        // Mientras la ventana está abierta se refresca; al cerrarla se para
+        stage.setOnShown(event -> refresco.play());
+        stage.setOnHidden(event -> refresco.stop());
+    }
+
+    private void refrescar() {
+        MetricasBD.EstadoPool pool = MetricasBD.estadoPool();
+        if (pool != null) {
+            lblActivas.setText(String.valueOf(pool.activas()));
+            lblInactivas.setText(String.valueOf(pool.inactivas()));
+            lblTotal.setText(pool.total() + " / " + pool.maximo());
+            lblEsperando.setText(String.valueOf(pool.esperando()));
+        } else {
+            // El pool se crea con la primera consulta
+            lblActivas.setText("-");
+            lblInactivas.setText("-");
+            lblTotal.setText("-");
+            lblEsperando.setText("-");
+        }
+        lblTiemposAgotados.setText(String.valueOf(MetricasBD.tiemposAgotados()));
+        // Se refresca también: la calibración puede terminar con la ventana abierta
+        lblSeguridad.setText("Contraseñas: BCrypt con costo " + SeguridadUtil.getCosto()
+            + (SeguridadUtil.estaCalibrado() ? " (calibrado para este equipo)" : " (por defecto, sin calibrar aún)"));
+
+        tablaPool.getItems().setAll(List.of(
+            new MetricasBD.LatenciaMetodo("Esperar una conexión libre", MetricasBD.adquisicion()),
+            new MetricasBD.LatenciaMetodo("Conexión prestada", MetricasBD.uso())));
+        tablaMetodos.getItems().setAll(MetricasBD.porMetodo());
+        tablaCache.getItems().setAll(CacheEntidades.metricas());
+        lblActualizado.setText("Actualizado a las " + LocalTime.now().format(HORA));
+    }
+
+    @FXML
+    private void reiniciar() {
+        MetricasBD.reiniciar();
+        refrescar();
+    }
+
+    @FXML
+    private void cerrar() {
+        if (stage != null) {
+            stage.close();
+        }
+    }
+
+    private static void columnasLatencia(TableColumn<MetricasBD.LatenciaMetodo, String> nombre,
+                                         TableColumn<MetricasBD.LatenciaMetodo, String> cuenta,
+                                         TableColumn<MetricasBD.LatenciaMetodo, String> media,
+                                         TableColumn<MetricasBD.LatenciaMetodo, String> p50,
+                                         TableColumn<MetricasBD.LatenciaMetodo, String> p95,
+                                         TableColumn<MetricasBD.LatenciaMetodo, String> p99,
+                                         TableColumn<MetricasBD.LatenciaMetodo, String> maximo) {
+        nombre.setCellValueFactory(data -> texto(data.getValue(), MetricasBD.LatenciaMetodo::metodo));
+        cuenta.setCellValueFactory(data -> texto(data.getValue(), l -> String.valueOf(l.resumen().cuenta())));
+        media.setCellValueFactory(data -> texto(data.getValue(), l -> milisegundos(l.resumen().mediaMs())));
+        p50.setCellValueFactory(data -> texto(data.getValue(), l -> milisegundos(l.resumen().p50Ms())));
+        p95.setCellValueFactory(data -> texto(data.getValue(), l -> milisegundos(l.resumen().p95Ms())));
+        p99.setCellValueFactory(data -> texto(data.getValue(), l -> milisegundos(l.resumen().p99Ms())));
+        maximo.setCellValueFactory(data -> texto(data.getValue(), l -> milisegundos(l.resumen().maximoMs())));
+    }
+
+    private static String milisegundos(double ms) {
+        return formato(ms < 10 ? "%.2f" : "%.0f", ms);
+    }
+
+    private static String formato(String patron, double valor) {
+        return String.format(Locale.ROOT, patron, valor);
+    }
+
+    private static <T> SimpleStringProperty texto(T fila, Function<T, String> valor) {
+        return new SimpleStringProperty(fila != null ? valor.apply(fila) : "");
+    }
+}
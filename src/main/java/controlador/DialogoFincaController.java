@@ -1,16 +1,13 @@
 package controlador;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import carga.CargadorAsincrono;
+import crud.UsuarioDAO;
 import java.math.BigDecimal;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import javafx.animation.PauseTransition;
 import javafx.collections.FXCollections;
-import javafx.concurrent.Worker;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ComboBox;
@@ -20,11 +17,12 @@ import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.StackPane;
 import javafx.stage.Stage;
-import javafx.scene.web.WebEngine;
-import javafx.scene.web.WebView;
+import javafx.stage.WindowEvent;
+import javafx.util.Duration;
+import javafx.util.StringConverter;
+import mapa.PoolMapa;
 import modelo.Finca;
 import modelo.Usuario;
-import netscape.javascript.JSObject;
 import util.ValidacionUtil;
 
 public class DialogoFincaController {
@@ -52,20 +50,23 @@ public class DialogoFincaController {
     @FXML
     private StackPane panelMapa;
     @FXML
-    private WebView webViewMapa;
-    @FXML
     private ProgressIndicator loadingMapa;
 
-    private WebEngine webEngine;
+    private PoolMapa.Uso usoMapa;
     private String coordenadasPoligono = "";
-    private boolean mapaListo = false;
     private boolean poligonoRequerido = false;
-    private boolean listenerAñadido = false; // Flag para evitar añadir múltiples listeners
-    private boolean mapaCargado = false; // Flag para evitar cargar el mapa múltiples veces
 
     private Stage stage;
     private Finca fincaResultado;
 
+    // Usuarios que se muestran en el desplegable por cada búsqueda de propietario
+    private static final int PROPIETARIOS_POR_BUSQUEDA = 50;
+
+    private final CargadorAsincrono cargador = new CargadorAsincrono();
+    private final PauseTransition esperaBusquedaPropietarios = new PauseTransition(Duration.millis(300));
+    private UsuarioDAO usuarioDAO;
+    private String ultimaBusquedaPropietarios;
+
     @FXML
     private void initialize() {
         comboEstado.setItems(FXCollections.observableArrayList(Finca.Estado.values()));
@@ -80,119 +81,30 @@ public class DialogoFincaController {
     /**
      * INICIALIZACIÓN DEL MAPA INTERACTIVO
      * 
-     * Este método carga el archivo HTML del mapa (mapa.html) en un WebView de JavaFX
-     * y establece la comunicación bidireccional entre Java y JavaScript.
+     * El mapa (mapa_simple.html) es un WebView compartido por todas las pantallas
+     * (ver PoolMapa): ya está cargado desde el arranque y aquí solo se coloca en
+     * panelMapa. Al cerrar el diálogo vuelve a la pantalla que lo tenía debajo.
      * 
      * ¿Cómo funciona la comunicación?
-     * 1. Java carga el HTML en el WebView
-     * 2. Java expone este controlador a JavaScript: window.javaController = this
-     * 3. JavaScript puede llamar métodos Java: window.javaController.guardarCoordenadasDesdeMapa()
-     * 4. Java puede llamar funciones JavaScript: webEngine.executeScript("inicializarMapa()")
+     * 1. Java expone este controlador a JavaScript: window.javaController = this
+     * 2. JavaScript puede llamar métodos Java: window.javaController.guardarCoordenadasDesdeMapa()
+     * 3. Java puede llamar funciones JavaScript: usoMapa.ejecutar("cargarCoordenadasDesdeJava(...)")
      * 
-     * IMPORTANTE: Hay mucha lógica de "espera" porque:
-     * - El HTML se carga de forma asíncrona
-     * - Leaflet.js dentro del HTML también se carga de forma asíncrona
-     * - Si intentas usar el mapa antes de que esté listo, falla
+     * Lo que se le pide al mapa antes de que esté listo se hace en cuanto lo
+     * esté (cuando PoolMapa llama a alEstarListo), sin esperas fijas.
      */
     private void inicializarMapa() {
-        if (webViewMapa == null) {
-            return;
-        }
-        
-        // Si ya se cargó el mapa, no hacer nada (evitar cargar múltiples veces)
-        if (webEngine != null && webEngine.getLoadWorker().getState() == Worker.State.SUCCEEDED) {
+        if (panelMapa == null) {
             return;
         }
-        
-        webEngine = webViewMapa.getEngine();
-        webViewMapa.managedProperty().bind(webViewMapa.visibleProperty());
-
         if (loadingMapa != null) {
             loadingMapa.managedProperty().bind(loadingMapa.visibleProperty());
-            loadingMapa.setVisible(false);
-        }
-
-        // Agregar listener solo una vez (evitar múltiples listeners)
-        if (!listenerAñadido) {
-            // Escuchar cuando el HTML termine de cargar
-            webEngine.getLoadWorker().stateProperty().addListener((observable, oldValue, newValue) -> {
-                if (newValue == Worker.State.SUCCEEDED) {
-                    mapaListo = true;
-                    mostrarIndicadorCarga(false);
-                    try {
-                        // PASO CRÍTICO: Exponer este controlador Java a JavaScript
-                        // Ahora JavaScript puede llamar: window.javaController.guardarCoordenadasDesdeMapa()
-                        JSObject window = (JSObject) webEngine.executeScript("window");
-                        window.setMember("javaController", this);
-                        
-                        // Llamar a JavaScript para inicializar el mapa
-                        // Usamos setTimeout porque Leaflet.js puede tardar en cargar
-                        // Este código JavaScript se ejecuta dentro del WebView
-                        webEngine.executeScript(
-                            "setTimeout(function() { " +
-                            "  console.log('Verificando Leaflet...'); " +
-                            "  console.log('L existe: ' + (typeof L !== 'undefined')); " +
-                            "  console.log('L.map existe: ' + (typeof L !== 'undefined' && typeof L.map !== 'undefined')); " +
-                            "  if (typeof inicializarMapaDesdeJava === 'function') { " +
-                            "    console.log('Llamando inicializarMapaDesdeJava...'); " +
-                            "    inicializarMapaDesdeJava(); " +
-                            "  } else if (typeof inicializarMapa === 'function') { " +
-                            "    console.log('Llamando inicializarMapa...'); " +
-                            "    inicializarMapa(); " +
-                            "  } else { " +
-                            "    console.error('Funciones de inicialización no encontradas'); " +
-                            "  } " +
-                            "}, 500);"
-                        );
-                        
-                        // Si estamos editando una finca existente, cargar sus coordenadas en el mapa
-                        if (!coordenadasPoligono.isBlank()) {
-                            // Esperar más tiempo (1500ms) para asegurar que el mapa esté completamente listo
-                            // IMPORTANTE: Escapamos las comillas y barras para evitar errores en JavaScript
-                            webEngine.executeScript(
-                                "setTimeout(function() { " +
-                                "  if (typeof cargarCoordenadasDesdeJava === 'function') { " +
-                                "    cargarCoordenadasDesdeJava('" + coordenadasPoligono.replace("\\", "\\\\").replace("'", "\\'") + "'); " +
-                                "  } " +
-                                "}, 1500);"
-                            );
-                        }
-                    } catch (Exception e) {
-                        System.err.println("No se pudo inicializar el mapa: " + e.getMessage());
-                        e.printStackTrace();
-                    }
-                } else if (newValue == Worker.State.RUNNING) {
-                    mapaListo = false;
-                    mostrarIndicadorCarga(true);
-                }
-            });
-            listenerAñadido = true;
-        }
-
-        // Cargar el HTML solo si no está cargado o está en estado inicial
-        if (!mapaCargado) {
-            Worker.State estado = webEngine.getLoadWorker().getState();
-            if (estado == Worker.State.READY || estado == Worker.State.FAILED || estado == Worker.State.CANCELLED) {
-                try {
-                    // Usar el mapa simple mejorado que muestra tiles reales
-                    System.out.println("Cargando mapa simple mejorado...");
-                    String html = leerRecursoComoString("/mapa/mapa_simple.html");
-                    if (html != null && !html.isEmpty()) {
-                        System.out.println("Mapa simple leído: " + html.length() + " caracteres");
-                        webEngine.loadContent(html);
-                        mapaCargado = true;
-                        System.out.println("Mapa cargado correctamente");
-                    } else {
-                        throw new Exception("No se pudo leer el archivo del mapa");
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error al cargar mapa: " + e.getMessage());
-                    e.printStackTrace();
-                    mostrarAlerta(Alert.AlertType.WARNING, "Error de mapa",
-                        "No se pudo cargar el mapa. Verifique la consola para más detalles.");
-                }
-            }
         }
+        usoMapa = PoolMapa.mostrarEn(panelMapa, this, true, uso -> {
+            mostrarIndicadorCarga(false);
+            cargarCoordenadasEnMapa();
+        });
+        mostrarIndicadorCarga(!usoMapa.estaListo());
     }
 
     private void mostrarIndicadorCarga(boolean mostrar) {
@@ -201,28 +113,13 @@ public class DialogoFincaController {
         }
     }
 
-    private void refrescarMapaWeb() {
-        if (webEngine == null || !mapaListo) {
-            return;
-        }
-        try {
-            webEngine.executeScript("window.refrescarMapaDesdeJava && window.refrescarMapaDesdeJava();");
-        } catch (Exception e) {
-            System.err.println("No se pudo refrescar el mapa: " + e.getMessage());
-        }
-    }
-
     private void cargarCoordenadasEnMapa() {
-        if (!mapaListo || webEngine == null || coordenadasPoligono == null || coordenadasPoligono.isBlank()) {
+        if (usoMapa == null || coordenadasPoligono == null || coordenadasPoligono.isBlank()) {
             return;
         }
-        try {
-            String datos = coordenadasPoligono.replace("\\", "\\\\").replace("'", "\\'");
-            webEngine.executeScript("window.cargarCoordenadasDesdeJava('" + datos + "');");
-            refrescarMapaWeb();
-        } catch (Exception e) {
-            System.err.println("Error al cargar coordenadas en el mapa: " + e.getMessage());
-        }
+        String datos = coordenadasPoligono.replace("\\", "\\\\").replace("'", "\\'");
+        usoMapa.ejecutar("window.cargarCoordenadasDesdeJava('" + datos + "');");
+        usoMapa.ejecutar("window.refrescarMapaDesdeJava && window.refrescarMapaDesdeJava();");
     }
 
     /**
@@ -260,6 +157,12 @@ public class DialogoFincaController {
 
     public void setStage(Stage stage) {
         this.stage = stage;
+        // Al cerrarse el diálogo (por cualquier vía) el mapa vuelve a la pantalla de debajo
+        stage.addEventHandler(WindowEvent.WINDOW_HIDDEN, e -> {
+            if (usoMapa != null) {
+                usoMapa.liberar();
+            }
+        });
     }
 
     public void setUsuarios(List<Usuario> usuarios) {
@@ -267,6 +170,82 @@ public class DialogoFincaController {
         comboPropietario.setItems(FXCollections.observableArrayList(usuarios));
     }
 
+    /**
+     * El propietario se elige de entre todos los usuarios, pero sin cargarlos
+     * todos: el desplegable se vuelve editable y lo que se escribe se busca en
+     * la base de datos (UsuarioDAO.listarPagina, la misma búsqueda que la tabla
+     * de usuarios) en segundo plano, mostrando los primeros resultados.
+     */
+    public void activarBusquedaPropietarios() {
+        usuarioDAO = new UsuarioDAO();
+        cargador.cancelarAlSalir(comboPropietario);
+        comboPropietario.setDisable(false);
+        comboPropietario.setEditable(true);
+        comboPropietario.setConverter(new StringConverter<>() {
+            @Override
+            public String toString(Usuario usuario) {
+                return usuario == null ? "" : usuario.toString();
+            }
+
+            @Override
+            public Usuario fromString(String texto) {
+                // Al confirmar el texto solo vale un usuario de la lista, no uno inventado
+                Usuario actual = comboPropietario.getValue();
+                if (actual != null && actual.toString().equals(texto)) {
+                    return actual;
+                }
+                return comboPropietario.getItems().stream()
+                    .filter(u -> u.toString().equals(texto))
+                    .findFirst()
+                    .orElse(null);
+            }
+        });
+        esperaBusquedaPropietarios.setOnFinished(event -> buscarPropietarios(comboPropietario.getEditor().getText()));
+        comboPropietario.getEditor().textProperty().addListener((obs, anterior, texto) -> {
+            // Elegir un usuario de la lista también cambia el texto: eso no es una búsqueda
+            if (!comboPropietario.getConverter().toString(comboPropietario.getValue()).equals(texto)) {
+                esperaBusquedaPropietarios.playFromStart();
+            }
+        });
+        buscarPropietarios(null);
+    }
+
+    private void buscarPropietarios(String texto) {
+        String filtro = texto == null ? "" : texto.trim();
+        if (filtro.equals(ultimaBusquedaPropietarios)) {
+            return;
+        }
+        ultimaBusquedaPropietarios = filtro;
+        cargador.cargar("propietarios",
+            () -> usuarioDAO.listarPagina(filtro.isEmpty() ? null : filtro, null, PROPIETARIOS_POR_BUSQUEDA),
+            this::mostrarPropietarios,
+            error -> {
+                ultimaBusquedaPropietarios = null;
+                mostrarError("No se pudieron buscar usuarios: " + error.getMessage());
+            });
+    }
+
+    private void mostrarPropietarios(List<Usuario> encontrados) {
+        Usuario seleccionado = comboPropietario.getValue();
+        String texto = comboPropietario.getEditor().getText();
+        List<Usuario> lista = new ArrayList<>(encontrados);
+        if (seleccionado != null && !lista.contains(seleccionado)) {
+            lista.add(0, seleccionado);
+        }
+        comboPropietario.getItems().setAll(lista);
+        if (seleccionado != null && comboPropietario.getValue() == null) {
+            comboPropietario.setValue(seleccionado);
+        }
+        // Cambiar los elementos puede reescribir el editor; se deja lo que el usuario escribía
+        if (texto != null && !texto.equals(comboPropietario.getEditor().getText())) {
+            comboPropietario.getEditor().setText(texto);
+            comboPropietario.getEditor().positionCaret(texto.length());
+        }
+        if (comboPropietario.isFocused() && !lista.isEmpty()) {
+            comboPropietario.show();
+        }
+    }
+
     public void configurarPropietarioFijo(Usuario usuario) {
         if (usuario == null) {
             return;
@@ -300,11 +279,14 @@ public class DialogoFincaController {
         pickerFechaRegistro.setValue(finca.getFechaRegistro());
         coordenadasPoligono = finca.getCoordenadasPoligono() != null ? finca.getCoordenadasPoligono() : "";
         if (finca.getPropietario() != null) {
-            comboPropietario.getSelectionModel().select(finca.getPropietario());
-        }
-        if (mapaListo) {
-            cargarCoordenadasEnMapa();
+            // Con la búsqueda activada el propietario puede no estar aún entre los resultados
+            if (comboPropietario.isEditable()) {
+                comboPropietario.setValue(finca.getPropietario());
+            } else {
+                comboPropietario.getSelectionModel().select(finca.getPropietario());
+            }
         }
+        cargarCoordenadasEnMapa();
     }
 
     @FXML
@@ -407,31 +389,5 @@ public class DialogoFincaController {
     public Finca getFincaResultado() {
         return fincaResultado;
     }
-    
-    /**
-     * Lee un archivo de recursos (HTML, CSS, JS) y lo devuelve como String.
-     * 
-     * ¿Por qué leer el HTML como String en lugar de cargarlo directamente?
-     * - Permite modificar el contenido antes de cargarlo (inyectar CSS/JS si es necesario)
-     * - Más control sobre el proceso de carga
-     * - Útil para debugging (puedes ver el HTML completo antes de cargarlo)
-     * 
-     * @param ruta Ruta del recurso dentro de src/main/resources (ej: "/mapa/mapa.html")
-     * @return El contenido completo del archivo como String
-     * @throws Exception Si el archivo no existe o no se puede leer
-     */
-    private String leerRecursoComoString(String ruta) throws Exception {
-        // getResourceAsStream busca el archivo en src/main/resources
-        try (InputStream is = getClass().getResourceAsStream(ruta)) {
-            if (is == null) {
-                throw new Exception("No se encontró el recurso: " + ruta);
-            }
-            // Leer el archivo línea por línea y unirlo con saltos de línea
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(is, StandardCharsets.UTF_8))) {
-                return reader.lines().collect(Collectors.joining("\n"));
-            }
-        }
-    }
 }
 
@@ -1,7 +1,7 @@
 package controlador;
 
+import carga.CargadorAsincrono;
 import crud.UsuarioDAO;
-import java.sql.SQLException;
 import javafx.fxml.FXML;
 import javafx.scene.control.Label;
 import javafx.scene.control.PasswordField;
@@ -32,6 +32,7 @@ public class DialogoPerfilUsuarioController {
     private Label lblMensaje;
 
     private final UsuarioDAO usuarioDAO = new UsuarioDAO();
+    private final CargadorAsincrono cargador = new CargadorAsincrono();
     private Usuario usuario;
     private Stage stage;
 
@@ -114,18 +115,22 @@ public class DialogoPerfilUsuarioController {
             nuevoPasswordPlano = passwordNueva;
         }
 
-        try {
-            usuario.setNombre(nuevoNombre);
-            usuario.setApellidos(nuevosApellidos);
-            usuario.setEmail(nuevoEmail);
-            usuario.setUsername(nuevoUsername);
-            usuarioDAO.actualizar(usuario, nuevoPasswordPlano);
-            Sesion.getInstancia().setUsuarioActual(usuario);
-            mostrarMensaje("Perfil actualizado correctamente.", false);
-            cerrar();
-        } catch (SQLException e) {
-            mostrarMensaje("No se pudieron guardar los cambios: " + e.getMessage(), true);
-        }
+        usuario.setNombre(nuevoNombre);
+        usuario.setApellidos(nuevosApellidos);
+        usuario.setEmail(nuevoEmail);
+        usuario.setUsername(nuevoUsername);
+        String passwordPlano = nuevoPasswordPlano;
+        mostrarMensaje("Guardando...", false);
+        cargador.escribir(() -> {
+                usuarioDAO.actualizar(usuario, passwordPlano);
+                return usuario;
+            },
+            guardado -> {
+                Sesion.getInstancia().setUsuarioActual(guardado);
+                mostrarMensaje("Perfil actualizado correctamente.", false);
+                cerrar();
+            },
+            error -> mostrarMensaje("No se pudieron guardar los cambios: " + error.getMessage(), true));
     }
 
     @FXML
@@ -0,0 +1,81 @@
+package crud;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Texto que escribe el usuario en un buscador, preparado para usarlo en SQL.
+ *
+ * Si todas las palabras tienen al menos LONGITUD_MINIMA_FULLTEXT letras se busca
+ * con el índice FULLTEXT (MATCH ... AGAINST en modo booleano): cada palabra debe
+ * aparecer como comienzo de alguna palabra de las columnas, en cualquier orden
+ * ("per jua" encuentra a "Juan Pérez"). Las palabras más cortas no están en el
+ * índice FULLTEXT de InnoDB, así que en ese caso se busca por prefijo con LIKE,
+ * que usa los índices normales de cada columna.
+ */
+final class BusquedaTexto {
+
+    /** innodb_ft_min_token_size por defecto. */
+    private static final int LONGITUD_MINIMA_FULLTEXT = 3;
+
+    private final String texto;
+    private final List<String> palabras;
+
+    private BusquedaTexto(String texto, List<String> palabras) {
+        this.texto = texto;
+        this.palabras = palabras;
+    }
+
+    /**
+     * @return La búsqueda, o null si el texto está vacío (sin filtro)
+     */
+    static BusquedaTexto de(String texto) {
+        if (texto == null || texto.isBlank()) {
+            return null;
+        }
+        String limpio = texto.trim().toLowerCase(Locale.ROOT);
+        List<String> palabras = new ArrayList<>();
+        for (String palabra : limpio.split("\\s+")) {
+            // Quitar los operadores del modo booleano para que el texto no cambie el significado de la consulta
+            String sinOperadores = palabra.replaceAll("[+\\-<>()~*\"@]", "");
+            if (!sinOperadores.isEmpty()) {
+                palabras.add(sinOperadores);
+            }
+        }
+        return new BusquedaTexto(limpio, palabras);
+    }
+
+    boolean usaFulltext() {
+        return !palabras.isEmpty()
+            && palabras.stream().allMatch(palabra -> palabra.length() >= LONGITUD_MINIMA_FULLTEXT);
+    }
+
+    /**
+     * Parámetro para MATCH ... AGAINST (? IN BOOLEAN MODE): "+juan* +per*".
+     */
+    String textoBooleano() {
+        StringBuilder booleano = new StringBuilder();
+        for (String palabra : palabras) {
+            if (!booleano.isEmpty()) {
+                booleano.append(' ');
+            }
+            booleano.append('+').append(palabra).append('*');
+        }
+        return booleano.toString();
+    }
+
+    /**
+     * Parámetro para LIKE ?: el texto completo como prefijo, con los comodines escapados.
+     */
+    String prefijoLike() {
+        return texto.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
+
+    /**
+     * Texto completo en mayúsculas, para compararlo con nombres de enum.
+     */
+    String textoMayusculas() {
+        return texto.toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,315 @@
+package crud;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import modelo.Cultivo;
+import modelo.Finca;
+import modelo.GestionFinanciera;
+import modelo.Tratamiento;
+
+/**
+ * CACHÉ DE ENTIDADES DE LA SESIÓN
+ *
+ * Al navegar entre el Dashboard y el detalle de una finca se vuelven a pedir
+ * las mismas fincas, cultivos, tratamientos y gestiones. FincaDAO, CultivoDAO,
+ * TratamientoDAO y GestionFinancieraDAO guardan aquí lo que leen y, la próxima
+ * vez, lo devuelven de memoria sin ir a MySQL.
+ *
+ * - Cada tipo tiene dos regiones: por id de la entidad y por id del padre
+ *   (usuario -> fincas, finca -> cultivos, cultivo -> tratamientos, finca -> gestiones).
+ * - Cada región es una LRU con un número máximo de entradas.
+ * - Escritura directa: guardar/actualizar/eliminar escriben en MySQL y además
+ *   actualizan la caché (la entidad y la lista de su padre), así lo que se lee
+ *   después ya incluye el cambio sin volver a consultar.
+ * - Las entradas caducan a los DURACION_MAXIMA_MS: la caché es de esta
+ *   aplicación, y lo que se cambie desde otro sitio (la web) se ve como mucho
+ *   con ese retraso.
+ * - Se vacía al cerrar sesión o cambiar de usuario (Sesion).
+ *
+ * Los aciertos y fallos de cada región se pueden consultar con metricas().
+ */
+public final class CacheEntidades {
+
+    private static final long DURACION_MAXIMA_MS = 2 * 60 * 1000;
+
+    static final Region<Integer, Finca> FINCAS = new Region<>("Fincas", 2000);
+    /** Clave null: todas las fincas (vista de administrador). */
+    static final Region<Integer, List<Finca>> FINCAS_POR_USUARIO = new Region<>("Fincas por usuario", 50);
+    static final Region<Integer, Cultivo> CULTIVOS = new Region<>("Cultivos", 5000);
+    static final Region<Integer, List<Cultivo>> CULTIVOS_POR_FINCA = new Region<>("Cultivos por finca", 200);
+    static final Region<Integer, Tratamiento> TRATAMIENTOS = new Region<>("Tratamientos", 5000);
+    static final Region<Integer, List<Tratamiento>> TRATAMIENTOS_POR_CULTIVO =
+        new Region<>("Tratamientos por cultivo", 500);
+    static final Region<Integer, GestionFinanciera> GESTIONES = new Region<>("Gestiones", 5000);
+    static final Region<Integer, List<GestionFinanciera>> GESTIONES_POR_FINCA =
+        new Region<>("Gestiones por finca", 200);
+
+    private static final List<Region<?, ?>> REGIONES = List.of(FINCAS, FINCAS_POR_USUARIO, CULTIVOS,
+        CULTIVOS_POR_FINCA, TRATAMIENTOS, TRATAMIENTOS_POR_CULTIVO, GESTIONES, GESTIONES_POR_FINCA);
+
+    private CacheEntidades() {
+        // Clase de utilidad, no se puede instanciar
+    }
+
+    /**
+     * Vacía todas las regiones (las métricas se conservan).
+     */
+    public static void limpiar() {
+        REGIONES.forEach(Region::limpiar);
+    }
+
+    public static List<Metrica> metricas() {
+        List<Metrica> metricas = new ArrayList<>();
+        for (Region<?, ?> region : REGIONES) {
+            metricas.add(region.metrica());
+        }
+        return metricas;
+    }
+
+    /**
+     * Lista de un padre leída a través de la caché. Si no está, se consulta, se
+     * guarda y se registran también sus elementos por id.
+     *
+     * @return Una copia: quien llama puede modificarla sin tocar la caché
+     */
+    static <E> List<E> listaDe(Region<Integer, List<E>> listas, Integer padre, Region<Integer, E> porId,
+                               Function<E, Integer> id, Consulta<List<E>> consulta) throws SQLException {
+        List<E> lista = listas.obtener(padre, () -> {
+            List<E> leida = consulta.ejecutar();
+            for (E elemento : leida) {
+                porId.poner(id.apply(elemento), elemento);
+            }
+            return List.copyOf(leida);
+        });
+        return new ArrayList<>(lista);
+    }
+
+    /**
+     * Escritura directa de una entidad guardada o actualizada: se registra por id,
+     * se quita de cualquier lista en la que estuviera (puede haber cambiado de
+     * padre) y se pone en la lista de su padre, si esa lista está en caché.
+     *
+     * @param orden Orden de la consulta del DAO, o null si no tiene ORDER BY
+     *              (entonces se conserva la posición o se añade al final)
+     */
+    static <E> void escribir(Region<Integer, E> porId, Region<Integer, List<E>> listas, Integer padre,
+                             E elemento, Function<E, Integer> id, Comparator<E> orden) {
+        Integer idElemento = id.apply(elemento);
+        porId.poner(idElemento, elemento);
+        listas.modificarTodas((clave, lista) -> {
+            List<E> nueva = new ArrayList<>(lista);
+            int posicion = -1;
+            for (int i = 0; i < nueva.size(); i++) {
+                if (Objects.equals(id.apply(nueva.get(i)), idElemento)) {
+                    posicion = i;
+                    break;
+                }
+            }
+            boolean esSuPadre = Objects.equals(clave, padre);
+            if (posicion >= 0 && esSuPadre) {
+                nueva.set(posicion, elemento);
+            } else if (posicion >= 0) {
+                nueva.remove(posicion);
+            } else if (esSuPadre) {
+                nueva.add(elemento);
+            } else {
+                return lista;
+            }
+            if (orden != null && esSuPadre) {
+                nueva.sort(orden);
+            }
+            return List.copyOf(nueva);
+        });
+    }
+
+    /**
+     * Escritura directa de muchas entidades a la vez (guardarTodos/actualizarTodos).
+     * Se registran por id; las listas de los padres afectados se descartan para
+     * que se vuelvan a leer, y de las demás listas solo se quitan las entidades
+     * que hayan cambiado de padre. Recorre cada lista una sola vez en lugar de
+     * una vez por entidad.
+     */
+    static <E> void escribirTodos(Region<Integer, E> porId, Region<Integer, List<E>> listas, List<E> elementos,
+                                  Function<E, Integer> id, Function<E, Integer> padre) {
+        Set<Integer> ids = new HashSet<>();
+        Set<Integer> padres = new HashSet<>();
+        for (E elemento : elementos) {
+            porId.poner(id.apply(elemento), elemento);
+            ids.add(id.apply(elemento));
+            padres.add(padre.apply(elemento));
+        }
+        listas.modificarTodas((clave, lista) -> {
+            if (padres.contains(clave)) {
+                return null;
+            }
+            if (lista.stream().noneMatch(e -> ids.contains(id.apply(e)))) {
+                return lista;
+            }
+            List<E> nueva = new ArrayList<>(lista);
+            nueva.removeIf(e -> ids.contains(id.apply(e)));
+            return List.copyOf(nueva);
+        });
+    }
+
+    /**
+     * Escritura directa de un borrado: se quita la entidad por id y de todas las listas.
+     */
+    static <E> void borrar(Region<Integer, E> porId, Region<Integer, List<E>> listas,
+                           Integer idElemento, Function<E, Integer> id) {
+        porId.quitar(idElemento);
+        listas.modificarTodas((clave, lista) -> {
+            if (lista.stream().noneMatch(e -> Objects.equals(id.apply(e), idElemento))) {
+                return lista;
+            }
+            List<E> nueva = new ArrayList<>(lista);
+            nueva.removeIf(e -> Objects.equals(id.apply(e), idElemento));
+            return List.copyOf(nueva);
+        });
+    }
+
+    /**
+     * Orden descendente por fecha con las fechas null al final, como ORDER BY ... DESC en MySQL.
+     */
+    static <E, F extends Comparable<? super F>> Comparator<E> masRecientePrimero(Function<E, F> fecha) {
+        return Comparator.comparing(fecha, Comparator.nullsFirst(Comparator.<F>naturalOrder())).reversed();
+    }
+
+    @FunctionalInterface
+    interface Consulta<V> {
+        V ejecutar() throws SQLException;
+    }
+
+    /**
+     * Aciertos y fallos de una región desde que arrancó la aplicación.
+     */
+    public record Metrica(String region, long aciertos, long fallos, int entradas) {
+
+        public double tasaAciertos() {
+            long total = aciertos + fallos;
+            return total == 0 ? 0 : (double) aciertos / total;
+        }
+    }
+
+    /**
+     * Un mapa LRU con caducidad y contadores de aciertos/fallos. Todos los accesos
+     * se sincronizan sobre la región: se usa desde el hilo de JavaFX y desde los
+     * hilos de EjecutorBD.
+     */
+    static final class Region<K, V> {
+
+        private final String nombre;
+        private final LinkedHashMap<K, Entrada<V>> entradas;
+        private long aciertos;
+        private long fallos;
+        // Cambia con cada escritura: una lectura de MySQL que empezó antes no debe pisar lo escrito
+        private long escrituras;
+
+        private Region(String nombre, int maximo) {
+            this.nombre = nombre;
+            this.entradas = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Entrada<V>> masAntigua) {
+                    return size() > maximo;
+                }
+            };
+        }
+
+        /**
+         * Devuelve el valor guardado o, si no está, lo consulta y lo guarda.
+         * La consulta se hace fuera del bloqueo para no parar al resto de hilos.
+         */
+        V obtener(K clave, Consulta<V> consulta) throws SQLException {
+            long escriturasAntes;
+            synchronized (this) {
+                V guardado = vigente(clave);
+                if (guardado != null) {
+                    aciertos++;
+                    return guardado;
+                }
+                fallos++;
+                escriturasAntes = escrituras;
+            }
+            V leido = consulta.ejecutar();
+            synchronized (this) {
+                if (escrituras == escriturasAntes) {
+                    entradas.put(clave, new Entrada<>(leido, System.currentTimeMillis()));
+                }
+            }
+            return leido;
+        }
+
+        /**
+         * Valor guardado sin contar acierto ni fallo (para uso interno de los DAO).
+         */
+        synchronized V consultar(K clave) {
+            return vigente(clave);
+        }
+
+        synchronized void poner(K clave, V valor) {
+            escrituras++;
+            entradas.put(clave, new Entrada<>(valor, System.currentTimeMillis()));
+        }
+
+        synchronized void quitar(K clave) {
+            escrituras++;
+            entradas.remove(clave);
+        }
+
+        /**
+         * Aplica un cambio a todas las entradas (sin alterar su orden LRU ni su caducidad).
+         * Si el cambio devuelve null, la entrada se quita.
+         */
+        synchronized void modificarTodas(CambioEntrada<K, V> cambio) {
+            escrituras++;
+            Iterator<Map.Entry<K, Entrada<V>>> it = entradas.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<K, Entrada<V>> entrada = it.next();
+                V anterior = entrada.getValue().valor();
+                V nuevo = cambio.aplicar(entrada.getKey(), anterior);
+                if (nuevo == null) {
+                    it.remove();
+                } else if (nuevo != anterior) {
+                    entrada.setValue(new Entrada<>(nuevo, entrada.getValue().creada()));
+                }
+            }
+        }
+
+        synchronized void limpiar() {
+            escrituras++;
+            entradas.clear();
+        }
+
+        private synchronized Metrica metrica() {
+            return new Metrica(nombre, aciertos, fallos, entradas.size());
+        }
+
+        private V vigente(K clave) {
+            Entrada<V> entrada = entradas.get(clave);
+            if (entrada == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() - entrada.creada() > DURACION_MAXIMA_MS) {
+                entradas.remove(clave);
+                return null;
+            }
+            return entrada.valor();
+        }
+    }
+
+    @FunctionalInterface
+    interface CambioEntrada<K, V> {
+        V aplicar(K clave, V valor);
+    }
+
+    private record Entrada<V>(V valor, long creada) {
+    }
+}
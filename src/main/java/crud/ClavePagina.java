@@ -0,0 +1,17 @@
+package crud;
+
+import java.time.LocalDate;
+
+/**
+ * Posición de una fila dentro de un listado ordenado por (fecha de registro DESC, id DESC).
+ *
+ * Las consultas paginadas de los DAO piden "las N filas que van después de esta
+ * clave" (paginación por clave o keyset) en lugar de usar OFFSET: MySQL salta
+ * directamente a la posición usando el índice, así que pedir la página 500 cuesta
+ * lo mismo que pedir la primera.
+ *
+ * @param fecha Fecha de registro de la fila (puede ser null en fincas antiguas)
+ * @param id Id de la fila, desempata filas con la misma fecha
+ */
+public record ClavePagina(LocalDate fecha, int id) {
+}
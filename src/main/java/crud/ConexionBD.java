@@ -2,11 +2,9 @@ package crud;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
-import java.io.IOException;
-import java.io.InputStream;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.Properties;
 
 /**
  * GESTIÓN DE CONEXIONES A LA BASE DE DATOS
@@ -26,13 +24,18 @@ import java.util.Properties;
  * - Detecta conexiones "perdidas" (que no se cerraron correctamente)
  * 
  * Configuración:
- * - Mínimo 2 conexiones siempre activas
- * - Máximo 10 conexiones simultáneas
+ * - El tamaño del pool, los timeouts y la caché de sentencias dependen del
+ *   perfil elegido en bbdd.properties (PerfilConexion, ConfiguracionBD). El
+ *   perfil por defecto, OFICINA, tiene un mínimo de 2 conexiones y un máximo de 10
  * - Las conexiones se cierran automáticamente después de 30 minutos
+ *
+ * Cómo se comporta el pool (conexiones ocupadas, esperas, latencia de cada
+ * consulta) se ve en MetricasBD.
  */
 public final class ConexionBD {
 
     private static HikariDataSource dataSource;  // El pool de conexiones
+    private static ConfiguracionBD configuracion;
     private static final Object lock = new Object();  // Para sincronización (thread-safe)
 
     private ConexionBD() {
@@ -40,7 +43,7 @@ public final class ConexionBD {
     }
 
     /**
-     * Inicializa el pool de conexiones leyendo la configuración de bbdd.properties.
+     * Inicializa el pool de conexiones con la configuración de bbdd.properties (ConfiguracionBD).
      * 
      * Usa "double-checked locking" para asegurar que solo se inicialice una vez,
      * incluso si múltiples hilos intentan inicializarlo al mismo tiempo.
@@ -57,88 +60,80 @@ public final class ConexionBD {
                 return;
             }
 
-            Properties properties = new Properties();
-            
-            try (InputStream input = ConexionBD.class.getClassLoader().getResourceAsStream("bbdd.properties")) {
-                if (input == null) {
-                    throw new SQLException("No se encontró el archivo bbdd.properties");
-                }
-                
-                properties.load(input);
-                
-                String IP = properties.getProperty("IP", "127.0.0.1");
-                String PORT = properties.getProperty("PORT", "3309");
-                String BBDD = properties.getProperty("BBDD");
-                String USER = properties.getProperty("USER");
-                String PWD = properties.getProperty("PWD");
-                
-                if (BBDD == null || USER == null || PWD == null) {
-                    throw new SQLException("Faltan propiedades requeridas en bbdd.properties (BBDD, USER, PWD)");
-                }
-                
-                HikariConfig config = new HikariConfig();
-                
-                /**
-                 * URL DE CONEXIÓN CON OPTIMIZACIONES
-                 * 
-                 * Los parámetros en la URL mejoran el rendimiento:
-                 * - useServerPrepStmts: Reutiliza consultas preparadas (más rápido)
-                 * - cachePrepStmts: Guarda consultas preparadas en caché
-                 * - rewriteBatchedStatements: Optimiza inserciones múltiples
-                 * - useUnicode + characterEncoding: Soporte para caracteres especiales (ñ, acentos, etc.)
-                 * - serverTimezone=UTC: Evita problemas con zonas horarias
-                 */
-                String jdbcUrl = "jdbc:mysql://" + IP + ":" + PORT + "/" + BBDD
-                    + "?useSSL=false"
-                    + "&allowPublicKeyRetrieval=true"
-                    + "&useServerPrepStmts=true"
-                    + "&cachePrepStmts=true"
-                    + "&prepStmtCacheSize=250"
-                    + "&prepStmtCacheSqlLimit=2048"
-                    + "&rewriteBatchedStatements=true"
-                    + "&cacheResultSetMetadata=true"
-                    + "&cacheServerConfiguration=true"
-                    + "&elideSetAutoCommits=true"
-                    + "&maintainTimeStats=false"
-                    + "&useLocalSessionState=true"
-                    + "&useUnicode=true"
-                    + "&characterEncoding=UTF-8"
-                    + "&serverTimezone=UTC";
-                
-                config.setJdbcUrl(jdbcUrl);
-                config.setUsername(USER);
-                config.setPassword(PWD);
-                
-                /**
-                 * CONFIGURACIÓN DEL POOL DE CONEXIONES
-                 * 
-                 * - MinimumIdle: Conexiones que siempre están listas (aunque no se usen)
-                 * - MaximumPoolSize: Límite de conexiones simultáneas (evita sobrecargar MySQL)
-                 * - ConnectionTimeout: Tiempo máximo para obtener una conexión del pool
-                 * - IdleTimeout: Si una conexión no se usa en 10 min, se cierra
-                 * - MaxLifetime: Las conexiones se renuevan cada 30 min (MySQL tiene límite de 8 horas)
-                 * - LeakDetectionThreshold: Detecta si olvidaste cerrar una conexión (útil para debug)
-                 */
-                config.setMinimumIdle(2);           // Mínimo de conexiones inactivas
-                config.setMaximumPoolSize(10);     // Máximo de conexiones en el pool
-                config.setConnectionTimeout(30000); // 30 segundos timeout para obtener conexión
-                config.setIdleTimeout(600000);      // 10 minutos antes de cerrar conexiones inactivas
-                config.setMaxLifetime(1800000);     // 30 minutos máximo de vida de una conexión
-                config.setLeakDetectionThreshold(60000); // Detectar conexiones que no se cierran (60 segundos)
-                
-                // Optimizaciones adicionales
-                config.addDataSourceProperty("cachePrepStmts", "true");
-                config.addDataSourceProperty("prepStmtCacheSize", "250");
-                config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
-                
-                dataSource = new HikariDataSource(config);
-                
-            } catch (IOException e) {
-                throw new SQLException("Error al leer el archivo bbdd.properties: " + e.getMessage(), e);
+            ConfiguracionBD conf = getConfiguracion();
+            HikariConfig config = new HikariConfig();
+
+            /**
+             * URL DE CONEXIÓN CON OPTIMIZACIONES
+             *
+             * Los parámetros de la URL (consultas preparadas en caché, lotes,
+             * timeouts, lectura por bloques...) los arma ConfiguracionBD según el perfil.
+             */
+            config.setJdbcUrl(conf.urlJdbc());
+            config.setUsername(conf.usuario());
+            config.setPassword(conf.password());
+
+            /**
+             * CONFIGURACIÓN DEL POOL DE CONEXIONES
+             *
+             * - MinimumIdle: Conexiones que siempre están listas (aunque no se usen)
+             * - MaximumPoolSize: Límite de conexiones simultáneas (evita sobrecargar MySQL)
+             * - ConnectionTimeout: Tiempo máximo para obtener una conexión del pool
+             * - KeepaliveTime: Cada cuánto se "toca" una conexión inactiva para que no la corte la red
+             * - IdleTimeout: Si una conexión no se usa en 10 min, se cierra
+             * - MaxLifetime: Las conexiones se renuevan cada 30 min (MySQL tiene límite de 8 horas)
+             * - LeakDetectionThreshold: Detecta si olvidaste cerrar una conexión (útil para debug)
+             *
+             * Los cuatro primeros dependen del perfil (PerfilConexion).
+             */
+            config.setMinimumIdle(conf.minimoInactivas());
+            config.setMaximumPoolSize(conf.maximoConexiones());
+            config.setConnectionTimeout(conf.esperaPoolMs());
+            if (conf.keepaliveMs() > 0) {
+                config.setKeepaliveTime(conf.keepaliveMs());
             }
+            config.setIdleTimeout(600000);      // 10 minutos antes de cerrar conexiones inactivas
+            config.setMaxLifetime(ConfiguracionBD.VIDA_MAXIMA_MS); // 30 minutos máximo de vida de una conexión
+            config.setLeakDetectionThreshold(60000); // Detectar conexiones que no se cierran (60 segundos)
+
+            // Optimizaciones adicionales
+            config.addDataSourceProperty("cachePrepStmts", "true");
+            config.addDataSourceProperty("prepStmtCacheSize", String.valueOf(conf.cacheSentencias()));
+            config.addDataSourceProperty("prepStmtCacheSqlLimit", String.valueOf(conf.limiteSqlCache()));
+
+            // Tiempo de adquisición y de uso de cada conexión, para MetricasBD
+            config.setMetricsTrackerFactory(MetricasBD.fabricaHikari());
+
+            dataSource = new HikariDataSource(config);
         }
     }
 
+    /**
+     * Configuración de bbdd.properties (y de las propiedades del sistema), leída
+     * y validada una sola vez.
+     *
+     * @throws SQLException Si falta algo o hay valores no válidos
+     */
+    static ConfiguracionBD getConfiguracion() throws SQLException {
+        synchronized (lock) {
+            if (configuracion == null) {
+                configuracion = ConfiguracionBD.cargar();
+            }
+            return configuracion;
+        }
+    }
+
+    /**
+     * Comprueba la configuración al arrancar, antes de la primera consulta, para
+     * avisar de un error en bbdd.properties en lugar de fallar más tarde.
+     *
+     * @return Resumen de la configuración en uso (perfil, servidor, pool), sin la contraseña
+     * @throws SQLException Con la lista de errores si la configuración no es válida
+     */
+    public static String validarConfiguracion() throws SQLException {
+        return getConfiguracion().descripcion();
+    }
+
     /**
      * Obtiene una conexión del pool.
      * 
@@ -149,15 +144,52 @@ public final class ConexionBD {
      * 
      * Si no cierras la conexión, el pool se quedará sin conexiones disponibles.
      * 
+     * Dentro de una UnidadDeTrabajo devuelve la conexión de la unidad: así todas
+     * las operaciones de la unidad van en la misma transacción.
+     *
      * @return Una conexión a la base de datos MySQL
      * @throws SQLException Si no se puede obtener una conexión (pool lleno, BD caída, etc.)
      */
     public static Connection obtenerConexion() throws SQLException {
+        Connection deLaUnidad = UnidadDeTrabajo.conexionEnCurso();
+        if (deLaUnidad != null) {
+            return deLaUnidad;
+        }
+        return obtenerConexionDelPool();
+    }
+
+    /**
+     * Pide una conexión al pool aunque haya una UnidadDeTrabajo en curso.
+     */
+    static Connection obtenerConexionDelPool() throws SQLException {
         if (dataSource == null) {
             inicializarDataSource();
         }
         // HikariCP maneja todo: busca una conexión disponible, espera si es necesario, etc.
-        return dataSource.getConnection();
+        return MetricasBD.instrumentar(dataSource.getConnection());
+    }
+
+    /**
+     * Estadísticas en vivo del pool, o null si todavía no se ha creado.
+     */
+    static HikariPoolMXBean getPoolMXBean() {
+        HikariDataSource actual = dataSource;
+        return actual != null ? actual.getHikariPoolMXBean() : null;
+    }
+
+    /**
+     * Número máximo de conexiones simultáneas del pool.
+     *
+     * Sirve para limitar los hilos que lanzan consultas en paralelo: más hilos
+     * que conexiones solo se quedarían esperando a que el pool quede libre.
+     */
+    public static int getTamanoMaximoPool() {
+        try {
+            return getConfiguracion().maximoConexiones();
+        } catch (SQLException e) {
+            // Configuración no válida: el pool no llegará a crearse y el error ya se avisa al arrancar
+            return PerfilConexion.OFICINA.getMaximoConexiones();
+        }
     }
 
     public static void cerrarPool() {
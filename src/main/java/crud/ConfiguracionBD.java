@@ -0,0 +1,191 @@
+package crud;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Configuración de la conexión leída de bbdd.properties y validada al arrancar.
+ *
+ * Además de IP, PORT, BBDD, USER y PWD admite:
+ *
+ *   PERFIL=REMOTO              OFICINA (por defecto), REMOTO o PORTATIL (ver PerfilConexion)
+ *   POOL_MAXIMO=8              Cualquier valor del perfil se puede cambiar suelto:
+ *   POOL_MINIMO=2              POOL_MAXIMO, POOL_MINIMO, FETCH_SIZE, CACHE_SENTENCIAS,
+ *   SOCKET_TIMEOUT_MS=240000   CACHE_SQL_LIMITE, CONNECT_TIMEOUT_MS, SOCKET_TIMEOUT_MS,
+ *                              ESPERA_POOL_MS y KEEPALIVE_MS
+ *
+ * Todo se puede indicar también como propiedad del sistema con el prefijo
+ * "agrotrack.bd." (java -Dagrotrack.bd.PERFIL=REMOTO ...), que tiene prioridad
+ * sobre el archivo. Así se ajusta la conexión a un MySQL remoto sin recompilar.
+ *
+ * Si algo no es válido, cargar() lanza una SQLException con todos los errores a
+ * la vez, para corregirlos de una pasada.
+ */
+record ConfiguracionBD(String ip, int puerto, String bbdd, String usuario, String password,
+                       PerfilConexion perfil, int maximoConexiones, int minimoInactivas, int tamanoFetch,
+                       int cacheSentencias, int limiteSqlCache, int timeoutConexionMs, int timeoutSocketMs,
+                       int esperaPoolMs, int keepaliveMs) {
+
+    static final String PREFIJO_SISTEMA = "agrotrack.bd.";
+
+    // Límites de HikariCP: connectionTimeout >= 250 ms, y keepaliveTime >= 30 s y
+    // menor que maxLifetime (ConexionBD usa 30 minutos)
+    private static final int ESPERA_POOL_MINIMA_MS = 250;
+    private static final int KEEPALIVE_MINIMO_MS = 30_000;
+    static final int VIDA_MAXIMA_MS = 1_800_000;
+
+    private static final int MAXIMO_CONEXIONES_PERMITIDO = 100;
+
+    static ConfiguracionBD cargar() throws SQLException {
+        Properties archivo = new Properties();
+        try (InputStream input = ConfiguracionBD.class.getClassLoader().getResourceAsStream("bbdd.properties")) {
+            if (input == null) {
+                throw new SQLException("No se encontró el archivo bbdd.properties");
+            }
+            archivo.load(input);
+        } catch (IOException e) {
+            throw new SQLException("Error al leer el archivo bbdd.properties: " + e.getMessage(), e);
+        }
+        return new Lector(archivo).leer();
+    }
+
+    /**
+     * URL de Connector/J con las optimizaciones fijas y las que dependen del perfil.
+     *
+     * - useServerPrepStmts + cachePrepStmts: las sentencias se preparan una vez
+     *   en el servidor y se reutilizan (tamaño según el perfil)
+     * - rewriteBatchedStatements: los lotes de EscrituraPorLotes van en un solo INSERT
+     * - connectTimeout / socketTimeout: no quedarse colgado si la red se cae
+     * - useCursorFetch + defaultFetchSize (solo si FETCH_SIZE > 0): los resultados
+     *   se leen por bloques en lugar de cargarse enteros en memoria
+     */
+    String urlJdbc() {
+        StringBuilder url = new StringBuilder("jdbc:mysql://").append(ip).append(':').append(puerto)
+            .append('/').append(bbdd)
+            .append("?useSSL=false")
+            .append("&allowPublicKeyRetrieval=true")
+            .append("&useServerPrepStmts=true")
+            .append("&cachePrepStmts=true")
+            .append("&prepStmtCacheSize=").append(cacheSentencias)
+            .append("&prepStmtCacheSqlLimit=").append(limiteSqlCache)
+            .append("&rewriteBatchedStatements=true")
+            .append("&cacheResultSetMetadata=true")
+            .append("&cacheServerConfiguration=true")
+            .append("&elideSetAutoCommits=true")
+            .append("&maintainTimeStats=false")
+            .append("&useLocalSessionState=true")
+            .append("&connectTimeout=").append(timeoutConexionMs)
+            .append("&socketTimeout=").append(timeoutSocketMs)
+            .append("&tcpKeepAlive=true")
+            .append("&useUnicode=true")
+            .append("&characterEncoding=UTF-8")
+            .append("&serverTimezone=UTC");
+        if (tamanoFetch > 0) {
+            url.append("&useCursorFetch=true&defaultFetchSize=").append(tamanoFetch);
+        }
+        return url.toString();
+    }
+
+    /**
+     * Resumen para mostrar (sin la contraseña).
+     */
+    String descripcion() {
+        return perfil + " - " + usuario + "@" + ip + ":" + puerto + "/" + bbdd
+            + ", " + minimoInactivas + "-" + maximoConexiones + " conexiones"
+            + (tamanoFetch > 0 ? ", fetch " + tamanoFetch : "")
+            + ", caché " + cacheSentencias + " sentencias"
+            + ", socket " + (timeoutSocketMs > 0 ? timeoutSocketMs / 1000 + " s" : "sin límite");
+    }
+
+    @Override
+    public String toString() {
+        // El toString de un record incluiría la contraseña
+        return descripcion();
+    }
+
+    /**
+     * Lee cada valor de las propiedades del sistema o del archivo y va apuntando
+     * los errores en lugar de parar en el primero.
+     */
+    private static final class Lector {
+
+        private final Properties archivo;
+        private final List<String> errores = new ArrayList<>();
+
+        private Lector(Properties archivo) {
+            this.archivo = archivo;
+        }
+
+        private ConfiguracionBD leer() throws SQLException {
+            String ip = valor("IP", "127.0.0.1");
+            int puerto = entero("PORT", 3309, 1, 65535);
+            String bbdd = valor("BBDD", null);
+            String usuario = valor("USER", null);
+            String password = valor("PWD", null);
+            if (bbdd == null || usuario == null || password == null) {
+                errores.add("Faltan propiedades requeridas en bbdd.properties (BBDD, USER, PWD)");
+            }
+
+            PerfilConexion perfil = PerfilConexion.OFICINA;
+            String nombrePerfil = valor("PERFIL", null);
+            if (nombrePerfil != null) {
+                try {
+                    perfil = PerfilConexion.valueOf(nombrePerfil.trim().toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    errores.add("PERFIL desconocido: \"" + nombrePerfil + "\". Valores válidos: "
+                        + Arrays.toString(PerfilConexion.values()));
+                }
+            }
+
+            int maximo = entero("POOL_MAXIMO", perfil.getMaximoConexiones(), 1, MAXIMO_CONEXIONES_PERMITIDO);
+            int minimo = entero("POOL_MINIMO", Math.min(perfil.getMinimoInactivas(), maximo), 0, maximo);
+            int fetch = entero("FETCH_SIZE", perfil.getTamanoFetch(), 0, 100_000);
+            int cache = entero("CACHE_SENTENCIAS", perfil.getCacheSentencias(), 0, 10_000);
+            int limiteSql = entero("CACHE_SQL_LIMITE", perfil.getLimiteSqlCache(), 0, 1_000_000);
+            int conectar = entero("CONNECT_TIMEOUT_MS", perfil.getTimeoutConexionMs(), 0, Integer.MAX_VALUE);
+            int socket = entero("SOCKET_TIMEOUT_MS", perfil.getTimeoutSocketMs(), 0, Integer.MAX_VALUE);
+            int esperaPool = entero("ESPERA_POOL_MS", perfil.getEsperaPoolMs(), ESPERA_POOL_MINIMA_MS,
+                Integer.MAX_VALUE);
+            int keepalive = entero("KEEPALIVE_MS", perfil.getKeepaliveMs(), 0, VIDA_MAXIMA_MS - 1);
+            if (keepalive > 0 && keepalive < KEEPALIVE_MINIMO_MS) {
+                errores.add("KEEPALIVE_MS debe ser 0 (desactivado) o al menos " + KEEPALIVE_MINIMO_MS);
+            }
+
+            if (!errores.isEmpty()) {
+                throw new SQLException("Configuración de la base de datos no válida:\n- "
+                    + String.join("\n- ", errores));
+            }
+            return new ConfiguracionBD(ip, puerto, bbdd, usuario, password, perfil, maximo, minimo, fetch,
+                cache, limiteSql, conectar, socket, esperaPool, keepalive);
+        }
+
+        private String valor(String clave, String porDefecto) {
+            String valor = System.getProperty(PREFIJO_SISTEMA + clave, archivo.getProperty(clave));
+            return valor == null || valor.isBlank() ? porDefecto : valor.trim();
+        }
+
+        private int entero(String clave, int porDefecto, int minimo, int maximo) {
+            String texto = valor(clave, null);
+            if (texto == null) {
+                return porDefecto;
+            }
+            try {
+                int numero = Integer.parseInt(texto.replace("_", ""));
+                if (numero < minimo || numero > maximo) {
+                    errores.add(clave + " debe estar entre " + minimo + " y " + maximo + " (valor: " + numero + ")");
+                    return porDefecto;
+                }
+                return numero;
+            } catch (NumberFormatException e) {
+                errores.add(clave + " debe ser un número entero (valor: \"" + texto + "\")");
+                return porDefecto;
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package crud;
 
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
@@ -8,6 +9,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import modelo.Cultivo;
 import modelo.Finca;
@@ -19,7 +21,28 @@ public class CultivoDAO {
             + "CUL_ESTADO, CUL_PRODUCCION_KG, CUL_REND_ESTIMADO, CUL_REND_REAL "
             + "FROM cultivo ";
 
+    private static final String SQL_INSERTAR =
+        "INSERT INTO cultivo (CUL_FIN_ID, CUL_NOMBRE, CUL_VARIEDAD, CUL_FECHA_SIEMBRA, "
+            + "CUL_FECHA_COSECHA, CUL_ESTADO, CUL_PRODUCCION_KG, CUL_REND_ESTIMADO, CUL_REND_REAL) "
+            + "VALUES (?,?,?,?,?,?,?,?,?)";
+
+    private static final String SQL_ACTUALIZAR =
+        "UPDATE cultivo SET CUL_FIN_ID=?, CUL_NOMBRE=?, CUL_VARIEDAD=?, CUL_FECHA_SIEMBRA=?, "
+            + "CUL_FECHA_COSECHA=?, CUL_ESTADO=?, CUL_PRODUCCION_KG=?, CUL_REND_ESTIMADO=?, CUL_REND_REAL=? "
+            + "WHERE CUL_ID=?";
+
+    private static final Comparator<Cultivo> ORDEN_LISTADO = CacheEntidades.masRecientePrimero(Cultivo::getFechaSiembra);
+
+    /**
+     * Cultivos de una finca, de la siembra más reciente a la más antigua.
+     * Pasa por CacheEntidades: volver a la misma finca no repite la consulta.
+     */
     public List<Cultivo> listarPorFinca(int fincaId) throws SQLException {
+        return CacheEntidades.listaDe(CacheEntidades.CULTIVOS_POR_FINCA, fincaId, CacheEntidades.CULTIVOS,
+            Cultivo::getId, () -> consultarPorFinca(fincaId));
+    }
+
+    private List<Cultivo> consultarPorFinca(int fincaId) throws SQLException {
         String sql = SELECT_BASE + "WHERE CUL_FIN_ID = ? ORDER BY CUL_FECHA_SIEMBRA DESC";
         try (Connection conn = ConexionBD.obtenerConexion();
              PreparedStatement ps = conn.prepareStatement(sql)) {
@@ -33,39 +56,146 @@ public class CultivoDAO {
         }
     }
 
+    /**
+     * Totales mensuales de rendimiento estimado y real para la gráfica de producción.
+     *
+     * Agrupa en MySQL por el mes de cosecha (o de siembra si aún no hay cosecha),
+     * así el dashboard obtiene los 12 meses en una sola consulta en lugar de
+     * listar los cultivos finca a finca. Como rendimiento real se usa
+     * CUL_REND_REAL y, si falta, CUL_PRODUCCION_KG.
+     *
+     * @param usuarioId Propietario de las fincas; null para incluir todas (administrador)
+     * @return Siempre 12 elementos, de enero a diciembre, con ceros en los meses sin datos
+     */
+    public List<RendimientoMensual> totalesRendimientoPorMes(Integer usuarioId) throws SQLException {
+        String sql = "SELECT MONTH(COALESCE(c.CUL_FECHA_COSECHA, c.CUL_FECHA_SIEMBRA)) AS mes, "
+            + "COALESCE(SUM(c.CUL_REND_ESTIMADO), 0) AS estimado, "
+            + "COALESCE(SUM(COALESCE(c.CUL_REND_REAL, c.CUL_PRODUCCION_KG)), 0) AS obtenido "
+            + "FROM cultivo c JOIN finca f ON c.CUL_FIN_ID = f.FIN_ID "
+            + "WHERE COALESCE(c.CUL_FECHA_COSECHA, c.CUL_FECHA_SIEMBRA) IS NOT NULL "
+            + (usuarioId != null ? "AND f.FIN_USU_ID = ? " : "")
+            + "GROUP BY mes";
+        BigDecimal[] estimados = new BigDecimal[12];
+        BigDecimal[] reales = new BigDecimal[12];
+        try (Connection conn = ConexionBD.obtenerConexion();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            if (usuarioId != null) {
+                ps.setInt(1, usuarioId);
+            }
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                int mes = rs.getInt("mes");
+                if (mes >= 1 && mes <= 12) {
+                    estimados[mes - 1] = rs.getBigDecimal("estimado");
+                    reales[mes - 1] = rs.getBigDecimal("obtenido");
+                }
+            }
+        }
+        List<RendimientoMensual> totales = new ArrayList<>(12);
+        for (int i = 0; i < 12; i++) {
+            totales.add(new RendimientoMensual(i + 1,
+                estimados[i] != null ? estimados[i] : BigDecimal.ZERO,
+                reales[i] != null ? reales[i] : BigDecimal.ZERO));
+        }
+        return totales;
+    }
+
     public Cultivo guardar(Cultivo cultivo) throws SQLException {
-        String sql = "INSERT INTO cultivo (CUL_FIN_ID, CUL_NOMBRE, CUL_VARIEDAD, CUL_FECHA_SIEMBRA, "
-            + "CUL_FECHA_COSECHA, CUL_ESTADO, CUL_PRODUCCION_KG, CUL_REND_ESTIMADO, CUL_REND_REAL) "
-            + "VALUES (?,?,?,?,?,?,?,?,?)";
         try (Connection conn = ConexionBD.obtenerConexion();
-             PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+             PreparedStatement ps = conn.prepareStatement(SQL_INSERTAR, Statement.RETURN_GENERATED_KEYS)) {
             setParametros(ps, cultivo);
             ps.executeUpdate();
             ResultSet keys = ps.getGeneratedKeys();
             if (keys.next()) {
                 cultivo.setId(keys.getInt(1));
+                UnidadDeTrabajo.alDeshacer(() -> cultivo.setId(null));
             }
+            UnidadDeTrabajo.alConfirmar(() -> {
+                VersionDatos.fincaModificada(cultivo.getFincaId());
+                CacheEntidades.escribir(CacheEntidades.CULTIVOS, CacheEntidades.CULTIVOS_POR_FINCA,
+                    cultivo.getFincaId(), cultivo, Cultivo::getId, ORDEN_LISTADO);
+            });
             return cultivo;
         }
     }
 
     public void actualizar(Cultivo cultivo) throws SQLException {
-        String sql = "UPDATE cultivo SET CUL_FIN_ID=?, CUL_NOMBRE=?, CUL_VARIEDAD=?, CUL_FECHA_SIEMBRA=?, "
-            + "CUL_FECHA_COSECHA=?, CUL_ESTADO=?, CUL_PRODUCCION_KG=?, CUL_REND_ESTIMADO=?, CUL_REND_REAL=? "
-            + "WHERE CUL_ID=?";
         try (Connection conn = ConexionBD.obtenerConexion();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+             PreparedStatement ps = conn.prepareStatement(SQL_ACTUALIZAR)) {
             setParametros(ps, cultivo);
             ps.setInt(10, cultivo.getId());
             ps.executeUpdate();
+            UnidadDeTrabajo.alConfirmar(() -> {
+                VersionDatos.fincaModificada(cultivo.getFincaId());
+                CacheEntidades.escribir(CacheEntidades.CULTIVOS, CacheEntidades.CULTIVOS_POR_FINCA,
+                    cultivo.getFincaId(), cultivo, Cultivo::getId, ORDEN_LISTADO);
+            });
+        }
+    }
+
+    /**
+     * Inserta varios cultivos en una sola transacción, por lotes de
+     * EscrituraPorLotes.TAMANO_LOTE (un viaje a MySQL por lote). Cada cultivo
+     * recibe su id generado. Si uno falla no se guarda ninguno.
+     */
+    public List<Cultivo> guardarTodos(List<Cultivo> cultivos) throws SQLException {
+        if (cultivos.isEmpty()) {
+            return cultivos;
         }
+        try (Connection conn = ConexionBD.obtenerConexion()) {
+            EscrituraPorLotes.enTransaccion(conn, () ->
+                EscrituraPorLotes.insertar(conn, SQL_INSERTAR, cultivos, this::setParametros, Cultivo::setId));
+        }
+        escritos(cultivos);
+        return cultivos;
+    }
+
+    /**
+     * Actualiza varios cultivos en una sola transacción, por lotes.
+     */
+    public void actualizarTodos(List<Cultivo> cultivos) throws SQLException {
+        if (cultivos.isEmpty()) {
+            return;
+        }
+        try (Connection conn = ConexionBD.obtenerConexion()) {
+            EscrituraPorLotes.enTransaccion(conn, () ->
+                EscrituraPorLotes.actualizar(conn, SQL_ACTUALIZAR, cultivos, (ps, cultivo) -> {
+                    setParametros(ps, cultivo);
+                    ps.setInt(10, cultivo.getId());
+                }));
+        }
+        escritos(cultivos);
+    }
+
+    private void escritos(List<Cultivo> cultivos) {
+        UnidadDeTrabajo.alConfirmar(() -> {
+            cultivos.stream().map(Cultivo::getFincaId).distinct().forEach(VersionDatos::fincaModificada);
+            CacheEntidades.escribirTodos(CacheEntidades.CULTIVOS, CacheEntidades.CULTIVOS_POR_FINCA, cultivos,
+                Cultivo::getId, Cultivo::getFincaId);
+        });
     }
 
     public boolean eliminar(int cultivoId) throws SQLException {
         try (Connection conn = ConexionBD.obtenerConexion();
              PreparedStatement ps = conn.prepareStatement("DELETE FROM cultivo WHERE CUL_ID=?")) {
             ps.setInt(1, cultivoId);
-            return ps.executeUpdate() > 0;
+            boolean eliminado = ps.executeUpdate() > 0;
+            if (eliminado) {
+                UnidadDeTrabajo.alConfirmar(() -> {
+                    Cultivo anterior = CacheEntidades.CULTIVOS.consultar(cultivoId);
+                    if (anterior != null) {
+                        VersionDatos.fincaModificada(anterior.getFincaId());
+                    } else {
+                        // Sin el cultivo en caché no se sabe su finca: se invalidan todas
+                        VersionDatos.todoModificado();
+                    }
+                    CacheEntidades.borrar(CacheEntidades.CULTIVOS, CacheEntidades.CULTIVOS_POR_FINCA,
+                        cultivoId, Cultivo::getId);
+                    // Sus tratamientos se borran con él
+                    CacheEntidades.TRATAMIENTOS_POR_CULTIVO.quitar(cultivoId);
+                });
+            }
+            return eliminado;
         }
     }
 
@@ -112,5 +242,7 @@ public class CultivoDAO {
         cultivo.setRendimientoReal(rs.getBigDecimal("CUL_REND_REAL"));
         return cultivo;
     }
-}
 
+    public record RendimientoMensual(int mes, BigDecimal estimado, BigDecimal real) {
+    }
+}
@@ -0,0 +1,117 @@
+package crud;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Inserciones y actualizaciones de muchas filas con addBatch/executeBatch.
+ *
+ * La URL de ConexionBD lleva rewriteBatchedStatements=true, así que el driver
+ * de MySQL convierte cada lote de INSERT en un único INSERT ... VALUES (...), (...)
+ * y cada lote de UPDATE en un único envío: un viaje a la base de datos por lote
+ * en lugar de uno por fila. Los lotes son de TAMANO_LOTE filas para que ningún
+ * paquete supere max_allowed_packet.
+ *
+ * Lo usan los métodos guardarTodos/actualizarTodos de los DAO dentro de
+ * enTransaccion: o se escriben todas las filas o ninguna.
+ */
+final class EscrituraPorLotes {
+
+    static final int TAMANO_LOTE = 500;
+
+    private EscrituraPorLotes() {
+        // Clase de utilidad, no se puede instanciar
+    }
+
+    @FunctionalInterface
+    interface Parametros<E> {
+        void asignar(PreparedStatement ps, E elemento) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface Trabajo {
+        void ejecutar() throws SQLException;
+    }
+
+    /**
+     * Ejecuta el trabajo en una transacción sobre la conexión: commit si todo va
+     * bien, rollback si falla. Deja la conexión en autocommit como estaba, porque
+     * vuelve al pool.
+     *
+     * Dentro de una UnidadDeTrabajo la transacción es la de la unidad: el trabajo
+     * se ejecuta sin más y el commit lo hace la unidad al terminar.
+     */
+    static void enTransaccion(Connection conn, Trabajo trabajo) throws SQLException {
+        if (UnidadDeTrabajo.estaEnCurso()) {
+            trabajo.ejecutar();
+            return;
+        }
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            trabajo.ejecutar();
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Inserta los elementos por lotes y les asigna el id generado, en el mismo orden.
+     * Si falla, los ids ya asignados se vuelven a poner a null (la transacción se deshace).
+     */
+    static <E> void insertar(Connection conn, String sql, List<E> elementos, Parametros<E> parametros,
+                             BiConsumer<E, Integer> asignarId) throws SQLException {
+        int conId = 0;
+        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (int inicio = 0; inicio < elementos.size(); inicio += TAMANO_LOTE) {
+                List<E> lote = elementos.subList(inicio, Math.min(inicio + TAMANO_LOTE, elementos.size()));
+                for (E elemento : lote) {
+                    parametros.asignar(ps, elemento);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (E elemento : lote) {
+                        if (!keys.next()) {
+                            throw new SQLException("MySQL no devolvió el id de todas las filas insertadas");
+                        }
+                        asignarId.accept(elemento, keys.getInt(1));
+                        conId++;
+                    }
+                }
+            }
+            UnidadDeTrabajo.alDeshacer(() -> elementos.forEach(elemento -> asignarId.accept(elemento, null)));
+        } catch (SQLException e) {
+            for (int i = 0; i < conId; i++) {
+                asignarId.accept(elementos.get(i), null);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Ejecuta la sentencia (normalmente un UPDATE) una vez por elemento, por lotes.
+     */
+    static <E> void actualizar(Connection conn, String sql, List<E> elementos, Parametros<E> parametros)
+            throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int inicio = 0; inicio < elementos.size(); inicio += TAMANO_LOTE) {
+                List<E> lote = elementos.subList(inicio, Math.min(inicio + TAMANO_LOTE, elementos.size()));
+                for (E elemento : lote) {
+                    parametros.asignar(ps, elemento);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import modelo.Finca;
 import modelo.Usuario;
@@ -21,7 +22,27 @@ public class FincaDAO {
             + "u.USU_ID, u.USU_NOMBRE, u.USU_APELLIDOS "
             + "FROM finca f LEFT JOIN usuario u ON f.FIN_USU_ID = u.USU_ID ";
 
+    private static final String SQL_INSERTAR =
+        "INSERT INTO finca (FIN_USU_ID, FIN_NOMBRE, FIN_UBICACION, FIN_SUPERFICIE, FIN_TIPO_SUELO, "
+            + "FIN_COORD_POLIGONO, FIN_SISTEMA_RIEGO, FIN_ESTADO, FIN_FECHA_REGISTRO) VALUES (?,?,?,?,?,?,?,?,?)";
+
+    private static final String SQL_ACTUALIZAR =
+        "UPDATE finca SET FIN_USU_ID=?, FIN_NOMBRE=?, FIN_UBICACION=?, FIN_SUPERFICIE=?, "
+            + "FIN_TIPO_SUELO=?, FIN_COORD_POLIGONO=?, FIN_SISTEMA_RIEGO=?, FIN_ESTADO=?, FIN_FECHA_REGISTRO=? "
+            + "WHERE FIN_ID=?";
+
+    private static final Comparator<Finca> ORDEN_REGISTRO = CacheEntidades.masRecientePrimero(Finca::getFechaRegistro);
+
+    /**
+     * Todas las fincas, de la registrada más recientemente a la más antigua.
+     * Pasa por CacheEntidades (con clave null en FINCAS_POR_USUARIO).
+     */
     public List<Finca> listarTodas() throws SQLException {
+        return CacheEntidades.listaDe(CacheEntidades.FINCAS_POR_USUARIO, null, CacheEntidades.FINCAS,
+            Finca::getId, this::consultarTodas);
+    }
+
+    private List<Finca> consultarTodas() throws SQLException {
         try (Connection conn = ConexionBD.obtenerConexion();
              PreparedStatement ps = conn.prepareStatement(SELECT_BASE + "ORDER BY f.FIN_FECHA_REGISTRO DESC")) {
             ResultSet rs = ps.executeQuery();
@@ -33,7 +54,15 @@ public class FincaDAO {
         }
     }
 
+    /**
+     * Fincas de un usuario. Pasa por CacheEntidades: volver al Dashboard no repite la consulta.
+     */
     public List<Finca> listarPorUsuario(int usuarioId) throws SQLException {
+        return CacheEntidades.listaDe(CacheEntidades.FINCAS_POR_USUARIO, usuarioId, CacheEntidades.FINCAS,
+            Finca::getId, () -> consultarPorUsuario(usuarioId));
+    }
+
+    private List<Finca> consultarPorUsuario(int usuarioId) throws SQLException {
         try (Connection conn = ConexionBD.obtenerConexion();
              PreparedStatement ps = conn.prepareStatement(SELECT_BASE + "WHERE f.FIN_USU_ID = ?")) {
             ps.setInt(1, usuarioId);
@@ -46,65 +75,265 @@ public class FincaDAO {
         }
     }
 
+    /**
+     * Una página del listado de todas las fincas, de la registrada más recientemente a la más antigua.
+     *
+     * Paginación por clave sobre el índice (FIN_FECHA_REGISTRO, FIN_ID), igual que
+     * UsuarioDAO.listarPagina. Las fincas sin fecha de registro van al final.
+     *
+     * @param busqueda Texto a buscar en el nombre de la finca o de su propietario, o null para todas
+     * @param despuesDe Clave de la última fila de la página anterior, o null para la primera
+     * @param tamano Número máximo de filas
+     */
+    public List<Finca> listarPagina(String busqueda, ClavePagina despuesDe, int tamano) throws SQLException {
+        List<String> condiciones = new ArrayList<>();
+        List<Object> parametros = new ArrayList<>();
+        filtrarPorBusqueda(BusquedaTexto.de(busqueda), condiciones, parametros);
+        if (despuesDe != null && despuesDe.fecha() != null) {
+            condiciones.add("(f.FIN_FECHA_REGISTRO < ? OR (f.FIN_FECHA_REGISTRO = ? AND f.FIN_ID < ?) "
+                + "OR f.FIN_FECHA_REGISTRO IS NULL)");
+            parametros.add(Date.valueOf(despuesDe.fecha()));
+            parametros.add(Date.valueOf(despuesDe.fecha()));
+            parametros.add(despuesDe.id());
+        } else if (despuesDe != null) {
+            condiciones.add("f.FIN_FECHA_REGISTRO IS NULL AND f.FIN_ID < ?");
+            parametros.add(despuesDe.id());
+        }
+        parametros.add(tamano);
+        String sql = SELECT_BASE + where(condiciones) + "ORDER BY f.FIN_FECHA_REGISTRO DESC, f.FIN_ID DESC LIMIT ?";
+        try (Connection conn = ConexionBD.obtenerConexion();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            asignar(ps, parametros);
+            ResultSet rs = ps.executeQuery();
+            List<Finca> fincas = new ArrayList<>();
+            while (rs.next()) {
+                fincas.add(mapear(rs));
+            }
+            return fincas;
+        }
+    }
+
+    /**
+     * Clave de la fila que ocupa la posición indicada (empezando en 0) en el listado
+     * paginado, o null si no existe.
+     */
+    public ClavePagina claveEnPosicion(String busqueda, int posicion) throws SQLException {
+        List<String> condiciones = new ArrayList<>();
+        List<Object> parametros = new ArrayList<>();
+        filtrarPorBusqueda(BusquedaTexto.de(busqueda), condiciones, parametros);
+        parametros.add(posicion);
+        String sql = "SELECT f.FIN_FECHA_REGISTRO, f.FIN_ID FROM finca f LEFT JOIN usuario u ON f.FIN_USU_ID = u.USU_ID "
+            + where(condiciones) + "ORDER BY f.FIN_FECHA_REGISTRO DESC, f.FIN_ID DESC LIMIT 1 OFFSET ?";
+        try (Connection conn = ConexionBD.obtenerConexion();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            asignar(ps, parametros);
+            ResultSet rs = ps.executeQuery();
+            if (!rs.next()) {
+                return null;
+            }
+            Date fecha = rs.getDate(1);
+            return new ClavePagina(fecha != null ? fecha.toLocalDate() : null, rs.getInt(2));
+        }
+    }
+
+    public static ClavePagina claveDe(Finca finca) {
+        return new ClavePagina(finca.getFechaRegistro(), finca.getId());
+    }
+
+    public int contar(String busqueda) throws SQLException {
+        List<String> condiciones = new ArrayList<>();
+        List<Object> parametros = new ArrayList<>();
+        filtrarPorBusqueda(BusquedaTexto.de(busqueda), condiciones, parametros);
+        String sql = "SELECT COUNT(*) FROM finca f LEFT JOIN usuario u ON f.FIN_USU_ID = u.USU_ID " + where(condiciones);
+        try (Connection conn = ConexionBD.obtenerConexion();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            asignar(ps, parametros);
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Busca en el nombre de la finca y en el nombre y apellidos del propietario.
+     * Con palabras de 3 o más letras usa los índices FULLTEXT ft_finca_nombre y
+     * ft_usuario_nombre (el del propietario como subconsulta, para que cada MATCH
+     * use su propio índice); con texto más corto, prefijo con LIKE. Escribir el
+     * nombre de un estado ("activa") muestra también las fincas en ese estado.
+     */
+    private static void filtrarPorBusqueda(BusquedaTexto busqueda, List<String> condiciones, List<Object> parametros) {
+        if (busqueda == null) {
+            return;
+        }
+        StringBuilder condicion = new StringBuilder("(");
+        if (busqueda.usaFulltext()) {
+            condicion.append("MATCH(f.FIN_NOMBRE) AGAINST (? IN BOOLEAN MODE) OR f.FIN_USU_ID IN ("
+                + "SELECT USU_ID FROM usuario WHERE MATCH(USU_NOMBRE, USU_APELLIDOS) AGAINST (? IN BOOLEAN MODE))");
+            parametros.add(busqueda.textoBooleano());
+            parametros.add(busqueda.textoBooleano());
+        } else {
+            condicion.append("f.FIN_NOMBRE LIKE ? OR u.USU_NOMBRE LIKE ? OR u.USU_APELLIDOS LIKE ?");
+            for (int i = 0; i < 3; i++) {
+                parametros.add(busqueda.prefijoLike());
+            }
+        }
+        for (Finca.Estado estado : Finca.Estado.values()) {
+            if (estado.name().equals(busqueda.textoMayusculas())) {
+                condicion.append(" OR f.FIN_ESTADO = ?");
+                parametros.add(estado.name().toLowerCase());
+            }
+        }
+        condiciones.add(condicion.append(")").toString());
+    }
+
+    private static String where(List<String> condiciones) {
+        return condiciones.isEmpty() ? "" : "WHERE " + String.join(" AND ", condiciones) + " ";
+    }
+
+    private static void asignar(PreparedStatement ps, List<Object> parametros) throws SQLException {
+        for (int i = 0; i < parametros.size(); i++) {
+            ps.setObject(i + 1, parametros.get(i));
+        }
+    }
+
+    public int contarPorEstado(Finca.Estado estado) throws SQLException {
+        try (Connection conn = ConexionBD.obtenerConexion();
+             PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM finca WHERE FIN_ESTADO = ?")) {
+            ps.setString(1, estado.name().toLowerCase());
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
     public Finca guardar(Finca finca) throws SQLException {
-        String sql = "INSERT INTO finca (FIN_USU_ID, FIN_NOMBRE, FIN_UBICACION, FIN_SUPERFICIE, FIN_TIPO_SUELO, "
-            + "FIN_COORD_POLIGONO, FIN_SISTEMA_RIEGO, FIN_ESTADO, FIN_FECHA_REGISTRO) VALUES (?,?,?,?,?,?,?,?,?)";
         try (Connection conn = ConexionBD.obtenerConexion();
-             PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ps.setInt(1, finca.getUsuarioId());
-            ps.setString(2, finca.getNombre());
-            ps.setString(3, finca.getUbicacion());
-            ps.setBigDecimal(4, finca.getSuperficie());
-            ps.setString(5, finca.getTipoSuelo());
-            ps.setString(6, finca.getCoordenadasPoligono());
-            ps.setString(7, finca.getSistemaRiego());
-            ps.setString(8, finca.getEstado().name().toLowerCase());
-            ps.setDate(9, Date.valueOf(finca.getFechaRegistro() != null ? finca.getFechaRegistro() : LocalDate.now()));
+             PreparedStatement ps = conn.prepareStatement(SQL_INSERTAR, Statement.RETURN_GENERATED_KEYS)) {
+            setParametros(ps, finca);
             ps.executeUpdate();
             ResultSet keys = ps.getGeneratedKeys();
             if (keys.next()) {
                 finca.setId(keys.getInt(1));
+                UnidadDeTrabajo.alDeshacer(() -> finca.setId(null));
             }
+            UnidadDeTrabajo.alConfirmar(() -> {
+                VersionDatos.fincaModificada(finca.getId());
+                escribirEnCache(finca);
+            });
             return finca;
         }
     }
 
     public void actualizar(Finca finca) throws SQLException {
-        String sql = "UPDATE finca SET FIN_USU_ID=?, FIN_NOMBRE=?, FIN_UBICACION=?, FIN_SUPERFICIE=?, "
-            + "FIN_TIPO_SUELO=?, FIN_COORD_POLIGONO=?, FIN_SISTEMA_RIEGO=?, FIN_ESTADO=?, FIN_FECHA_REGISTRO=? "
-            + "WHERE FIN_ID=?";
         try (Connection conn = ConexionBD.obtenerConexion();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            // Validar que el usuarioId no sea null
-            if (finca.getUsuarioId() == null) {
-                throw new SQLException("El ID del usuario propietario es obligatorio");
-            }
-            ps.setInt(1, finca.getUsuarioId());
-            // Validar que el nombre no sea null o vacío
-            String nombre = finca.getNombre();
-            if (nombre == null || nombre.trim().isEmpty()) {
-                throw new SQLException("El nombre de la finca es obligatorio");
-            }
-            ps.setString(2, nombre);
-            ps.setString(3, finca.getUbicacion());
-            ps.setBigDecimal(4, finca.getSuperficie());
-            ps.setString(5, finca.getTipoSuelo());
-            ps.setString(6, finca.getCoordenadasPoligono());
-            ps.setString(7, finca.getSistemaRiego());
-            ps.setString(8, finca.getEstado().name().toLowerCase());
-            ps.setDate(9, Date.valueOf(
-                finca.getFechaRegistro() != null ? finca.getFechaRegistro() : LocalDate.now()));
+             PreparedStatement ps = conn.prepareStatement(SQL_ACTUALIZAR)) {
+            setParametros(ps, finca);
             ps.setInt(10, finca.getId());
             ps.executeUpdate();
+            UnidadDeTrabajo.alConfirmar(() -> {
+                VersionDatos.fincaModificada(finca.getId());
+                escribirEnCache(finca);
+            });
         }
     }
 
+    /**
+     * Inserta varias fincas en una sola transacción, por lotes de
+     * EscrituraPorLotes.TAMANO_LOTE. Cada una recibe su id generado.
+     */
+    public List<Finca> guardarTodas(List<Finca> fincas) throws SQLException {
+        if (fincas.isEmpty()) {
+            return fincas;
+        }
+        try (Connection conn = ConexionBD.obtenerConexion()) {
+            EscrituraPorLotes.enTransaccion(conn, () ->
+                EscrituraPorLotes.insertar(conn, SQL_INSERTAR, fincas, this::setParametros, Finca::setId));
+        }
+        escritas(fincas);
+        return fincas;
+    }
+
+    public void actualizarTodas(List<Finca> fincas) throws SQLException {
+        if (fincas.isEmpty()) {
+            return;
+        }
+        try (Connection conn = ConexionBD.obtenerConexion()) {
+            EscrituraPorLotes.enTransaccion(conn, () ->
+                EscrituraPorLotes.actualizar(conn, SQL_ACTUALIZAR, fincas, (ps, finca) -> {
+                    setParametros(ps, finca);
+                    ps.setInt(10, finca.getId());
+                }));
+        }
+        escritas(fincas);
+    }
+
+    private void escritas(List<Finca> fincas) {
+        UnidadDeTrabajo.alConfirmar(() -> {
+            fincas.forEach(finca -> VersionDatos.fincaModificada(finca.getId()));
+            CacheEntidades.escribirTodos(CacheEntidades.FINCAS, CacheEntidades.FINCAS_POR_USUARIO, fincas,
+                Finca::getId, Finca::getUsuarioId);
+            // La lista de todas las fincas también cambia: se vuelve a leer
+            CacheEntidades.FINCAS_POR_USUARIO.quitar(null);
+        });
+    }
+
+    private void setParametros(PreparedStatement ps, Finca finca) throws SQLException {
+        // Validar que el usuarioId no sea null
+        if (finca.getUsuarioId() == null) {
+            throw new SQLException("El ID del usuario propietario es obligatorio");
+        }
+        ps.setInt(1, finca.getUsuarioId());
+        // Validar que el nombre no sea null o vacío
+        String nombre = finca.getNombre();
+        if (nombre == null || nombre.trim().isEmpty()) {
+            throw new SQLException("El nombre de la finca es obligatorio");
+        }
+        ps.setString(2, nombre);
+        ps.setString(3, finca.getUbicacion());
+        ps.setBigDecimal(4, finca.getSuperficie());
+        ps.setString(5, finca.getTipoSuelo());
+        ps.setString(6, finca.getCoordenadasPoligono());
+        ps.setString(7, finca.getSistemaRiego());
+        ps.setString(8, finca.getEstado().name().toLowerCase());
+        ps.setDate(9, Date.valueOf(
+            finca.getFechaRegistro() != null ? finca.getFechaRegistro() : LocalDate.now()));
+    }
+
+    /**
+     * La finca escrita va a la lista de su propietario y a la de todas las fincas.
+     * La de su propietario no tiene ORDER BY: conserva la posición o va al final.
+     */
+    private void escribirEnCache(Finca finca) {
+        CacheEntidades.escribir(CacheEntidades.FINCAS, CacheEntidades.FINCAS_POR_USUARIO,
+            finca.getUsuarioId(), finca, Finca::getId, null);
+        CacheEntidades.FINCAS_POR_USUARIO.modificarTodas((usuarioId, lista) -> {
+            if (usuarioId != null) {
+                return lista;
+            }
+            List<Finca> todas = new ArrayList<>(lista);
+            todas.add(finca);
+            todas.sort(ORDEN_REGISTRO);
+            return List.copyOf(todas);
+        });
+    }
+
     public boolean eliminar(int fincaId) throws SQLException {
         String sql = "DELETE FROM finca WHERE FIN_ID = ?";
         try (Connection conn = ConexionBD.obtenerConexion();
              PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, fincaId);
-            return ps.executeUpdate() > 0;
+            boolean eliminada = ps.executeUpdate() > 0;
+            if (eliminada) {
+                UnidadDeTrabajo.alConfirmar(() -> {
+                    VersionDatos.fincaModificada(fincaId);
+                    CacheEntidades.borrar(CacheEntidades.FINCAS, CacheEntidades.FINCAS_POR_USUARIO, fincaId,
+                        Finca::getId);
+                    // Sus cultivos y movimientos se borran con ella
+                    CacheEntidades.CULTIVOS_POR_FINCA.quitar(fincaId);
+                    CacheEntidades.GESTIONES_POR_FINCA.quitar(fincaId);
+                });
+            }
+            return eliminada;
         }
     }
 
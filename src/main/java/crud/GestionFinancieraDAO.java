@@ -8,6 +8,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import modelo.GestionFinanciera;
 
@@ -17,7 +18,26 @@ public class GestionFinancieraDAO {
         "SELECT GES_ID, GES_FIN_ID, GES_TIPO, GES_CONCEPTO, GES_MONTO, GES_FECHA, GES_OBSERVACIONES "
             + "FROM gestion_financiera ";
 
+    private static final String SQL_INSERTAR =
+        "INSERT INTO gestion_financiera (GES_FIN_ID, GES_TIPO, GES_CONCEPTO, GES_MONTO, GES_FECHA, "
+            + "GES_OBSERVACIONES) VALUES (?,?,?,?,?,?)";
+
+    private static final String SQL_ACTUALIZAR =
+        "UPDATE gestion_financiera SET GES_FIN_ID=?, GES_TIPO=?, GES_CONCEPTO=?, GES_MONTO=?, "
+            + "GES_FECHA=?, GES_OBSERVACIONES=? WHERE GES_ID=?";
+
+    private static final Comparator<GestionFinanciera> ORDEN_LISTADO =
+        CacheEntidades.masRecientePrimero(GestionFinanciera::getFecha);
+
+    /**
+     * Movimientos de una finca, del más reciente al más antiguo. Pasa por CacheEntidades.
+     */
     public List<GestionFinanciera> listarPorFinca(int fincaId) throws SQLException {
+        return CacheEntidades.listaDe(CacheEntidades.GESTIONES_POR_FINCA, fincaId, CacheEntidades.GESTIONES,
+            GestionFinanciera::getId, () -> consultarPorFinca(fincaId));
+    }
+
+    private List<GestionFinanciera> consultarPorFinca(int fincaId) throws SQLException {
         String sql = SELECT_BASE + "WHERE GES_FIN_ID = ? ORDER BY GES_FECHA DESC";
         try (Connection conn = ConexionBD.obtenerConexion();
              PreparedStatement ps = conn.prepareStatement(sql)) {
@@ -75,36 +95,95 @@ public class GestionFinancieraDAO {
     }
 
     public GestionFinanciera guardar(GestionFinanciera gestion) throws SQLException {
-        String sql = "INSERT INTO gestion_financiera (GES_FIN_ID, GES_TIPO, GES_CONCEPTO, GES_MONTO, GES_FECHA, "
-            + "GES_OBSERVACIONES) VALUES (?,?,?,?,?,?)";
         try (Connection conn = ConexionBD.obtenerConexion();
-             PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+             PreparedStatement ps = conn.prepareStatement(SQL_INSERTAR, Statement.RETURN_GENERATED_KEYS)) {
             setParametros(ps, gestion);
             ps.executeUpdate();
             ResultSet keys = ps.getGeneratedKeys();
             if (keys.next()) {
                 gestion.setId(keys.getInt(1));
+                UnidadDeTrabajo.alDeshacer(() -> gestion.setId(null));
             }
+            UnidadDeTrabajo.alConfirmar(() -> {
+                VersionDatos.fincaModificada(gestion.getFincaId());
+                CacheEntidades.escribir(CacheEntidades.GESTIONES, CacheEntidades.GESTIONES_POR_FINCA,
+                    gestion.getFincaId(), gestion, GestionFinanciera::getId, ORDEN_LISTADO);
+            });
             return gestion;
         }
     }
 
     public void actualizar(GestionFinanciera gestion) throws SQLException {
-        String sql = "UPDATE gestion_financiera SET GES_FIN_ID=?, GES_TIPO=?, GES_CONCEPTO=?, GES_MONTO=?, "
-            + "GES_FECHA=?, GES_OBSERVACIONES=? WHERE GES_ID=?";
         try (Connection conn = ConexionBD.obtenerConexion();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+             PreparedStatement ps = conn.prepareStatement(SQL_ACTUALIZAR)) {
             setParametros(ps, gestion);
             ps.setInt(7, gestion.getId());
             ps.executeUpdate();
+            UnidadDeTrabajo.alConfirmar(() -> {
+                VersionDatos.fincaModificada(gestion.getFincaId());
+                CacheEntidades.escribir(CacheEntidades.GESTIONES, CacheEntidades.GESTIONES_POR_FINCA,
+                    gestion.getFincaId(), gestion, GestionFinanciera::getId, ORDEN_LISTADO);
+            });
         }
     }
 
+    /**
+     * Inserta varios movimientos en una sola transacción, por lotes de
+     * EscrituraPorLotes.TAMANO_LOTE. Cada uno recibe su id generado.
+     */
+    public List<GestionFinanciera> guardarTodos(List<GestionFinanciera> gestiones) throws SQLException {
+        if (gestiones.isEmpty()) {
+            return gestiones;
+        }
+        try (Connection conn = ConexionBD.obtenerConexion()) {
+            EscrituraPorLotes.enTransaccion(conn, () -> EscrituraPorLotes.insertar(conn, SQL_INSERTAR, gestiones,
+                this::setParametros, GestionFinanciera::setId));
+        }
+        escritos(gestiones);
+        return gestiones;
+    }
+
+    public void actualizarTodos(List<GestionFinanciera> gestiones) throws SQLException {
+        if (gestiones.isEmpty()) {
+            return;
+        }
+        try (Connection conn = ConexionBD.obtenerConexion()) {
+            EscrituraPorLotes.enTransaccion(conn, () ->
+                EscrituraPorLotes.actualizar(conn, SQL_ACTUALIZAR, gestiones, (ps, gestion) -> {
+                    setParametros(ps, gestion);
+                    ps.setInt(7, gestion.getId());
+                }));
+        }
+        escritos(gestiones);
+    }
+
+    private void escritos(List<GestionFinanciera> gestiones) {
+        UnidadDeTrabajo.alConfirmar(() -> {
+            gestiones.stream().map(GestionFinanciera::getFincaId).distinct().forEach(VersionDatos::fincaModificada);
+            CacheEntidades.escribirTodos(CacheEntidades.GESTIONES, CacheEntidades.GESTIONES_POR_FINCA, gestiones,
+                GestionFinanciera::getId, GestionFinanciera::getFincaId);
+        });
+    }
+
     public boolean eliminar(int gestionId) throws SQLException {
         try (Connection conn = ConexionBD.obtenerConexion();
              PreparedStatement ps = conn.prepareStatement("DELETE FROM gestion_financiera WHERE GES_ID = ?")) {
             ps.setInt(1, gestionId);
-            return ps.executeUpdate() > 0;
+            boolean eliminado = ps.executeUpdate() > 0;
+            if (eliminado) {
+                UnidadDeTrabajo.alConfirmar(() -> {
+                    GestionFinanciera anterior = CacheEntidades.GESTIONES.consultar(gestionId);
+                    if (anterior != null) {
+                        VersionDatos.fincaModificada(anterior.getFincaId());
+                    } else {
+                        // Sin el movimiento en caché no se sabe su finca: se invalidan todas
+                        VersionDatos.todoModificado();
+                    }
+                    CacheEntidades.borrar(CacheEntidades.GESTIONES, CacheEntidades.GESTIONES_POR_FINCA,
+                        gestionId, GestionFinanciera::getId);
+                });
+            }
+            return eliminado;
         }
     }
 
@@ -0,0 +1,88 @@
+package crud;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de duraciones con cubetas fijas (0,25 ms ... 5 s y más).
+ *
+ * Registrar una medida es sumar en dos LongAdder, sin bloqueos, así que se puede
+ * llamar en cada consulta desde cualquier hilo. Los percentiles son aproximados:
+ * se devuelve el límite superior de la cubeta en la que caen.
+ */
+public final class Histograma {
+
+    /** Límite superior de cada cubeta, en milisegundos; la última recoge el resto. */
+    private static final double[] LIMITES_MS =
+        {0.25, 0.5, 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+
+    private final LongAdder[] cubetas = new LongAdder[LIMITES_MS.length + 1];
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maximoNanos = new LongAccumulator(Math::max, 0);
+
+    public Histograma() {
+        for (int i = 0; i < cubetas.length; i++) {
+            cubetas[i] = new LongAdder();
+        }
+    }
+
+    public void registrar(long nanos) {
+        double ms = nanos / 1_000_000.0;
+        int i = 0;
+        while (i < LIMITES_MS.length && ms > LIMITES_MS[i]) {
+            i++;
+        }
+        cubetas[i].increment();
+        totalNanos.add(nanos);
+        maximoNanos.accumulate(nanos);
+    }
+
+    public void reiniciar() {
+        for (LongAdder cubeta : cubetas) {
+            cubeta.reset();
+        }
+        totalNanos.reset();
+        maximoNanos.reset();
+    }
+
+    /**
+     * Foto del histograma en este momento. Mientras se calcula pueden seguir
+     * llegando medidas, así que los números son aproximados a una medida.
+     */
+    public Resumen resumen() {
+        long[] cuentas = new long[cubetas.length];
+        long cuenta = 0;
+        for (int i = 0; i < cubetas.length; i++) {
+            cuentas[i] = cubetas[i].sum();
+            cuenta += cuentas[i];
+        }
+        double maximoMs = maximoNanos.get() / 1_000_000.0;
+        double mediaMs = cuenta == 0 ? 0 : totalNanos.sum() / 1_000_000.0 / cuenta;
+        return new Resumen(cuenta, mediaMs, percentil(cuentas, cuenta, 0.50, maximoMs),
+            percentil(cuentas, cuenta, 0.95, maximoMs), percentil(cuentas, cuenta, 0.99, maximoMs),
+            maximoMs, totalNanos.sum() / 1_000_000.0);
+    }
+
+    private static double percentil(long[] cuentas, long cuenta, double fraccion, double maximoMs) {
+        if (cuenta == 0) {
+            return 0;
+        }
+        long objetivo = (long) Math.ceil(cuenta * fraccion);
+        long acumulado = 0;
+        for (int i = 0; i < cuentas.length; i++) {
+            acumulado += cuentas[i];
+            if (acumulado >= objetivo) {
+                // En la última cubeta no hay límite: el máximo visto es la mejor cota
+                return i < LIMITES_MS.length ? Math.min(LIMITES_MS[i], maximoMs) : maximoMs;
+            }
+        }
+        return maximoMs;
+    }
+
+    /**
+     * @param totalMs Suma de todas las duraciones: lo que más tiempo se lleva en total
+     */
+    public record Resumen(long cuenta, double mediaMs, double p50Ms, double p95Ms, double p99Ms,
+                          double maximoMs, double totalMs) {
+    }
+}
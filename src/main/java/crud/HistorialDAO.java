@@ -0,0 +1,153 @@
+package crud;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Lectura en streaming del historial de una finca (o de todas las fincas de un
+ * usuario) para exportarlo: cultivos, tratamientos y movimientos financieros.
+ *
+ * A diferencia del resto de DAO no devuelve listas de entidades: cada fila se
+ * entrega al ReceptorFilas en cuanto llega de MySQL y se olvida. La consulta
+ * usa setFetchSize(Integer.MIN_VALUE), con lo que Connector/J no carga el
+ * resultado entero en memoria sino que lo lee del socket fila a fila; así
+ * exportar millones de filas no hace crecer el heap.
+ *
+ * Mientras dura el recorrido la conexión está ocupada por ese resultado, así que
+ * el receptor no debe hacer otras consultas; tampoco pasa por CacheEntidades.
+ */
+public class HistorialDAO {
+
+    /**
+     * Lo que se puede exportar. Los nombres de columna coinciden con los que
+     * entiende la importación de CSV, para poder volver a importar lo exportado.
+     */
+    public enum Seccion {
+        CULTIVOS("cultivo",
+            "SELECT f.FIN_ID AS finca_id, f.FIN_NOMBRE AS finca, c.CUL_ID AS id, c.CUL_NOMBRE AS nombre, "
+                + "c.CUL_VARIEDAD AS variedad, c.CUL_FECHA_SIEMBRA AS fecha_siembra, "
+                + "c.CUL_FECHA_COSECHA AS fecha_cosecha, c.CUL_ESTADO AS estado, "
+                + "c.CUL_PRODUCCION_KG AS produccion_kg, c.CUL_REND_ESTIMADO AS rendimiento_estimado, "
+                + "c.CUL_REND_REAL AS rendimiento_real "
+                + "FROM cultivo c JOIN finca f ON c.CUL_FIN_ID = f.FIN_ID ",
+            "ORDER BY f.FIN_ID, c.CUL_FECHA_SIEMBRA, c.CUL_ID"),
+        TRATAMIENTOS("tratamiento",
+            "SELECT f.FIN_ID AS finca_id, f.FIN_NOMBRE AS finca, t.TRA_ID AS id, c.CUL_ID AS cultivo_id, "
+                + "c.CUL_NOMBRE AS cultivo, t.TRA_FECHA AS fecha, t.TRA_PRODUCTO AS producto, t.TRA_TIPO AS tipo, "
+                + "t.TRA_DOSIS AS dosis, t.TRA_PRECIO_TRAT AS precio, t.TRA_OBSERVACIONES AS observaciones "
+                + "FROM tratamiento t JOIN cultivo c ON t.TRA_CUL_ID = c.CUL_ID "
+                + "JOIN finca f ON c.CUL_FIN_ID = f.FIN_ID ",
+            "ORDER BY f.FIN_ID, t.TRA_FECHA, t.TRA_ID"),
+        MOVIMIENTOS("movimiento",
+            "SELECT f.FIN_ID AS finca_id, f.FIN_NOMBRE AS finca, g.GES_ID AS id, g.GES_TIPO AS tipo, "
+                + "g.GES_CONCEPTO AS concepto, g.GES_MONTO AS monto, g.GES_FECHA AS fecha, "
+                + "g.GES_OBSERVACIONES AS observaciones "
+                + "FROM gestion_financiera g JOIN finca f ON g.GES_FIN_ID = f.FIN_ID ",
+            "ORDER BY f.FIN_ID, g.GES_FECHA, g.GES_ID");
+
+        private final String registro;
+        private final String select;
+        private final String orden;
+
+        Seccion(String registro, String select, String orden) {
+            this.registro = registro;
+            this.select = select;
+            this.orden = orden;
+        }
+
+        /**
+         * Nombre de una fila de la sección en singular ("cultivo"), para el NDJSON.
+         */
+        public String getRegistro() {
+            return registro;
+        }
+    }
+
+    /**
+     * Recibe las columnas una vez, antes de la primera fila, y luego cada fila.
+     * El array de valores se reutiliza entre filas: hay que usarlo antes de volver.
+     */
+    public interface ReceptorFilas {
+
+        void columnas(List<Columna> columnas) throws IOException;
+
+        /**
+         * @param valores Cada valor como texto tal cual lo da MySQL (fechas ISO,
+         *                decimales con punto, estados en minúsculas), o null
+         * @return false para dejar de leer (p. ej. si se ha cancelado la exportación)
+         */
+        boolean fila(String[] valores) throws IOException;
+    }
+
+    public record Columna(String nombre, boolean numerica) {
+    }
+
+    /**
+     * Recorre una sección del historial.
+     *
+     * @param fincaId Finca a exportar, o null para todas las del usuario
+     * @param usuarioId Propietario cuyas fincas se exportan (solo si fincaId es null)
+     * @return Filas entregadas al receptor
+     */
+    public long recorrer(Seccion seccion, Integer fincaId, Integer usuarioId, ReceptorFilas receptor)
+            throws SQLException, IOException {
+        if (fincaId == null && usuarioId == null) {
+            throw new SQLException("Hay que indicar la finca o el usuario a exportar");
+        }
+        String sql = seccion.select
+            + (fincaId != null ? "WHERE f.FIN_ID = ? " : "WHERE f.FIN_USU_ID = ? ")
+            + seccion.orden;
+        try (Connection conn = ConexionBD.obtenerConexion();
+             PreparedStatement ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                 ResultSet.CONCUR_READ_ONLY)) {
+            // Con este valor Connector/J lee el resultado en streaming, fila a fila
+            ps.setFetchSize(Integer.MIN_VALUE);
+            ps.setInt(1, fincaId != null ? fincaId : usuarioId);
+            long filas = 0;
+            boolean detenido = false;
+            try (ResultSet rs = ps.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                Columna[] columnas = new Columna[meta.getColumnCount()];
+                for (int i = 0; i < columnas.length; i++) {
+                    columnas[i] = new Columna(meta.getColumnLabel(i + 1), esNumerica(meta.getColumnType(i + 1)));
+                }
+                receptor.columnas(List.of(columnas));
+
+                String[] valores = new String[columnas.length];
+                while (rs.next()) {
+                    for (int i = 0; i < valores.length; i++) {
+                        valores[i] = rs.getString(i + 1);
+                    }
+                    filas++;
+                    if (!receptor.fila(valores)) {
+                        // Cerrar un resultado en streaming lee antes todas las filas que
+                        // faltan; cancelar la consulta hace que MySQL deje de enviarlas
+                        detenido = true;
+                        ps.cancel();
+                        break;
+                    }
+                }
+            } catch (SQLException e) {
+                // Tras cancelar, el driver avisa de que la consulta se interrumpió: no es un error
+                if (!detenido) {
+                    throw e;
+                }
+            }
+            return filas;
+        }
+    }
+
+    private static boolean esNumerica(int tipo) {
+        return switch (tipo) {
+            case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT,
+                 Types.DECIMAL, Types.NUMERIC, Types.FLOAT, Types.REAL, Types.DOUBLE -> true;
+            default -> false;
+        };
+    }
+}
@@ -1,11 +1,23 @@
 package crud;
 
+import carga.EjecutorBD;
+import carga.EjecutorCPU;
+import informes.CachePlantillasInforme;
+import informes.ServicioInformes;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
+import mapa.AlmacenTeselas;
+import mapa.PoolMapa;
+import mapa.ProtocoloTeselas;
+import util.SeguridadUtil;
 
 /**
  * PUNTO DE ENTRADA DE LA APLICACIÓN AGROTRACK
@@ -17,7 +29,8 @@ import javafx.stage.Stage;
  * 1. Se ejecuta main(String[] args)
  * 2. main() llama a launch(args) que inicia JavaFX
  * 3. JavaFX llama automáticamente a start(Stage) cuando está listo
- * 4. start() carga la ventana de Login y la muestra
+ * 4. start() comprueba la configuración de la base de datos (bbdd.properties)
+ * 5. start() carga la ventana de Login y la muestra
  * 
  * IMPORTANTE: Cuando la aplicación se cierra, se cierra el pool de conexiones
  * para liberar recursos correctamente.
@@ -35,6 +48,24 @@ public class Main extends Application {
     @Override
     public void start(Stage primaryStage) {
         try {
+            // Comprobar bbdd.properties (perfil, tamaño del pool, timeouts) antes de nada
+            try {
+                ConexionBD.validarConfiguracion();
+            } catch (SQLException e) {
+                Alert alerta = new Alert(Alert.AlertType.ERROR);
+                alerta.setTitle("Configuración no válida");
+                alerta.setHeaderText("Revisa bbdd.properties");
+                alerta.setContentText(e.getMessage());
+                alerta.showAndWait();
+                Platform.exit();
+                return;
+            }
+
+            // Las teselas del mapa (tesela://) se sirven desde la caché local
+            ProtocoloTeselas.registrar();
+            // El WebView del mapa se crea y carga una sola vez, mientras se inicia sesión
+            PoolMapa.precalentar();
+
             // Cargar el archivo FXML de Login
             // FXMLLoader lee el archivo XML y crea los componentes JavaFX
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/main/vista/Login.fxml"));
@@ -56,6 +87,19 @@ public class Main extends Application {
             
             // Mostrar la ventana
             primaryStage.show();
+
+            // Mientras el usuario escribe, medir cuánto tarda BCrypt en este equipo
+            // para elegir el costo de los hashes (ver SeguridadUtil.calibrar), y
+            // después dejar compiladas las plantillas de informes. Van una detrás de
+            // otra: compilar a la vez quitaría CPU a la medida y el costo saldría bajo
+            CompletableFuture.runAsync(SeguridadUtil::calibrar, EjecutorCPU.get())
+                .whenComplete((nada, error) -> {
+                    if (error != null) {
+                        System.err.println("No se pudo calibrar BCrypt: " + error.getMessage());
+                    }
+                    CachePlantillasInforme.precargar("/reports/InformeFiltra.jrxml",
+                        "/reports/InformeGeneral.jrxml", "/reports/InformeCompuesto2.jrxml");
+                });
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -70,6 +114,11 @@ public class Main extends Application {
     @Override
     public void stop() {
         // Asegurar que el pool se cierre al cerrar la aplicación
+        // (antes se cancelan las consultas e informes en segundo plano que sigan pendientes)
+        EjecutorBD.cerrar();
+        EjecutorCPU.cerrar();
+        ServicioInformes.cerrar();
+        AlmacenTeselas.cerrar();
         ConexionBD.cerrarPool();
     }
 
@@ -0,0 +1,195 @@
+package crud;
+
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.IMetricsTrackerFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MÉTRICAS DEL POOL DE CONEXIONES Y DE LAS CONSULTAS
+ *
+ * Para dimensionar el pool de ConexionBD con datos reales en lugar de a ojo:
+ *
+ * - Estado del pool (HikariPoolMXBean): conexiones activas, inactivas y hilos
+ *   esperando una conexión. Si a menudo hay hilos esperando, el pool se queda corto.
+ * - Tiempo de adquisición: cuánto tarda getConnection() en devolver una conexión
+ *   (lo mide HikariCP y nos lo pasa con fabricaHikari()).
+ * - Tiempo de uso: cuánto tiempo se queda cada conexión prestada.
+ * - Latencia por método de DAO ("CultivoDAO.listarPorFinca"): las conexiones que
+ *   salen de ConexionBD pasan por instrumentar(), que mide cada execute*() de sus
+ *   sentencias y lo apunta al método del DAO que la preparó.
+ *
+ * Medir una sentencia cuesta dos System.nanoTime() y un recorrido corto de la
+ * pila al prepararla; es despreciable frente al viaje a MySQL.
+ *
+ * Solo se mide hasta que MySQL responde: en una lectura en streaming
+ * (HistorialDAO) no se incluye el tiempo de recorrer las filas.
+ *
+ * Se muestran en la ventana de diagnóstico del panel de administración.
+ */
+public final class MetricasBD {
+
+    private static final String SIN_DAO = "(fuera de un DAO)";
+
+    private static final Histograma ADQUISICION = new Histograma();
+    private static final Histograma USO = new Histograma();
+    private static final LongAdder TIEMPOS_AGOTADOS = new LongAdder();
+    private static final Map<String, Histograma> POR_METODO = new ConcurrentHashMap<>();
+
+    private static final StackWalker PILA = StackWalker.getInstance();
+
+    private MetricasBD() {
+        // Clase de utilidad, no se puede instanciar
+    }
+
+    /**
+     * Estado del pool en este momento; null si todavía no se ha creado.
+     *
+     * @param esperando Hilos bloqueados en getConnection() porque no hay ninguna libre
+     */
+    public record EstadoPool(int activas, int inactivas, int total, int esperando, int maximo) {
+    }
+
+    /**
+     * Latencias de las sentencias lanzadas desde un método de un DAO.
+     */
+    public record LatenciaMetodo(String metodo, Histograma.Resumen resumen) {
+    }
+
+    public static EstadoPool estadoPool() {
+        HikariPoolMXBean pool = ConexionBD.getPoolMXBean();
+        if (pool == null) {
+            return null;
+        }
+        return new EstadoPool(pool.getActiveConnections(), pool.getIdleConnections(),
+            pool.getTotalConnections(), pool.getThreadsAwaitingConnection(), ConexionBD.getTamanoMaximoPool());
+    }
+
+    public static Histograma.Resumen adquisicion() {
+        return ADQUISICION.resumen();
+    }
+
+    public static Histograma.Resumen uso() {
+        return USO.resumen();
+    }
+
+    /**
+     * Veces que un hilo se quedó sin conexión tras esperar el connectionTimeout.
+     */
+    public static long tiemposAgotados() {
+        return TIEMPOS_AGOTADOS.sum();
+    }
+
+    /**
+     * Latencias por método, primero los que más tiempo suman en total.
+     */
+    public static List<LatenciaMetodo> porMetodo() {
+        List<LatenciaMetodo> latencias = new ArrayList<>();
+        POR_METODO.forEach((metodo, histograma) -> latencias.add(new LatenciaMetodo(metodo, histograma.resumen())));
+        latencias.sort(Comparator.comparingDouble((LatenciaMetodo l) -> l.resumen().totalMs()).reversed());
+        return latencias;
+    }
+
+    /**
+     * Pone a cero todos los histogramas (p. ej. antes de repetir una prueba de carga).
+     */
+    public static void reiniciar() {
+        ADQUISICION.reiniciar();
+        USO.reiniciar();
+        TIEMPOS_AGOTADOS.reset();
+        POR_METODO.clear();
+    }
+
+    /**
+     * Para HikariConfig.setMetricsTrackerFactory: HikariCP avisa de cada préstamo
+     * de conexión con lo que ha tardado.
+     */
+    static IMetricsTrackerFactory fabricaHikari() {
+        return (nombrePool, estadisticas) -> new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long nanos) {
+                ADQUISICION.registrar(nanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long milisegundos) {
+                USO.registrar(milisegundos * 1_000_000);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                TIEMPOS_AGOTADOS.increment();
+            }
+        };
+    }
+
+    /**
+     * Envuelve una conexión del pool para que sus sentencias midan cuánto tardan.
+     */
+    static Connection instrumentar(Connection conexion) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class<?>[] {Connection.class}, (proxy, metodo, argumentos) -> {
+                Object resultado = invocar(conexion, metodo, argumentos);
+                if (resultado instanceof Statement sentencia) {
+                    // Statement, PreparedStatement o CallableStatement, según el método
+                    return medir(sentencia, metodo.getReturnType());
+                }
+                return resultado;
+            });
+    }
+
+    private static Object medir(Statement sentencia, Class<?> tipo) {
+        Histograma histograma = POR_METODO.computeIfAbsent(metodoDelDao(), clave -> new Histograma());
+        return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {tipo},
+            (proxy, metodo, argumentos) -> {
+                if (!metodo.getName().startsWith("execute")) {
+                    return invocar(sentencia, metodo, argumentos);
+                }
+                long inicio = System.nanoTime();
+                try {
+                    return invocar(sentencia, metodo, argumentos);
+                } finally {
+                    histograma.registrar(System.nanoTime() - inicio);
+                }
+            });
+    }
+
+    /**
+     * "CultivoDAO.guardarTodos" para una sentencia preparada desde ese método,
+     * aunque sea a través de EscrituraPorLotes o de una lambda dentro de él.
+     */
+    private static String metodoDelDao() {
+        return PILA.walk(marcos -> marcos
+            .filter(marco -> marco.getClassName().startsWith("crud.") && marco.getClassName().endsWith("DAO"))
+            .findFirst()
+            .map(marco -> marco.getClassName().substring("crud.".length()) + "." + nombreMetodo(marco.getMethodName()))
+            .orElse(SIN_DAO));
+    }
+
+    private static String nombreMetodo(String nombre) {
+        // Las lambdas se compilan como "lambda$guardarTodos$3"
+        if (nombre.startsWith("lambda$")) {
+            int fin = nombre.indexOf('$', "lambda$".length());
+            return fin > 0 ? nombre.substring("lambda$".length(), fin) : nombre;
+        }
+        return nombre;
+    }
+
+    private static Object invocar(Object destino, Method metodo, Object[] argumentos) throws Throwable {
+        try {
+            return metodo.invoke(destino, argumentos);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
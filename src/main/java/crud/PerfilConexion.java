@@ -0,0 +1,103 @@
+package crud;
+
+/**
+ * PERFILES DE CONEXIÓN A MYSQL
+ *
+ * Cada perfil ajusta el pool de HikariCP y los parámetros de Connector/J al
+ * sitio donde se usa la aplicación. Se elige en bbdd.properties (PERFIL=REMOTO)
+ * o al arrancar con -Dagrotrack.bd.PERFIL=REMOTO, sin recompilar (ver
+ * ConfiguracionBD). Sin indicar nada se usa OFICINA.
+ *
+ * - OFICINA: MySQL en la red local. Latencia baja, así que conectar es barato.
+ *   Como antes de existir los perfiles, una consulta no tiene tiempo límite
+ *   (socketTimeout 0): un informe grande o la ordenación de una exportación
+ *   pueden tardar minutos antes de devolver la primera fila. Solo se añade un
+ *   límite para abrir la conexión, que en la red local es inmediato.
+ * - REMOTO: MySQL en otra red o en la nube. Cada viaje cuesta decenas de ms y
+ *   abrir una conexión (TCP + autenticación) bastante más: se mantienen más
+ *   conexiones abiertas y vivas (keepalive) para no abrirlas bajo demanda, se
+ *   guardan más sentencias preparadas y los tiempos de espera son más largos.
+ *   El socketTimeout corta una consulta que se queda sin respuesta, así que es
+ *   holgado (3 min): también lo tienen que cumplir los informes y las exportaciones.
+ * - PORTATIL: equipo con poca memoria. Menos conexiones, caché de sentencias
+ *   pequeña y los resultados se leen por bloques de FETCH_SIZE filas en lugar
+ *   de enteros (useCursorFetch). Sin límite de consulta, como OFICINA: con
+ *   cursor, MySQL ordena todo el resultado antes de mandar el primer bloque.
+ */
+public enum PerfilConexion {
+
+    // Máximo y mínimo de conexiones, fetch, caché de sentencias y límite de SQL,
+    // timeouts de conexión, socket y espera al pool, y keepalive (todo en ms)
+    OFICINA(10, 2, 0, 250, 2048, 5_000, 0, 30_000, 0),
+    REMOTO(10, 4, 0, 500, 4096, 20_000, 180_000, 45_000, 300_000),
+    PORTATIL(4, 1, 250, 50, 1024, 10_000, 0, 30_000, 0);
+
+    private final int maximoConexiones;
+    private final int minimoInactivas;
+    private final int tamanoFetch;
+    private final int cacheSentencias;
+    private final int limiteSqlCache;
+    private final int timeoutConexionMs;
+    private final int timeoutSocketMs;
+    private final int esperaPoolMs;
+    private final int keepaliveMs;
+
+    PerfilConexion(int maximoConexiones, int minimoInactivas, int tamanoFetch, int cacheSentencias,
+                   int limiteSqlCache, int timeoutConexionMs, int timeoutSocketMs, int esperaPoolMs,
+                   int keepaliveMs) {
+        this.maximoConexiones = maximoConexiones;
+        this.minimoInactivas = minimoInactivas;
+        this.tamanoFetch = tamanoFetch;
+        this.cacheSentencias = cacheSentencias;
+        this.limiteSqlCache = limiteSqlCache;
+        this.timeoutConexionMs = timeoutConexionMs;
+        this.timeoutSocketMs = timeoutSocketMs;
+        this.esperaPoolMs = esperaPoolMs;
+        this.keepaliveMs = keepaliveMs;
+    }
+
+    /** Conexiones simultáneas como mucho (maximumPoolSize). */
+    public int getMaximoConexiones() {
+        return maximoConexiones;
+    }
+
+    /** Conexiones abiertas aunque no se usen (minimumIdle). */
+    public int getMinimoInactivas() {
+        return minimoInactivas;
+    }
+
+    /** Filas por viaje al leer un resultado; 0 = el resultado entero de una vez. */
+    public int getTamanoFetch() {
+        return tamanoFetch;
+    }
+
+    /** Sentencias preparadas que se guardan por conexión (prepStmtCacheSize). */
+    public int getCacheSentencias() {
+        return cacheSentencias;
+    }
+
+    /** Longitud máxima de una sentencia para guardarla en caché (prepStmtCacheSqlLimit). */
+    public int getLimiteSqlCache() {
+        return limiteSqlCache;
+    }
+
+    /** Tiempo para abrir la conexión TCP con MySQL (connectTimeout). */
+    public int getTimeoutConexionMs() {
+        return timeoutConexionMs;
+    }
+
+    /** Tiempo sin recibir nada de MySQL antes de dar la consulta por perdida (socketTimeout); 0 = sin límite. */
+    public int getTimeoutSocketMs() {
+        return timeoutSocketMs;
+    }
+
+    /** Tiempo que un hilo espera a que el pool le dé una conexión (connectionTimeout). */
+    public int getEsperaPoolMs() {
+        return esperaPoolMs;
+    }
+
+    /** Cada cuánto se comprueba una conexión inactiva para que no la corte un firewall; 0 = nunca. */
+    public int getKeepaliveMs() {
+        return keepaliveMs;
+    }
+}
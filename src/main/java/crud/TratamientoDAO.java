@@ -9,7 +9,11 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import modelo.Tratamiento;
 
 public class TratamientoDAO {
@@ -18,7 +22,30 @@ public class TratamientoDAO {
         "SELECT TRA_ID, TRA_CUL_ID, TRA_FECHA, TRA_PRODUCTO, TRA_TIPO, TRA_DOSIS, TRA_PRECIO_TRAT, TRA_OBSERVACIONES "
             + "FROM tratamiento ";
 
+    private static final String SQL_INSERTAR =
+        "INSERT INTO tratamiento (TRA_CUL_ID, TRA_FECHA, TRA_PRODUCTO, TRA_TIPO, TRA_DOSIS, "
+            + "TRA_PRECIO_TRAT, TRA_OBSERVACIONES) VALUES (?,?,?,?,?,?,?)";
+
+    private static final String SQL_ACTUALIZAR =
+        "UPDATE tratamiento SET TRA_CUL_ID=?, TRA_FECHA=?, TRA_PRODUCTO=?, TRA_TIPO=?, TRA_DOSIS=?, "
+            + "TRA_PRECIO_TRAT=?, TRA_OBSERVACIONES=? WHERE TRA_ID=?";
+
+    private static final Comparator<Tratamiento> ORDEN_LISTADO =
+        CacheEntidades.masRecientePrimero(Tratamiento::getFecha);
+
+    private static final String COSTE_POR_FINCA_BASE =
+        "SELECT c.CUL_FIN_ID AS finca, COALESCE(SUM(t.TRA_PRECIO_TRAT), 0) AS total "
+            + "FROM tratamiento t JOIN cultivo c ON t.TRA_CUL_ID = c.CUL_ID ";
+
+    /**
+     * Tratamientos de un cultivo, del más reciente al más antiguo. Pasa por CacheEntidades.
+     */
     public List<Tratamiento> listarPorCultivo(int cultivoId) throws SQLException {
+        return CacheEntidades.listaDe(CacheEntidades.TRATAMIENTOS_POR_CULTIVO, cultivoId, CacheEntidades.TRATAMIENTOS,
+            Tratamiento::getId, () -> consultarPorCultivo(cultivoId));
+    }
+
+    private List<Tratamiento> consultarPorCultivo(int cultivoId) throws SQLException {
         String sql = SELECT_BASE + "WHERE TRA_CUL_ID = ? ORDER BY TRA_FECHA DESC";
         try (Connection conn = ConexionBD.obtenerConexion();
              PreparedStatement ps = conn.prepareStatement(sql)) {
@@ -32,37 +59,129 @@ public class TratamientoDAO {
         }
     }
 
-    public Tratamiento guardar(Tratamiento tratamiento) throws SQLException {
-        String sql = "INSERT INTO tratamiento (TRA_CUL_ID, TRA_FECHA, TRA_PRODUCTO, TRA_TIPO, TRA_DOSIS, "
-            + "TRA_PRECIO_TRAT, TRA_OBSERVACIONES) VALUES (?,?,?,?,?,?,?)";
+    /**
+     * @param fincaId Finca del cultivo del tratamiento, para invalidar sus datos
+     *                (VersionDatos); null si no se sabe, y se invalidan todas
+     */
+    public Tratamiento guardar(Tratamiento tratamiento, Integer fincaId) throws SQLException {
         try (Connection conn = ConexionBD.obtenerConexion();
-             PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+             PreparedStatement ps = conn.prepareStatement(SQL_INSERTAR, Statement.RETURN_GENERATED_KEYS)) {
             setParametros(ps, tratamiento);
             ps.executeUpdate();
             ResultSet keys = ps.getGeneratedKeys();
             if (keys.next()) {
                 tratamiento.setId(keys.getInt(1));
+                UnidadDeTrabajo.alDeshacer(() -> tratamiento.setId(null));
             }
+            UnidadDeTrabajo.alConfirmar(() -> {
+                VersionDatos.fincaModificada(fincaId);
+                CacheEntidades.escribir(CacheEntidades.TRATAMIENTOS, CacheEntidades.TRATAMIENTOS_POR_CULTIVO,
+                    tratamiento.getCultivoId(), tratamiento, Tratamiento::getId, ORDEN_LISTADO);
+            });
             return tratamiento;
         }
     }
 
-    public void actualizar(Tratamiento tratamiento) throws SQLException {
-        String sql = "UPDATE tratamiento SET TRA_CUL_ID=?, TRA_FECHA=?, TRA_PRODUCTO=?, TRA_TIPO=?, TRA_DOSIS=?, "
-            + "TRA_PRECIO_TRAT=?, TRA_OBSERVACIONES=? WHERE TRA_ID=?";
+    /**
+     * @param fincaId Finca del cultivo del tratamiento; null si no se sabe (ver guardar)
+     */
+    public void actualizar(Tratamiento tratamiento, Integer fincaId) throws SQLException {
         try (Connection conn = ConexionBD.obtenerConexion();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
+             PreparedStatement ps = conn.prepareStatement(SQL_ACTUALIZAR)) {
             setParametros(ps, tratamiento);
             ps.setInt(8, tratamiento.getId());
             ps.executeUpdate();
+            UnidadDeTrabajo.alConfirmar(() -> {
+                VersionDatos.fincaModificada(fincaId);
+                CacheEntidades.escribir(CacheEntidades.TRATAMIENTOS, CacheEntidades.TRATAMIENTOS_POR_CULTIVO,
+                    tratamiento.getCultivoId(), tratamiento, Tratamiento::getId, ORDEN_LISTADO);
+            });
         }
     }
 
-    public boolean eliminar(int tratamientoId) throws SQLException {
+    /**
+     * Inserta varios tratamientos en una sola transacción, por lotes de
+     * EscrituraPorLotes.TAMANO_LOTE (un viaje a MySQL por lote en lugar de uno
+     * por tratamiento). Cada uno recibe su id generado.
+     *
+     * @param fincaId Finca de los cultivos de todos los tratamientos; null si no se sabe (ver guardar)
+     */
+    public List<Tratamiento> guardarTodos(List<Tratamiento> tratamientos, Integer fincaId) throws SQLException {
+        if (tratamientos.isEmpty()) {
+            return tratamientos;
+        }
+        try (Connection conn = ConexionBD.obtenerConexion()) {
+            EscrituraPorLotes.enTransaccion(conn, () -> EscrituraPorLotes.insertar(conn, SQL_INSERTAR, tratamientos,
+                this::setParametros, Tratamiento::setId));
+            escritos(tratamientos, fincaId);
+        }
+        return tratamientos;
+    }
+
+    public void actualizarTodos(List<Tratamiento> tratamientos, Integer fincaId) throws SQLException {
+        if (tratamientos.isEmpty()) {
+            return;
+        }
+        try (Connection conn = ConexionBD.obtenerConexion()) {
+            EscrituraPorLotes.enTransaccion(conn, () ->
+                EscrituraPorLotes.actualizar(conn, SQL_ACTUALIZAR, tratamientos, (ps, tratamiento) -> {
+                    setParametros(ps, tratamiento);
+                    ps.setInt(8, tratamiento.getId());
+                }));
+            escritos(tratamientos, fincaId);
+        }
+    }
+
+    private void escritos(List<Tratamiento> tratamientos, Integer fincaId) {
+        UnidadDeTrabajo.alConfirmar(() -> {
+            VersionDatos.fincaModificada(fincaId);
+            CacheEntidades.escribirTodos(CacheEntidades.TRATAMIENTOS, CacheEntidades.TRATAMIENTOS_POR_CULTIVO,
+                tratamientos, Tratamiento::getId, Tratamiento::getCultivoId);
+        });
+    }
+
+    /**
+     * @param fincaId Finca del cultivo del tratamiento; null si no se sabe (ver guardar)
+     */
+    public boolean eliminar(int tratamientoId, Integer fincaId) throws SQLException {
         try (Connection conn = ConexionBD.obtenerConexion();
              PreparedStatement ps = conn.prepareStatement("DELETE FROM tratamiento WHERE TRA_ID=?")) {
             ps.setInt(1, tratamientoId);
-            return ps.executeUpdate() > 0;
+            boolean eliminado = ps.executeUpdate() > 0;
+            if (eliminado) {
+                UnidadDeTrabajo.alConfirmar(() -> {
+                    VersionDatos.fincaModificada(fincaId);
+                    CacheEntidades.borrar(CacheEntidades.TRATAMIENTOS, CacheEntidades.TRATAMIENTOS_POR_CULTIVO,
+                        tratamientoId, Tratamiento::getId);
+                });
+            }
+            return eliminado;
+        }
+    }
+
+    /**
+     * Borra todos los tratamientos de un cultivo, p. ej. antes de borrar el
+     * cultivo dentro de la misma UnidadDeTrabajo.
+     *
+     * @param fincaId Finca del cultivo; null si no se sabe (ver guardar)
+     * @return Número de tratamientos borrados
+     */
+    public int eliminarPorCultivo(int cultivoId, Integer fincaId) throws SQLException {
+        try (Connection conn = ConexionBD.obtenerConexion();
+             PreparedStatement ps = conn.prepareStatement("DELETE FROM tratamiento WHERE TRA_CUL_ID=?")) {
+            ps.setInt(1, cultivoId);
+            int eliminados = ps.executeUpdate();
+            if (eliminados > 0) {
+                UnidadDeTrabajo.alConfirmar(() -> {
+                    VersionDatos.fincaModificada(fincaId);
+                    List<Tratamiento> delCultivo = CacheEntidades.TRATAMIENTOS_POR_CULTIVO.consultar(cultivoId);
+                    if (delCultivo != null) {
+                        delCultivo.forEach(tratamiento -> CacheEntidades.TRATAMIENTOS.quitar(tratamiento.getId()));
+                    }
+                    CacheEntidades.TRATAMIENTOS_POR_CULTIVO.quitar(cultivoId);
+                });
+            }
+            return eliminados;
         }
     }
 
@@ -84,19 +203,61 @@ public class TratamientoDAO {
         return fecha != null ? Date.valueOf(fecha) : null;
     }
 
-    public BigDecimal obtenerCostoTotalPorFinca(int fincaId) throws SQLException {
-        String sql = "SELECT COALESCE(SUM(t.TRA_PRECIO_TRAT), 0) AS total "
-            + "FROM tratamiento t JOIN cultivo c ON t.TRA_CUL_ID = c.CUL_ID "
-            + "WHERE c.CUL_FIN_ID = ?";
+    /**
+     * Coste de tratamientos agrupado por finca para un conjunto de fincas.
+     * Resuelve todas las fincas en una única consulta (IN + GROUP BY).
+     *
+     * @return Mapa FIN_ID -> coste total; las fincas sin tratamientos no aparecen
+     */
+    public Map<Integer, BigDecimal> obtenerCostoPorFincas(Collection<Integer> fincaIds) throws SQLException {
+        Map<Integer, BigDecimal> costes = new HashMap<>();
+        if (fincaIds == null || fincaIds.isEmpty()) {
+            return costes;
+        }
+
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < fincaIds.size(); i++) {
+            if (i > 0) placeholders.append(",");
+            placeholders.append("?");
+        }
+
+        String sql = COSTE_POR_FINCA_BASE + "WHERE c.CUL_FIN_ID IN (" + placeholders + ") GROUP BY c.CUL_FIN_ID";
         try (Connection conn = ConexionBD.obtenerConexion();
              PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setInt(1, fincaId);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                BigDecimal total = rs.getBigDecimal("total");
-                return total != null ? total : BigDecimal.ZERO;
+            int paramIndex = 1;
+            for (Integer fincaId : fincaIds) {
+                ps.setInt(paramIndex++, fincaId);
+            }
+            leerCostes(ps.executeQuery(), costes);
+            return costes;
+        }
+    }
+
+    /**
+     * Coste de tratamientos agrupado por finca para todas las fincas de un propietario.
+     *
+     * @param usuarioId Propietario de las fincas; null para incluir todas (administrador)
+     * @return Mapa FIN_ID -> coste total; las fincas sin tratamientos no aparecen
+     */
+    public Map<Integer, BigDecimal> obtenerCostoPorFincasDeUsuario(Integer usuarioId) throws SQLException {
+        String sql = COSTE_POR_FINCA_BASE
+            + (usuarioId != null ? "JOIN finca f ON c.CUL_FIN_ID = f.FIN_ID WHERE f.FIN_USU_ID = ? " : "")
+            + "GROUP BY c.CUL_FIN_ID";
+        try (Connection conn = ConexionBD.obtenerConexion();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            if (usuarioId != null) {
+                ps.setInt(1, usuarioId);
             }
-            return BigDecimal.ZERO;
+            Map<Integer, BigDecimal> costes = new HashMap<>();
+            leerCostes(ps.executeQuery(), costes);
+            return costes;
+        }
+    }
+
+    private void leerCostes(ResultSet rs, Map<Integer, BigDecimal> costes) throws SQLException {
+        while (rs.next()) {
+            BigDecimal total = rs.getBigDecimal("total");
+            costes.put(rs.getInt("finca"), total != null ? total : BigDecimal.ZERO);
         }
     }
 
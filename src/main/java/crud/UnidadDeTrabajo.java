@@ -0,0 +1,145 @@
+package crud;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * UNIDAD DE TRABAJO: VARIAS OPERACIONES DE DAO EN UNA SOLA TRANSACCIÓN
+ *
+ * Normalmente cada método de un DAO pide su propia conexión al pool y MySQL
+ * confirma cada sentencia por separado (autocommit). Dentro de
+ * UnidadDeTrabajo.ejecutar(...) todas las llamadas a los DAO del mismo hilo
+ * comparten una única conexión y se confirman juntas al final:
+ *
+ *   UnidadDeTrabajo.ejecutar(() -> {
+ *       cultivoDAO.guardar(cultivo);
+ *       tratamientos.forEach(t -> t.setCultivoId(cultivo.getId()));
+ *       tratamientoDAO.guardarTodos(tratamientos, cultivo.getFincaId());
+ *       gestionDAO.guardar(gasto);
+ *       return cultivo;
+ *   });
+ *
+ * - O se guarda todo o nada: si algo lanza una excepción se hace rollback.
+ * - Una sola conexión del pool y un solo commit (un solo fsync en MySQL) por
+ *   acción del usuario, en lugar de uno por sentencia.
+ * - Los DAO no cambian: ConexionBD.obtenerConexion() devuelve la conexión de la
+ *   unidad en curso, y su close() no la devuelve al pool hasta que la unidad termina.
+ * - Lo que los DAO hacen después de escribir (actualizar CacheEntidades y
+ *   VersionDatos) se aplaza con alConfirmar() hasta que el commit ha ido bien,
+ *   para que nadie vea en caché datos que luego se deshacen. Si se hace rollback
+ *   se vacía CacheEntidades, por si alguna lectura dentro de la unidad guardó
+ *   datos sin confirmar, y los ids asignados en la unidad vuelven a null.
+ *
+ * Si se llama a ejecutar() dentro de otra unidad, se une a la que ya está en curso.
+ *
+ * IMPORTANTE: la unidad es del hilo que la abre; no lances consultas a otros
+ * hilos (EjecutorBD) desde dentro esperando que formen parte de ella.
+ */
+public final class UnidadDeTrabajo {
+
+    private static final ThreadLocal<UnidadDeTrabajo> enCurso = new ThreadLocal<>();
+
+    private final Connection compartida;
+    private final List<Runnable> alConfirmar = new ArrayList<>();
+    private final List<Runnable> alDeshacer = new ArrayList<>();
+
+    @FunctionalInterface
+    public interface Trabajo<T> {
+        T ejecutar() throws SQLException;
+    }
+
+    private UnidadDeTrabajo(Connection conexion) {
+        // Misma conexión, pero close() no hace nada: la cierra la unidad al terminar
+        this.compartida = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+            new Class<?>[] {Connection.class}, (proxy, metodo, argumentos) -> {
+                if (metodo.getName().equals("close") && metodo.getParameterCount() == 0) {
+                    return null;
+                }
+                try {
+                    return metodo.invoke(conexion, argumentos);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+    }
+
+    /**
+     * Ejecuta el trabajo en una transacción: commit si termina bien, rollback si lanza.
+     *
+     * @return Lo que devuelva el trabajo
+     */
+    public static <T> T ejecutar(Trabajo<T> trabajo) throws SQLException {
+        if (enCurso.get() != null) {
+            return trabajo.ejecutar();
+        }
+        try (Connection conexion = ConexionBD.obtenerConexionDelPool()) {
+            UnidadDeTrabajo unidad = new UnidadDeTrabajo(conexion);
+            boolean autoCommit = conexion.getAutoCommit();
+            conexion.setAutoCommit(false);
+            enCurso.set(unidad);
+            try {
+                T resultado = trabajo.ejecutar();
+                conexion.commit();
+                enCurso.remove();
+                unidad.alConfirmar.forEach(Runnable::run);
+                return resultado;
+            } catch (SQLException | RuntimeException e) {
+                enCurso.remove();
+                try {
+                    conexion.rollback();
+                } catch (SQLException errorRollback) {
+                    e.addSuppressed(errorRollback);
+                }
+                unidad.alDeshacer.forEach(Runnable::run);
+                CacheEntidades.limpiar();
+                throw e;
+            } finally {
+                enCurso.remove();
+                conexion.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /**
+     * Indica si el hilo actual está dentro de una unidad de trabajo.
+     */
+    public static boolean estaEnCurso() {
+        return enCurso.get() != null;
+    }
+
+    /**
+     * Conexión de la unidad en curso en este hilo, o null si no hay.
+     */
+    static Connection conexionEnCurso() {
+        UnidadDeTrabajo unidad = enCurso.get();
+        return unidad != null ? unidad.compartida : null;
+    }
+
+    /**
+     * Efecto de una escritura que solo debe verse si se confirma (caché, versiones).
+     * Fuera de una unidad se ejecuta en el momento, porque la sentencia ya está confirmada.
+     */
+    static void alConfirmar(Runnable accion) {
+        UnidadDeTrabajo unidad = enCurso.get();
+        if (unidad != null) {
+            unidad.alConfirmar.add(accion);
+        } else {
+            accion.run();
+        }
+    }
+
+    /**
+     * Qué deshacer en memoria si la unidad en curso termina en rollback (p. ej. quitar
+     * un id generado). Fuera de una unidad no hace nada.
+     */
+    static void alDeshacer(Runnable accion) {
+        UnidadDeTrabajo unidad = enCurso.get();
+        if (unidad != null) {
+            unidad.alDeshacer.add(accion);
+        }
+    }
+}
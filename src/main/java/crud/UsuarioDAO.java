@@ -5,10 +5,12 @@ import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Statement;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 import modelo.Usuario;
 import util.SeguridadUtil;
@@ -19,6 +21,9 @@ public class UsuarioDAO {
         "SELECT USU_ID, USU_NOMBRE, USU_APELLIDOS, USU_EMAIL, USU_USERNAME, USU_PASSWORD, USU_ROL, "
             + "USU_FECHA_REGISTRO, USU_ACTIVO FROM usuario ";
 
+    // Si la tabla usuario tiene los índices únicos (null = aún no comprobado, ver hayIndicesUnicos)
+    private static volatile Boolean indicesUnicos;
+
     /**
      * AUTENTICACIÓN DE USUARIOS
      * 
@@ -36,6 +41,54 @@ public class UsuarioDAO {
      * @throws SQLException Si hay error de conexión a la base de datos
      */
     public Optional<Usuario> autenticar(String usuarioOCorreo, String password) throws SQLException {
+        Optional<Usuario> candidato = buscarActivo(usuarioOCorreo);
+        if (candidato.isEmpty()) {
+            return Optional.empty();
+        }
+        Usuario usuario = candidato.get();
+
+        // INTENTO 1: Verificar con BCrypt (método seguro y actual)
+        if (SeguridadUtil.verificarPassword(password, usuario.getPassword())) {
+            // Si el hash se hizo con otro costo (p. ej. antes de calibrar este equipo),
+            // se rehace ahora que se tiene la contraseña
+            if (SeguridadUtil.necesitaRehash(usuario.getPassword())) {
+                rehacerHash(usuario, password);
+            }
+            return Optional.of(usuario);
+        }
+
+        // INTENTO 2: Compatibilidad con contraseñas antiguas en texto plano
+        // Si la app tenía usuarios con contraseñas sin hashear, los migra automáticamente
+        // Esto solo funciona si la contraseña guardada NO es un hash BCrypt válido
+        if (SeguridadUtil.coincideTextoPlano(password, usuario.getPassword())) {
+            // Convertir la contraseña antigua a BCrypt y guardarla
+            String nuevoHash = SeguridadUtil.hashPassword(password);
+            reemplazarPassword(usuario.getId(), password, nuevoHash);
+            usuario.setPassword(nuevoHash);
+            return Optional.of(usuario);
+        }
+        return Optional.empty();  // Credenciales incorrectas
+    }
+
+    private void rehacerHash(Usuario usuario, String password) {
+        String nuevoHash = SeguridadUtil.hashPassword(password);
+        try {
+            if (reemplazarPassword(usuario.getId(), usuario.getPassword(), nuevoHash)) {
+                usuario.setPassword(nuevoHash);
+            }
+        } catch (SQLException e) {
+            // El login ya es correcto; se volverá a intentar en el siguiente
+            System.err.println("No se pudo actualizar el costo del hash: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Usuario activo con ese username o email, con su hash de contraseña, sin
+     * comprobar la contraseña. Es la parte de autenticar() que va a MySQL; la
+     * comprobación con BCrypt la puede hacer quien llama en otro hilo (ver
+     * TareaAutenticacion).
+     */
+    public Optional<Usuario> buscarActivo(String usuarioOCorreo) throws SQLException {
         // Buscar usuario por username O email (el ? se usa dos veces para ambos casos)
         String sql = SELECT_BASE
             + "WHERE (USU_USERNAME = ? OR USU_EMAIL = ?) AND USU_ACTIVO = TRUE";
@@ -44,26 +97,29 @@ public class UsuarioDAO {
             ps.setString(1, usuarioOCorreo);
             ps.setString(2, usuarioOCorreo);
             ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                Usuario usuario = mapear(rs);
-                
-                // INTENTO 1: Verificar con BCrypt (método seguro y actual)
-                if (SeguridadUtil.verificarPassword(password, usuario.getPassword())) {
-                    return Optional.of(usuario);
-                }
-                
-                // INTENTO 2: Compatibilidad con contraseñas antiguas en texto plano
-                // Si la app tenía usuarios con contraseñas sin hashear, los migra automáticamente
-                // Esto solo funciona si la contraseña guardada NO es un hash BCrypt válido
-                if (password.equals(usuario.getPassword())) {
-                    // Convertir la contraseña antigua a BCrypt y guardarla
-                    String nuevoHash = SeguridadUtil.hashPassword(password);
-                    actualizarPassword(usuario.getId(), nuevoHash);
-                    usuario.setPassword(nuevoHash);
-                    return Optional.of(usuario);
-                }
-            }
-            return Optional.empty();  // Credenciales incorrectas
+            return rs.next() ? Optional.of(mapear(rs)) : Optional.empty();
+        }
+    }
+
+    /**
+     * Sustituye la contraseña guardada por un hash BCrypt nuevo: una contraseña
+     * antigua en texto plano, o un hash hecho con un costo distinto del calibrado
+     * (ver SeguridadUtil.necesitaRehash).
+     *
+     * Solo escribe si la contraseña guardada sigue siendo la que se leyó: si
+     * entretanto se ha cambiado (o ya la actualizó otra sesión), no se pisa.
+     *
+     * @param guardada Valor de USU_PASSWORD que se leyó al autenticar
+     * @return true si se ha sustituido
+     */
+    public boolean reemplazarPassword(int usuarioId, String guardada, String nuevoHash) throws SQLException {
+        String sql = "UPDATE usuario SET USU_PASSWORD = ? WHERE USU_ID = ? AND USU_PASSWORD = ?";
+        try (Connection conn = ConexionBD.obtenerConexion();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, nuevoHash);
+            ps.setInt(2, usuarioId);
+            ps.setString(3, guardada);
+            return ps.executeUpdate() > 0;
         }
     }
 
@@ -79,11 +135,121 @@ public class UsuarioDAO {
         }
     }
 
+    /**
+     * Una página del listado de usuarios, del registro más reciente al más antiguo.
+     *
+     * Usa paginación por clave: en lugar de OFFSET, pide las filas que van después
+     * de la última de la página anterior, así MySQL salta directamente con el
+     * índice (USU_FECHA_REGISTRO, USU_ID) sea cual sea la página.
+     *
+     * @param busqueda Texto a buscar en nombre, apellidos, email y username, o null para todos
+     * @param despuesDe Clave de la última fila de la página anterior, o null para la primera
+     * @param tamano Número máximo de filas
+     */
+    public List<Usuario> listarPagina(String busqueda, ClavePagina despuesDe, int tamano) throws SQLException {
+        List<String> condiciones = new ArrayList<>();
+        List<Object> parametros = new ArrayList<>();
+        filtrarPorBusqueda(BusquedaTexto.de(busqueda), condiciones, parametros);
+        if (despuesDe != null) {
+            condiciones.add("(USU_FECHA_REGISTRO < ? OR (USU_FECHA_REGISTRO = ? AND USU_ID < ?))");
+            parametros.add(Date.valueOf(despuesDe.fecha()));
+            parametros.add(Date.valueOf(despuesDe.fecha()));
+            parametros.add(despuesDe.id());
+        }
+        parametros.add(tamano);
+        String sql = SELECT_BASE + where(condiciones) + "ORDER BY USU_FECHA_REGISTRO DESC, USU_ID DESC LIMIT ?";
+        try (Connection conn = ConexionBD.obtenerConexion();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            asignar(ps, parametros);
+            ResultSet rs = ps.executeQuery();
+            List<Usuario> usuarios = new ArrayList<>();
+            while (rs.next()) {
+                usuarios.add(mapear(rs));
+            }
+            return usuarios;
+        }
+    }
+
+    /**
+     * Clave de la fila que ocupa la posición indicada (empezando en 0) en el listado
+     * paginado, o null si no existe. Permite saltar a una página lejana sin leer las
+     * anteriores: solo recorre el índice, no las filas.
+     */
+    public ClavePagina claveEnPosicion(String busqueda, int posicion) throws SQLException {
+        List<String> condiciones = new ArrayList<>();
+        List<Object> parametros = new ArrayList<>();
+        filtrarPorBusqueda(BusquedaTexto.de(busqueda), condiciones, parametros);
+        parametros.add(posicion);
+        String sql = "SELECT USU_FECHA_REGISTRO, USU_ID FROM usuario " + where(condiciones)
+            + "ORDER BY USU_FECHA_REGISTRO DESC, USU_ID DESC LIMIT 1 OFFSET ?";
+        try (Connection conn = ConexionBD.obtenerConexion();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            asignar(ps, parametros);
+            ResultSet rs = ps.executeQuery();
+            return rs.next() ? new ClavePagina(rs.getDate(1).toLocalDate(), rs.getInt(2)) : null;
+        }
+    }
+
+    public static ClavePagina claveDe(Usuario usuario) {
+        return new ClavePagina(usuario.getFechaRegistro(), usuario.getId());
+    }
+
+    public int contar(String busqueda) throws SQLException {
+        List<String> condiciones = new ArrayList<>();
+        List<Object> parametros = new ArrayList<>();
+        filtrarPorBusqueda(BusquedaTexto.de(busqueda), condiciones, parametros);
+        try (Connection conn = ConexionBD.obtenerConexion();
+             PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM usuario " + where(condiciones))) {
+            asignar(ps, parametros);
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Con palabras de 3 o más letras usa el índice FULLTEXT ft_usuario_busqueda;
+     * con texto más corto, prefijo sobre los índices de cada columna.
+     */
+    private static void filtrarPorBusqueda(BusquedaTexto busqueda, List<String> condiciones, List<Object> parametros) {
+        if (busqueda == null) {
+            return;
+        }
+        if (busqueda.usaFulltext()) {
+            condiciones.add("MATCH(USU_NOMBRE, USU_APELLIDOS, USU_EMAIL, USU_USERNAME) AGAINST (? IN BOOLEAN MODE)");
+            parametros.add(busqueda.textoBooleano());
+        } else {
+            condiciones.add("(USU_NOMBRE LIKE ? OR USU_APELLIDOS LIKE ? OR USU_EMAIL LIKE ? OR USU_USERNAME LIKE ?)");
+            for (int i = 0; i < 4; i++) {
+                parametros.add(busqueda.prefijoLike());
+            }
+        }
+    }
+
+    private static String where(List<String> condiciones) {
+        return condiciones.isEmpty() ? "" : "WHERE " + String.join(" AND ", condiciones) + " ";
+    }
+
+    private static void asignar(PreparedStatement ps, List<Object> parametros) throws SQLException {
+        for (int i = 0; i < parametros.size(); i++) {
+            ps.setObject(i + 1, parametros.get(i));
+        }
+    }
+
     public Usuario guardar(Usuario usuario) throws SQLException {
         String sql = "INSERT INTO usuario (USU_NOMBRE, USU_APELLIDOS, USU_EMAIL, USU_USERNAME, "
             + "USU_PASSWORD, USU_ROL, USU_FECHA_REGISTRO, USU_ACTIVO) VALUES (?,?,?,?,?,?,?,?)";
         try (Connection conn = ConexionBD.obtenerConexion();
              PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            // Con los índices únicos de username y email no hace falta comprobar antes:
+            // MySQL rechaza el duplicado aunque otro registro entre a la vez. Si la
+            // base de datos aún no los tiene, se comprueba con una consulta
+            if (!hayIndicesUnicos(conn)) {
+                Disponibilidad disponibilidad = disponibilidad(conn, usuario.getUsername(), usuario.getEmail(), null);
+                if (!disponibilidad.todoLibre()) {
+                    throw new UsuarioDuplicado(!disponibilidad.emailLibre());
+                }
+            }
             ps.setString(1, usuario.getNombre());
             ps.setString(2, usuario.getApellidos());
             ps.setString(3, usuario.getEmail());
@@ -94,7 +260,9 @@ public class UsuarioDAO {
             ps.setDate(7, Date.valueOf(
                 usuario.getFechaRegistro() != null ? usuario.getFechaRegistro() : LocalDate.now()));
             ps.setBoolean(8, usuario.isActivo());
-            ps.executeUpdate();
+            ejecutarSinDuplicados(ps, usuario);
+            // Los informes de administrador incluyen los datos de los usuarios
+            VersionDatos.todoModificado();
 
             ResultSet keys = ps.getGeneratedKeys();
             if (keys.next()) {
@@ -148,7 +316,115 @@ public class UsuarioDAO {
                 usuario.setPassword(hash);
             }
             ps.setInt(idx, usuario.getId());
-            ps.executeUpdate();
+            ejecutarSinDuplicados(ps, usuario);
+            VersionDatos.todoModificado();
+        }
+    }
+
+    private static int ejecutarSinDuplicados(PreparedStatement ps, Usuario usuario) throws SQLException {
+        try {
+            return ps.executeUpdate();
+        } catch (SQLIntegrityConstraintViolationException e) {
+            if (e.getErrorCode() != 1062) {
+                throw e;
+            }
+            String indice = indiceDuplicado(e.getMessage());
+            if ("uk_usuario_email".equals(indice) || "uk_usuario_username".equals(indice)) {
+                throw new UsuarioDuplicado(indice.equals("uk_usuario_email"), e);
+            }
+            // Índice con otro nombre (creado a mano): se pregunta cuál de los dos está ocupado
+            Disponibilidad disponibilidad = disponibilidad(ps.getConnection(),
+                usuario.getUsername(), usuario.getEmail(), usuario.getId());
+            throw new UsuarioDuplicado(!disponibilidad.emailLibre(), e);
+        }
+    }
+
+    /**
+     * Nombre del índice en el mensaje de MySQL 1062, sin la tabla delante:
+     * "Duplicate entry 'email_fan' for key 'usuario.uk_usuario_username'" -> "uk_usuario_username".
+     * El valor duplicado va entre comillas antes y puede contener cualquier texto,
+     * así que solo se mira lo que sigue a "for key '". Null si no aparece.
+     */
+    private static String indiceDuplicado(String mensaje) {
+        if (mensaje == null) {
+            return null;
+        }
+        String marca = "for key '";
+        int inicio = mensaje.lastIndexOf(marca);
+        if (inicio < 0) {
+            return null;
+        }
+        inicio += marca.length();
+        int fin = mensaje.indexOf('\'', inicio);
+        String indice = fin < 0 ? mensaje.substring(inicio) : mensaje.substring(inicio, fin);
+        int punto = indice.lastIndexOf('.');
+        return indice.substring(punto + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Comprueba (una vez por ejecución) si la tabla usuario tiene los índices
+     * únicos de USU_USERNAME y USU_EMAIL (sql/migraciones/001_usuario_unicos.sql).
+     * Si no los tiene, guardar() comprueba antes de insertar y se avisa en la consola.
+     */
+    private static boolean hayIndicesUnicos(Connection conn) throws SQLException {
+        Boolean comprobado = indicesUnicos;
+        if (comprobado != null) {
+            return comprobado;
+        }
+        // Índices únicos de una sola columna sobre username o email
+        String sql = "SELECT COUNT(DISTINCT s.COLUMN_NAME) FROM information_schema.STATISTICS s "
+            + "WHERE s.TABLE_SCHEMA = DATABASE() AND s.TABLE_NAME = 'usuario' AND s.NON_UNIQUE = 0 "
+            + "AND s.COLUMN_NAME IN ('USU_USERNAME', 'USU_EMAIL') "
+            + "AND NOT EXISTS (SELECT 1 FROM information_schema.STATISTICS o "
+            + "WHERE o.TABLE_SCHEMA = s.TABLE_SCHEMA AND o.TABLE_NAME = s.TABLE_NAME "
+            + "AND o.INDEX_NAME = s.INDEX_NAME AND o.SEQ_IN_INDEX > 1)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ResultSet rs = ps.executeQuery();
+            boolean hay = rs.next() && rs.getInt(1) == 2;
+            if (!hay) {
+                System.err.println("La tabla usuario no tiene índices únicos de username y email: "
+                    + "ejecuta sql/migraciones/001_usuario_unicos.sql. Mientras tanto se comprueba "
+                    + "antes de cada alta.");
+            }
+            indicesUnicos = hay;
+            return hay;
+        }
+    }
+
+    /**
+     * Comprueba en una sola consulta si el username y el email están libres.
+     *
+     * Sirve para avisar mientras se rellena el formulario de registro; al
+     * guardar no hace falta llamarlo antes, porque guardar() ya lanza
+     * UsuarioDuplicado si alguno está en uso (índices únicos, ver
+     * sql/migraciones/001_usuario_unicos.sql).
+     *
+     * @param username Username a comprobar, o null para no comprobarlo
+     * @param email Email a comprobar, o null para no comprobarlo
+     */
+    public Disponibilidad validarDisponibilidad(String username, String email) throws SQLException {
+        try (Connection conn = ConexionBD.obtenerConexion()) {
+            return disponibilidad(conn, username, email, null);
+        }
+    }
+
+    /**
+     * Como validarDisponibilidad(), con una conexión ya abierta y sin contar la
+     * propia cuenta (excluirId) cuando se está actualizando.
+     */
+    private static Disponibilidad disponibilidad(Connection conn, String username, String email,
+                                                 Integer excluirId) throws SQLException {
+        String sql = "SELECT EXISTS(SELECT 1 FROM usuario WHERE USU_USERNAME = ? AND USU_ID <> ?), "
+            + "EXISTS(SELECT 1 FROM usuario WHERE USU_EMAIL = ? AND USU_ID <> ?)";
+        int id = excluirId != null ? excluirId : 0;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, username);
+            ps.setInt(2, id);
+            ps.setString(3, email);
+            ps.setInt(4, id);
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            return new Disponibilidad(!rs.getBoolean(1), !rs.getBoolean(2));
         }
     }
 
@@ -177,17 +453,11 @@ public class UsuarioDAO {
              PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setBoolean(1, activo);
             ps.setInt(2, usuarioId);
-            return ps.executeUpdate() > 0;
-        }
-    }
-
-    private void actualizarPassword(int usuarioId, String hash) throws SQLException {
-        String sql = "UPDATE usuario SET USU_PASSWORD = ? WHERE USU_ID = ?";
-        try (Connection conn = ConexionBD.obtenerConexion();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, hash);
-            ps.setInt(2, usuarioId);
-            ps.executeUpdate();
+            boolean actualizado = ps.executeUpdate() > 0;
+            if (actualizado) {
+                VersionDatos.todoModificado();
+            }
+            return actualizado;
         }
     }
 
@@ -196,7 +466,11 @@ public class UsuarioDAO {
         try (Connection conn = ConexionBD.obtenerConexion();
              PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setInt(1, usuarioId);
-            return ps.executeUpdate() > 0;
+            boolean eliminado = ps.executeUpdate() > 0;
+            if (eliminado) {
+                VersionDatos.todoModificado();
+            }
+            return eliminado;
         }
     }
 
@@ -213,5 +487,45 @@ public class UsuarioDAO {
         usuario.setActivo(rs.getBoolean("USU_ACTIVO"));
         return usuario;
     }
-}
 
+    /**
+     * Resultado de validarDisponibilidad(). Un valor que no se comprobó (null)
+     * cuenta como libre.
+     */
+    public record Disponibilidad(boolean usernameLibre, boolean emailLibre) {
+
+        public boolean todoLibre() {
+            return usernameLibre && emailLibre;
+        }
+    }
+
+    /**
+     * Al guardar o actualizar, el username o el email ya los usa otra cuenta.
+     * El mensaje se puede mostrar tal cual al usuario.
+     */
+    public static final class UsuarioDuplicado extends SQLException {
+
+        private final boolean email;
+
+        UsuarioDuplicado(boolean email, SQLException causa) {
+            super(mensaje(email), causa.getSQLState(), causa.getErrorCode(), causa);
+            this.email = email;
+        }
+
+        /** Duplicado detectado por la consulta previa (sin índices únicos). */
+        UsuarioDuplicado(boolean email) {
+            super(mensaje(email), "23000", 1062);
+            this.email = email;
+        }
+
+        private static String mensaje(boolean email) {
+            return email ? "Ya existe una cuenta asociada a ese correo."
+                : "El nombre de usuario ya está registrado. Elige otro.";
+        }
+
+        /** true si el duplicado es el email, false si es el username. */
+        public boolean isEmail() {
+            return email;
+        }
+    }
+}
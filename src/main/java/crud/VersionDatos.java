@@ -0,0 +1,68 @@
+package crud;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * VERSIÓN DE LOS DATOS DE CADA FINCA
+ *
+ * Lleva un contador por finca que los DAO incrementan cada vez que escriben
+ * algo que pertenece a esa finca (cultivos, tratamientos, movimientos o la
+ * propia finca). Quien guarde resultados calculados a partir de la base de datos
+ * (por ejemplo los informes ya llenos) puede apuntar la versión que tenían los
+ * datos y saber después si siguen siendo válidos sin volver a consultar MySQL.
+ *
+ * Cuando un DAO no sabe a qué finca afecta un cambio (un borrado por id, por
+ * ejemplo) llama a todoModificado() y se invalidan todas las fincas a la vez.
+ *
+ * Solo detecta los cambios hechos desde esta aplicación; no ve lo que otro
+ * programa escriba directamente en la base de datos.
+ */
+public final class VersionDatos {
+
+    private static final Map<Integer, AtomicLong> porFinca = new ConcurrentHashMap<>();
+    private static final AtomicLong generacion = new AtomicLong();
+    private static final AtomicLong cambiosTotales = new AtomicLong();
+
+    private VersionDatos() {
+        // Clase de utilidad, no se puede instanciar
+    }
+
+    /**
+     * Anota que han cambiado datos de una finca. Con null se invalidan todas.
+     */
+    public static void fincaModificada(Integer fincaId) {
+        if (fincaId == null) {
+            todoModificado();
+            return;
+        }
+        porFinca.computeIfAbsent(fincaId, id -> new AtomicLong()).incrementAndGet();
+        cambiosTotales.incrementAndGet();
+    }
+
+    /**
+     * Anota un cambio que puede afectar a cualquier finca (o a datos generales, como usuarios).
+     */
+    public static void todoModificado() {
+        generacion.incrementAndGet();
+        cambiosTotales.incrementAndGet();
+    }
+
+    /**
+     * Versión actual de los datos de una finca: cambia cada vez que se modifica esa finca
+     * o se llama a todoModificado().
+     */
+    public static String version(int fincaId) {
+        AtomicLong contador = porFinca.get(fincaId);
+        return generacion.get() + "." + (contador != null ? contador.get() : 0);
+    }
+
+    /**
+     * Versión del conjunto de todos los datos: cambia con cualquier escritura.
+     * Sirve para resultados que mezclan varias fincas (informes de administrador).
+     */
+    public static String versionGlobal() {
+        return String.valueOf(cambiosTotales.get());
+    }
+}
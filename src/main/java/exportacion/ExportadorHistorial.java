@@ -0,0 +1,59 @@
+package exportacion;
+
+import carga.EjecutorBD;
+import java.io.File;
+
+/**
+ * EXPORTACIÓN DEL HISTORIAL DE FINCAS
+ *
+ * Lanza la exportación de los cultivos, tratamientos y movimientos financieros
+ * de una finca, o de todas las fincas de un usuario, a CSV o NDJSON (ver
+ * TareaExportacion). Es la forma de sacar los datos sin pasar por los informes
+ * de JasperReports, y el CSV se puede volver a importar con ImportadorCsv.
+ */
+public final class ExportadorHistorial {
+
+    public enum Formato {
+        CSV("Archivos CSV", "*.csv"),
+        NDJSON("JSON por líneas (NDJSON)", "*.ndjson");
+
+        private final String descripcion;
+        private final String patron;
+
+        Formato(String descripcion, String patron) {
+            this.descripcion = descripcion;
+            this.patron = patron;
+        }
+
+        /**
+         * Texto para el filtro del FileChooser.
+         */
+        public String getDescripcion() {
+            return descripcion;
+        }
+
+        /**
+         * Patrón para el filtro del FileChooser ("*.csv").
+         */
+        public String getPatron() {
+            return patron;
+        }
+    }
+
+    private ExportadorHistorial() {
+        // Clase de utilidad, no se puede instanciar
+    }
+
+    public static TareaExportacion exportarFinca(int fincaId, File destino, Formato formato) {
+        return lanzar(new TareaExportacion(fincaId, null, destino, formato));
+    }
+
+    public static TareaExportacion exportarUsuario(int usuarioId, File destino, Formato formato) {
+        return lanzar(new TareaExportacion(null, usuarioId, destino, formato));
+    }
+
+    private static TareaExportacion lanzar(TareaExportacion tarea) {
+        EjecutorBD.get().execute(tarea);
+        return tarea;
+    }
+}
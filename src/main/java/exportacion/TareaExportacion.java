@@ -0,0 +1,248 @@
+package exportacion;
+
+import crud.HistorialDAO;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import javafx.concurrent.Task;
+
+/**
+ * Exporta el historial (cultivos, tratamientos y movimientos) fuera del hilo de JavaFX.
+ *
+ * Se crea con ExportadorHistorial. Las filas van de HistorialDAO (resultado en
+ * streaming) directamente al archivo: cada fila se escribe en un StringBuilder
+ * que se reutiliza y de ahí a un Writer sobre un FileChannel con un búfer de
+ * TAMANO_BUFFER bytes. En ningún momento hay una lista de entidades en memoria,
+ * así que el heap no depende del número de filas.
+ *
+ * - CSV: un archivo por sección (nombre_cultivos.csv, nombre_tratamientos.csv,
+ *   nombre_movimientos.csv), con ';' y BOM para que Excel lo abra bien. Las
+ *   columnas son las que entiende ImportadorCsv.
+ * - NDJSON: un solo archivo con un objeto JSON por línea; el campo "registro"
+ *   indica si es un cultivo, un tratamiento o un movimiento.
+ *
+ * Si se cancela, se deja de leer en la sección en curso y los archivos quedan
+ * con lo escrito hasta ese momento.
+ */
+public class TareaExportacion extends Task<TareaExportacion.ResumenExportacion> {
+
+    private static final int TAMANO_BUFFER = 64 * 1024;
+    private static final long AVISAR_CADA = 10_000;
+    private static final char SEPARADOR_CSV = ';';
+
+    private final Integer fincaId;
+    private final Integer usuarioId;
+    private final File destino;
+    private final ExportadorHistorial.Formato formato;
+    private final StringBuilder linea = new StringBuilder(512);
+
+    private long filas;
+
+    TareaExportacion(Integer fincaId, Integer usuarioId, File destino, ExportadorHistorial.Formato formato) {
+        this.fincaId = fincaId;
+        this.usuarioId = usuarioId;
+        this.destino = destino;
+        this.formato = formato;
+    }
+
+    @Override
+    protected ResumenExportacion call() throws Exception {
+        updateMessage("Exportando...");
+        updateProgress(-1, 1);
+        HistorialDAO dao = new HistorialDAO();
+        List<File> archivos = new ArrayList<>();
+
+        if (formato == ExportadorHistorial.Formato.NDJSON) {
+            try (Writer salida = abrir(destino)) {
+                archivos.add(destino);
+                for (HistorialDAO.Seccion seccion : HistorialDAO.Seccion.values()) {
+                    if (isCancelled()) {
+                        break;
+                    }
+                    dao.recorrer(seccion, fincaId, usuarioId, new EscritorNdjson(salida, seccion.getRegistro()));
+                }
+            }
+        } else {
+            for (HistorialDAO.Seccion seccion : HistorialDAO.Seccion.values()) {
+                if (isCancelled()) {
+                    break;
+                }
+                File archivo = archivoSeccion(destino, seccion);
+                try (Writer salida = abrir(archivo)) {
+                    archivos.add(archivo);
+                    // BOM para que Excel lo abra como UTF-8
+                    salida.write('\uFEFF');
+                    dao.recorrer(seccion, fincaId, usuarioId, new EscritorCsv(salida));
+                }
+            }
+        }
+        updateMessage(filas + " filas exportadas");
+        updateProgress(1, 1);
+        return new ResumenExportacion(filas, archivos, isCancelled());
+    }
+
+    /**
+     * Writer sobre un FileChannel: los caracteres se codifican en UTF-8 en un
+     * búfer de bytes que se escribe en el canal cuando se llena.
+     */
+    private static Writer abrir(File archivo) throws IOException {
+        FileChannel canal = FileChannel.open(archivo.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return Channels.newWriter(canal, StandardCharsets.UTF_8.newEncoder(), TAMANO_BUFFER);
+    }
+
+    /**
+     * "historial.csv" -> "historial_cultivos.csv", en el mismo directorio.
+     */
+    static File archivoSeccion(File destino, HistorialDAO.Seccion seccion) {
+        String nombre = destino.getName();
+        int punto = nombre.lastIndexOf('.');
+        String base = punto > 0 ? nombre.substring(0, punto) : nombre;
+        String extension = punto > 0 ? nombre.substring(punto) : ".csv";
+        return new File(destino.getAbsoluteFile().getParentFile(),
+            base + "_" + seccion.name().toLowerCase() + extension);
+    }
+
+    private boolean filaEscrita() {
+        filas++;
+        if (filas % AVISAR_CADA == 0) {
+            updateMessage(filas + " filas exportadas");
+        }
+        return !isCancelled();
+    }
+
+    /**
+     * Resultado de la exportación.
+     *
+     * @param archivos Archivos escritos (uno en NDJSON, uno por sección en CSV)
+     * @param cancelada Si se canceló a mitad (los archivos están incompletos)
+     */
+    public record ResumenExportacion(long filas, List<File> archivos, boolean cancelada) {
+    }
+
+    private final class EscritorCsv implements HistorialDAO.ReceptorFilas {
+
+        private final Writer salida;
+
+        private EscritorCsv(Writer salida) {
+            this.salida = salida;
+        }
+
+        @Override
+        public void columnas(List<HistorialDAO.Columna> columnas) throws IOException {
+            linea.setLength(0);
+            for (HistorialDAO.Columna columna : columnas) {
+                if (linea.length() > 0) {
+                    linea.append(SEPARADOR_CSV);
+                }
+                linea.append(columna.nombre());
+            }
+            salida.append(linea).append('\n');
+        }
+
+        @Override
+        public boolean fila(String[] valores) throws IOException {
+            linea.setLength(0);
+            for (int i = 0; i < valores.length; i++) {
+                if (i > 0) {
+                    linea.append(SEPARADOR_CSV);
+                }
+                campoCsv(valores[i]);
+            }
+            salida.append(linea).append('\n');
+            return filaEscrita();
+        }
+
+        private void campoCsv(String valor) {
+            if (valor == null) {
+                return;
+            }
+            boolean comillas = false;
+            for (int i = 0; i < valor.length() && !comillas; i++) {
+                char c = valor.charAt(i);
+                comillas = c == SEPARADOR_CSV || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!comillas) {
+                linea.append(valor);
+                return;
+            }
+            linea.append('"');
+            for (int i = 0; i < valor.length(); i++) {
+                char c = valor.charAt(i);
+                if (c == '"') {
+                    linea.append('"');
+                }
+                linea.append(c);
+            }
+            linea.append('"');
+        }
+    }
+
+    private final class EscritorNdjson implements HistorialDAO.ReceptorFilas {
+
+        private final Writer salida;
+        private final String registro;
+        private List<HistorialDAO.Columna> columnas;
+
+        private EscritorNdjson(Writer salida, String registro) {
+            this.salida = salida;
+            this.registro = registro;
+        }
+
+        @Override
+        public void columnas(List<HistorialDAO.Columna> columnas) {
+            this.columnas = columnas;
+        }
+
+        @Override
+        public boolean fila(String[] valores) throws IOException {
+            linea.setLength(0);
+            linea.append("{\"registro\":");
+            textoJson(registro);
+            for (int i = 0; i < valores.length; i++) {
+                HistorialDAO.Columna columna = columnas.get(i);
+                linea.append(',');
+                textoJson(columna.nombre());
+                linea.append(':');
+                if (valores[i] == null) {
+                    linea.append("null");
+                } else if (columna.numerica()) {
+                    linea.append(valores[i]);
+                } else {
+                    textoJson(valores[i]);
+                }
+            }
+            linea.append("}\n");
+            salida.append(linea);
+            return filaEscrita();
+        }
+
+        private void textoJson(String texto) {
+            linea.append('"');
+            for (int i = 0; i < texto.length(); i++) {
+                char c = texto.charAt(i);
+                switch (c) {
+                    case '"' -> linea.append("\\\"");
+                    case '\\' -> linea.append("\\\\");
+                    case '\n' -> linea.append("\\n");
+                    case '\r' -> linea.append("\\r");
+                    case '\t' -> linea.append("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            linea.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            linea.append(c);
+                        }
+                    }
+                }
+            }
+            linea.append('"');
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package importacion;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import util.IndiceBusqueda;
+
+/**
+ * Un registro del CSV con acceso a sus campos por nombre de columna.
+ *
+ * Los nombres de columna se comparan sin tildes, mayúsculas, espacios ni
+ * guiones bajos: "Fecha siembra", "fecha_siembra" y "FECHASIEMBRA" son la misma.
+ * Cada campo admite varios nombres (p. ej. "monto" o "importe").
+ *
+ * Los métodos de lectura lanzan FilaRechazada con un motivo legible cuando el
+ * valor falta o no es válido; el importador lo anota en el informe de rechazos.
+ */
+final class FilaCsv {
+
+    private static final DateTimeFormatter FECHA_ESPANOLA = DateTimeFormatter.ofPattern("d/M/uuuu");
+    private static final DateTimeFormatter FECHA_GUIONES = DateTimeFormatter.ofPattern("d-M-uuuu");
+
+    /**
+     * Posición de cada columna de la cabecera, por nombre normalizado.
+     */
+    static final class Cabecera {
+
+        private final Map<String, Integer> posiciones = new HashMap<>();
+
+        Cabecera(List<String> nombres) {
+            for (int i = 0; i < nombres.size(); i++) {
+                posiciones.putIfAbsent(normalizarColumna(nombres.get(i)), i);
+            }
+        }
+
+        /**
+         * @return La posición de la primera columna que tenga alguno de los nombres, o -1
+         */
+        int posicion(String... nombres) {
+            for (String nombre : nombres) {
+                Integer posicion = posiciones.get(normalizarColumna(nombre));
+                if (posicion != null) {
+                    return posicion;
+                }
+            }
+            return -1;
+        }
+
+        private static String normalizarColumna(String nombre) {
+            return IndiceBusqueda.normalizar(nombre).replaceAll("[^a-z0-9]", "");
+        }
+    }
+
+    private final Cabecera cabecera;
+    private final List<String> campos;
+
+    FilaCsv(Cabecera cabecera, List<String> campos) {
+        this.cabecera = cabecera;
+        this.campos = campos;
+    }
+
+    boolean estaVacia() {
+        return campos.stream().allMatch(String::isBlank);
+    }
+
+    /**
+     * @return El texto sin espacios alrededor, o null si la columna no existe o está vacía
+     */
+    String texto(String... columna) {
+        int posicion = cabecera.posicion(columna);
+        if (posicion < 0 || posicion >= campos.size()) {
+            return null;
+        }
+        String valor = campos.get(posicion).trim();
+        return valor.isEmpty() ? null : valor;
+    }
+
+    String textoRequerido(String... columna) throws FilaRechazada {
+        String valor = texto(columna);
+        if (valor == null) {
+            throw new FilaRechazada("Falta " + columna[0]);
+        }
+        return valor;
+    }
+
+    /**
+     * Admite 2024-03-15, 15/03/2024 y 15-03-2024.
+     */
+    LocalDate fecha(String... columna) throws FilaRechazada {
+        String valor = texto(columna);
+        if (valor == null) {
+            return null;
+        }
+        for (DateTimeFormatter formato : List.of(DateTimeFormatter.ISO_LOCAL_DATE, FECHA_ESPANOLA, FECHA_GUIONES)) {
+            try {
+                return LocalDate.parse(valor, formato);
+            } catch (DateTimeParseException e) {
+                // Probar el siguiente formato
+            }
+        }
+        throw new FilaRechazada(columna[0] + ": fecha no válida \"" + valor + "\"");
+    }
+
+    LocalDate fechaRequerida(String... columna) throws FilaRechazada {
+        LocalDate valor = fecha(columna);
+        if (valor == null) {
+            throw new FilaRechazada("Falta " + columna[0]);
+        }
+        return valor;
+    }
+
+    /**
+     * Admite punto o coma decimal ("1234.5", "1234,5", "1.234,5", "1,234.5").
+     */
+    BigDecimal numero(String... columna) throws FilaRechazada {
+        String valor = texto(columna);
+        if (valor == null) {
+            return null;
+        }
+        String limpio = valor.replace(" ", "").replace("€", "");
+        int coma = limpio.lastIndexOf(',');
+        int punto = limpio.lastIndexOf('.');
+        if (coma > punto) {
+            // La coma es el separador decimal y los puntos, de miles
+            limpio = limpio.replace(".", "").replace(',', '.');
+        } else if (coma >= 0) {
+            limpio = limpio.replace(",", "");
+        }
+        try {
+            return new BigDecimal(limpio);
+        } catch (NumberFormatException e) {
+            throw new FilaRechazada(columna[0] + ": número no válido \"" + valor + "\"");
+        }
+    }
+
+    BigDecimal numeroRequerido(String... columna) throws FilaRechazada {
+        BigDecimal valor = numero(columna);
+        if (valor == null) {
+            throw new FilaRechazada("Falta " + columna[0]);
+        }
+        return valor;
+    }
+
+    /**
+     * Valor de un enum de modelo por su nombre, sin distinguir tildes ni
+     * mayúsculas y con espacios en lugar de '_' ("En preparación" -> EN_PREPARACION).
+     *
+     * @param porDefecto Valor si la columna está vacía, o null si es obligatoria
+     */
+    <E extends Enum<E>> E enumerado(Class<E> tipo, E porDefecto, String... columna) throws FilaRechazada {
+        String valor = texto(columna);
+        if (valor == null) {
+            if (porDefecto == null) {
+                throw new FilaRechazada("Falta " + columna[0]);
+            }
+            return porDefecto;
+        }
+        String nombre = IndiceBusqueda.normalizar(valor).trim().replaceAll("[\\s-]+", "_").toUpperCase(Locale.ROOT);
+        for (E constante : tipo.getEnumConstants()) {
+            if (constante.name().equals(nombre)) {
+                return constante;
+            }
+        }
+        StringBuilder validos = new StringBuilder();
+        for (E constante : tipo.getEnumConstants()) {
+            if (!validos.isEmpty()) {
+                validos.append(", ");
+            }
+            validos.append(constante.name().toLowerCase(Locale.ROOT));
+        }
+        throw new FilaRechazada(columna[0] + ": \"" + valor + "\" no es válido (" + validos + ")");
+    }
+
+    List<String> getCampos() {
+        return campos;
+    }
+
+    /**
+     * El registro no se puede importar; el mensaje es el motivo que se anota en el informe.
+     */
+    static final class FilaRechazada extends Exception {
+
+        FilaRechazada(String motivo) {
+            super(motivo);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package importacion;
+
+import carga.EjecutorBD;
+import crud.CultivoDAO;
+import crud.GestionFinancieraDAO;
+import crud.TratamientoDAO;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import modelo.Cultivo;
+import modelo.GestionFinanciera;
+import modelo.Tratamiento;
+import util.IndiceBusqueda;
+
+/**
+ * IMPORTACIÓN DE CUADERNOS DE CAMPO EN CSV
+ *
+ * Lanza la importación de un CSV de cultivos, tratamientos o movimientos
+ * financieros en una finca (ver TareaImportacion). Excel puede guardar
+ * cualquier hoja como CSV ("CSV UTF-8" o "CSV delimitado por comas").
+ *
+ * La primera fila es la cabecera; el orden de las columnas da igual y las
+ * columnas que no se reconocen se ignoran. Columnas (* obligatoria):
+ *
+ * - Cultivos: nombre*, variedad, fecha_siembra*, fecha_cosecha,
+ *   estado (activo, cosechado, en preparación; vacío = activo),
+ *   produccion_kg, rendimiento_estimado, rendimiento_real
+ * - Tratamientos: cultivo* (nombre o id de un cultivo de la finca), fecha*,
+ *   producto*, tipo* (fertilizante, herbicida, fungicida, otro), dosis*,
+ *   precio, observaciones
+ * - Movimientos: tipo* (ingreso, gasto), concepto*, monto*, fecha*, observaciones
+ *
+ * Los obligatorios son los mismos que piden los diálogos de alta.
+ */
+public final class ImportadorCsv {
+
+    private ImportadorCsv() {
+        // Clase de utilidad, no se puede instanciar
+    }
+
+    public static TareaImportacion<Cultivo> importarCultivos(File archivo, int fincaId) {
+        CultivoDAO dao = new CultivoDAO();
+        return lanzar(new TareaImportacion<>(archivo, cabecera -> {
+            String[] nombre = {"nombre", "cultivo"};
+            String[] siembra = {"fecha_siembra", "siembra"};
+            exigirColumnas(cabecera, nombre, siembra);
+            return fila -> {
+                Cultivo cultivo = new Cultivo();
+                cultivo.setFincaId(fincaId);
+                cultivo.setNombre(fila.textoRequerido(nombre));
+                cultivo.setVariedad(fila.texto("variedad"));
+                cultivo.setFechaSiembra(fila.fechaRequerida(siembra));
+                cultivo.setFechaCosecha(fila.fecha("fecha_cosecha", "cosecha"));
+                cultivo.setEstado(fila.enumerado(Cultivo.Estado.class, Cultivo.Estado.ACTIVO, "estado"));
+                cultivo.setProduccionKg(fila.numero("produccion_kg", "produccion"));
+                cultivo.setRendimientoEstimado(fila.numero("rendimiento_estimado"));
+                cultivo.setRendimientoReal(fila.numero("rendimiento_real"));
+                return cultivo;
+            };
+        }, dao::guardarTodos));
+    }
+
+    public static TareaImportacion<Tratamiento> importarTratamientos(File archivo, int fincaId) {
+        TratamientoDAO dao = new TratamientoDAO();
+        return lanzar(new TareaImportacion<>(archivo, cabecera -> {
+            String[] referenciaCultivo = {"cultivo", "cultivo_id"};
+            exigirColumnas(cabecera, referenciaCultivo, new String[] {"fecha"}, new String[] {"producto"},
+                new String[] {"tipo"}, new String[] {"dosis"});
+            // Los cultivos de la finca, para traducir la columna "cultivo" a su id
+            List<Cultivo> cultivos = new CultivoDAO().listarPorFinca(fincaId);
+            Map<Integer, Cultivo> porId = new HashMap<>();
+            Map<String, Cultivo> porNombre = new HashMap<>();
+            Set<String> repetidos = new HashSet<>();
+            for (Cultivo cultivo : cultivos) {
+                porId.put(cultivo.getId(), cultivo);
+                String nombre = IndiceBusqueda.normalizar(cultivo.getNombre()).trim();
+                if (porNombre.putIfAbsent(nombre, cultivo) != null) {
+                    repetidos.add(nombre);
+                }
+            }
+            return fila -> {
+                String referencia = fila.textoRequerido(referenciaCultivo);
+                Cultivo cultivo = null;
+                if (referencia.length() <= 9 && referencia.chars().allMatch(Character::isDigit)) {
+                    cultivo = porId.get(Integer.valueOf(referencia));
+                }
+                if (cultivo == null) {
+                    String nombre = IndiceBusqueda.normalizar(referencia).trim();
+                    if (repetidos.contains(nombre)) {
+                        throw new FilaCsv.FilaRechazada("Hay varios cultivos \"" + referencia
+                            + "\" en la finca: indica su id");
+                    }
+                    cultivo = porNombre.get(nombre);
+                }
+                if (cultivo == null) {
+                    throw new FilaCsv.FilaRechazada("El cultivo \"" + referencia + "\" no existe en la finca");
+                }
+                Tratamiento tratamiento = new Tratamiento();
+                tratamiento.setCultivoId(cultivo.getId());
+                tratamiento.setFecha(fila.fechaRequerida("fecha"));
+                tratamiento.setProducto(fila.textoRequerido("producto"));
+                tratamiento.setTipo(fila.enumerado(Tratamiento.Tipo.class, null, "tipo"));
+                tratamiento.setDosis(fila.textoRequerido("dosis"));
+                tratamiento.setPrecioTratamiento(fila.numero("precio", "costo", "coste"));
+                tratamiento.setObservaciones(fila.texto("observaciones"));
+                return tratamiento;
+            };
+        }, tratamientos -> dao.guardarTodos(tratamientos, fincaId)));
+    }
+
+    public static TareaImportacion<GestionFinanciera> importarMovimientos(File archivo, int fincaId) {
+        GestionFinancieraDAO dao = new GestionFinancieraDAO();
+        return lanzar(new TareaImportacion<>(archivo, cabecera -> {
+            String[] monto = {"monto", "importe"};
+            exigirColumnas(cabecera, new String[] {"tipo"}, new String[] {"concepto"}, monto,
+                new String[] {"fecha"});
+            return fila -> {
+                GestionFinanciera gestion = new GestionFinanciera();
+                gestion.setFincaId(fincaId);
+                gestion.setTipo(fila.enumerado(GestionFinanciera.Tipo.class, null, "tipo"));
+                gestion.setConcepto(fila.textoRequerido("concepto"));
+                gestion.setMonto(fila.numeroRequerido(monto));
+                gestion.setFecha(fila.fechaRequerida("fecha"));
+                gestion.setObservaciones(fila.texto("observaciones"));
+                return gestion;
+            };
+        }, dao::guardarTodos));
+    }
+
+    private static <E> TareaImportacion<E> lanzar(TareaImportacion<E> tarea) {
+        EjecutorBD.get().execute(tarea);
+        return tarea;
+    }
+
+    /**
+     * Sin una columna obligatoria se rechazarían todas las filas: mejor avisar antes de empezar.
+     */
+    private static void exigirColumnas(FilaCsv.Cabecera cabecera, String[]... columnas) throws IOException {
+        for (String[] nombres : columnas) {
+            if (cabecera.posicion(nombres) < 0) {
+                throw new IOException("Falta la columna \"" + nombres[0] + "\" en la cabecera del archivo");
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package importacion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lee un CSV registro a registro, sin cargar el archivo en memoria.
+ *
+ * - Separador ';' o ',': se detecta en la primera línea (Excel en español
+ *   guarda con ';').
+ * - Campos entre comillas dobles, con "" como comilla escapada y saltos de
+ *   línea dentro del campo (hasta MAXIMO_REGISTRO caracteres).
+ * - Codificación UTF-8 (con o sin BOM); si el principio del archivo no es
+ *   UTF-8 válido se lee como Windows-1252, que es lo que usa Excel en Windows.
+ *
+ * bytesLeidos() permite mostrar el progreso frente al tamaño del archivo.
+ */
+final class LectorCsv implements Closeable {
+
+    private static final int MUESTRA_CODIFICACION = 64 * 1024;
+    private static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+    /** Un registro más largo casi seguro es una comilla sin cerrar: se corta para no leer el archivo entero. */
+    private static final int MAXIMO_REGISTRO = 1024 * 1024;
+
+    private final ContadorBytes contador;
+    private final BufferedReader lector;
+    private char separador;
+    private int linea;
+    private int lineaRegistro;
+
+    LectorCsv(File archivo) throws IOException {
+        BufferedInputStream entrada = new BufferedInputStream(new FileInputStream(archivo), MUESTRA_CODIFICACION);
+        try {
+            Charset codificacion = detectarCodificacion(entrada);
+            this.contador = new ContadorBytes(entrada);
+            this.lector = new BufferedReader(new InputStreamReader(contador, codificacion));
+        } catch (IOException | RuntimeException e) {
+            entrada.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Los campos del siguiente registro, o null al llegar al final
+     */
+    List<String> siguiente() throws IOException {
+        String primera = lector.readLine();
+        if (primera == null) {
+            return null;
+        }
+        linea++;
+        lineaRegistro = linea;
+        if (lineaRegistro == 1) {
+            if (!primera.isEmpty() && primera.charAt(0) == '\uFEFF') {
+                primera = primera.substring(1);
+            }
+            separador = contar(primera, ';') >= contar(primera, ',') ? ';' : ',';
+        }
+
+        List<String> campos = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean entreComillas = false;
+        String actual = primera;
+        while (true) {
+            for (int i = 0; i < actual.length(); i++) {
+                char c = actual.charAt(i);
+                if (entreComillas) {
+                    if (c == '"' && i + 1 < actual.length() && actual.charAt(i + 1) == '"') {
+                        campo.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        entreComillas = false;
+                    } else {
+                        campo.append(c);
+                    }
+                } else if (c == '"') {
+                    entreComillas = true;
+                } else if (c == separador) {
+                    campos.add(campo.toString());
+                    campo.setLength(0);
+                } else {
+                    campo.append(c);
+                }
+            }
+            if (!entreComillas) {
+                break;
+            }
+            // El campo entre comillas continúa en la línea siguiente
+            actual = lector.readLine();
+            if (actual == null) {
+                break;
+            }
+            linea++;
+            campo.append('\n');
+            if (campo.length() > MAXIMO_REGISTRO) {
+                throw new IOException("Comillas sin cerrar en el registro que empieza en la línea " + lineaRegistro);
+            }
+        }
+        campos.add(campo.toString());
+        return campos;
+    }
+
+    /**
+     * Línea del archivo en la que empieza el último registro leído (la primera es la 1).
+     */
+    int getLinea() {
+        return lineaRegistro;
+    }
+
+    char getSeparador() {
+        return separador;
+    }
+
+    long bytesLeidos() {
+        return contador.leidos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lector.close();
+    }
+
+    private static int contar(String texto, char caracter) {
+        int veces = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            if (texto.charAt(i) == caracter) {
+                veces++;
+            }
+        }
+        return veces;
+    }
+
+    private static Charset detectarCodificacion(BufferedInputStream entrada) throws IOException {
+        entrada.mark(MUESTRA_CODIFICACION);
+        byte[] muestra = entrada.readNBytes(MUESTRA_CODIFICACION);
+        entrada.reset();
+        int largo = muestra.length;
+        // No dar por inválido un carácter multibyte cortado al final de la muestra
+        if (largo == MUESTRA_CODIFICACION) {
+            while (largo > 0 && (muestra[largo - 1] & 0xC0) == 0x80) {
+                largo--;
+            }
+            if (largo > 0 && (muestra[largo - 1] & 0x80) != 0) {
+                largo--;
+            }
+        }
+        try {
+            StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(muestra, 0, largo));
+            return StandardCharsets.UTF_8;
+        } catch (CharacterCodingException e) {
+            return WINDOWS_1252;
+        }
+    }
+
+    /**
+     * Cuenta los bytes que el lector ha sacado del archivo.
+     */
+    private static final class ContadorBytes extends FilterInputStream {
+
+        private volatile long leidos;
+
+        private ContadorBytes(InputStream entrada) {
+            super(entrada);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                leidos++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] destino, int desde, int largo) throws IOException {
+            int n = super.read(destino, desde, largo);
+            if (n > 0) {
+                leidos += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package importacion;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import javafx.concurrent.Task;
+
+/**
+ * Importa un CSV a la base de datos fuera del hilo de JavaFX.
+ *
+ * Se crea con ImportadorCsv. El archivo se lee registro a registro (LectorCsv)
+ * y cada registro se convierte en una entidad del modelo; las válidas se
+ * acumulan en un bloque de TAMANO_BLOQUE y cada bloque se guarda con el
+ * guardarTodos del DAO (inserciones por lotes en una transacción). En memoria
+ * solo hay un bloque a la vez, así que el tamaño del archivo no importa.
+ *
+ * Los registros que no se pueden convertir (falta un campo obligatorio, un
+ * tipo o estado que no existe, una fecha mal escrita...) no detienen la
+ * importación: se escriben según se encuentran en un CSV de rechazos junto al
+ * original, con la línea, el motivo y los campos tal como venían, para
+ * corregirlos y volver a importar solo esos.
+ *
+ * Cada bloque se confirma por separado: si se cancela o falla la base de
+ * datos a mitad, lo ya importado se queda (el resumen o el error lo indican).
+ */
+public class TareaImportacion<E> extends Task<TareaImportacion.ResumenImportacion> {
+
+    static final int TAMANO_BLOQUE = 500;
+
+    /**
+     * Convierte un registro en una entidad, o lo rechaza con un motivo.
+     */
+    @FunctionalInterface
+    interface Conversor<E> {
+        E convertir(FilaCsv fila) throws FilaCsv.FilaRechazada;
+    }
+
+    /**
+     * Comprueba la cabecera y prepara el conversor (se ejecuta en segundo plano,
+     * así que puede consultar la base de datos).
+     */
+    @FunctionalInterface
+    interface Preparacion<E> {
+        Conversor<E> preparar(FilaCsv.Cabecera cabecera) throws IOException, SQLException;
+    }
+
+    @FunctionalInterface
+    interface Guardado<E> {
+        void guardar(List<E> bloque) throws SQLException;
+    }
+
+    private final File archivo;
+    private final Preparacion<E> preparacion;
+    private final Guardado<E> guardado;
+
+    TareaImportacion(File archivo, Preparacion<E> preparacion, Guardado<E> guardado) {
+        this.archivo = archivo;
+        this.preparacion = preparacion;
+        this.guardado = guardado;
+    }
+
+    @Override
+    protected ResumenImportacion call() throws Exception {
+        updateMessage("Leyendo " + archivo.getName() + "...");
+        long tamano = Math.max(1, archivo.length());
+        int leidas = 0;
+        int importadas = 0;
+
+        try (LectorCsv lector = new LectorCsv(archivo);
+             InformeRechazos rechazos = new InformeRechazos(archivoRechazos(archivo))) {
+            List<String> nombres = lector.siguiente();
+            if (nombres == null) {
+                throw new IOException("El archivo está vacío");
+            }
+            FilaCsv.Cabecera cabecera = new FilaCsv.Cabecera(nombres);
+            Conversor<E> conversor = preparacion.preparar(cabecera);
+            rechazos.setCabecera(nombres, lector.getSeparador());
+
+            List<E> bloque = new ArrayList<>(TAMANO_BLOQUE);
+            int lineaBloque = 0;
+            List<String> campos;
+            while ((campos = lector.siguiente()) != null && !isCancelled()) {
+                FilaCsv fila = new FilaCsv(cabecera, campos);
+                if (fila.estaVacia()) {
+                    continue;
+                }
+                leidas++;
+                try {
+                    E entidad = conversor.convertir(fila);
+                    if (bloque.isEmpty()) {
+                        lineaBloque = lector.getLinea();
+                    }
+                    bloque.add(entidad);
+                } catch (FilaCsv.FilaRechazada e) {
+                    rechazos.anotar(lector.getLinea(), e.getMessage(), campos);
+                }
+
+                if (bloque.size() == TAMANO_BLOQUE) {
+                    importadas += guardar(bloque, lineaBloque, importadas);
+                    bloque = new ArrayList<>(TAMANO_BLOQUE);
+                    updateProgress(lector.bytesLeidos(), tamano);
+                    updateMessage(importadas + " filas importadas, " + rechazos.getTotal() + " rechazadas");
+                }
+            }
+            if (!isCancelled() && !bloque.isEmpty()) {
+                importadas += guardar(bloque, lineaBloque, importadas);
+            }
+            updateProgress(tamano, tamano);
+            updateMessage(importadas + " filas importadas, " + rechazos.getTotal() + " rechazadas");
+            return new ResumenImportacion(leidas, importadas, rechazos.getTotal(),
+                rechazos.getTotal() > 0 ? rechazos.getArchivo() : null, isCancelled());
+        }
+    }
+
+    private int guardar(List<E> bloque, int lineaBloque, int importadas) throws SQLException {
+        try {
+            guardado.guardar(bloque);
+            return bloque.size();
+        } catch (SQLException e) {
+            throw new SQLException("Error al guardar las filas desde la línea " + lineaBloque
+                + " (ya se habían importado " + importadas + "): " + e.getMessage(), e.getSQLState(), e);
+        }
+    }
+
+    /**
+     * "cuaderno.csv" -> "cuaderno_rechazadas.csv", en el mismo directorio.
+     */
+    static File archivoRechazos(File archivo) {
+        String nombre = archivo.getName();
+        int punto = nombre.lastIndexOf('.');
+        String base = punto > 0 ? nombre.substring(0, punto) : nombre;
+        return new File(archivo.getAbsoluteFile().getParentFile(), base + "_rechazadas.csv");
+    }
+
+    /**
+     * Resultado de la importación.
+     *
+     * @param archivoRechazos CSV con los registros rechazados, o null si no hubo ninguno
+     * @param cancelada Si se canceló a mitad (lo importado hasta entonces se queda)
+     */
+    public record ResumenImportacion(int filasLeidas, int importadas, int rechazadas,
+                                     File archivoRechazos, boolean cancelada) {
+    }
+
+    /**
+     * CSV de registros rechazados. Se crea al anotar el primero, así una
+     * importación sin errores no deja un archivo vacío.
+     */
+    private static final class InformeRechazos implements Closeable {
+
+        private final File archivo;
+        private List<String> cabecera = List.of();
+        private char separador = ';';
+        private BufferedWriter escritor;
+        private int total;
+
+        private InformeRechazos(File archivo) {
+            this.archivo = archivo;
+        }
+
+        private void setCabecera(List<String> cabecera, char separador) {
+            this.cabecera = cabecera;
+            this.separador = separador;
+        }
+
+        private void anotar(int linea, String motivo, List<String> campos) throws IOException {
+            if (escritor == null) {
+                escritor = Files.newBufferedWriter(archivo.toPath(), StandardCharsets.UTF_8);
+                // BOM para que Excel lo abra como UTF-8
+                escritor.write('\uFEFF');
+                List<String> titulos = new ArrayList<>(List.of("linea", "motivo"));
+                titulos.addAll(cabecera);
+                escribirRegistro(titulos);
+            }
+            List<String> registro = new ArrayList<>(campos.size() + 2);
+            registro.add(String.valueOf(linea));
+            registro.add(motivo);
+            registro.addAll(campos);
+            escribirRegistro(registro);
+            total++;
+        }
+
+        private void escribirRegistro(List<String> campos) throws IOException {
+            for (int i = 0; i < campos.size(); i++) {
+                if (i > 0) {
+                    escritor.write(separador);
+                }
+                String campo = campos.get(i);
+                if (campo.indexOf(separador) >= 0 || campo.indexOf('"') >= 0 || campo.indexOf('\n') >= 0) {
+                    escritor.write('"' + campo.replace("\"", "\"\"") + '"');
+                } else {
+                    escritor.write(campo);
+                }
+            }
+            escritor.newLine();
+        }
+
+        private File getArchivo() {
+            return archivo;
+        }
+
+        private int getTotal() {
+            return total;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (escritor != null) {
+                escritor.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package informes;
+
+import crud.VersionDatos;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import net.sf.jasperreports.engine.JRPrintElement;
+import net.sf.jasperreports.engine.JRPrintFrame;
+import net.sf.jasperreports.engine.JRPrintPage;
+import net.sf.jasperreports.engine.JasperPrint;
+
+/**
+ * CACHÉ DE INFORMES YA LLENOS
+ *
+ * Guarda los últimos JasperPrint generados (y su HTML, si se exportó) para no
+ * volver a consultar MySQL cuando se pide otra vez el mismo informe: al volver a
+ * una finca en el combo de informes o al regenerar el informe sin cambios.
+ *
+ * La clave es (plantilla, parámetros, versión de los datos). La versión sale de
+ * VersionDatos: la de la finca si el informe lleva ParametroFincaId, o la global si
+ * es un informe de varias fincas. Cuando CultivoDAO, TratamientoDAO,
+ * GestionFinancieraDAO o FincaDAO escriben en una finca, su versión cambia y el
+ * informe guardado deja de servir: se descarta la próxima vez que se pida.
+ *
+ * Es una LRU limitada por tamaño estimado en memoria (no por número de informes),
+ * porque un informe de administrador puede ocupar cien veces más que uno de finca.
+ */
+public final class CacheInformesGenerados {
+
+    /** Parámetro con el que los informes de una sola finca reciben su id. */
+    public static final String PARAMETRO_FINCA = "ParametroFincaId";
+
+    /** Como mucho 1/16 de la memoria de la JVM, y nunca más de 64 MB. */
+    private static final long MAXIMO_BYTES = Math.min(64L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 16);
+
+    // Estimaciones gruesas: suficientes para repartir el presupuesto entre informes
+    private static final long BYTES_POR_PAGINA = 2 * 1024;
+    private static final long BYTES_POR_ELEMENTO = 400;
+
+    private static final LinkedHashMap<Clave, Entrada> entradas = new LinkedHashMap<>(16, 0.75f, true);
+    private static long bytesOcupados;
+
+    private CacheInformesGenerados() {
+        // Clase de utilidad, no se puede instanciar
+    }
+
+    /**
+     * Versión actual de los datos que usa un informe con estos parámetros.
+     * Hay que tomarla ANTES de llenar el informe: si los datos cambian durante el
+     * llenado, el resultado se guarda con la versión vieja y no se reutilizará.
+     */
+    public static String versionDatos(Map<String, Object> parametros) {
+        Object fincaId = parametros.get(PARAMETRO_FINCA);
+        return fincaId instanceof Integer id ? VersionDatos.version(id) : VersionDatos.versionGlobal();
+    }
+
+    /**
+     * Devuelve el informe guardado si sigue siendo válido para la versión indicada, o null.
+     */
+    public static TareaInforme.InformeGenerado obtener(String plantilla, Map<String, Object> parametros, String version) {
+        Clave clave = new Clave(plantilla, new HashMap<>(parametros));
+        synchronized (entradas) {
+            Entrada entrada = entradas.get(clave);
+            if (entrada == null) {
+                return null;
+            }
+            if (!entrada.version().equals(version)) {
+                // Los datos de la finca han cambiado desde que se llenó
+                quitar(clave);
+                return null;
+            }
+            return entrada.informe();
+        }
+    }
+
+    public static void guardar(String plantilla, Map<String, Object> parametros, String version,
+                               TareaInforme.InformeGenerado informe) {
+        long bytes = estimarBytes(informe);
+        if (bytes > MAXIMO_BYTES) {
+            return;  // No cabe: mejor no vaciar la caché entera por un solo informe
+        }
+        Clave clave = new Clave(plantilla, new HashMap<>(parametros));
+        synchronized (entradas) {
+            quitar(clave);
+            entradas.put(clave, new Entrada(informe, version, bytes));
+            bytesOcupados += bytes;
+
+            // Expulsar los menos usados recientemente hasta volver al presupuesto
+            Iterator<Map.Entry<Clave, Entrada>> it = entradas.entrySet().iterator();
+            while (bytesOcupados > MAXIMO_BYTES && it.hasNext()) {
+                Map.Entry<Clave, Entrada> masAntigua = it.next();
+                if (masAntigua.getKey().equals(clave)) {
+                    continue;
+                }
+                bytesOcupados -= masAntigua.getValue().bytes();
+                it.remove();
+            }
+        }
+    }
+
+    public static void limpiar() {
+        synchronized (entradas) {
+            entradas.clear();
+            bytesOcupados = 0;
+        }
+    }
+
+    private static void quitar(Clave clave) {
+        Entrada anterior = entradas.remove(clave);
+        if (anterior != null) {
+            bytesOcupados -= anterior.bytes();
+        }
+    }
+
+    private static long estimarBytes(TareaInforme.InformeGenerado informe) {
+        long bytes = 0;
+        JasperPrint jasperPrint = informe.jasperPrint();
+        for (JRPrintPage pagina : jasperPrint.getPages()) {
+            bytes += BYTES_POR_PAGINA + contarElementos(pagina.getElements()) * BYTES_POR_ELEMENTO;
+        }
+        if (informe.html() != null) {
+            bytes += informe.html().length() * 2L;
+        }
+        return bytes;
+    }
+
+    private static long contarElementos(Iterable<JRPrintElement> elementos) {
+        long total = 0;
+        for (JRPrintElement elemento : elementos) {
+            total++;
+            if (elemento instanceof JRPrintFrame frame) {
+                total += contarElementos(frame.getElements());
+            }
+        }
+        return total;
+    }
+
+    private record Clave(String plantilla, Map<String, Object> parametros) {
+    }
+
+    private record Entrada(TareaInforme.InformeGenerado informe, String version, long bytes) {
+    }
+}
@@ -0,0 +1,192 @@
+package informes;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.util.JRLoader;
+import net.sf.jasperreports.engine.util.JRSaver;
+
+/**
+ * CACHÉ DE PLANTILLAS JASPER COMPILADAS
+ *
+ * Compilar un .jrxml (JasperCompileManager.compileReport) es, con diferencia, el
+ * paso más lento al generar un informe. Esta clase compila cada plantilla de
+ * /reports una sola vez por ejecución y la guarda en memoria.
+ *
+ * Además guarda la versión compilada (.jasper) en ~/.agrotrack/informes, junto con
+ * el SHA-256 del .jrxml del que salió. En el siguiente arranque se reutiliza ese
+ * fichero si el checksum coincide; si la plantilla ha cambiado se vuelve a compilar.
+ *
+ * Orden de búsqueda:
+ * 1. Memoria
+ * 2. .jasper en ~/.agrotrack/informes con el mismo checksum
+ * 3. .jasper precompilado dentro del jar (/reports/X.jasper), si trae un
+ *    /reports/X.jasper.sha256 que coincide o si no existe el .jrxml
+ * 4. Compilar el .jrxml y guardar el resultado en disco
+ */
+public final class CachePlantillasInforme {
+
+    private static final Path DIRECTORIO_CACHE =
+        Paths.get(System.getProperty("user.home"), ".agrotrack", "informes");
+
+    private static final Map<String, JasperReport> compiladas = new ConcurrentHashMap<>();
+    private static final Object lock = new Object();
+
+    private CachePlantillasInforme() {
+        // Clase de utilidad, no se puede instanciar
+    }
+
+    /**
+     * Devuelve la plantilla compilada.
+     *
+     * @param rutaJrxml Ruta de la plantilla en el classpath, p. ej. "/reports/InformeFiltra.jrxml"
+     * @throws JRException Si la plantilla no existe o no se puede compilar
+     */
+    public static JasperReport obtener(String rutaJrxml) throws JRException {
+        String clave = normalizar(rutaJrxml);
+        JasperReport report = compiladas.get(clave);
+        if (report != null) {
+            return report;
+        }
+        // Un único hilo compila; el resto espera y reutiliza el resultado
+        synchronized (lock) {
+            report = compiladas.get(clave);
+            if (report == null) {
+                report = cargarOCompilar(clave);
+                compiladas.put(clave, report);
+            }
+            return report;
+        }
+    }
+
+    /**
+     * Compila en segundo plano todas las plantillas indicadas, para que el primer
+     * informe que pida el usuario ya no tenga que esperar a la compilación.
+     */
+    public static void precargar(String... rutasJrxml) {
+        Thread hilo = new Thread(() -> {
+            for (String ruta : rutasJrxml) {
+                try {
+                    obtener(ruta);
+                } catch (JRException e) {
+                    System.err.println("No se pudo precompilar " + ruta + ": " + e.getMessage());
+                }
+            }
+        }, "agrotrack-precompilar-informes");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /**
+     * Olvida las plantillas en memoria (no borra los .jasper guardados en disco).
+     */
+    public static void limpiar() {
+        compiladas.clear();
+    }
+
+    private static JasperReport cargarOCompilar(String clave) throws JRException {
+        String nombre = clave.substring(clave.lastIndexOf('/') + 1).replaceFirst("\\.jrxml$", "");
+        byte[] jrxml = leerRecurso(clave);
+        String checksum = jrxml != null ? sha256(jrxml) : null;
+
+        // 2. Caché en disco de una ejecución anterior
+        Path jasper = DIRECTORIO_CACHE.resolve(nombre + ".jasper");
+        Path sumaJasper = DIRECTORIO_CACHE.resolve(nombre + ".sha256");
+        if (checksum != null && Files.isRegularFile(jasper) && checksum.equals(leerTexto(sumaJasper))) {
+            try {
+                return (JasperReport) JRLoader.loadObject(jasper.toFile());
+            } catch (JRException | ClassCastException e) {
+                // Fichero corrupto o de otra versión de JasperReports: se recompila
+                System.err.println("Caché de informe no válida (" + jasper + "): " + e.getMessage());
+            }
+        }
+
+        // 3. Plantilla precompilada incluida en el jar
+        String rutaJasper = clave.replaceFirst("\\.jrxml$", ".jasper");
+        byte[] precompilada = leerRecurso(rutaJasper);
+        if (precompilada != null) {
+            byte[] sumaIncluida = leerRecurso(rutaJasper + ".sha256");
+            boolean vigente = checksum == null
+                || (sumaIncluida != null && checksum.equals(new String(sumaIncluida, StandardCharsets.UTF_8).trim()));
+            if (vigente) {
+                return (JasperReport) JRLoader.loadObject(new ByteArrayInputStream(precompilada));
+            }
+        }
+
+        // 4. Compilar
+        if (jrxml == null) {
+            throw new JRException("No se pudo cargar el informe: " + clave
+                + "\nVerifica que el archivo existe en src/main/resources/reports/");
+        }
+        JasperReport report = JasperCompileManager.compileReport(new ByteArrayInputStream(jrxml));
+        guardarEnDisco(report, jasper, sumaJasper, checksum);
+        return report;
+    }
+
+    private static void guardarEnDisco(JasperReport report, Path jasper, Path sumaJasper, String checksum) {
+        try {
+            Files.createDirectories(DIRECTORIO_CACHE);
+            // Se escribe en un temporal y se renombra para que otra instancia nunca lea un fichero a medias
+            File temporal = Files.createTempFile(DIRECTORIO_CACHE, "informe", ".tmp").toFile();
+            JRSaver.saveObject(report, temporal);
+            Files.move(temporal.toPath(), jasper, StandardCopyOption.REPLACE_EXISTING);
+            Files.writeString(sumaJasper, checksum, StandardCharsets.UTF_8);
+        } catch (IOException | JRException e) {
+            // No es grave: la plantilla sigue en memoria, solo se compilará otra vez en el próximo arranque
+            System.err.println("No se pudo guardar la caché del informe: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lee un recurso del classpath probando las mismas variantes de ruta que
+     * usaban los controladores (con y sin barra inicial, y desde el classloader).
+     */
+    private static byte[] leerRecurso(String ruta) {
+        InputStream stream = CachePlantillasInforme.class.getResourceAsStream(ruta);
+        if (stream == null) {
+            stream = CachePlantillasInforme.class.getClassLoader().getResourceAsStream(ruta.substring(1));
+        }
+        if (stream == null) {
+            return null;
+        }
+        try (InputStream is = stream) {
+            return is.readAllBytes();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String leerTexto(Path fichero) {
+        try {
+            return Files.readString(fichero, StandardCharsets.UTF_8).trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String normalizar(String ruta) {
+        return ruta.startsWith("/") ? ruta : "/" + ruta;
+    }
+
+    private static String sha256(byte[] datos) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(datos));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible en esta JVM", e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package informes;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperPrint;
+import net.sf.jasperreports.engine.export.HtmlExporter;
+import net.sf.jasperreports.engine.export.HtmlResourceHandler;
+import net.sf.jasperreports.export.SimpleExporterInput;
+import net.sf.jasperreports.export.SimpleHtmlExporterOutput;
+
+/**
+ * EXPORTACIÓN DE INFORMES A HTML EN MEMORIA
+ *
+ * JasperExportManager.exportReportToHtmlFile escribe un .html y una carpeta
+ * "_files" con las imágenes en el directorio de trabajo, y el WebView los vuelve a
+ * leer del disco. Además, dos informes abiertos a la vez usaban el mismo nombre
+ * de fichero y se pisaban.
+ *
+ * Aquí el HTML se escribe en un StringBuilder y las imágenes se incrustan como
+ * URIs "data:" desde memoria, así que el resultado se muestra directamente con
+ * WebEngine.loadContent(html) y no se toca el disco.
+ */
+public final class ExportadorHtml {
+
+    private ExportadorHtml() {
+        // Clase de utilidad, no se puede instanciar
+    }
+
+    /**
+     * Exporta el informe a una cadena HTML autocontenida (imágenes incluidas).
+     */
+    public static String exportar(JasperPrint jasperPrint) throws JRException {
+        StringBuilder html = new StringBuilder();
+        SimpleHtmlExporterOutput salida = new SimpleHtmlExporterOutput(html);
+        salida.setImageHandler(new ImagenesEnMemoria());
+
+        HtmlExporter exporter = new HtmlExporter();
+        exporter.setExporterInput(new SimpleExporterInput(jasperPrint));
+        exporter.setExporterOutput(salida);
+        exporter.exportReport();
+        return html.toString();
+    }
+
+    /**
+     * Guarda en memoria las imágenes que genera el exportador y devuelve su
+     * contenido como URI "data:" en lugar de una ruta a un fichero.
+     */
+    private static class ImagenesEnMemoria implements HtmlResourceHandler {
+
+        private final Map<String, String> uris = new ConcurrentHashMap<>();
+
+        @Override
+        public void handleResource(String id, byte[] data) {
+            uris.put(id, "data:" + tipoMime(data) + ";base64," + Base64.getEncoder().encodeToString(data));
+        }
+
+        @Override
+        public String getResourcePath(String id) {
+            return uris.getOrDefault(id, id);
+        }
+
+        private static String tipoMime(byte[] data) {
+            if (data.length >= 4 && (data[0] & 0xFF) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G') {
+                return "image/png";
+            }
+            if (data.length >= 3 && (data[0] & 0xFF) == 0xFF && (data[1] & 0xFF) == 0xD8) {
+                return "image/jpeg";
+            }
+            if (data.length >= 3 && data[0] == 'G' && data[1] == 'I' && data[2] == 'F') {
+                return "image/gif";
+            }
+            String inicio = new String(data, 0, Math.min(data.length, 256), StandardCharsets.UTF_8);
+            if (inicio.contains("<svg") || inicio.startsWith("<?xml")) {
+                return "image/svg+xml";
+            }
+            return "application/octet-stream";
+        }
+    }
+}
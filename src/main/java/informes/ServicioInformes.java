@@ -0,0 +1,96 @@
+package informes;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import modelo.Finca;
+
+/**
+ * SERVICIO DE GENERACIÓN DE INFORMES EN SEGUNDO PLANO
+ *
+ * Llenar un informe con JasperFillManager y exportarlo puede tardar varios
+ * segundos (InformeCompuesto2 con todas las fincas, por ejemplo). Si se hace en
+ * el hilo de JavaFX la ventana se queda congelada hasta que termina.
+ *
+ * Este servicio ejecuta cada informe como una TareaInforme en un pool propio
+ * de hilos, separado de EjecutorBD: llenar un informe usa mucha CPU y no debe
+ * retrasar las consultas normales de las pantallas.
+ *
+ * Uso típico desde un controlador:
+ *   TareaInforme tarea = ServicioInformes.generar(ruta, parametros, true);
+ *   tarea.setOnSucceeded(e -> mostrar(tarea.getValue()));
+ *   ...
+ *   tarea.cancel();   // si el usuario cancela o sale de la pantalla
+ */
+public final class ServicioInformes {
+
+    /** Informes que se pueden llenar a la vez; el resto espera en cola. */
+    private static final int HILOS = 2;
+
+    private static final Object lock = new Object();
+    private static ExecutorService ejecutor;
+
+    private ServicioInformes() {
+        // Clase de utilidad, no se puede instanciar
+    }
+
+    /**
+     * Lanza un informe que pide una conexión al pool solo mientras se llena.
+     *
+     * @param rutaJrxml Plantilla del informe (p. ej. "/reports/InformeFiltra.jrxml")
+     * @param parametros Parámetros del informe (se copian)
+     * @param exportarHtml Si true, el resultado incluye el informe exportado a HTML (en memoria)
+     */
+    public static TareaInforme generar(String rutaJrxml, Map<String, Object> parametros, boolean exportarHtml) {
+        TareaInforme tarea = new TareaInforme(rutaJrxml, parametros, exportarHtml);
+        obtenerEjecutor().execute(tarea);
+        return tarea;
+    }
+
+    /**
+     * Lanza la generación en PDF del informe de finca para varias fincas a la vez
+     * (ver TareaLoteInformes). Se escribe un PDF por finca en el directorio indicado.
+     *
+     * @param origenFincas Consulta que devuelve las fincas (se ejecuta en segundo plano)
+     */
+    public static TareaLoteInformes generarLote(Callable<List<Finca>> origenFincas, File directorio) {
+        TareaLoteInformes tarea = new TareaLoteInformes(origenFincas, directorio);
+        obtenerEjecutor().execute(tarea);
+        return tarea;
+    }
+
+    private static ExecutorService obtenerEjecutor() {
+        synchronized (lock) {
+            if (ejecutor == null) {
+                AtomicInteger contador = new AtomicInteger();
+                ThreadPoolExecutor pool = new ThreadPoolExecutor(HILOS, HILOS, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), tarea -> {
+                        Thread hilo = new Thread(tarea, "agrotrack-informes-" + contador.incrementAndGet());
+                        hilo.setDaemon(true);
+                        return hilo;
+                    });
+                pool.allowCoreThreadTimeOut(true);
+                ejecutor = pool;
+            }
+            return ejecutor;
+        }
+    }
+
+    /**
+     * Cancela los informes pendientes. Se llama al cerrar la aplicación.
+     */
+    public static void cerrar() {
+        synchronized (lock) {
+            if (ejecutor != null) {
+                ejecutor.shutdownNow();
+                ejecutor = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package informes;
+
+import crud.ConexionBD;
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import net.sf.jasperreports.engine.DefaultJasperReportsContext;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperPrint;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.fill.BaseReportFiller;
+import net.sf.jasperreports.engine.fill.FillListener;
+import net.sf.jasperreports.engine.fill.JRFiller;
+
+/**
+ * Genera un informe (llenado + exportación a HTML) fuera del hilo de JavaFX.
+ *
+ * Se crea con ServicioInformes.generar(...). Mientras se llena, el mensaje de la
+ * tarea indica cuántas páginas lleva generadas, y si se ha indicado un
+ * alGenerarPagina se le avisa en el hilo de JavaFX con cada página nueva.
+ *
+ * Si el mismo informe ya se generó y los datos de la finca no han cambiado
+ * (CacheInformesGenerados), se devuelve el guardado sin consultar la base de datos.
+ *
+ * cancel() detiene también el llenado de JasperReports que esté en marcha,
+ * no solo la tarea: así un informe grande no sigue ocupando CPU y una
+ * conexión después de que el usuario lo haya cancelado.
+ */
+public class TareaInforme extends Task<TareaInforme.InformeGenerado> {
+
+    private final String rutaJrxml;
+    private final Map<String, Object> parametros;
+    private final boolean exportarHtml;
+
+    private volatile BaseReportFiller filler;
+    private volatile IntConsumer alGenerarPagina;
+
+    /**
+     * @param exportarHtml Si true, el resultado incluye el informe exportado a HTML
+     */
+    TareaInforme(String rutaJrxml, Map<String, Object> parametros, boolean exportarHtml) {
+        this.rutaJrxml = rutaJrxml;
+        // Copia: el controlador puede reutilizar su mapa de parámetros mientras se llena el informe
+        this.parametros = new HashMap<>(parametros);
+        this.exportarHtml = exportarHtml;
+    }
+
+    /**
+     * Recibe el número de páginas generadas hasta el momento, en el hilo de JavaFX.
+     */
+    public void setAlGenerarPagina(IntConsumer alGenerarPagina) {
+        this.alGenerarPagina = alGenerarPagina;
+    }
+
+    @Override
+    protected InformeGenerado call() throws Exception {
+        updateMessage("Preparando informe...");
+        String version = CacheInformesGenerados.versionDatos(parametros);
+        InformeGenerado guardado = CacheInformesGenerados.obtener(rutaJrxml, parametros, version);
+        if (guardado != null) {
+            if (exportarHtml && guardado.html() == null && !guardado.jasperPrint().getPages().isEmpty()) {
+                // Se llenó antes sin HTML (p. ej. solo para PDF): se exporta sin volver a la BD
+                guardado = new InformeGenerado(guardado.jasperPrint(), ExportadorHtml.exportar(guardado.jasperPrint()));
+                CacheInformesGenerados.guardar(rutaJrxml, parametros, version, guardado);
+            }
+            updateMessage("Informe generado");
+            return guardado;
+        }
+
+        JasperReport report = CachePlantillasInforme.obtener(rutaJrxml);
+        if (isCancelled()) {
+            return null;
+        }
+
+        filler = JRFiller.createFiller(DefaultJasperReportsContext.getInstance(), report);
+        filler.addFillListener(new FillListener() {
+            @Override
+            public void pageGenerated(JasperPrint jasperPrint, int pageIndex) {
+                int paginas = pageIndex + 1;
+                updateMessage("Generando informe: " + paginas + (paginas == 1 ? " página" : " páginas"));
+                IntConsumer callback = alGenerarPagina;
+                if (callback != null) {
+                    Platform.runLater(() -> callback.accept(paginas));
+                }
+            }
+
+            @Override
+            public void pageUpdated(JasperPrint jasperPrint, int pageIndex) {
+                // No se usa: solo interesa contar páginas nuevas
+            }
+        });
+
+        // La conexión se pide al pool justo para el llenado y se devuelve en cuanto termina,
+        // así ninguna pantalla de informes retiene una conexión mientras está abierta
+        JasperPrint jasperPrint;
+        try (Connection conexion = ConexionBD.obtenerConexion()) {
+            jasperPrint = filler.fill(parametros, conexion);
+        }
+        if (isCancelled()) {
+            return null;
+        }
+
+        String html = null;
+        if (exportarHtml && !jasperPrint.getPages().isEmpty()) {
+            updateMessage("Exportando informe...");
+            html = ExportadorHtml.exportar(jasperPrint);
+        }
+        InformeGenerado informe = new InformeGenerado(jasperPrint, html);
+        CacheInformesGenerados.guardar(rutaJrxml, parametros, version, informe);
+        updateMessage("Informe generado");
+        return informe;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelada = super.cancel(mayInterruptIfRunning);
+        BaseReportFiller actual = filler;
+        if (cancelada && actual != null) {
+            try {
+                actual.cancelFill();
+            } catch (JRException e) {
+                System.err.println("No se pudo cancelar el llenado del informe: " + e.getMessage());
+            }
+        }
+        return cancelada;
+    }
+
+    /**
+     * Resultado de la tarea.
+     *
+     * @param jasperPrint Informe lleno (se guarda para exportar a PDF después)
+     * @param html Informe en HTML (para WebEngine.loadContent), o null si no tiene páginas o no se pidió
+     */
+    public record InformeGenerado(JasperPrint jasperPrint, String html) {
+    }
+}
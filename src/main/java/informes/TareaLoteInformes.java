@@ -0,0 +1,225 @@
+package informes;
+
+import crud.ConexionBD;
+import java.io.File;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import javafx.concurrent.Task;
+import modelo.Finca;
+import net.sf.jasperreports.engine.DefaultJasperReportsContext;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperExportManager;
+import net.sf.jasperreports.engine.JasperPrint;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.fill.BaseReportFiller;
+import net.sf.jasperreports.engine.fill.JRFiller;
+
+/**
+ * Genera el informe de finca (InformeFiltra) en PDF para muchas fincas a la vez.
+ *
+ * Cada finca se llena en su propio hilo con una conexión del pool que se
+ * devuelve al terminar. El número de informes simultáneos nunca supera el
+ * tamaño del pool de ConexionBD (menos una conexión que se deja libre para
+ * que el resto de la aplicación siga funcionando mientras dura el lote).
+ *
+ * Se escribe un PDF por finca en el directorio elegido y, al terminar, el
+ * ResumenLote indica cuántos se generaron, cuántos fallaron y a qué ritmo.
+ *
+ * cancel() para también los llenados en marcha (cancelFill, como TareaInforme).
+ */
+public class TareaLoteInformes extends Task<TareaLoteInformes.ResumenLote> {
+
+    static final String PLANTILLA = "/reports/InformeFiltra.jrxml";
+
+    private final Callable<List<Finca>> origenFincas;
+    private final File directorio;
+
+    private volatile ExecutorService hilos;
+    // Llenados en marcha: JasperReports no atiende a las interrupciones de
+    // shutdownNow(), hay que pararlos con cancelFill()
+    private final Set<BaseReportFiller> rellenando = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param origenFincas Obtiene las fincas a procesar (se ejecuta fuera del hilo de JavaFX)
+     * @param directorio Directorio donde se escriben los PDF
+     */
+    TareaLoteInformes(Callable<List<Finca>> origenFincas, File directorio) {
+        this.origenFincas = origenFincas;
+        this.directorio = directorio;
+    }
+
+    /**
+     * Informes que se llenan a la vez: limitado por el pool de conexiones.
+     */
+    public static int paralelismo() {
+        return Math.max(1, ConexionBD.getTamanoMaximoPool() - 1);
+    }
+
+    @Override
+    protected ResumenLote call() throws Exception {
+        updateMessage("Buscando fincas...");
+        List<Finca> fincas = origenFincas.call();
+        if (!directorio.isDirectory() && !directorio.mkdirs()) {
+            throw new IllegalArgumentException("No se pudo crear el directorio " + directorio);
+        }
+        JasperReport report = CachePlantillasInforme.obtener(PLANTILLA);
+
+        int total = fincas.size();
+        long inicio = System.nanoTime();
+        AtomicInteger paginas = new AtomicInteger();
+        List<String> errores = new ArrayList<>();
+        int generados = 0;
+        int sinPaginas = 0;
+
+        AtomicInteger contador = new AtomicInteger();
+        hilos = Executors.newFixedThreadPool(Math.min(paralelismo(), Math.max(1, total)), tarea -> {
+            Thread hilo = new Thread(tarea, "agrotrack-lote-informes-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        try {
+            CompletionService<Boolean> pendientes = new ExecutorCompletionService<>(hilos);
+            for (Finca finca : fincas) {
+                pendientes.submit(() -> generarPdf(report, finca, paginas));
+            }
+
+            updateProgress(0, total);
+            for (int hechos = 1; hechos <= total; hechos++) {
+                try {
+                    if (pendientes.take().get()) {
+                        generados++;
+                    } else {
+                        sinPaginas++;
+                    }
+                } catch (ExecutionException e) {
+                    errores.add(e.getCause().getMessage());
+                }
+                updateProgress(hechos, total);
+                updateMessage("Generando PDF: " + hechos + " de " + total);
+            }
+        } finally {
+            hilos.shutdownNow();
+        }
+
+        long milisegundos = (System.nanoTime() - inicio) / 1_000_000;
+        return new ResumenLote(total, generados, sinPaginas, paginas.get(), milisegundos, List.copyOf(errores));
+    }
+
+    /**
+     * Llena y exporta el informe de una finca.
+     *
+     * @return false si el informe no tiene páginas (no se escribe PDF)
+     */
+    private boolean generarPdf(JasperReport report, Finca finca, AtomicInteger paginas) throws Exception {
+        Map<String, Object> parametros = new HashMap<>();
+        parametros.put(CacheInformesGenerados.PARAMETRO_FINCA, finca.getId());
+
+        JasperPrint jasperPrint;
+        // Si el informe ya estaba en la caché y los datos no han cambiado, no hace falta ir a la BD
+        TareaInforme.InformeGenerado guardado = CacheInformesGenerados.obtener(PLANTILLA, parametros,
+            CacheInformesGenerados.versionDatos(parametros));
+        if (guardado != null) {
+            jasperPrint = guardado.jasperPrint();
+        } else {
+            BaseReportFiller filler = JRFiller.createFiller(DefaultJasperReportsContext.getInstance(), report);
+            rellenando.add(filler);
+            try (Connection conexion = ConexionBD.obtenerConexion()) {
+                if (isCancelled()) {
+                    return false;  // Se canceló mientras esperaba la conexión
+                }
+                jasperPrint = filler.fill(parametros, conexion);
+            } catch (Exception e) {
+                if (isCancelled()) {
+                    return false;
+                }
+                throw new Exception("Finca \"" + finca.getNombre() + "\": " + e.getMessage(), e);
+            } finally {
+                rellenando.remove(filler);
+            }
+        }
+        if (jasperPrint == null || jasperPrint.getPages().isEmpty() || isCancelled()) {
+            return false;
+        }
+
+        File pdf = new File(directorio, nombreArchivo(finca));
+        JasperExportManager.exportReportToPdfFile(jasperPrint, pdf.getAbsolutePath());
+        paginas.addAndGet(jasperPrint.getPages().size());
+        return true;
+    }
+
+    static String nombreArchivo(Finca finca) {
+        String nombre = finca.getNombre() != null ? finca.getNombre().replaceAll("[^a-zA-Z0-9]", "_") : "";
+        return "Informe_Finca_" + finca.getId() + (nombre.isEmpty() ? "" : "_" + nombre) + ".pdf";
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelada = super.cancel(mayInterruptIfRunning);
+        ExecutorService actual = hilos;
+        if (cancelada && actual != null) {
+            actual.shutdownNow();
+        }
+        if (cancelada) {
+            for (BaseReportFiller filler : rellenando) {
+                try {
+                    filler.cancelFill();
+                } catch (JRException e) {
+                    System.err.println("No se pudo cancelar el llenado del informe: " + e.getMessage());
+                }
+            }
+        }
+        return cancelada;
+    }
+
+    /**
+     * Resultado de un lote.
+     *
+     * @param fincas Fincas procesadas
+     * @param generados PDF escritos
+     * @param sinPaginas Fincas cuyo informe salió vacío (sin PDF)
+     * @param paginas Páginas totales de los PDF escritos
+     * @param milisegundos Duración del lote
+     * @param errores Un mensaje por cada finca que falló
+     */
+    public record ResumenLote(int fincas, int generados, int sinPaginas, int paginas,
+                              long milisegundos, List<String> errores) {
+
+        public double informesPorSegundo() {
+            return milisegundos > 0 ? generados * 1000.0 / milisegundos : generados;
+        }
+
+        public double paginasPorSegundo() {
+            return milisegundos > 0 ? paginas * 1000.0 / milisegundos : paginas;
+        }
+
+        /**
+         * Texto para mostrar al usuario al terminar.
+         */
+        public String describir() {
+            StringBuilder texto = new StringBuilder();
+            texto.append(String.format("PDF generados: %d de %d fincas%n", generados, fincas));
+            if (sinPaginas > 0) {
+                texto.append(String.format("Fincas sin datos para el informe: %d%n", sinPaginas));
+            }
+            texto.append(String.format("Tiempo: %.1f s (%.2f informes/s, %.1f páginas/s)",
+                milisegundos / 1000.0, informesPorSegundo(), paginasPorSegundo()));
+            if (!errores.isEmpty()) {
+                texto.append(String.format("%n%nErrores (%d):", errores.size()));
+                errores.stream().limit(10).forEach(error -> texto.append("\n- ").append(error));
+            }
+            return texto.toString();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package mapa;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * TESELAS DEL MAPA GUARDADAS EN EL EQUIPO
+ *
+ * mapa_simple.html dibuja el mapa con teselas de OpenStreetMap. Antes las pedía
+ * directamente por HTTPS y las guardaba en un objeto de JavaScript, que se
+ * perdía cada vez que se creaba un WebView (Dashboard, detalle de finca,
+ * diálogo de finca). Ahora las pide con la URL tesela://osm/z/x/y.png, que
+ * atiende ProtocoloTeselas con esta clase.
+ *
+ * Orden de búsqueda:
+ * 1. Caché en disco (~/.agrotrack/teselas, ver DiscoTeselas)
+ * 2. Paquete sin conexión: una carpeta con teselas en z/x/y.png, como las que
+ *    generan las herramientas de descarga de mapas. Por defecto
+ *    ~/.agrotrack/teselas/paquete, o la que se indique al arrancar con
+ *    -Dagrotrack.mapa.PAQUETE_TESELAS=/ruta. Sirve para equipos sin red.
+ * 3. Descargar de tile.openstreetmap.org y guardar en la caché
+ *
+ * La caché ocupa como mucho 256 MB (-Dagrotrack.mapa.CACHE_TESELAS_MB=512 para
+ * cambiarlo). Si una descarga falla por falta de red, durante un minuto no se
+ * vuelve a intentar: sin conexión el mapa muestra lo que haya en disco sin
+ * esperar a que caduque cada petición.
+ */
+public final class AlmacenTeselas {
+
+    private static final Path DIRECTORIO =
+        Paths.get(System.getProperty("user.home"), ".agrotrack", "teselas");
+    private static final String URL_OSM = "https://tile.openstreetmap.org/";
+    // La política de uso de OpenStreetMap pide identificar la aplicación
+    private static final String AGENTE = "AgroTrack-Escritorio/1.0";
+
+    private static final int ZOOM_MAXIMO = 19;
+    private static final long TAMANO_MAXIMO_POR_DEFECTO_MB = 256;
+    private static final int TIMEOUT_CONEXION_MS = 5_000;
+    private static final int TIMEOUT_LECTURA_MS = 10_000;
+    private static final long PAUSA_SIN_RED_MS = 60_000;
+
+    private static final Object lock = new Object();
+    private static DiscoTeselas disco;
+    private static boolean discoNoDisponible;
+    private static volatile long sinRedHasta;
+
+    private AlmacenTeselas() {
+        // Clase de utilidad, no se puede instanciar
+    }
+
+    /**
+     * Devuelve la imagen PNG de una tesela, o null si no existe o no se puede
+     * conseguir (sin red y sin tenerla guardada).
+     */
+    public static byte[] obtener(int z, int x, int y) throws IOException {
+        if (z < 0 || z > ZOOM_MAXIMO || x < 0 || y < 0 || x >= (1 << z) || y >= (1 << z)) {
+            return null;
+        }
+
+        // 1. Caché en disco
+        synchronized (lock) {
+            DiscoTeselas d = disco();
+            if (d != null) {
+                byte[] datos = d.leer(z, x, y);
+                if (datos != null) {
+                    return datos;
+                }
+            }
+        }
+
+        // 2. Paquete sin conexión
+        Path enPaquete = directorioPaquete().resolve(z + "/" + x + "/" + y + ".png");
+        if (Files.isRegularFile(enPaquete)) {
+            return Files.readAllBytes(enPaquete);
+        }
+
+        // 3. Descarga (fuera del lock: puede tardar)
+        byte[] datos = descargar(z, x, y);
+        if (datos != null) {
+            synchronized (lock) {
+                DiscoTeselas d = disco();
+                if (d != null) {
+                    d.guardar(z, x, y, datos);
+                }
+            }
+        }
+        return datos;
+    }
+
+    /**
+     * Guarda el índice y cierra los ficheros. Se llama al cerrar la aplicación.
+     */
+    public static void cerrar() {
+        synchronized (lock) {
+            if (disco != null) {
+                try {
+                    disco.cerrar();
+                } catch (IOException e) {
+                    System.err.println("Error al cerrar la caché de teselas: " + e.getMessage());
+                }
+                disco = null;
+            }
+        }
+    }
+
+    private static DiscoTeselas disco() {
+        if (disco == null && !discoNoDisponible) {
+            try {
+                disco = new DiscoTeselas(DIRECTORIO, leerTamanoMaximoMb() * 1024 * 1024);
+            } catch (IOException e) {
+                // Sin caché en disco el mapa sigue funcionando, solo que descarga siempre
+                // (también pasa si otra instancia de la aplicación tiene la caché abierta)
+                System.err.println("No se pudo abrir la caché de teselas: " + e.getMessage());
+                discoNoDisponible = true;
+            }
+        }
+        return disco;
+    }
+
+    private static byte[] descargar(int z, int x, int y) throws IOException {
+        if (System.currentTimeMillis() < sinRedHasta) {
+            return null;
+        }
+        HttpURLConnection conexion = (HttpURLConnection) new URL(URL_OSM + z + "/" + x + "/" + y + ".png")
+            .openConnection();
+        conexion.setRequestProperty("User-Agent", AGENTE);
+        conexion.setConnectTimeout(TIMEOUT_CONEXION_MS);
+        conexion.setReadTimeout(TIMEOUT_LECTURA_MS);
+        try {
+            int codigo = conexion.getResponseCode();
+            if (codigo != HttpURLConnection.HTTP_OK) {
+                return null;
+            }
+            try (InputStream entrada = conexion.getInputStream()) {
+                ByteArrayOutputStream salida = new ByteArrayOutputStream(32 * 1024);
+                entrada.transferTo(salida);
+                return salida.toByteArray();
+            }
+        } catch (IOException e) {
+            sinRedHasta = System.currentTimeMillis() + PAUSA_SIN_RED_MS;
+            System.err.println("Sin conexión con el servidor de mapas: " + e.getMessage());
+            return null;
+        } finally {
+            conexion.disconnect();
+        }
+    }
+
+    private static Path directorioPaquete() {
+        String ruta = System.getProperty("agrotrack.mapa.PAQUETE_TESELAS");
+        return ruta == null || ruta.isBlank() ? DIRECTORIO.resolve("paquete") : Paths.get(ruta.trim());
+    }
+
+    private static long leerTamanoMaximoMb() {
+        String valor = System.getProperty("agrotrack.mapa.CACHE_TESELAS_MB");
+        if (valor != null && !valor.isBlank()) {
+            try {
+                long mb = Long.parseLong(valor.trim());
+                if (mb > 0) {
+                    return mb;
+                }
+            } catch (NumberFormatException e) {
+                // Se usa el valor por defecto
+            }
+            System.err.println("agrotrack.mapa.CACHE_TESELAS_MB no válido (\"" + valor + "\"), se usan "
+                + TAMANO_MAXIMO_POR_DEFECTO_MB + " MB");
+        }
+        return TAMANO_MAXIMO_POR_DEFECTO_MB;
+    }
+}
@@ -0,0 +1,315 @@
+package mapa;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Teselas guardadas en disco, con tamaño máximo.
+ *
+ * Las imágenes se añaden al final de ficheros de segmento (segmento-N.dat) de
+ * hasta TAMANO_SEGMENTO bytes. Cuando el total pasa del máximo se borra el
+ * segmento más antiguo entero: las teselas que más tiempo llevan guardadas son
+ * las primeras en salir, sin tener que compactar nada.
+ *
+ * Dónde está cada tesela lo dice indice.idx, una tabla hash de tamaño fijo que
+ * se abre con memoria mapeada (MappedByteBuffer): buscar una tesela es leer
+ * unas pocas posiciones de memoria, sin cargar el índice al arrancar. Cada
+ * ranura ocupa 24 bytes:
+ *
+ *   clave (long, 0 = libre) | segmento (int) | posición (int) | longitud (int) | CRC32 (int)
+ *
+ * Las ranuras que apuntan a un segmento ya borrado se consideran libres. El CRC
+ * descarta las teselas a medio escribir si el equipo se apagó de golpe.
+ *
+ * No es seguro para varios hilos por sí solo: AlmacenTeselas sincroniza los accesos.
+ * Entre procesos, el constructor bloquea indice.idx (FileLock) y falla si otra
+ * instancia de la aplicación ya lo tiene; el bloqueo se suelta en cerrar().
+ */
+final class DiscoTeselas {
+
+    private static final int MAGIA = 0x54534c31;  // "TSL1"
+    private static final int RANURAS = 1 << 17;   // 131.072 teselas, índice de 3 MB
+    private static final int TAMANO_RANURA = 24;
+    private static final int TAMANO_CABECERA = 32;
+    private static final int SONDEO_MAXIMO = 32;
+    static final int TAMANO_SEGMENTO = 16 * 1024 * 1024;
+
+    // Posiciones en la cabecera del índice
+    private static final int CAB_MAGIA = 0;
+    private static final int CAB_RANURAS = 4;
+    private static final int CAB_SEGMENTO_ACTUAL = 8;
+    private static final int CAB_SEGMENTO_ANTIGUO = 12;
+
+    // Directorios abiertos por esta JVM
+    private static final Set<Path> ABIERTOS = new HashSet<>();
+
+    private final Path directorio;
+    private final int maximoSegmentos;
+    private final FileChannel canalIndice;
+    private final MappedByteBuffer indice;
+    private final Map<Integer, FileChannel> segmentos = new HashMap<>();
+
+    /**
+     * @param directorio Carpeta de la caché (se crea si no existe)
+     * @param tamanoMaximo Bytes que puede ocupar como mucho (se redondea a segmentos enteros)
+     */
+    DiscoTeselas(Path directorio, long tamanoMaximo) throws IOException {
+        this.directorio = directorio;
+        this.maximoSegmentos = (int) Math.max(2, tamanoMaximo / TAMANO_SEGMENTO);
+        Files.createDirectories(directorio);
+        // Dentro de la misma JVM el FileLock no sirve (tryLock lanzaría una excepción
+        // y cerrar ese canal soltaría el bloqueo del primero): se controla aquí
+        synchronized (ABIERTOS) {
+            if (!ABIERTOS.add(directorio.toAbsolutePath().normalize())) {
+                throw new IOException("la caché de teselas ya está abierta");
+            }
+        }
+
+        long tamanoIndice = TAMANO_CABECERA + (long) RANURAS * TAMANO_RANURA;
+        try {
+            canalIndice = FileChannel.open(directorio.resolve("indice.idx"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            liberarDirectorio();
+            throw e;
+        }
+        // Si hay otra instancia de la aplicación abierta, la caché es suya: dos
+        // procesos escribiendo el mismo índice y segmentos lo corromperían
+        FileLock bloqueo;
+        try {
+            bloqueo = canalIndice.tryLock();
+        } catch (IOException e) {
+            cerrarSinBloqueo();
+            throw e;
+        }
+        if (bloqueo == null) {
+            cerrarSinBloqueo();
+            throw new IOException("la caché de teselas la está usando otra instancia de la aplicación");
+        }
+        try {
+            boolean nuevo = canalIndice.size() != tamanoIndice;
+            indice = canalIndice.map(FileChannel.MapMode.READ_WRITE, 0, tamanoIndice);
+            if (nuevo || indice.getInt(CAB_MAGIA) != MAGIA || indice.getInt(CAB_RANURAS) != RANURAS) {
+                // Índice nuevo o de otra versión: se empieza de cero
+                for (int i = 0; i < tamanoIndice; i += 8) {
+                    indice.putLong(i, 0L);
+                }
+                borrarSegmentos();
+                indice.putInt(CAB_MAGIA, MAGIA);
+                indice.putInt(CAB_RANURAS, RANURAS);
+                indice.putInt(CAB_SEGMENTO_ACTUAL, 0);
+                indice.putInt(CAB_SEGMENTO_ANTIGUO, 0);
+            }
+        } catch (IOException e) {
+            cerrarSinBloqueo();
+            throw e;
+        }
+    }
+
+    /**
+     * Devuelve la imagen guardada, o null si no está (o ya se descartó).
+     */
+    byte[] leer(int z, int x, int y) throws IOException {
+        long clave = clave(z, x, y);
+        int inicio = ranuraInicial(clave);
+        for (int i = 0; i < SONDEO_MAXIMO; i++) {
+            int ranura = posicionRanura((inicio + i) & (RANURAS - 1));
+            long guardada = indice.getLong(ranura);
+            if (guardada == 0L) {
+                return null;
+            }
+            if (guardada == clave && segmentoVivo(indice.getInt(ranura + 8))) {
+                return leerDatos(ranura);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Guarda una imagen. Si ya estaba, la nueva sustituye a la anterior.
+     */
+    void guardar(int z, int x, int y, byte[] datos) throws IOException {
+        if (datos.length == 0 || datos.length > TAMANO_SEGMENTO) {
+            return;
+        }
+        long clave = clave(z, x, y);
+        FileChannel canal = segmentoParaEscribir(datos.length);
+        int segmento = indice.getInt(CAB_SEGMENTO_ACTUAL);
+        long posicion = canal.size();
+        canal.write(ByteBuffer.wrap(datos), posicion);
+
+        // Primero los datos y después el índice: nunca apunta a algo sin escribir
+        int ranura = ranuraParaEscribir(clave);
+        CRC32 crc = new CRC32();
+        crc.update(datos);
+        indice.putInt(ranura + 8, segmento);
+        indice.putInt(ranura + 12, (int) posicion);
+        indice.putInt(ranura + 16, datos.length);
+        indice.putInt(ranura + 20, (int) crc.getValue());
+        indice.putLong(ranura, clave);
+    }
+
+    /**
+     * Bytes que ocupan ahora los segmentos.
+     */
+    long tamanoOcupado() throws IOException {
+        long total = 0;
+        for (int s = indice.getInt(CAB_SEGMENTO_ANTIGUO); s <= indice.getInt(CAB_SEGMENTO_ACTUAL); s++) {
+            Path fichero = rutaSegmento(s);
+            if (Files.exists(fichero)) {
+                total += Files.size(fichero);
+            }
+        }
+        return total;
+    }
+
+    void cerrar() throws IOException {
+        indice.force();
+        for (FileChannel canal : segmentos.values()) {
+            canal.close();
+        }
+        segmentos.clear();
+        canalIndice.close();
+        liberarDirectorio();
+    }
+
+    private void cerrarSinBloqueo() throws IOException {
+        try {
+            canalIndice.close();
+        } finally {
+            liberarDirectorio();
+        }
+    }
+
+    private void liberarDirectorio() {
+        synchronized (ABIERTOS) {
+            ABIERTOS.remove(directorio.toAbsolutePath().normalize());
+        }
+    }
+
+    private byte[] leerDatos(int ranura) throws IOException {
+        int segmento = indice.getInt(ranura + 8);
+        int posicion = indice.getInt(ranura + 12);
+        int longitud = indice.getInt(ranura + 16);
+        FileChannel canal = canalSegmento(segmento);
+        if (canal == null || posicion + (long) longitud > canal.size()) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(longitud);
+        while (buffer.hasRemaining()) {
+            if (canal.read(buffer, posicion + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        byte[] datos = buffer.array();
+        CRC32 crc = new CRC32();
+        crc.update(datos);
+        return (int) crc.getValue() == indice.getInt(ranura + 20) ? datos : null;
+    }
+
+    /**
+     * Ranura para una clave: la suya si ya estaba, o la primera libre (o con un
+     * segmento borrado). Si las SONDEO_MAXIMO siguientes están ocupadas se
+     * sobrescribe la primera: es una caché, perder una tesela no importa.
+     */
+    private int ranuraParaEscribir(long clave) {
+        int inicio = ranuraInicial(clave);
+        int libre = -1;
+        for (int i = 0; i < SONDEO_MAXIMO; i++) {
+            int ranura = posicionRanura((inicio + i) & (RANURAS - 1));
+            long guardada = indice.getLong(ranura);
+            if (guardada == clave) {
+                return ranura;
+            }
+            if (libre < 0 && (guardada == 0L || !segmentoVivo(indice.getInt(ranura + 8)))) {
+                libre = ranura;
+            }
+            if (guardada == 0L) {
+                break;
+            }
+        }
+        return libre >= 0 ? libre : posicionRanura(inicio);
+    }
+
+    private FileChannel segmentoParaEscribir(int longitud) throws IOException {
+        int actual = indice.getInt(CAB_SEGMENTO_ACTUAL);
+        FileChannel canal = abrirSegmento(actual);
+        if (canal.size() + longitud <= TAMANO_SEGMENTO) {
+            return canal;
+        }
+        // Segmento lleno: se empieza otro y, si se pasa del máximo, se borra el más antiguo
+        actual++;
+        indice.putInt(CAB_SEGMENTO_ACTUAL, actual);
+        while (actual - indice.getInt(CAB_SEGMENTO_ANTIGUO) + 1 > maximoSegmentos) {
+            int antiguo = indice.getInt(CAB_SEGMENTO_ANTIGUO);
+            indice.putInt(CAB_SEGMENTO_ANTIGUO, antiguo + 1);
+            FileChannel cerrado = segmentos.remove(antiguo);
+            if (cerrado != null) {
+                cerrado.close();
+            }
+            Files.deleteIfExists(rutaSegmento(antiguo));
+        }
+        return abrirSegmento(actual);
+    }
+
+    private FileChannel canalSegmento(int segmento) throws IOException {
+        if (!segmentoVivo(segmento) || !Files.exists(rutaSegmento(segmento))) {
+            return null;
+        }
+        return abrirSegmento(segmento);
+    }
+
+    private FileChannel abrirSegmento(int segmento) throws IOException {
+        FileChannel canal = segmentos.get(segmento);
+        if (canal == null) {
+            canal = FileChannel.open(rutaSegmento(segmento),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segmentos.put(segmento, canal);
+        }
+        return canal;
+    }
+
+    private boolean segmentoVivo(int segmento) {
+        return segmento >= indice.getInt(CAB_SEGMENTO_ANTIGUO) && segmento <= indice.getInt(CAB_SEGMENTO_ACTUAL);
+    }
+
+    private void borrarSegmentos() throws IOException {
+        try (var ficheros = Files.newDirectoryStream(directorio, "segmento-*.dat")) {
+            for (Path fichero : ficheros) {
+                Files.deleteIfExists(fichero);
+            }
+        }
+    }
+
+    private Path rutaSegmento(int segmento) {
+        return directorio.resolve("segmento-" + segmento + ".dat");
+    }
+
+    private static int posicionRanura(int ranura) {
+        return TAMANO_CABECERA + ranura * TAMANO_RANURA;
+    }
+
+    private static int ranuraInicial(long clave) {
+        long h = clave * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & (RANURAS - 1);
+    }
+
+    /**
+     * z (hasta 19) en los bits 58-62, x e y en 29 bits cada uno, y el bit 63 a
+     * 1 para que ninguna clave valga 0 (ranura libre).
+     */
+    static long clave(int z, int x, int y) {
+        return Long.MIN_VALUE | ((long) z << 58) | ((long) x << 29) | y;
+    }
+}
@@ -0,0 +1,219 @@
+package mapa;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.concurrent.Worker;
+import javafx.scene.Scene;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.StackPane;
+import javafx.scene.web.WebEngine;
+import javafx.scene.web.WebView;
+import netscape.javascript.JSObject;
+
+/**
+ * UN ÚNICO WEBVIEW PARA TODOS LOS MAPAS
+ *
+ * El Dashboard, el detalle de finca y el diálogo de finca muestran el mismo
+ * mapa_simple.html. Antes cada pantalla creaba su WebView y volvía a leer y
+ * cargar la página cada vez que se navegaba a ella, así que ir al detalle y
+ * volver al Dashboard reconstruía el mapa dos veces (y cada WebView es un
+ * motor WebKit entero en memoria).
+ *
+ * Ahora el WebView se crea y carga una vez al arrancar (precalentar) y cada
+ * pantalla lo coloca en su StackPane con mostrarEn(). Lo que cambia de una
+ * pantalla a otra (polígono, controles visibles, objeto javaController para
+ * guardar coordenadas) se vuelve a aplicar cada vez que cambia de sitio.
+ *
+ * Las pantallas que lo piden se apilan: si el diálogo de finca lo toma encima
+ * del Dashboard, al cerrarse (liberar) el mapa vuelve al Dashboard con su
+ * finca. Las pantallas que ya no se ven (se navegó a otra escena) se descartan.
+ *
+ * IMPORTANTE: todos los métodos deben llamarse desde el hilo de JavaFX.
+ */
+public final class PoolMapa {
+
+    private static final String PAGINA = "/mapa/mapa_simple.html";
+
+    private static WebView vista;
+    private static boolean listo;
+    private static final Deque<Uso> usos = new ArrayDeque<>();
+
+    private PoolMapa() {
+        // Clase de utilidad, no se puede instanciar
+    }
+
+    /**
+     * Crea el WebView y empieza a cargar el mapa, para que la primera pantalla
+     * que lo use ya lo tenga listo. Se llama al arrancar.
+     */
+    public static void precalentar() {
+        if (vista != null) {
+            return;
+        }
+        vista = new WebView();
+        WebEngine motor = vista.getEngine();
+        motor.getLoadWorker().stateProperty().addListener((obs, anterior, estado) -> {
+            listo = estado == Worker.State.SUCCEEDED;
+            if (listo) {
+                aplicarActual();
+            }
+        });
+        // Al cambiar de panel cambia el tamaño: el canvas del mapa se ajusta
+        InvalidationListener alRedimensionar =
+            obs -> ejecutar("window.refrescarMapaDesdeJava && window.refrescarMapaDesdeJava();");
+        vista.widthProperty().addListener(alRedimensionar);
+        vista.heightProperty().addListener(alRedimensionar);
+
+        try (InputStream entrada = PoolMapa.class.getResourceAsStream(PAGINA)) {
+            if (entrada == null) {
+                System.err.println("No se encontró el recurso: " + PAGINA);
+                return;
+            }
+            motor.loadContent(new String(entrada.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Error al cargar mapa: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Coloca el mapa en un panel (como primer hijo, debajo del indicador de carga).
+     *
+     * @param panel Panel de la pantalla que va a mostrar el mapa
+     * @param puente Objeto que JavaScript verá como window.javaController, o null
+     * @param controles Si se muestran los botones de dibujar y guardar del mapa
+     * @param alEstarListo Se llama cuando la página está cargada y el mapa tiene
+     *                     tamaño, cada vez que el mapa vuelve a este panel. Es el
+     *                     momento de cargar el polígono con Uso.ejecutar.
+     * @return El uso del mapa por esta pantalla; hay que liberarlo si la pantalla
+     *         se cierra dejando debajo otra que lo usaba (diálogos)
+     */
+    public static Uso mostrarEn(StackPane panel, Object puente, boolean controles, Consumer<Uso> alEstarListo) {
+        precalentar();
+        usos.removeIf(uso -> !uso.visible());
+        Uso uso = new Uso(panel, puente, controles, alEstarListo);
+        usos.push(uso);
+        // Un panel recién creado aún no tiene tamaño: se aplica cuando lo tenga,
+        // después de que el WebView se haya colocado dentro (runLater)
+        InvalidationListener alTenerTamano = obs -> Platform.runLater(PoolMapa::aplicarActual);
+        panel.widthProperty().addListener(alTenerTamano);
+        panel.heightProperty().addListener(alTenerTamano);
+        colocar(uso);
+        return uso;
+    }
+
+    private static void colocar(Uso uso) {
+        if (vista.getParent() instanceof Pane anterior && anterior != uso.panel) {
+            anterior.getChildren().remove(vista);
+        }
+        if (!uso.panel.getChildren().contains(vista)) {
+            uso.panel.getChildren().add(0, vista);
+        }
+        uso.pendiente = true;
+        aplicarActual();
+    }
+
+    /**
+     * Deja la página como la espera la pantalla de arriba de la pila. Si aún no
+     * ha cargado o no tiene tamaño, se hace cuando lo tenga.
+     */
+    private static void aplicarActual() {
+        Uso uso = usos.peek();
+        if (uso == null || !uso.pendiente || !listo || uso.panel.getWidth() <= 0 || uso.panel.getHeight() <= 0) {
+            return;
+        }
+        uso.pendiente = false;
+        try {
+            JSObject window = (JSObject) vista.getEngine().executeScript("window");
+            if (uso.puente != null) {
+                window.setMember("javaController", uso.puente);
+            } else {
+                window.removeMember("javaController");
+            }
+            ejecutar("window.limpiar && window.limpiar();"
+                + "window.activarModoEdicion && window.activarModoEdicion(false);"
+                + "var c = document.querySelector('.controls'); if (c) { c.style.display = '"
+                + (uso.controles ? "" : "none") + "'; }"
+                + "window.refrescarMapaDesdeJava && window.refrescarMapaDesdeJava();");
+        } catch (Exception e) {
+            System.err.println("Error al preparar el mapa: " + e.getMessage());
+        }
+        if (uso.alEstarListo != null) {
+            uso.alEstarListo.accept(uso);
+        }
+    }
+
+    private static void ejecutar(String script) {
+        if (!listo) {
+            return;
+        }
+        try {
+            vista.getEngine().executeScript(script);
+        } catch (Exception e) {
+            System.err.println("Error en el mapa: " + e.getMessage());
+        }
+    }
+
+    /**
+     * El mapa colocado en el panel de una pantalla.
+     */
+    public static final class Uso {
+
+        private final StackPane panel;
+        private final Object puente;
+        private final boolean controles;
+        private final Consumer<Uso> alEstarListo;
+        private boolean pendiente;
+
+        private Uso(StackPane panel, Object puente, boolean controles, Consumer<Uso> alEstarListo) {
+            this.panel = panel;
+            this.puente = puente;
+            this.controles = controles;
+            this.alEstarListo = alEstarListo;
+        }
+
+        /**
+         * true si el mapa está cargado y lo tiene esta pantalla.
+         */
+        public boolean estaListo() {
+            return listo && usos.peek() == this;
+        }
+
+        /**
+         * Ejecuta JavaScript en el mapa, solo si está listo y lo tiene esta
+         * pantalla (si lo tiene otra, se aplicará en alEstarListo al volver).
+         */
+        public void ejecutar(String script) {
+            if (estaListo()) {
+                PoolMapa.ejecutar(script);
+            }
+        }
+
+        /**
+         * La pantalla deja de usar el mapa; vuelve a la anterior que siga visible.
+         */
+        public void liberar() {
+            boolean eraActual = usos.peek() == this;
+            usos.remove(this);
+            if (!eraActual) {
+                return;
+            }
+            panel.getChildren().remove(vista);
+            usos.removeIf(uso -> !uso.visible());
+            Uso anterior = usos.peek();
+            if (anterior != null) {
+                colocar(anterior);
+            }
+        }
+
+        private boolean visible() {
+            Scene escena = panel.getScene();
+            return escena != null && escena.getWindow() != null && escena.getWindow().isShowing();
+        }
+    }
+}
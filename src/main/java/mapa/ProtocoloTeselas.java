@@ -0,0 +1,100 @@
+package mapa;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+
+/**
+ * Protocolo tesela:// para los WebView del mapa.
+ *
+ * El WebView de JavaFX carga las URL que no son http/https con los manejadores
+ * de java.net.URL, así que basta con registrar este para que un
+ * img.src = 'tesela://osm/6/31/24.png' de mapa_simple.html se sirva desde
+ * AlmacenTeselas. La imagen llega a JavaScript igual que si viniera de la red.
+ *
+ * Si la tesela no se puede conseguir se devuelve un error de "no encontrado"
+ * (img.onerror en JavaScript), que es lo mismo que pasaba sin conexión.
+ */
+public final class ProtocoloTeselas extends URLStreamHandler {
+
+    public static final String PROTOCOLO = "tesela";
+
+    private ProtocoloTeselas() {
+    }
+
+    /**
+     * Registra el protocolo. Hay que llamarlo una vez al arrancar, antes de
+     * crear ningún WebView.
+     */
+    public static void registrar() {
+        try {
+            URL.setURLStreamHandlerFactory(protocolo -> PROTOCOLO.equals(protocolo) ? new ProtocoloTeselas() : null);
+        } catch (Error e) {
+            // Solo se puede registrar una fábrica por JVM
+            System.err.println("No se pudo registrar el protocolo " + PROTOCOLO + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    protected URLConnection openConnection(URL url) {
+        return new ConexionTesela(url);
+    }
+
+    /**
+     * Conexión a una tesela: tesela://osm/{z}/{x}/{y}.png
+     */
+    private static final class ConexionTesela extends URLConnection {
+
+        private byte[] datos;
+
+        private ConexionTesela(URL url) {
+            super(url);
+        }
+
+        @Override
+        public void connect() throws IOException {
+            if (connected) {
+                return;
+            }
+            String[] partes = url.getPath().replaceFirst("^/", "").replaceFirst("\\.png$", "").split("/");
+            if (partes.length != 3) {
+                throw new FileNotFoundException(url.toString());
+            }
+            try {
+                datos = AlmacenTeselas.obtener(Integer.parseInt(partes[0]), Integer.parseInt(partes[1]),
+                    Integer.parseInt(partes[2]));
+            } catch (NumberFormatException e) {
+                throw new FileNotFoundException(url.toString());
+            }
+            if (datos == null) {
+                throw new FileNotFoundException(url.toString());
+            }
+            connected = true;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            connect();
+            return new ByteArrayInputStream(datos);
+        }
+
+        @Override
+        public String getContentType() {
+            return "image/png";
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            try {
+                connect();
+                return datos.length;
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+    }
+}
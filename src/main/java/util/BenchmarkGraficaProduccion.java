@@ -0,0 +1,120 @@
+package util;
+
+import crud.CacheEntidades;
+import crud.ConexionBD;
+import crud.CultivoDAO;
+import crud.FincaDAO;
+import crud.UsuarioDAO;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import modelo.Cultivo;
+import modelo.Finca;
+import modelo.Usuario;
+
+/**
+ * Mide cuánto tarda en cargarse la gráfica de producción del dashboard.
+ *
+ * Compara dos formas de obtener los datos:
+ * - Bucle por finca: una consulta listarPorFinca por cada finca (la forma antigua)
+ * - Agregado: una sola consulta GROUP BY mes (CultivoDAO.totalesRendimientoPorMes)
+ *
+ * Se ejecuta para cada usuario de la base de datos configurada en bbdd.properties
+ * y para el caso del administrador (todas las fincas), ordenado por número de fincas,
+ * para ver cómo crece el tiempo de carga al aumentar las fincas.
+ *
+ * Cómo usarlo:
+ * 1. Ejecuta este main (Run -> Run File)
+ * 2. Revisa la tabla que aparece en la consola
+ */
+public class BenchmarkGraficaProduccion {
+
+    private static final int REPETICIONES = 5;
+
+    private static final FincaDAO fincaDAO = new FincaDAO();
+    private static final CultivoDAO cultivoDAO = new CultivoDAO();
+
+    public static void main(String[] args) throws SQLException {
+        try {
+            List<Escenario> escenarios = new ArrayList<>();
+            for (Usuario usuario : new UsuarioDAO().listarTodos()) {
+                escenarios.add(new Escenario(usuario.getUsername(), usuario.getId(),
+                    fincaDAO.listarPorUsuario(usuario.getId())));
+            }
+            escenarios.add(new Escenario("(administrador)", null, fincaDAO.listarTodas()));
+            escenarios.sort((a, b) -> Integer.compare(a.fincas().size(), b.fincas().size()));
+
+            // Calentar el pool y la caché de sentencias preparadas antes de medir
+            cultivoDAO.totalesRendimientoPorMes(null);
+
+            System.out.println("=== Carga de la gráfica de producción (media de " + REPETICIONES + " ejecuciones) ===\n");
+            System.out.printf("%-20s %8s %16s %16s%n", "Escenario", "Fincas", "Bucle (ms)", "Agregado (ms)");
+            for (Escenario escenario : escenarios) {
+                double bucle = medir(() -> cargarConBucle(escenario.fincas()));
+                double agregado = medir(() -> cultivoDAO.totalesRendimientoPorMes(escenario.usuarioId()));
+                System.out.printf("%-20s %8d %16.2f %16.2f%n",
+                    escenario.nombre(), escenario.fincas().size(), bucle, agregado);
+            }
+        } finally {
+            ConexionBD.cerrarPool();
+        }
+    }
+
+    /**
+     * Reproduce la carga antigua: una consulta por finca y suma de los meses en Java,
+     * tanto del rendimiento estimado como del real (CUL_REND_REAL o, si falta,
+     * CUL_PRODUCCION_KG), igual que la consulta agregada.
+     *
+     * @return Por cada mes, {estimado, real}
+     */
+    private static Map<Integer, BigDecimal[]> cargarConBucle(List<Finca> fincas) throws SQLException {
+        // listarPorFinca pasa por CacheEntidades: sin vaciarla, tras la primera
+        // repetición se mediría la caché y no las consultas
+        CacheEntidades.limpiar();
+        Map<Integer, BigDecimal[]> totalesPorMes = new HashMap<>();
+        for (Finca finca : fincas) {
+            for (Cultivo cultivo : cultivoDAO.listarPorFinca(finca.getId())) {
+                LocalDate referencia = cultivo.getFechaCosecha() != null
+                    ? cultivo.getFechaCosecha()
+                    : cultivo.getFechaSiembra();
+                if (referencia == null) {
+                    continue;
+                }
+                BigDecimal[] totales = totalesPorMes.computeIfAbsent(referencia.getMonthValue(),
+                    mes -> new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO});
+                if (cultivo.getRendimientoEstimado() != null) {
+                    totales[0] = totales[0].add(cultivo.getRendimientoEstimado());
+                }
+                BigDecimal real = cultivo.getRendimientoReal() != null
+                    ? cultivo.getRendimientoReal()
+                    : cultivo.getProduccionKg();
+                if (real != null) {
+                    totales[1] = totales[1].add(real);
+                }
+            }
+        }
+        return totalesPorMes;
+    }
+
+    private static double medir(Consulta consulta) throws SQLException {
+        long total = 0;
+        for (int i = 0; i < REPETICIONES; i++) {
+            long inicio = System.nanoTime();
+            consulta.ejecutar();
+            total += System.nanoTime() - inicio;
+        }
+        return total / (REPETICIONES * 1_000_000.0);
+    }
+
+    @FunctionalInterface
+    private interface Consulta {
+        Object ejecutar() throws SQLException;
+    }
+
+    private record Escenario(String nombre, Integer usuarioId, List<Finca> fincas) {
+    }
+}
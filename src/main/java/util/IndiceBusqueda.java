@@ -0,0 +1,401 @@
+package util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+
+/**
+ * ÍNDICE DE BÚSQUEDA EN MEMORIA PARA LOS BUSCADORES DE LAS TABLAS
+ *
+ * Filtrar recorriendo la lista y pasando a minúsculas cada campo de cada fila en
+ * cada tecla es lento con muchas filas. Este índice se construye una vez y se
+ * mantiene al día escuchando los cambios de la ObservableList, así que al
+ * escribir solo hay que consultarlo.
+ *
+ * Cómo busca:
+ * - El texto se normaliza sin tildes y en minúsculas ("Pérez" = "perez").
+ * - Cada palabra buscada debe aparecer en la fila (todas, en cualquier orden).
+ * - Palabras de 3 o más letras: se buscan en cualquier parte del texto usando
+ *   trigramas (cada fila se indexa por sus grupos de 3 letras consecutivas y se
+ *   cruzan las filas de los trigramas de la palabra).
+ * - Palabras de 1 o 2 letras: se buscan como comienzo de palabra (índice de prefijos).
+ *
+ * Cada trigrama guarda sus filas como un array de enteros ordenado, así el cruce
+ * solo toca las filas candidatas y no la lista entera.
+ *
+ * Uso habitual:
+ * <pre>
+ *   IndiceBusqueda&lt;Cultivo&gt; indice = new IndiceBusqueda&lt;&gt;(cultivos, Cultivo::getNombre, Cultivo::getVariedad);
+ *   tabla.setItems(indice.filtrada(campoBuscar.textProperty()));
+ * </pre>
+ *
+ * IMPORTANTE: se usa solo desde el hilo de JavaFX.
+ */
+public final class IndiceBusqueda<T> {
+
+    private static final int LONGITUD_TRIGRAMA = 3;
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARADORES = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // Los huecos de filas borradas se limpian reconstruyendo el índice cuando son mayoría
+    private static final int MINIMO_BORRADOS_PARA_RECONSTRUIR = 1000;
+
+    private final ObservableList<T> lista;
+    private final List<Function<T, ?>> campos;
+
+    /** Trigramas y prefijos, codificados como long (ver clave). */
+    private final Map<Long, Posiciones> posicionesPorClave = new HashMap<>();
+    /** Fila de cada hueco (null si se borró). */
+    private final List<T> elementos = new ArrayList<>();
+    /** Texto normalizado de cada hueco, para confirmar las coincidencias de los trigramas. */
+    private final List<String> textos = new ArrayList<>();
+    private final Map<T, Entrada> entradas = new IdentityHashMap<>();
+    private int borrados;
+
+    // Cambia con cada modificación: los filtros la usan para saber si su resultado sigue valiendo
+    private long version;
+
+    /**
+     * Indexa la lista y se queda escuchando sus cambios.
+     *
+     * @param lista Lista de objetos del modelo
+     * @param campos Campos por los que se puede buscar (los null se ignoran)
+     */
+    @SafeVarargs
+    public IndiceBusqueda(ObservableList<T> lista, Function<T, ?>... campos) {
+        this.lista = lista;
+        this.campos = List.of(campos);
+        lista.forEach(this::anadir);
+        lista.addListener((ListChangeListener<T>) this::alCambiar);
+    }
+
+    /**
+     * Vista de la lista filtrada por el texto del buscador. Se vuelve a filtrar al
+     * escribir y cuando la lista cambia (recarga, altas, bajas).
+     */
+    public FilteredList<T> filtrada(ObservableValue<String> texto) {
+        // El índice escucha la lista desde su constructor, antes que esta FilteredList:
+        // cuando la FilteredList procesa un cambio, el índice ya está actualizado
+        FilteredList<T> filtrada = new FilteredList<>(lista, filtro(texto.getValue()));
+        texto.addListener((obs, anterior, nuevo) -> filtrada.setPredicate(filtro(nuevo)));
+        return filtrada;
+    }
+
+    /**
+     * Predicado para una FilteredList sobre la misma lista. Consulta el índice una
+     * vez y reutiliza el resultado mientras la lista no cambie.
+     */
+    public Predicate<T> filtro(String texto) {
+        List<String> palabras = palabras(normalizar(texto));
+        if (palabras.isEmpty()) {
+            return elemento -> true;
+        }
+        return new Predicate<>() {
+            private long versionResultado = -1;
+            private BitSet resultado;
+
+            @Override
+            public boolean test(T elemento) {
+                if (versionResultado != version) {
+                    resultado = buscar(palabras);
+                    versionResultado = version;
+                }
+                Entrada entrada = entradas.get(elemento);
+                return entrada != null && resultado.get(entrada.hueco);
+            }
+        };
+    }
+
+    /**
+     * Filas que contienen todas las palabras del texto. Con el texto vacío
+     * devuelve todas.
+     */
+    public Set<T> buscar(String texto) {
+        List<String> palabras = palabras(normalizar(texto));
+        Set<T> resultado = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (palabras.isEmpty()) {
+            resultado.addAll(entradas.keySet());
+            return resultado;
+        }
+        BitSet huecos = buscar(palabras);
+        for (int hueco = huecos.nextSetBit(0); hueco >= 0; hueco = huecos.nextSetBit(hueco + 1)) {
+            resultado.add(elementos.get(hueco));
+        }
+        return resultado;
+    }
+
+    /**
+     * @return Los huecos de las filas que coinciden
+     */
+    private BitSet buscar(List<String> palabras) {
+        BitSet resultado = new BitSet(elementos.size());
+
+        // Posiciones de cada palabra, de la más selectiva a la menos
+        List<Posiciones> listas = new ArrayList<>();
+        boolean hayQueConfirmar = false;
+        for (String palabra : palabras) {
+            if (palabra.length() < LONGITUD_TRIGRAMA) {
+                Posiciones posiciones = posicionesPorClave.get(clave(palabra, 0, palabra.length()));
+                if (posiciones == null) {
+                    return resultado;
+                }
+                listas.add(posiciones);
+            } else {
+                for (int i = 0; i + LONGITUD_TRIGRAMA <= palabra.length(); i++) {
+                    Posiciones posiciones = posicionesPorClave.get(clave(palabra, i, LONGITUD_TRIGRAMA));
+                    if (posiciones == null) {
+                        return resultado;
+                    }
+                    listas.add(posiciones);
+                }
+                // Tener los trigramas no garantiza tenerlos seguidos: hay que confirmar
+                hayQueConfirmar |= palabra.length() > LONGITUD_TRIGRAMA;
+            }
+        }
+        listas.sort(Comparator.comparingInt(Posiciones::tamano));
+
+        int[] candidatos = Arrays.copyOf(listas.get(0).datos, listas.get(0).tamano);
+        int cuantos = candidatos.length;
+        for (int i = 1; i < listas.size() && cuantos > 0; i++) {
+            cuantos = cruzar(candidatos, cuantos, listas.get(i));
+        }
+
+        for (int i = 0; i < cuantos; i++) {
+            int hueco = candidatos[i];
+            if (elementos.get(hueco) != null && (!hayQueConfirmar || contieneTodas(textos.get(hueco), palabras))) {
+                resultado.set(hueco);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Deja en candidatos[0..n) solo los que también están en otras.
+     * Para cada candidato se busca en otras por búsqueda binaria desde la última posición.
+     */
+    private static int cruzar(int[] candidatos, int cuantos, Posiciones otras) {
+        int quedan = 0;
+        int desde = 0;
+        for (int i = 0; i < cuantos && desde < otras.tamano; i++) {
+            int pos = Arrays.binarySearch(otras.datos, desde, otras.tamano, candidatos[i]);
+            if (pos >= 0) {
+                candidatos[quedan++] = candidatos[i];
+                desde = pos + 1;
+            } else {
+                desde = -pos - 1;
+            }
+        }
+        return quedan;
+    }
+
+    private static boolean contieneTodas(String texto, List<String> palabras) {
+        for (String palabra : palabras) {
+            if (!texto.contains(palabra)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void alCambiar(ListChangeListener.Change<? extends T> cambio) {
+        while (cambio.next()) {
+            if (cambio.wasPermutated()) {
+                continue;  // El orden no afecta al índice
+            }
+            if (cambio.wasUpdated()) {
+                for (int i = cambio.getFrom(); i < cambio.getTo(); i++) {
+                    reindexar(cambio.getList().get(i));
+                }
+                continue;
+            }
+            for (T quitado : cambio.getRemoved()) {
+                quitar(quitado);
+            }
+            for (T anadido : cambio.getAddedSubList()) {
+                anadir(anadido);
+            }
+        }
+        if (borrados >= MINIMO_BORRADOS_PARA_RECONSTRUIR && borrados > elementos.size() / 2) {
+            reconstruir();
+        }
+    }
+
+    private void anadir(T elemento) {
+        version++;
+        Entrada entrada = entradas.get(elemento);
+        if (entrada != null) {
+            entrada.veces++;  // El mismo objeto puede estar varias veces en la lista
+            return;
+        }
+        int hueco = elementos.size();
+        String texto = textoDe(elemento);
+        elementos.add(elemento);
+        textos.add(texto);
+        entradas.put(elemento, new Entrada(hueco));
+
+        // Recorrer el texto una vez: prefijos de 1 y 2 letras al empezar cada palabra
+        // y un trigrama por cada posición a partir de la tercera letra
+        int inicioPalabra = -1;
+        for (int i = 0; i < texto.length(); i++) {
+            if (!Character.isLetterOrDigit(texto.charAt(i))) {
+                inicioPalabra = -1;
+                continue;
+            }
+            if (inicioPalabra < 0) {
+                inicioPalabra = i;
+            }
+            int largo = i - inicioPalabra + 1;
+            if (largo < LONGITUD_TRIGRAMA) {
+                indexar(clave(texto, inicioPalabra, largo), hueco);
+            } else {
+                indexar(clave(texto, i - LONGITUD_TRIGRAMA + 1, LONGITUD_TRIGRAMA), hueco);
+            }
+        }
+    }
+
+    private void indexar(long clave, int hueco) {
+        Posiciones posiciones = posicionesPorClave.computeIfAbsent(clave, c -> new Posiciones());
+        // Los huecos se asignan en orden creciente: si el último es este, el trigrama ya se repitió en la fila
+        if (posiciones.tamano == 0 || posiciones.datos[posiciones.tamano - 1] != hueco) {
+            posiciones.anadir(hueco);
+        }
+    }
+
+    /**
+     * Codifica un trigrama o un prefijo de 1 o 2 letras en un long (16 bits por
+     * letra y la longitud en los bits altos), para no crear un String por cada uno.
+     * Un prefijo y un trigrama nunca comparten clave.
+     */
+    private static long clave(String texto, int desde, int largo) {
+        long clave = largo;
+        for (int i = desde; i < desde + largo; i++) {
+            clave = (clave << 16) | texto.charAt(i);
+        }
+        return clave;
+    }
+
+    private void quitar(T elemento) {
+        Entrada entrada = entradas.get(elemento);
+        if (entrada == null) {
+            return;
+        }
+        version++;
+        if (--entrada.veces > 0) {
+            return;
+        }
+        // Las posiciones de los trigramas no se tocan: el hueco vacío se salta al buscar
+        entradas.remove(elemento);
+        elementos.set(entrada.hueco, null);
+        textos.set(entrada.hueco, null);
+        borrados++;
+    }
+
+    private void reindexar(T elemento) {
+        Entrada entrada = entradas.get(elemento);
+        if (entrada == null) {
+            return;
+        }
+        int veces = entrada.veces;
+        entrada.veces = 1;
+        quitar(elemento);
+        anadir(elemento);
+        entradas.get(elemento).veces = veces;
+    }
+
+    private void reconstruir() {
+        List<T> vivos = new ArrayList<>();
+        List<Integer> veces = new ArrayList<>();
+        for (T elemento : elementos) {
+            if (elemento != null) {
+                vivos.add(elemento);
+                veces.add(entradas.get(elemento).veces);
+            }
+        }
+        posicionesPorClave.clear();
+        elementos.clear();
+        textos.clear();
+        entradas.clear();
+        borrados = 0;
+        for (int i = 0; i < vivos.size(); i++) {
+            anadir(vivos.get(i));
+            entradas.get(vivos.get(i)).veces = veces.get(i);
+        }
+    }
+
+    private String textoDe(T elemento) {
+        StringBuilder texto = new StringBuilder();
+        for (Function<T, ?> campo : campos) {
+            Object valor = campo.apply(elemento);
+            if (valor != null) {
+                texto.append(valor).append(' ');
+            }
+        }
+        return normalizar(texto.toString());
+    }
+
+    /**
+     * Texto sin tildes ni diéresis y en minúsculas: "Pérez Güell" -> "perez guell".
+     */
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String descompuesto = Normalizer.normalize(texto, Normalizer.Form.NFD);
+        return MARCAS.matcher(descompuesto).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private static List<String> palabras(String textoNormalizado) {
+        List<String> palabras = new ArrayList<>();
+        for (String palabra : SEPARADORES.split(textoNormalizado)) {
+            if (!palabra.isEmpty()) {
+                palabras.add(palabra);
+            }
+        }
+        return palabras;
+    }
+
+    private static final class Entrada {
+        private final int hueco;
+        private int veces = 1;
+
+        private Entrada(int hueco) {
+            this.hueco = hueco;
+        }
+    }
+
+    /**
+     * Huecos en los que aparece un trigrama o prefijo, en orden creciente.
+     * Array de enteros en lugar de Set&lt;Integer&gt; para no crear un objeto por fila.
+     */
+    private static final class Posiciones {
+        private int[] datos = new int[4];
+        private int tamano;
+
+        private void anadir(int hueco) {
+            if (tamano == datos.length) {
+                datos = Arrays.copyOf(datos, tamano * 2);
+            }
+            datos[tamano++] = hueco;
+        }
+
+        private int tamano() {
+            return tamano;
+        }
+    }
+}
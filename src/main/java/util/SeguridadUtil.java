@@ -1,5 +1,7 @@
 package util;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import org.mindrot.jbcrypt.BCrypt;
 
 /**
@@ -22,8 +24,27 @@ public final class SeguridadUtil {
      * - Valor 12 = ~2^12 = 4096 iteraciones (buen equilibrio entre seguridad y velocidad)
      * - Mayor valor = más seguro pero más lento al generar/verificar
      * - Recomendado: entre 10 y 14 para aplicaciones normales
+     *
+     * Es el valor mientras no se haya llamado a calibrar(). Después se usa el
+     * costo calibrado para el equipo (ver calibrar()).
      */
-    private static final int COSTO = 12;
+    private static final int COSTO_POR_DEFECTO = 12;
+
+    // Límites del costo calibrado: por debajo de 10 el hash es demasiado rápido
+    // de atacar, y por encima de 14 un login pasaría de varios segundos
+    private static final int COSTO_MINIMO = 10;
+    private static final int COSTO_MAXIMO = 14;
+    private static final int MUESTRAS_CALIBRADO = 5;
+
+    /**
+     * Tiempo que puede tardar un hash (y por tanto un login) en este equipo.
+     * Se cambia al arrancar con -Dagrotrack.seguridad.BCRYPT_PRESUPUESTO_MS=400
+     */
+    static final String PROPIEDAD_PRESUPUESTO = "agrotrack.seguridad.BCRYPT_PRESUPUESTO_MS";
+    private static final long PRESUPUESTO_POR_DEFECTO_MS = 250;
+
+    private static volatile int costo = COSTO_POR_DEFECTO;
+    private static volatile boolean calibrado;
 
     private SeguridadUtil() {
         // Clase de utilidad, no se puede instanciar
@@ -44,9 +65,9 @@ public final class SeguridadUtil {
         if (passwordPlano == null) {
             throw new IllegalArgumentException("La contraseña no puede ser nula");
         }
-        // BCrypt.gensalt(COSTO) genera un salt aleatorio y lo incluye en el hash
+        // BCrypt.gensalt(costo) genera un salt aleatorio y lo incluye en el hash
         // El hash resultante contiene: algoritmo + costo + salt + hash real
-        return BCrypt.hashpw(passwordPlano, BCrypt.gensalt(COSTO));
+        return BCrypt.hashpw(passwordPlano, BCrypt.gensalt(costo));
     }
 
     /**
@@ -60,7 +81,8 @@ public final class SeguridadUtil {
      * 
      * @param passwordPlano La contraseña que el usuario acaba de ingresar
      * @param passwordHash El hash guardado en la base de datos
-     * @return true si la contraseña es correcta, false en caso contrario
+     * @return true si la contraseña es correcta, false en caso contrario (también si
+     *         passwordHash no es un hash BCrypt)
      */
     public static boolean verificarPassword(String passwordPlano, String passwordHash) {
         if (passwordPlano == null || passwordHash == null) {
@@ -68,7 +90,127 @@ public final class SeguridadUtil {
         }
         // BCrypt.checkpw hace toda la magia: extrae el salt del hash,
         // aplica el algoritmo y compara
-        return BCrypt.checkpw(passwordPlano, passwordHash);
+        try {
+            return BCrypt.checkpw(passwordPlano, passwordHash);
+        } catch (IllegalArgumentException e) {
+            // Lo guardado no es un hash BCrypt (p. ej. una contraseña antigua en texto plano)
+            return false;
+        }
+    }
+
+    /**
+     * Comprueba una contraseña antigua guardada en texto plano (de antes de usar
+     * BCrypt), para migrarla en el login.
+     *
+     * Solo vale si lo guardado NO es un hash BCrypt: si no, escribir el propio
+     * hash como contraseña abriría la sesión. La comparación tarda lo mismo
+     * coincidan o no los primeros caracteres (MessageDigest.isEqual).
+     *
+     * @param passwordPlano La contraseña que el usuario acaba de ingresar
+     * @param passwordGuardada Lo que hay en la base de datos
+     * @return true si lo guardado es texto plano e igual a la contraseña
+     */
+    public static boolean coincideTextoPlano(String passwordPlano, String passwordGuardada) {
+        if (passwordPlano == null || passwordGuardada == null || costoDe(passwordGuardada) >= 0) {
+            return false;
+        }
+        return MessageDigest.isEqual(passwordPlano.getBytes(StandardCharsets.UTF_8),
+            passwordGuardada.getBytes(StandardCharsets.UTF_8));
     }
-}
 
+    /**
+     * Elige el costo más alto cuyo hash tarda menos que el presupuesto
+     * (BCRYPT_PRESUPUESTO_MS, 250 ms por defecto) en este equipo.
+     *
+     * Se mide un hash con el costo mínimo (tras uno de calentamiento, para que
+     * la JIT no cuente) y se calcula el resto sabiendo que cada punto de costo
+     * duplica el tiempo. Se toma la más rápida de MUESTRAS_CALIBRADO medidas:
+     * si otro hilo ocupa la CPU en alguna, esa sale lenta y se descarta, en
+     * lugar de bajar el costo para siempre. Así un portátil antiguo se queda en 10 u 11 en lugar
+     * de tardar casi un segundo con 12, y un equipo rápido sube a 13 o 14.
+     *
+     * Tarda unas décimas de segundo: se llama al arrancar fuera del hilo de JavaFX
+     * y antes de otros trabajos de CPU de arranque (ver Main).
+     *
+     * @return El costo elegido
+     */
+    public static int calibrar() {
+        long presupuestoMs = leerPresupuestoMs();
+        BCrypt.hashpw("calentamiento", BCrypt.gensalt(COSTO_MINIMO));
+        long mejorNanos = Long.MAX_VALUE;
+        for (int i = 0; i < MUESTRAS_CALIBRADO; i++) {
+            long inicio = System.nanoTime();
+            BCrypt.hashpw("calibracion", BCrypt.gensalt(COSTO_MINIMO));
+            mejorNanos = Math.min(mejorNanos, System.nanoTime() - inicio);
+        }
+        double estimadoMs = mejorNanos / 1_000_000.0;
+        int elegido = COSTO_MINIMO;
+        while (elegido < COSTO_MAXIMO && estimadoMs * 2 <= presupuestoMs) {
+            estimadoMs *= 2;
+            elegido++;
+        }
+        costo = elegido;
+        calibrado = true;
+        return elegido;
+    }
+
+    private static long leerPresupuestoMs() {
+        String valor = System.getProperty(PROPIEDAD_PRESUPUESTO);
+        if (valor == null || valor.isBlank()) {
+            return PRESUPUESTO_POR_DEFECTO_MS;
+        }
+        try {
+            long presupuesto = Long.parseLong(valor.trim());
+            if (presupuesto > 0) {
+                return presupuesto;
+            }
+        } catch (NumberFormatException e) {
+            // Se avisa abajo y se usa el valor por defecto
+        }
+        System.err.println(PROPIEDAD_PRESUPUESTO + " no válido (\"" + valor + "\"), se usan "
+            + PRESUPUESTO_POR_DEFECTO_MS + " ms");
+        return PRESUPUESTO_POR_DEFECTO_MS;
+    }
+
+    /**
+     * Costo con el que se generan ahora los hashes nuevos.
+     */
+    public static int getCosto() {
+        return costo;
+    }
+
+    /**
+     * Indica si getCosto() ya es el calibrado para este equipo o todavía el
+     * valor por defecto (la calibración termina poco después de arrancar).
+     */
+    public static boolean estaCalibrado() {
+        return calibrado;
+    }
+
+    /**
+     * Costo con el que se generó un hash BCrypt ("$2a$12$..." -> 12), o -1 si
+     * no es un hash BCrypt.
+     */
+    public static int costoDe(String passwordHash) {
+        if (passwordHash == null || passwordHash.length() < 7 || passwordHash.charAt(0) != '$'
+                || passwordHash.charAt(3) != '$' || passwordHash.charAt(6) != '$') {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(passwordHash.substring(4, 6));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Indica si un hash BCrypt se generó con un costo distinto del calibrado y
+     * conviene rehacerlo (lo hace el login, que es cuando se tiene la contraseña).
+     * Antes de calibrar siempre devuelve false, para no rehacer hashes con el
+     * costo por defecto y volver a rehacerlos después.
+     */
+    public static boolean necesitaRehash(String passwordHash) {
+        int costoHash = costoDe(passwordHash);
+        return calibrado && costoHash > 0 && costoHash != costo;
+    }
+}
@@ -1,5 +1,7 @@
 package util;
 
+import crud.CacheEntidades;
+import java.util.Objects;
 import modelo.Finca;
 import modelo.Usuario;
 
@@ -20,7 +22,8 @@ import modelo.Usuario;
  * - Finca seleccionada: La finca que el usuario está viendo/editando
  * - Tab destino: Para navegación entre ventanas
  * 
- * IMPORTANTE: Cuando el usuario cierra sesión, se limpian todos estos datos.
+ * IMPORTANTE: Cuando el usuario cierra sesión, se limpian todos estos datos
+ * (también la caché de entidades de los DAO, CacheEntidades).
  */
 public class Sesion {
     
@@ -57,6 +60,10 @@ public class Sesion {
     }
     
     public void setUsuarioActual(Usuario usuario) {
+        // Los datos en caché son del usuario anterior: no deben verse con otro usuario
+        if (usuario == null || usuarioActual == null || !Objects.equals(usuario.getId(), usuarioActual.getId())) {
+            CacheEntidades.limpiar();
+        }
         this.usuarioActual = usuario;
     }
     
@@ -88,6 +95,7 @@ public class Sesion {
         usuarioActual = null;
         fincaSeleccionada = null;
         tabDestino = null;
+        CacheEntidades.limpiar();
     }
 }
 
@@ -0,0 +1,20 @@
+-- Índices que usan las consultas de la aplicación de escritorio.
+-- Se ejecutan una vez sobre la base de datos de AgroTrack.
+
+-- Paginación por clave de las tablas del panel de administración
+-- (UsuarioDAO.listarPagina / FincaDAO.listarPagina: ORDER BY fecha DESC, id DESC)
+CREATE INDEX idx_usuario_registro ON usuario (USU_FECHA_REGISTRO, USU_ID);
+CREATE INDEX idx_finca_registro ON finca (FIN_FECHA_REGISTRO, FIN_ID);
+
+-- Buscadores del panel de administración (UsuarioDAO / FincaDAO con texto de búsqueda).
+-- Palabras de 3 o más letras: MATCH ... AGAINST en modo booleano sobre estos índices FULLTEXT
+CREATE FULLTEXT INDEX ft_usuario_busqueda ON usuario (USU_NOMBRE, USU_APELLIDOS, USU_EMAIL, USU_USERNAME);
+CREATE FULLTEXT INDEX ft_usuario_nombre ON usuario (USU_NOMBRE, USU_APELLIDOS);
+CREATE FULLTEXT INDEX ft_finca_nombre ON finca (FIN_NOMBRE);
+-- Texto más corto: búsqueda por prefijo (LIKE 'texto%') sobre cada columna
+CREATE INDEX idx_usuario_nombre ON usuario (USU_NOMBRE);
+CREATE INDEX idx_usuario_apellidos ON usuario (USU_APELLIDOS);
+CREATE INDEX idx_finca_nombre ON finca (FIN_NOMBRE);
+
+-- Los índices únicos de username y email no son de rendimiento sino del esquema:
+-- están en migraciones/001_usuario_unicos.sql
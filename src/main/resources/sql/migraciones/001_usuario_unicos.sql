@@ -0,0 +1,15 @@
+-- Username y email únicos en la tabla usuario.
+-- Se ejecuta una vez sobre la base de datos de AgroTrack.
+--
+-- UsuarioDAO.guardar() confía en estos índices para rechazar un alta con un
+-- username o email ya registrado (error 1062, que se muestra como "ya en uso"),
+-- también si dos registros llegan a la vez. Mientras no existan, la aplicación
+-- lo avisa en la consola en la primera alta y comprueba con una consulta antes de
+-- cada INSERT, que no protege de dos altas simultáneas.
+
+-- Si ya hay duplicados, los índices no se pueden crear. Para encontrarlos:
+--   SELECT USU_USERNAME, COUNT(*) FROM usuario GROUP BY USU_USERNAME HAVING COUNT(*) > 1;
+--   SELECT USU_EMAIL, COUNT(*) FROM usuario GROUP BY USU_EMAIL HAVING COUNT(*) > 1;
+
+CREATE UNIQUE INDEX uk_usuario_username ON usuario (USU_USERNAME);
+CREATE UNIQUE INDEX uk_usuario_email ON usuario (USU_EMAIL);